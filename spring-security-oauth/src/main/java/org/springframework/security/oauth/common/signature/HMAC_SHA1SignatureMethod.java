@@ -74,10 +74,7 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
    */
   public String sign(String signatureBaseString) {
     try {
-      Mac mac = Mac.getInstance(MAC_NAME);
-      mac.init(key);
-      byte[] text = signatureBaseString.getBytes("UTF-8");
-      byte[] signatureBytes = mac.doFinal(text);
+      byte[] signatureBytes = calculate(signatureBaseString);
       signatureBytes = Base64.encodeBase64(signatureBytes);
       String signature = new String(signatureBytes, "UTF-8");
 
@@ -88,9 +85,6 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
 
       return signature;
     }
-    catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException(e);
-    }
     catch (InvalidKeyException e) {
       throw new IllegalStateException(e);
     }
@@ -117,17 +111,11 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
 
       byte[] signatureBytes = Base64.decodeBase64(signature.getBytes("UTF-8"));
 
-      Mac mac = Mac.getInstance(MAC_NAME);
-      mac.init(key);
-      byte[] text = signatureBaseString.getBytes("UTF-8");
-      byte[] calculatedBytes = mac.doFinal(text);
+      byte[] calculatedBytes = calculate(signatureBaseString);
       if (!safeArrayEquals(calculatedBytes, signatureBytes)) {
         throw new InvalidSignatureException("Invalid signature for signature method " + getName());
       }
     }
-    catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException(e);
-    }
     catch (InvalidKeyException e) {
       throw new IllegalStateException(e);
     }
@@ -136,6 +124,25 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
     }
   }
 
+  /**
+   * Calculate the digest of the signature base string, feeding the bytes to the MAC directly.
+   *
+   * @param signatureBaseString The signature base string.
+   * @return The digest.
+   */
+  private byte[] calculate(String signatureBaseString) throws InvalidKeyException {
+    Mac mac;
+    try {
+      mac = Mac.getInstance(MAC_NAME);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    mac.init(key);
+    SignatureBaseStringBuilder.update(mac, signatureBaseString);
+    return mac.doFinal();
+  }
+
   boolean safeArrayEquals(byte[] a1, byte[] a2) {
     if (a1 == null || a2 == null) {
       return (a1 == a2);
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.common.signature;
+
+import javax.crypto.Mac;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Builder for the signature base string (OAuth Core 1.0, section 9.1) that avoids the intermediate sorted maps, sets
+ * and strings of the straightforward implementation. Parameter names and values are percent-encoded in a single pass
+ * into a reusable byte buffer, sorted as a primitive array of offsets into that buffer, and the normalized parameter
+ * string is written out already encoded for inclusion in the base string.<br/>
+ * <br/>
+ * Instances are not thread-safe. They are cheap to create, so callers use one per base string (or
+ * {@link #reset(String, String) reset} one they own). They are deliberately not cached in thread locals, which would
+ * keep the web application's class loader alive after a redeploy.
+ */
+public class SignatureBaseStringBuilder {
+
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(ISO_8859_1);
+
+  private static final boolean[] UNRESERVED = new boolean[128];
+
+  static {
+    //the OAuth codec only leaves the RFC 3986 unreserved characters alone.
+    for (char c = 'a'; c <= 'z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      UNRESERVED[c] = true;
+    }
+    UNRESERVED['-'] = true;
+    UNRESERVED['.'] = true;
+    UNRESERVED['_'] = true;
+    UNRESERVED['~'] = true;
+  }
+
+  //the oauth-encoded parameter names and values, back to back.
+  private byte[] parameters = new byte[512];
+  private int parametersLength;
+
+  //for parameter i: name is [starts[i], splits[i]), value is [splits[i], ends[i]).
+  private int[] starts = new int[16];
+  private int[] splits = new int[16];
+  private int[] ends = new int[16];
+  private int[] order = new int[16];
+  private int[] merge = new int[16];
+  private int count;
+
+  private final byte[] scratch = new byte[4];
+
+  //the base string.
+  private byte[] output = new byte[1024];
+  private int outputLength;
+  private boolean ascii;
+
+  private String method;
+  private String url;
+
+  /**
+   * Create a builder for a base string.
+   *
+   * @param method The HTTP method (it will be upper-cased).
+   * @param url    The normalized request URL (not yet oauth-encoded).
+   */
+  public SignatureBaseStringBuilder(String method, String url) {
+    reset(method, url);
+  }
+
+  /**
+   * Clears all parameters and sets up the builder for a new base string.
+   *
+   * @param method The HTTP method (it will be upper-cased).
+   * @param url    The normalized request URL (not yet oauth-encoded).
+   * @return this
+   */
+  public SignatureBaseStringBuilder reset(String method, String url) {
+    this.method = method;
+    this.url = url;
+    this.parametersLength = 0;
+    this.count = 0;
+    return this;
+  }
+
+  /**
+   * Add a parameter to the base string. Neither name nor value should be oauth-encoded. Parameters with the same name
+   * and value are only included once.
+   *
+   * @param name  The parameter name.
+   * @param value The parameter value (null is treated as the empty string).
+   * @return this
+   */
+  public SignatureBaseStringBuilder addParameter(String name, CharSequence value) {
+    if (count == starts.length) {
+      int capacity = count * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      splits = Arrays.copyOf(splits, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      order = new int[capacity];
+      merge = new int[capacity];
+    }
+    starts[count] = parametersLength;
+    encodeParameter(name);
+    splits[count] = parametersLength;
+    encodeParameter(value);
+    ends[count] = parametersLength;
+    count++;
+    return this;
+  }
+
+  /**
+   * The number of parameters added since the last reset.
+   *
+   * @return The number of parameters.
+   */
+  public int getParameterCount() {
+    return count;
+  }
+
+  /**
+   * Write the base string for the current method, URL and parameters.
+   *
+   * @return The signature base string.
+   */
+  public String build() {
+    write();
+    return ascii ? new String(output, 0, outputLength, ISO_8859_1) : new String(output, 0, outputLength, UTF_8);
+  }
+
+  /**
+   * Feed the UTF-8 bytes of the given text to the MAC through a small buffer, without encoding the whole text first.
+   *
+   * @param mac  The (initialized) MAC.
+   * @param text The text.
+   */
+  public static void update(Mac mac, String text) {
+    byte[] buffer = new byte[Math.min(256, text.length() * 4 + 4)];
+    int length = text.length();
+    int position = 0;
+    for (int i = 0; i < length; i++) {
+      if (position > buffer.length - 4) {
+        mac.update(buffer, 0, position);
+        position = 0;
+      }
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+      }
+      else {
+        int codePoint = c;
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+          codePoint = Character.toCodePoint(c, text.charAt(++i));
+        }
+        position = utf8(codePoint, buffer, position);
+      }
+    }
+    mac.update(buffer, 0, position);
+  }
+
+  private void write() {
+    sort();
+    outputLength = 0;
+    ascii = true;
+    int length = method.length();
+    for (int i = 0; i < length; i++) {
+      char c = Character.toUpperCase(method.charAt(i));
+      if (c < 0x80) {
+        writeOutput((byte) c);
+      }
+      else {
+        ascii = false;
+        ensureOutput(4);
+        outputLength = utf8(c, output, outputLength);
+      }
+    }
+    writeOutput((byte) '&');
+    encodeUrl(url);
+    writeOutput((byte) '&');
+    int previous = -1;
+    boolean first = true;
+    for (int i = 0; i < count; i++) {
+      int parameter = order[i];
+      if (previous >= 0 && compare(previous, parameter) == 0) {
+        //duplicate name and value.
+        continue;
+      }
+      previous = parameter;
+      if (!first) {
+        //'&', encoded.
+        writePercent((byte) '2', (byte) '6');
+      }
+      first = false;
+      writeEncoded(starts[parameter], splits[parameter]);
+      //'=', encoded.
+      writePercent((byte) '3', (byte) 'D');
+      writeEncoded(splits[parameter], ends[parameter]);
+    }
+  }
+
+  /**
+   * Sorts the parameter offsets by encoded name and then by encoded value: an insertion sort for the usual handful of
+   * parameters, and a merge sort (through a reusable scratch array) for larger requests.
+   */
+  private void sort() {
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    sort(0, count);
+  }
+
+  private void sort(int from, int to) {
+    if (to - from <= 16) {
+      for (int i = from + 1; i < to; i++) {
+        int parameter = order[i];
+        int j = i - 1;
+        while (j >= from && compare(order[j], parameter) > 0) {
+          order[j + 1] = order[j];
+          j--;
+        }
+        order[j + 1] = parameter;
+      }
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    sort(from, middle);
+    sort(middle, to);
+    System.arraycopy(order, from, merge, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < middle && compare(merge[left], merge[right]) <= 0)) {
+        order[i] = merge[left++];
+      }
+      else {
+        order[i] = merge[right++];
+      }
+    }
+  }
+
+  private int compare(int first, int second) {
+    int comparison = compareRange(starts[first], splits[first], starts[second], splits[second]);
+    if (comparison == 0) {
+      comparison = compareRange(splits[first], ends[first], splits[second], ends[second]);
+    }
+    return comparison;
+  }
+
+  private int compareRange(int from1, int to1, int from2, int to2) {
+    int length1 = to1 - from1;
+    int length2 = to2 - from2;
+    int length = Math.min(length1, length2);
+    for (int i = 0; i < length; i++) {
+      //the encoded bytes are all ascii, so this is the same as comparing the encoded strings.
+      int difference = parameters[from1 + i] - parameters[from2 + i];
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length1 - length2;
+  }
+
+  /**
+   * Copies an already-encoded range of the parameter buffer to the output, encoding it a second time (only the '%'
+   * of the first encoding needs escaping, everything else is unreserved).
+   */
+  private void writeEncoded(int from, int to) {
+    ensureOutput((to - from) * 3);
+    for (int i = from; i < to; i++) {
+      byte b = parameters[i];
+      if (b == '%') {
+        output[outputLength++] = '%';
+        output[outputLength++] = '2';
+        output[outputLength++] = '5';
+      }
+      else {
+        output[outputLength++] = b;
+      }
+    }
+  }
+
+  private void encodeUrl(String value) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      ensureOutput(12);
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (UNRESERVED[c]) {
+          output[outputLength++] = (byte) c;
+        }
+        else {
+          writePercent(HEX[(c >> 4) & 0xF], HEX[c & 0xF]);
+        }
+      }
+      else {
+        int codePoint = c;
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          codePoint = Character.toCodePoint(c, value.charAt(++i));
+        }
+        int bytes = utf8(codePoint, scratch, 0);
+        for (int j = 0; j < bytes; j++) {
+          writePercent(HEX[(scratch[j] >> 4) & 0xF], HEX[scratch[j] & 0xF]);
+        }
+      }
+    }
+  }
+
+  private void encodeParameter(CharSequence value) {
+    if (value == null) {
+      return;
+    }
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      if (parametersLength > parameters.length - 12) {
+        parameters = Arrays.copyOf(parameters, parameters.length * 2);
+      }
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (UNRESERVED[c]) {
+          parameters[parametersLength++] = (byte) c;
+        }
+        else {
+          encodeByte((byte) c);
+        }
+      }
+      else {
+        int codePoint = c;
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          codePoint = Character.toCodePoint(c, value.charAt(++i));
+        }
+        int bytes = utf8(codePoint, scratch, 0);
+        for (int j = 0; j < bytes; j++) {
+          encodeByte(scratch[j]);
+        }
+      }
+    }
+  }
+
+  private void encodeByte(byte b) {
+    parameters[parametersLength++] = '%';
+    parameters[parametersLength++] = HEX[(b >> 4) & 0xF];
+    parameters[parametersLength++] = HEX[b & 0xF];
+  }
+
+  private void writePercent(byte high, byte low) {
+    ensureOutput(3);
+    output[outputLength++] = '%';
+    output[outputLength++] = high;
+    output[outputLength++] = low;
+  }
+
+  private void writeOutput(byte b) {
+    ensureOutput(1);
+    output[outputLength++] = b;
+  }
+
+  private void ensureOutput(int extra) {
+    if (outputLength + extra > output.length) {
+      output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + extra));
+    }
+  }
+
+  /**
+   * Writes the UTF-8 bytes of the code point (unpaired surrogates become '?', as with {@link String#getBytes(String)}).
+   *
+   * @return The new position in the buffer.
+   */
+  private static int utf8(int codePoint, byte[] buffer, int position) {
+    if (codePoint < 0x80) {
+      buffer[position++] = (byte) codePoint;
+    }
+    else if (codePoint < 0x800) {
+      buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+    else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+      buffer[position++] = '?';
+    }
+    else if (codePoint < 0x10000) {
+      buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+      buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+    else {
+      buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+      buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+      buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+    return position;
+  }
+
+}
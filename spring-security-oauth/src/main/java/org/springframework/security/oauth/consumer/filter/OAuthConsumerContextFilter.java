@@ -168,6 +168,8 @@ public class OAuthConsumerContextFilter implements Filter, InitializingBean, Mes
 							}
 
 							request.setAttribute("org.springframework.security.oauth.consumer.AccessTokenRequiredException", e);
+							//remember the request token while the response can still carry it (e.g. in a cookie).
+							rememberTokens(requestTokens, accessTokens, request, response);
 							this.redirectStrategy.sendRedirect(request, response, redirect);
 							return;
 						}
@@ -197,6 +199,7 @@ public class OAuthConsumerContextFilter implements Filter, InitializingBean, Mes
 						try {
 							//try again
 							if (!response.isCommitted()) {
+								rememberTokens(requestTokens, accessTokens, request, response);
 								request.setAttribute(getAccessTokensRequestAttribute(), new ArrayList<OAuthConsumerToken>(accessTokens.values()));
 								chain.doFilter(request, response);
 							}
@@ -237,13 +240,17 @@ public class OAuthConsumerContextFilter implements Filter, InitializingBean, Mes
 		}
 		finally {
 			OAuthSecurityContextHolder.setContext(null);
-			HashMap<String, OAuthConsumerToken> tokensToRemember = new HashMap<String, OAuthConsumerToken>();
-			tokensToRemember.putAll(requestTokens);
-			tokensToRemember.putAll(accessTokens);
-			getRememberMeServices().rememberTokens(tokensToRemember, request, response);
+			rememberTokens(requestTokens, accessTokens, request, response);
 		}
 	}
 
+	private void rememberTokens(Map<String, OAuthConsumerToken> requestTokens, Map<String, OAuthConsumerToken> accessTokens, HttpServletRequest request, HttpServletResponse response) {
+		HashMap<String, OAuthConsumerToken> tokensToRemember = new HashMap<String, OAuthConsumerToken>();
+		tokensToRemember.putAll(requestTokens);
+		tokensToRemember.putAll(accessTokens);
+		getRememberMeServices().rememberTokens(tokensToRemember, request, response);
+	}
+
 	/**
 	 * Check the given exception for the resource that needs authorization. If the exception was not thrown because a resource needed authorization, then rethrow
 	 * the exception.
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.consumer.rememberme;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth.consumer.OAuthConsumerToken;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * Remember-me services that keep the tokens of a user in a cookie instead of the HTTP session, so that the nodes of a
+ * consumer don't need sticky sessions or session replication. The tokens are encrypted (AES) and signed (HMAC-SHA256)
+ * with keys derived from a secret that all the nodes share, so the user can neither read nor change them, and the
+ * cookie is only accepted for {@link #setValiditySeconds(int) a limited time} after the tokens in it last changed.
+ * The cookie is bound to the name of the authenticated user, and is ignored when a different user (or none) is
+ * authenticated. Add these services to the logout handlers so the cookie is cleared when the user logs out.
+ * </p>
+ *
+ * <p>
+ * Since every token (including the request tokens) is remembered, use them with token services that store nothing,
+ * e.g. {@link org.springframework.security.oauth.consumer.token.NoOpOAuthConsumerTokenServices}. The cookie can only
+ * be written while the response is not committed, which the
+ * {@link org.springframework.security.oauth.consumer.filter.OAuthConsumerContextFilter} takes care of when it obtains
+ * new tokens.
+ * </p>
+ */
+public class CookieOAuthRememberMeServices implements OAuthRememberMeServices, LogoutHandler {
+
+	public static final String DEFAULT_COOKIE_NAME = "OAUTH_TOKENS";
+
+	private static final String REMEMBERED_TOKENS_KEY = CookieOAuthRememberMeServices.class.getName()
+			+ "#REMEMBERED_TOKENS";
+
+	private static final Log LOG = LogFactory.getLog(CookieOAuthRememberMeServices.class);
+
+	private static final String CIPHER = "AES/CBC/PKCS5Padding";
+
+	private static final String MAC = "HmacSHA256";
+
+	private static final int IV_LENGTH = 16;
+
+	private static final int MAC_LENGTH = 32;
+
+	private static final int MAX_COOKIE_LENGTH = 4096;
+
+	private final SecretKeySpec encryptionKey;
+
+	private final SecretKeySpec macKey;
+
+	private final SecureRandom random = new SecureRandom();
+
+	private String cookieName = DEFAULT_COOKIE_NAME;
+
+	private String cookiePath;
+
+	private Boolean useSecureCookie;
+
+	private int validitySeconds = 86400;
+
+	private boolean storeAccessTokens = true;
+
+	/**
+	 * @param secret The secret from which the keys for the cookie are derived. It must be the same on all the nodes, and
+	 * should be long and random.
+	 */
+	public CookieOAuthRememberMeServices(String secret) {
+		Assert.hasText(secret, "A secret must be provided.");
+		try {
+			byte[] bytes = secret.getBytes("UTF-8");
+			this.encryptionKey = new SecretKeySpec(Arrays.copyOf(deriveKey(bytes, "encryption"), 16), "AES");
+			this.macKey = new SecretKeySpec(deriveKey(bytes, "authentication"), MAC);
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+	public Map<String, OAuthConsumerToken> loadRememberedTokens(HttpServletRequest request, HttpServletResponse response) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null) {
+			return null;
+		}
+
+		for (Cookie cookie : cookies) {
+			if (cookieName.equals(cookie.getName())) {
+				byte[] plain = decode(cookie.getValue());
+				if (plain == null) {
+					return null;
+				}
+
+				try {
+					DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+					long expiry = in.readLong();
+					if (expiry < System.currentTimeMillis()) {
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("Ignoring expired OAuth tokens cookie.");
+						}
+						return null;
+					}
+					byte[] serialized = new byte[in.available()];
+					in.readFully(serialized);
+					in = new DataInputStream(new ByteArrayInputStream(serialized));
+					if (!getUserName().equals(in.readUTF())) {
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("Ignoring OAuth tokens cookie of another user.");
+						}
+						return null;
+					}
+					Map<String, OAuthConsumerToken> tokens = readTokens(in);
+					request.setAttribute(REMEMBERED_TOKENS_KEY, serialized);
+					return tokens;
+				}
+				catch (Exception e) {
+					LOG.warn("Unable to read the OAuth tokens cookie: " + e.getMessage());
+					return null;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	public void rememberTokens(Map<String, OAuthConsumerToken> tokens, HttpServletRequest request,
+			HttpServletResponse response) {
+
+		Map<String, OAuthConsumerToken> tokensToRemember = new TreeMap<String, OAuthConsumerToken>();
+		for (Map.Entry<String, OAuthConsumerToken> token : tokens.entrySet()) {
+			if (storeAccessTokens || !token.getValue().isAccessToken()) {
+				tokensToRemember.put(token.getKey(), token.getValue());
+			}
+		}
+
+		byte[] serialized = tokensToRemember.isEmpty() ? null : serialize(getUserName(), tokensToRemember);
+		byte[] remembered = (byte[]) request.getAttribute(REMEMBERED_TOKENS_KEY);
+		if (Arrays.equals(serialized, remembered)) {
+			// nothing changed, so the cookie the user already has will do
+			return;
+		}
+
+		if (response.isCommitted()) {
+			LOG.warn("Unable to remember the OAuth tokens because the response is already committed.");
+			return;
+		}
+
+		Cookie cookie;
+		if (serialized == null) {
+			cookie = expiredCookie();
+		}
+		else {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				out.writeLong(System.currentTimeMillis() + validitySeconds * 1000L);
+				out.write(serialized);
+				out.flush();
+				cookie = new Cookie(cookieName, encode(bytes.toByteArray()));
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			if (cookie.getValue().length() > MAX_COOKIE_LENGTH) {
+				LOG.warn("The OAuth tokens cookie is " + cookie.getValue().length()
+						+ " characters long, which browsers may not accept.");
+			}
+			cookie.setMaxAge(validitySeconds);
+		}
+
+		addCookie(cookie, request, response);
+		request.setAttribute(REMEMBERED_TOKENS_KEY, serialized);
+	}
+
+	public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+		if (response.isCommitted()) {
+			LOG.warn("Unable to clear the OAuth tokens cookie because the response is already committed.");
+			return;
+		}
+		addCookie(expiredCookie(), request, response);
+		request.removeAttribute(REMEMBERED_TOKENS_KEY);
+	}
+
+	private Cookie expiredCookie() {
+		Cookie cookie = new Cookie(cookieName, "");
+		cookie.setMaxAge(0);
+		return cookie;
+	}
+
+	private void addCookie(Cookie cookie, HttpServletRequest request, HttpServletResponse response) {
+		String path = cookiePath;
+		if (path == null) {
+			path = request.getContextPath().length() > 0 ? request.getContextPath() : "/";
+		}
+		cookie.setPath(path);
+		cookie.setSecure(useSecureCookie != null ? useSecureCookie : request.isSecure());
+		response.addCookie(cookie);
+	}
+
+	/**
+	 * The name of the user the cookie is bound to, i.e. the name of the current authentication (or an empty string if
+	 * there is none).
+	 *
+	 * @return The name of the user.
+	 */
+	protected String getUserName() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		return authentication == null || authentication.getName() == null ? "" : authentication.getName();
+	}
+
+	// The tokens are written field by field rather than with Java serialization, so that reading a cookie can never
+	// instantiate anything but tokens, strings and maps.
+
+	private byte[] serialize(String userName, Map<String, OAuthConsumerToken> tokens) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(userName);
+			out.writeInt(tokens.size());
+			for (Map.Entry<String, OAuthConsumerToken> entry : tokens.entrySet()) {
+				OAuthConsumerToken token = entry.getValue();
+				writeString(out, entry.getKey());
+				writeString(out, token.getResourceId());
+				writeString(out, token.getValue());
+				writeString(out, token.getSecret());
+				out.writeBoolean(token.isAccessToken());
+				Map<String, String> parameters = token.getAdditionalParameters();
+				out.writeInt(parameters == null ? -1 : parameters.size());
+				if (parameters != null) {
+					for (Map.Entry<String, String> parameter : new TreeMap<String, String>(parameters).entrySet()) {
+						writeString(out, parameter.getKey());
+						writeString(out, parameter.getValue());
+					}
+				}
+			}
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to serialize the OAuth tokens.", e);
+		}
+	}
+
+	private Map<String, OAuthConsumerToken> readTokens(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		Map<String, OAuthConsumerToken> tokens = new TreeMap<String, OAuthConsumerToken>();
+		for (int i = 0; i < count; i++) {
+			String key = readString(in);
+			OAuthConsumerToken token = new OAuthConsumerToken();
+			token.setResourceId(readString(in));
+			token.setValue(readString(in));
+			token.setSecret(readString(in));
+			token.setAccessToken(in.readBoolean());
+			int parameterCount = in.readInt();
+			if (parameterCount >= 0) {
+				Map<String, String> parameters = new HashMap<String, String>();
+				for (int j = 0; j < parameterCount; j++) {
+					parameters.put(readString(in), readString(in));
+				}
+				token.setAdditionalParameters(parameters);
+			}
+			tokens.put(key, token);
+		}
+		return tokens;
+	}
+
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private String encode(byte[] plain) {
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			Cipher cipher = Cipher.getInstance(CIPHER);
+			cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			byte[] encrypted = cipher.doFinal(plain);
+
+			byte[] value = new byte[IV_LENGTH + encrypted.length + MAC_LENGTH];
+			System.arraycopy(iv, 0, value, 0, IV_LENGTH);
+			System.arraycopy(encrypted, 0, value, IV_LENGTH, encrypted.length);
+			System.arraycopy(mac(value, IV_LENGTH + encrypted.length), 0, value, IV_LENGTH + encrypted.length, MAC_LENGTH);
+
+			// URL-safe base64, so the value needs no quoting in the cookie header
+			String base64 = new String(Base64.encodeBase64(value), "US-ASCII");
+			return base64.replace('+', '-').replace('/', '_').replace("=", "");
+		}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to encrypt the OAuth tokens.", e);
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("US-ASCII encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+	private byte[] decode(String encoded) {
+		try {
+			StringBuilder base64 = new StringBuilder(encoded.replace('-', '+').replace('_', '/'));
+			while (base64.length() % 4 != 0) {
+				base64.append('=');
+			}
+			byte[] value = Base64.decodeBase64(base64.toString().getBytes("US-ASCII"));
+			if (value.length < IV_LENGTH + MAC_LENGTH) {
+				LOG.warn("Ignoring malformed OAuth tokens cookie.");
+				return null;
+			}
+
+			int signedLength = value.length - MAC_LENGTH;
+			byte[] expected = mac(value, signedLength);
+			int difference = 0;
+			for (int i = 0; i < MAC_LENGTH; i++) {
+				difference |= expected[i] ^ value[signedLength + i];
+			}
+			if (difference != 0) {
+				LOG.warn("Ignoring OAuth tokens cookie with an invalid signature.");
+				return null;
+			}
+
+			Cipher cipher = Cipher.getInstance(CIPHER);
+			cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(value, 0, IV_LENGTH));
+			return cipher.doFinal(value, IV_LENGTH, signedLength - IV_LENGTH);
+		}
+		catch (GeneralSecurityException e) {
+			LOG.warn("Unable to decrypt the OAuth tokens cookie: " + e.getMessage());
+			return null;
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("US-ASCII encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+	private byte[] mac(byte[] value, int length) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance(MAC);
+		mac.init(macKey);
+		mac.update(value, 0, length);
+		return mac.doFinal();
+	}
+
+	private static byte[] deriveKey(byte[] secret, String purpose) {
+		try {
+			Mac mac = Mac.getInstance(MAC);
+			mac.init(new SecretKeySpec(secret, MAC));
+			return mac.doFinal(purpose.getBytes("UTF-8"));
+		}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 algorithm not available.  Fatal (should be in the JDK).");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+	/**
+	 * The name of the cookie (default "OAUTH_TOKENS").
+	 *
+	 * @param cookieName The name of the cookie.
+	 */
+	public void setCookieName(String cookieName) {
+		this.cookieName = cookieName;
+	}
+
+	/**
+	 * The path of the cookie (default the context path of the request).
+	 *
+	 * @param cookiePath The path of the cookie.
+	 */
+	public void setCookiePath(String cookiePath) {
+		this.cookiePath = cookiePath;
+	}
+
+	/**
+	 * Whether the cookie should only be sent over HTTPS (default whether the request is secure).
+	 *
+	 * @param useSecureCookie Whether the cookie should only be sent over HTTPS.
+	 */
+	public void setUseSecureCookie(boolean useSecureCookie) {
+		this.useSecureCookie = useSecureCookie;
+	}
+
+	/**
+	 * The time for which the cookie is accepted after the tokens in it last changed (default 86400).
+	 *
+	 * @param validitySeconds The time for which the cookie is accepted.
+	 */
+	public void setValiditySeconds(int validitySeconds) {
+		this.validitySeconds = validitySeconds;
+	}
+
+	/**
+	 * Whether to remember the access tokens as well as the request tokens (default true).
+	 *
+	 * @param storeAccessTokens Whether to remember the access tokens.
+	 */
+	public void setStoreAccessTokens(boolean storeAccessTokens) {
+		this.storeAccessTokens = storeAccessTokens;
+	}
+
+}
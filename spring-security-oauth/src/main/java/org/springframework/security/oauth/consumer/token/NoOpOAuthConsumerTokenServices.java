@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.consumer.token;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth.consumer.OAuthConsumerToken;
+
+/**
+ * Token services that store nothing, for a consumer that relies on the
+ * {@link org.springframework.security.oauth.consumer.rememberme.OAuthRememberMeServices remember-me services} to keep
+ * all the tokens, e.g. in a cookie with the
+ * {@link org.springframework.security.oauth.consumer.rememberme.CookieOAuthRememberMeServices}, so that no HTTP session
+ * is needed.
+ */
+public class NoOpOAuthConsumerTokenServices implements OAuthConsumerTokenServices {
+
+  public OAuthConsumerToken getToken(String resourceId) throws AuthenticationException {
+    return null;
+  }
+
+  public void storeToken(String resourceId, OAuthConsumerToken token) {
+  }
+
+  public void removeToken(String resourceId) {
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider;
+
+import org.springframework.security.oauth.common.ExpiringCache;
+import org.springframework.security.oauth.common.OAuthException;
+import org.springframework.util.Assert;
+
+/**
+ * Consumer details service that keeps the consumer details loaded from another consumer details service in memory
+ * for a while, so that signed requests don't have to go to the backing store for them every time. Consumers that are
+ * not found are not cached. Call {@link #evict(String)} when the details of a consumer change (or it is removed), or
+ * keep the {@link #setCacheSeconds(int) cache time} short.
+ */
+public class CachingConsumerDetailsService implements ConsumerDetailsService {
+
+  private final ConsumerDetailsService consumerDetailsService;
+  private final ExpiringCache<String, ConsumerDetails> cache = new ExpiringCache<String, ConsumerDetails>(10000);
+  private int cacheSeconds = 300;
+
+  public CachingConsumerDetailsService(ConsumerDetailsService consumerDetailsService) {
+    Assert.notNull(consumerDetailsService, "A consumer details service must be provided.");
+    this.consumerDetailsService = consumerDetailsService;
+  }
+
+  public ConsumerDetails loadConsumerByConsumerKey(String consumerKey) throws OAuthException {
+    ConsumerDetails cached = cache.get(consumerKey);
+    if (cached != null) {
+      return cached;
+    }
+
+    ConsumerDetails consumerDetails = consumerDetailsService.loadConsumerByConsumerKey(consumerKey);
+    if (consumerDetails != null) {
+      cache.put(consumerKey, consumerDetails, System.currentTimeMillis() + cacheSeconds * 1000L);
+    }
+    return consumerDetails;
+  }
+
+  /**
+   * Discard the cached details of a consumer.
+   *
+   * @param consumerKey The consumer key.
+   */
+  public void evict(String consumerKey) {
+    cache.remove(consumerKey);
+  }
+
+  /**
+   * Discard the cached details of all consumers.
+   */
+  public void clear() {
+    cache.clear();
+  }
+
+  /**
+   * The time for which the details of a consumer are cached (default 300).
+   *
+   * @return The time for which the details of a consumer are cached.
+   */
+  public int getCacheSeconds() {
+    return cacheSeconds;
+  }
+
+  /**
+   * The time for which the details of a consumer are cached (default 300).
+   *
+   * @param cacheSeconds The time for which the details of a consumer are cached.
+   */
+  public void setCacheSeconds(int cacheSeconds) {
+    this.cacheSeconds = cacheSeconds;
+  }
+
+  /**
+   * The maximum number of consumers to cache (default 10000).
+   *
+   * @return The maximum number of consumers to cache.
+   */
+  public int getMaxCacheSize() {
+    return cache.getMaxSize();
+  }
+
+  /**
+   * The maximum number of consumers to cache (default 10000). When the cache is full, expired entries are discarded,
+   * and if it is still full other entries are evicted to make room.
+   *
+   * @param maxCacheSize The maximum number of consumers to cache.
+   */
+  public void setMaxCacheSize(int maxCacheSize) {
+    cache.setMaxSize(maxCacheSize);
+  }
+}
@@ -17,6 +17,7 @@
 package org.springframework.security.oauth.provider;
 
 import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth.provider.token.OAuthProviderToken;
 
 import java.util.Map;
 
@@ -32,6 +33,7 @@ public class ConsumerAuthentication extends AbstractAuthenticationToken {
   private final ConsumerCredentials consumerCredentials;
   private final Map<String, String> oauthParameters;
   private boolean signatureValidated = false;
+  private OAuthProviderToken providerToken;
 
   public ConsumerAuthentication(ConsumerDetails consumerDetails, ConsumerCredentials consumerCredentials) {
     super(consumerDetails.getAuthorities());
@@ -121,6 +123,25 @@ public class ConsumerAuthentication extends AbstractAuthenticationToken {
     this.signatureValidated = signatureValidated;
   }
 
+  /**
+   * The token of the request, if it has already been loaded (e.g. to validate the signature), so that it doesn't
+   * have to be loaded again while the same request is processed.
+   *
+   * @return The token of the request, or null if it hasn't been loaded.
+   */
+  public OAuthProviderToken getProviderToken() {
+    return providerToken;
+  }
+
+  /**
+   * The token of the request, if it has already been loaded.
+   *
+   * @param providerToken The token of the request.
+   */
+  public void setProviderToken(OAuthProviderToken providerToken) {
+    this.providerToken = providerToken;
+  }
+
   /**
    * Whether the signature has been validated.
    *
@@ -21,6 +21,7 @@ import static org.springframework.security.oauth.common.OAuthCodec.oauthDecode;
 import static org.springframework.security.oauth.common.OAuthCodec.oauthEncode;
 import org.springframework.security.oauth.common.OAuthConsumerParameter;
 import org.springframework.security.oauth.common.StringSplitUtils;
+import org.springframework.security.oauth.common.signature.SignatureBaseStringBuilder;
 import org.springframework.security.oauth.provider.OAuthProviderSupport;
 
 import javax.servlet.http.HttpServletRequest;
@@ -36,6 +37,7 @@ import java.net.MalformedURLException;
 public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
   private final Set<String> supportedOAuthParameters;
+  private final boolean legacySignificantParameters;
   private String baseUrl = null;
 
   public CoreOAuthProviderSupport() {
@@ -44,6 +46,7 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
       supportedOAuthParameters.add(supportedParameter.toString());
     }
     this.supportedOAuthParameters = supportedOAuthParameters;
+    this.legacySignificantParameters = overridesLoadSignificantParameters(getClass());
   }
 
   // Inherited.
@@ -115,8 +118,24 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
   // Inherited.
   public String getSignatureBaseString(HttpServletRequest request) {
-    SortedMap<String, SortedSet<String>> significantParameters = loadSignificantParametersForSignatureBaseString(request);
+    String url = getBaseUrl(request);
+    if (url == null) {
+      //if no URL is configured, then we'll attempt to reconstruct the URL.  This may be inaccurate.
+      url = request.getRequestURL().toString();
+    }
+    url = normalizeUrl(url);
 
+    if (legacySignificantParameters) {
+      //a subclass customizes the significant parameters the old way, so honor it.
+      return getSignatureBaseString(request.getMethod(), url, loadSignificantParametersForSignatureBaseString(request));
+    }
+
+    SignatureBaseStringBuilder builder = new SignatureBaseStringBuilder(request.getMethod(), url);
+    addSignificantParameters(request, builder);
+    return builder.build();
+  }
+
+  private String getSignatureBaseString(String method, String url, SortedMap<String, SortedSet<String>> significantParameters) {
     //now concatenate them into a single query string according to the spec.
     StringBuilder queryString = new StringBuilder();
     Iterator<Map.Entry<String, SortedSet<String>>> paramIt = significantParameters.entrySet().iterator();
@@ -132,16 +151,62 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
       }
     }
 
-    String url = getBaseUrl(request);
-    if (url == null) {
-      //if no URL is configured, then we'll attempt to reconstruct the URL.  This may be inaccurate.
-      url = request.getRequestURL().toString();
+    return new StringBuilder(method.toUpperCase()).append('&').append(oauthEncode(url)).append('&').append(oauthEncode(queryString.toString())).toString();
+  }
+
+  /**
+   * Whether the given class (or one of its superclasses below this one) overrides
+   * {@link #loadSignificantParametersForSignatureBaseString(HttpServletRequest)}.
+   */
+  private static boolean overridesLoadSignificantParameters(Class<?> type) {
+    for (Class<?> current = type; current != null && current != CoreOAuthProviderSupport.class; current = current.getSuperclass()) {
+      try {
+        current.getDeclaredMethod("loadSignificantParametersForSignatureBaseString", HttpServletRequest.class);
+        return true;
+      }
+      catch (NoSuchMethodException e) {
+        //not overridden here.
+      }
     }
-    url = normalizeUrl(url);
-    url = oauthEncode(url);
+    return false;
+  }
 
-    String method = request.getMethod().toUpperCase();
-    return new StringBuilder(method).append('&').append(url).append('&').append(oauthEncode(queryString.toString())).toString();
+  /**
+   * Adds the significant parameters that are to be used to calculate the signature base string to the builder. The
+   * parameters are added unencoded; the builder encodes and sorts them per the spec section 9.1.
+   *
+   * @param request The request.
+   * @param builder The signature base string builder.
+   */
+  protected void addSignificantParameters(HttpServletRequest request, SignatureBaseStringBuilder builder) {
+    String signatureParameter = OAuthConsumerParameter.oauth_signature.toString();
+    //first pull from the request...
+    Enumeration<?> parameterNames = request.getParameterNames();
+    while (parameterNames.hasMoreElements()) {
+      String parameterName = (String) parameterNames.nextElement();
+      if (signatureParameter.equals(parameterName)) {
+        continue;
+      }
+
+      String[] values = request.getParameterValues(parameterName);
+      if (values == null) {
+        builder.addParameter(parameterName, "");
+        continue;
+      }
+
+      for (String parameterValue : values) {
+        builder.addParameter(parameterName, parameterValue);
+      }
+    }
+
+    //then take into account the header parameter values...
+    Map<String, String> oauthParams = parseParameters(request);
+    oauthParams.remove("realm"); //remove the realm
+    for (Map.Entry<String, String> oauthParam : oauthParams.entrySet()) {
+      if (!signatureParameter.equals(oauthParam.getKey())) {
+        builder.addParameter(oauthParam.getKey(), oauthParam.getValue());
+      }
+    }
   }
 
   /**
@@ -172,7 +237,10 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
    *
    * @param request The request.
    * @return The significan parameters.
+   * @deprecated override {@link #addSignificantParameters(HttpServletRequest, SignatureBaseStringBuilder)} instead. A
+   * subclass that overrides this method still has its parameters signed, but without the faster builder.
    */
+  @Deprecated
   protected SortedMap<String, SortedSet<String>> loadSignificantParametersForSignatureBaseString(HttpServletRequest request) {
     //first collect the relevant parameters...
     SortedMap<String, SortedSet<String>> significantParameters = new TreeMap<String, SortedSet<String>>();
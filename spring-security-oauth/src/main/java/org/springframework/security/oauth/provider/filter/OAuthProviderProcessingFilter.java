@@ -257,6 +257,8 @@ public abstract class OAuthProviderProcessingFilter implements Filter, Initializ
     OAuthProviderToken authToken = null;
     if (token != null && !"".equals(token)) {
       authToken = getTokenServices().getToken(token);
+      //remember the token for the rest of the request.
+      authentication.setProviderToken(authToken);
     }
 
     String signatureMethod = authentication.getConsumerCredentials().getSignatureMethod();
@@ -65,7 +65,10 @@ public class ProtectedResourceProcessingFilter extends OAuthProviderProcessingFi
     String token = authentication.getConsumerCredentials().getToken();
     OAuthAccessProviderToken accessToken = null;
     if (StringUtils.hasText(token)) {
-      OAuthProviderToken authToken = getTokenServices().getToken(token);
+      OAuthProviderToken authToken = authentication.getProviderToken();
+      if (authToken == null || !token.equals(authToken.getValue())) {
+        authToken = getTokenServices().getToken(token);
+      }
       if (authToken == null) {
         throw new AccessDeniedException("Invalid access token.");
       }
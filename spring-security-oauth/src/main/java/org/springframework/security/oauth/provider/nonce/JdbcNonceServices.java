@@ -0,0 +1,235 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider.nonce;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+import org.springframework.util.Assert;
+
+/**
+ * Nonce services that keep the used nonces in a database shared by all the nodes of a provider, so that replay
+ * protection holds across a cluster.<br/>
+ * <br/>
+ *
+ * Each nonce is checked with a single insert into a table with a unique (consumer_key, nonce_timestamp, nonce)
+ * constraint: if the insert conflicts, the nonce has already been used. The nonces are spread over a small ring of
+ * partitions (by default separate tables <code>oauth_nonce_0</code> to <code>oauth_nonce_3</code>), each covering a
+ * time bucket, and whole partitions are truncated once their bucket is outside the validity window, so there are no
+ * row deletes. A timestamp is accepted if it is within the validity window either side of the current time.<br/>
+ * <br/>
+ *
+ * Each node decides which partition to truncate from its own clock, and does it on the request thread of the first
+ * request in a new bucket. So that a node whose clock runs ahead does not truncate a partition that a node whose clock
+ * lags still treats as live (which would let replays through), a partition is only truncated once it is older than the
+ * validity window plus a {@link #setClockSkewSeconds(long) clock skew allowance}. The allowance must cover the largest
+ * difference between the clocks of the nodes.<br/>
+ * <br/>
+ *
+ * The default SQL expects one table per partition, e.g.
+ *
+ * <pre>
+ * create table oauth_nonce_0 (
+ *   consumer_key VARCHAR(256) NOT NULL,
+ *   nonce_timestamp BIGINT NOT NULL,
+ *   nonce VARCHAR(256) NOT NULL,
+ *   PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+ * );
+ * </pre>
+ *
+ * Databases with native partitioning can instead use a single table and a purge statement that truncates a partition.
+ * The statements are formatted with the partition index (<code>%d</code>).
+ */
+public class JdbcNonceServices implements OAuthNonceServices {
+
+  private static final String DEFAULT_INSERT_NONCE_STATEMENT = "insert into oauth_nonce_%d (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)";
+
+  private static final String DEFAULT_PURGE_PARTITION_STATEMENT = "truncate table oauth_nonce_%d";
+
+  private static final String DEFAULT_DELETE_EXPIRED_NONCES_STATEMENT = "delete from oauth_nonce_%d where nonce_timestamp < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private String insertNonceSql = DEFAULT_INSERT_NONCE_STATEMENT;
+
+  private String purgePartitionSql = DEFAULT_PURGE_PARTITION_STATEMENT;
+
+  private String deleteExpiredNoncesSql = DEFAULT_DELETE_EXPIRED_NONCES_STATEMENT;
+
+  // we'll default to a 10 minute validity window, the same as the in-memory nonce services.
+  private long validityWindowSeconds = 60 * 10;
+
+  private long clockSkewSeconds = 60;
+
+  private int partitions = 4;
+
+  private String[] insertStatements;
+
+  private long bucketSeconds;
+
+  private volatile long lastPurgedBucket = Long.MIN_VALUE;
+
+  public JdbcNonceServices(DataSource dataSource) {
+    Assert.notNull(dataSource, "DataSource required");
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    initialize();
+  }
+
+  public void validateNonce(ConsumerDetails consumerDetails, long timestamp, String nonce) throws AuthenticationException {
+    long now = System.currentTimeMillis() / 1000;
+    if (now - timestamp > getValidityWindowSeconds()) {
+      throw new CredentialsExpiredException("Expired timestamp.");
+    }
+    if (timestamp - now > getValidityWindowSeconds()) {
+      // a nonce this far ahead could outlive its partition
+      throw new BadCredentialsException("Timestamp is in the future.");
+    }
+
+    purgeExpiredPartition(now);
+
+    try {
+      jdbcTemplate.update(insertStatements[partition(bucket(timestamp))], consumerDetails.getConsumerKey(), timestamp, nonce);
+    }
+    catch (DuplicateKeyException e) {
+      throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
+    }
+  }
+
+  /**
+   * Truncate the partition that is next in line to be used, if that has not been done already since the latest bucket
+   * in the validity window (widened by the clock skew allowance) started. The ring is sized so that this partition
+   * only holds nonces older than the validity window plus the allowance, and no node within the allowance is writing
+   * to it yet.<br/>
+   * <br/>
+   *
+   * If buckets went by without a request (or this is the first one), the partitions that would have been truncated
+   * in between are back in the live part of the ring, and other nodes may already have written live nonces to them.
+   * They can't be truncated any more, so only their expired rows are deleted.
+   *
+   * @param now The current time in seconds.
+   */
+  protected void purgeExpiredPartition(long now) {
+    long latest = bucket(now + getValidityWindowSeconds() + clockSkewSeconds);
+    if (latest > lastPurgedBucket) {
+      synchronized (this) {
+        if (latest > lastPurgedBucket) {
+          jdbcTemplate.execute(String.format(purgePartitionSql, partition(latest + 1)));
+          long skipped = lastPurgedBucket == Long.MIN_VALUE ? partitions - 1 : Math.min(latest - lastPurgedBucket - 1, partitions - 1);
+          long expired = now - getValidityWindowSeconds() - clockSkewSeconds;
+          for (long bucket = latest; bucket > latest - skipped; bucket--) {
+            jdbcTemplate.update(String.format(deleteExpiredNoncesSql, partition(bucket)), expired);
+          }
+          lastPurgedBucket = latest;
+        }
+      }
+    }
+  }
+
+  private long bucket(long timestamp) {
+    return timestamp / bucketSeconds;
+  }
+
+  private int partition(long bucket) {
+    return (int) (bucket % partitions);
+  }
+
+  private void initialize() {
+    // the window either side of now, widened by the skew allowance on each side, has to fit in all but two
+    // partitions: the expired one that is being purged and a spare
+    long range = 2 * (getValidityWindowSeconds() + clockSkewSeconds);
+    bucketSeconds = Math.max(1, (range + partitions - 3) / (partitions - 2));
+    insertStatements = new String[partitions];
+    for (int i = 0; i < partitions; i++) {
+      insertStatements[i] = String.format(insertNonceSql, i);
+    }
+    lastPurgedBucket = Long.MIN_VALUE;
+  }
+
+  /**
+   * The timestamp validity window (in seconds).
+   *
+   * @return the timestamp validity window (in seconds).
+   */
+  public long getValidityWindowSeconds() {
+    return validityWindowSeconds;
+  }
+
+  /**
+   * The timestamp validity window (in seconds). The nonces are kept for (at least) this long.
+   *
+   * @param validityWindowSeconds the timestamp validity window (in seconds).
+   */
+  public void setValidityWindowSeconds(long validityWindowSeconds) {
+    Assert.isTrue(validityWindowSeconds > 0, "Validity window must be positive");
+    this.validityWindowSeconds = validityWindowSeconds;
+    initialize();
+  }
+
+  /**
+   * The largest difference between the clocks of the nodes that share the nonce tables (in seconds). Defaults to 60.
+   * Partitions are only truncated once they are older than the validity window plus this allowance, so a larger
+   * allowance means each partition covers a longer time bucket.
+   *
+   * @param clockSkewSeconds the clock skew allowance (in seconds).
+   */
+  public void setClockSkewSeconds(long clockSkewSeconds) {
+    Assert.isTrue(clockSkewSeconds >= 0, "Clock skew allowance must not be negative");
+    this.clockSkewSeconds = clockSkewSeconds;
+    initialize();
+  }
+
+  /**
+   * The number of partitions (tables) in the ring. Defaults to 4. More partitions mean each one holds a shorter
+   * time bucket, so less data is retained beyond the validity window.
+   *
+   * @param partitions the number of partitions (at least 3).
+   */
+  public void setPartitions(int partitions) {
+    Assert.isTrue(partitions >= 3, "At least 3 partitions are required");
+    this.partitions = partitions;
+    initialize();
+  }
+
+  /**
+   * @param insertNonceSql the insert statement, formatted with the partition index
+   */
+  public void setInsertNonceSql(String insertNonceSql) {
+    this.insertNonceSql = insertNonceSql;
+    initialize();
+  }
+
+  /**
+   * @param purgePartitionSql the statement that empties a partition, formatted with the partition index
+   */
+  public void setPurgePartitionSql(String purgePartitionSql) {
+    this.purgePartitionSql = purgePartitionSql;
+  }
+
+  /**
+   * @param deleteExpiredNoncesSql the statement that deletes the nonces older than a timestamp (its parameter) from a
+   * partition, formatted with the partition index
+   */
+  public void setDeleteExpiredNoncesSql(String deleteExpiredNoncesSql) {
+    this.deleteExpiredNoncesSql = deleteExpiredNoncesSql;
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider.token;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth.common.ExpiringCache;
+import org.springframework.util.Assert;
+
+/**
+ * Token services that keep the tokens read from other token services in memory for a while, so that signed requests
+ * don't have to go to the backing store for their token every time. A request token is discarded from the cache when
+ * it is authorized or exchanged for an access token, and if the token services are a
+ * {@link OAuthTokenLifecycleRegistry} any token they remove is discarded too. With {@link RandomValueProviderTokenServices}
+ * a token is never cached beyond its expiry. Other changes made to the tokens in the backing store (or on other
+ * nodes) are only seen when the cached token expires, so keep the {@link #setCacheSeconds(int) cache time} short, or
+ * call {@link #evict(String)}.
+ */
+public class CachingProviderTokenServices implements OAuthProviderTokenServices, OAuthTokenLifecycleListener {
+
+  private final OAuthProviderTokenServices tokenServices;
+  private final ExpiringCache<String, OAuthProviderToken> cache = new ExpiringCache<String, OAuthProviderToken>(10000);
+  private int cacheSeconds = 60;
+
+  public CachingProviderTokenServices(OAuthProviderTokenServices tokenServices) {
+    Assert.notNull(tokenServices, "Token services must be provided.");
+    this.tokenServices = tokenServices;
+    if (tokenServices instanceof OAuthTokenLifecycleRegistry) {
+      ((OAuthTokenLifecycleRegistry) tokenServices).register(this);
+    }
+  }
+
+  public OAuthProviderToken getToken(String token) throws AuthenticationException {
+    OAuthProviderToken cached = cache.get(token);
+    if (cached != null) {
+      return cached;
+    }
+
+    OAuthProviderToken authToken = tokenServices.getToken(token);
+    if (authToken != null && cacheSeconds > 0) {
+      long expiry = System.currentTimeMillis() + cacheSeconds * 1000L;
+      if (tokenServices instanceof RandomValueProviderTokenServices && authToken instanceof OAuthProviderTokenImpl) {
+        RandomValueProviderTokenServices randomValueTokenServices = (RandomValueProviderTokenServices) tokenServices;
+        int validitySeconds = authToken.isAccessToken() ? randomValueTokenServices.getAccessTokenValiditySeconds() : randomValueTokenServices.getRequestTokenValiditySeconds();
+        expiry = Math.min(expiry, ((OAuthProviderTokenImpl) authToken).getTimestamp() + validitySeconds * 1000L);
+      }
+      cache.put(token, authToken, expiry);
+    }
+    return authToken;
+  }
+
+  public OAuthProviderToken createUnauthorizedRequestToken(String consumerKey, String callbackUrl) throws AuthenticationException {
+    return tokenServices.createUnauthorizedRequestToken(consumerKey, callbackUrl);
+  }
+
+  public void authorizeRequestToken(String requestToken, String verifier, Authentication authentication) throws AuthenticationException {
+    try {
+      tokenServices.authorizeRequestToken(requestToken, verifier, authentication);
+    }
+    finally {
+      evict(requestToken);
+    }
+  }
+
+  public OAuthAccessProviderToken createAccessToken(String requestToken) throws AuthenticationException {
+    try {
+      return tokenServices.createAccessToken(requestToken);
+    }
+    finally {
+      evict(requestToken);
+    }
+  }
+
+  /**
+   * Discards a token removed by the underlying token services.
+   *
+   * @param token The expired token.
+   */
+  public void tokenExpired(OAuthProviderToken token) {
+    evict(token.getValue());
+  }
+
+  public void tokenCreated(OAuthProviderToken token) {
+  }
+
+  /**
+   * Discard a cached token.
+   *
+   * @param token The token value.
+   */
+  public void evict(String token) {
+    cache.remove(token);
+  }
+
+  /**
+   * Discard all the cached tokens.
+   */
+  public void clear() {
+    cache.clear();
+  }
+
+  /**
+   * The time for which a token is cached (default 60).
+   *
+   * @return The time for which a token is cached.
+   */
+  public int getCacheSeconds() {
+    return cacheSeconds;
+  }
+
+  /**
+   * The time for which a token is cached (default 60).
+   *
+   * @param cacheSeconds The time for which a token is cached.
+   */
+  public void setCacheSeconds(int cacheSeconds) {
+    this.cacheSeconds = cacheSeconds;
+  }
+
+  /**
+   * The maximum number of tokens to cache (default 10000).
+   *
+   * @return The maximum number of tokens to cache.
+   */
+  public int getMaxCacheSize() {
+    return cache.getMaxSize();
+  }
+
+  /**
+   * The maximum number of tokens to cache (default 10000). When the cache is full, expired tokens are discarded, and if
+   * it is still full other tokens are evicted to make room.
+   *
+   * @param maxCacheSize The maximum number of tokens to cache.
+   */
+  public void setMaxCacheSize(int maxCacheSize) {
+    cache.setMaxSize(maxCacheSize);
+  }
+}
@@ -17,15 +17,26 @@
 package org.springframework.security.oauth.provider.token;
 
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationServiceException;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Implementation of TokenServices that stores tokens in memory. The token services will schedule a thread to do cleaning up of expired tokens.
+ * Implementation of TokenServices that stores tokens in memory. The token services will schedule a thread to do cleaning up of expired tokens.<br/><br/>
+ *
+ * Tokens are indexed by the second in which they expire, so the cleanup only visits the tokens that have expired instead of scanning the whole store.
+ * The number of tokens can optionally be capped, and the numbers of live request and access tokens (and of expired tokens cleaned up) are available
+ * for monitoring.
  *
  * @author Ryan Heaton
  */
@@ -33,6 +44,14 @@ public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderT
 
   private ScheduledExecutorService scheduler;
   private Integer cleanupIntervalSeconds;
+  private int maxTokens = 0;
+
+  //token values keyed by the second in which they expire. A value may be indexed more than once if it was re-stored.
+  private final ConcurrentNavigableMap<Long, Queue<String>> expiryIndex = new ConcurrentSkipListMap<Long, Queue<String>>();
+
+  private final AtomicInteger requestTokenCount = new AtomicInteger();
+  private final AtomicInteger accessTokenCount = new AtomicInteger();
+  private final AtomicLong expiredTokenCount = new AtomicLong();
 
   @Override
   public void afterPropertiesSet() throws Exception {
@@ -46,19 +65,10 @@ public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderT
       scheduler = Executors.newSingleThreadScheduledExecutor();
       Runnable cleanupLogic = new Runnable() {
         public void run() {
-          Iterator<Map.Entry<String, OAuthProviderTokenImpl>> entriesIt = tokenStore.entrySet().iterator();
-          while (entriesIt.hasNext()) {
-            Map.Entry<String, OAuthProviderTokenImpl> entry = entriesIt.next();
-            OAuthProviderTokenImpl tokenImpl = entry.getValue();
-            if (isExpired(tokenImpl)) {
-              //there's a race condition here, but we'll live with it for now.
-              entriesIt.remove();
-              onTokenRemoved(tokenImpl);
-            }
-          }
+          removeExpiredTokens();
         }
       };
-      scheduler.scheduleAtFixedRate(cleanupLogic, getAccessTokenValiditySeconds(), cleanupIntervalSeconds, TimeUnit.SECONDS);
+      scheduler.scheduleAtFixedRate(cleanupLogic, cleanupIntervalSeconds, cleanupIntervalSeconds, TimeUnit.SECONDS);
     }
   }
 
@@ -68,6 +78,123 @@ public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderT
     }
   }
 
+  @Override
+  protected void storeToken(String tokenValue, OAuthProviderTokenImpl token) {
+    if (maxTokens > 0 && tokenStore.size() >= maxTokens && !tokenStore.containsKey(tokenValue)) {
+      removeExpiredTokens();
+      if (tokenStore.size() >= maxTokens) {
+        throw new AuthenticationServiceException("Unable to store token: the maximum number of tokens (" + maxTokens + ") has been reached.");
+      }
+    }
+
+    OAuthProviderTokenImpl previous = tokenStore.put(tokenValue, token);
+    if (previous != null) {
+      count(previous, -1);
+    }
+    count(token, 1);
+
+    index(tokenValue, getExpiration(token) / 1000);
+  }
+
+  private void index(String tokenValue, long expirySeconds) {
+    Queue<String> values = expiryIndex.get(expirySeconds);
+    if (values == null) {
+      values = new ConcurrentLinkedQueue<String>();
+      Queue<String> existing = expiryIndex.putIfAbsent(expirySeconds, values);
+      if (existing != null) {
+        values = existing;
+      }
+    }
+    values.add(tokenValue);
+  }
+
+  @Override
+  protected OAuthProviderTokenImpl removeToken(String tokenValue) {
+    OAuthProviderTokenImpl removed = tokenStore.remove(tokenValue);
+    if (removed != null) {
+      count(removed, -1);
+    }
+    //the index entry is left to be discarded when it comes due.
+    return removed;
+  }
+
+  /**
+   * Remove the tokens that have expired, visiting only the parts of the expiry index that are due.
+   */
+  public void removeExpiredTokens() {
+    long now = System.currentTimeMillis() / 1000;
+    Iterator<Map.Entry<Long, Queue<String>>> dueIt = expiryIndex.headMap(now).entrySet().iterator();
+    while (dueIt.hasNext()) {
+      Queue<String> values = dueIt.next().getValue();
+      dueIt.remove();
+      for (String tokenValue : values) {
+        OAuthProviderTokenImpl tokenImpl = tokenStore.get(tokenValue);
+        if (tokenImpl == null) {
+          continue;
+        }
+        if (isExpired(tokenImpl)) {
+          if (tokenStore.remove(tokenValue, tokenImpl)) {
+            count(tokenImpl, -1);
+            expiredTokenCount.incrementAndGet();
+            onTokenRemoved(tokenImpl);
+          }
+        }
+        else if (getExpiration(tokenImpl) / 1000 < now) {
+          //not expired according to isExpired(), so look at it again later.
+          index(tokenValue, now + 1);
+        }
+        //otherwise it was re-stored with a new timestamp, and has a later entry in the index.
+      }
+    }
+  }
+
+  /**
+   * The time (in milliseconds) at which the token expires.
+   *
+   * @param token The token.
+   * @return The expiration time of the token.
+   */
+  protected long getExpiration(OAuthProviderTokenImpl token) {
+    int validitySeconds = token.isAccessToken() ? getAccessTokenValiditySeconds() : getRequestTokenValiditySeconds();
+    return token.getTimestamp() + (validitySeconds * 1000L);
+  }
+
+  private void count(OAuthProviderTokenImpl token, int delta) {
+    if (token.isAccessToken()) {
+      accessTokenCount.addAndGet(delta);
+    }
+    else {
+      requestTokenCount.addAndGet(delta);
+    }
+  }
+
+  /**
+   * The number of request tokens currently stored.
+   *
+   * @return The number of request tokens currently stored.
+   */
+  public int getRequestTokenCount() {
+    return requestTokenCount.get();
+  }
+
+  /**
+   * The number of access tokens currently stored.
+   *
+   * @return The number of access tokens currently stored.
+   */
+  public int getAccessTokenCount() {
+    return accessTokenCount.get();
+  }
+
+  /**
+   * The total number of expired tokens that have been cleaned up.
+   *
+   * @return The total number of expired tokens that have been cleaned up.
+   */
+  public long getExpiredTokenCount() {
+    return expiredTokenCount.get();
+  }
+
   /**
    * The interval at which to schedule cleanup. (&lt;= 0 for never).
    *
@@ -85,4 +212,23 @@ public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderT
   public void setCleanupIntervalSeconds(Integer cleanupIntervalSeconds) {
     this.cleanupIntervalSeconds = cleanupIntervalSeconds;
   }
-}
\ No newline at end of file
+
+  /**
+   * The maximum number of tokens to store (&lt;= 0 for no limit, the default).
+   *
+   * @return The maximum number of tokens to store.
+   */
+  public int getMaxTokens() {
+    return maxTokens;
+  }
+
+  /**
+   * The maximum number of tokens to store. When the limit is reached, expired tokens are cleaned up and if there is still no room new tokens
+   * are refused.
+   *
+   * @param maxTokens The maximum number of tokens to store (&lt;= 0 for no limit).
+   */
+  public void setMaxTokens(int maxTokens) {
+    this.maxTokens = maxTokens;
+  }
+}
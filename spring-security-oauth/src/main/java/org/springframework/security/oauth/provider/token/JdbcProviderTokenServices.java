@@ -0,0 +1,222 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider.token;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.Assert;
+import org.springframework.util.SerializationUtils;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Implementation of TokenServices that stores tokens in a database, so that they can be shared by all the nodes of a
+ * provider. Each property of the token has its own column (only the user authentication, if there is one, is
+ * serialized), and tokens are looked up by primary key. The default SQL expects a table like this:
+ *
+ * <pre>
+ * create table oauth_provider_token (
+ *   token_value VARCHAR(256) PRIMARY KEY,
+ *   token_secret VARCHAR(256),
+ *   consumer_key VARCHAR(256),
+ *   callback_url VARCHAR(256),
+ *   verifier VARCHAR(256),
+ *   access_token BOOLEAN,
+ *   token_timestamp BIGINT,
+ *   user_authentication LONGVARBINARY
+ * );
+ * create index oauth_provider_token_expiry on oauth_provider_token (access_token, token_timestamp);
+ * </pre>
+ *
+ * Expired tokens are removed when they are read, and in bulk by {@link #purgeExpiredTokens()}, which should be
+ * scheduled to run periodically.
+ */
+public class JdbcProviderTokenServices extends RandomValueProviderTokenServices {
+
+  private static final String FIELDS = "token_secret, consumer_key, callback_url, verifier, access_token, token_timestamp, user_authentication, token_value";
+
+  private static final String DEFAULT_SELECT_TOKEN_STATEMENT = "select " + FIELDS + " from oauth_provider_token where token_value = ?";
+
+  private static final String DEFAULT_INSERT_TOKEN_STATEMENT = "insert into oauth_provider_token (" + FIELDS + ") values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String DEFAULT_UPDATE_TOKEN_STATEMENT = "update oauth_provider_token set token_secret = ?, consumer_key = ?, callback_url = ?, verifier = ?, access_token = ?, token_timestamp = ?, user_authentication = ? where token_value = ?";
+
+  private static final String DEFAULT_DELETE_TOKEN_STATEMENT = "delete from oauth_provider_token where token_value = ?";
+
+  private static final String EXPIRED = " from oauth_provider_token where (access_token = ? and token_timestamp < ?) or (access_token = ? and token_timestamp < ?)";
+
+  private static final String DEFAULT_SELECT_EXPIRED_TOKENS_STATEMENT = "select " + FIELDS + EXPIRED;
+
+  private static final String DEFAULT_DELETE_EXPIRED_TOKENS_STATEMENT = "delete" + EXPIRED;
+
+  private static final String DEFAULT_DELETE_EXPIRED_TOKEN_STATEMENT = "delete from oauth_provider_token where token_value = ? and token_timestamp = ?";
+
+  private String selectTokenSql = DEFAULT_SELECT_TOKEN_STATEMENT;
+
+  private String insertTokenSql = DEFAULT_INSERT_TOKEN_STATEMENT;
+
+  private String updateTokenSql = DEFAULT_UPDATE_TOKEN_STATEMENT;
+
+  private String deleteTokenSql = DEFAULT_DELETE_TOKEN_STATEMENT;
+
+  private String selectExpiredTokensSql = DEFAULT_SELECT_EXPIRED_TOKENS_STATEMENT;
+
+  private String deleteExpiredTokensSql = DEFAULT_DELETE_EXPIRED_TOKENS_STATEMENT;
+
+  private String deleteExpiredTokenSql = DEFAULT_DELETE_EXPIRED_TOKEN_STATEMENT;
+
+  private final RowMapper<OAuthProviderTokenImpl> rowMapper = new TokenRowMapper();
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public JdbcProviderTokenServices(DataSource dataSource) {
+    Assert.notNull(dataSource, "DataSource required");
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  protected OAuthProviderTokenImpl readToken(String token) {
+    try {
+      return jdbcTemplate.queryForObject(selectTokenSql, rowMapper, token);
+    }
+    catch (EmptyResultDataAccessException e) {
+      return null;
+    }
+  }
+
+  protected void storeToken(String tokenValue, OAuthProviderTokenImpl token) {
+    Object[] args = getFieldValues(tokenValue, token);
+    int[] types = new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN, Types.BIGINT, Types.BLOB, Types.VARCHAR };
+    //tokens are re-stored when they are authorized, so try an update first.
+    if (jdbcTemplate.update(updateTokenSql, args, types) == 0) {
+      jdbcTemplate.update(insertTokenSql, args, types);
+    }
+  }
+
+  protected OAuthProviderTokenImpl removeToken(String tokenValue) {
+    OAuthProviderTokenImpl token = readToken(tokenValue);
+    //only the node whose delete removes the row gets the token, so that a request token is exchanged once.
+    if (token == null || jdbcTemplate.update(deleteTokenSql, tokenValue) != 1) {
+      return null;
+    }
+    return token;
+  }
+
+  /**
+   * Remove all the expired request and access tokens. If there are no lifecycle listeners this is a single statement.
+   * Otherwise the expired tokens are loaded in one query, deleted in a single batch, and the listeners are notified
+   * of the whole batch at the end.
+   *
+   * @return The number of tokens removed.
+   */
+  public int purgeExpiredTokens() {
+    long now = System.currentTimeMillis();
+    Object[] args = new Object[] { false, now - (getRequestTokenValiditySeconds() * 1000L), true, now - (getAccessTokenValiditySeconds() * 1000L) };
+
+    if (getLifecycleListeners().isEmpty()) {
+      return jdbcTemplate.update(deleteExpiredTokensSql, args);
+    }
+
+    final List<OAuthProviderTokenImpl> expired = jdbcTemplate.query(selectExpiredTokensSql, rowMapper, args);
+    if (expired.isEmpty()) {
+      return 0;
+    }
+
+    //delete by value and timestamp, so that a token that has been re-stored in the meantime survives.
+    int[] counts = jdbcTemplate.batchUpdate(deleteExpiredTokenSql, new BatchPreparedStatementSetter() {
+      public void setValues(PreparedStatement ps, int i) throws SQLException {
+        ps.setString(1, expired.get(i).getValue());
+        ps.setLong(2, expired.get(i).getTimestamp());
+      }
+
+      public int getBatchSize() {
+        return expired.size();
+      }
+    });
+
+    int removed = 0;
+    for (int i = 0; i < counts.length; i++) {
+      //some drivers don't report the count for each statement in a batch.
+      if (counts[i] != 0) {
+        onTokenRemoved(expired.get(i));
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  private Object[] getFieldValues(String tokenValue, OAuthProviderTokenImpl token) {
+    Authentication userAuthentication = token.getUserAuthentication();
+    return new Object[] { token.getSecret(), token.getConsumerKey(), token.getCallbackUrl(), token.getVerifier(), token.isAccessToken(),
+      token.getTimestamp(), userAuthentication == null ? null : new SqlLobValue(SerializationUtils.serialize(userAuthentication)), tokenValue };
+  }
+
+  private static class TokenRowMapper implements RowMapper<OAuthProviderTokenImpl> {
+
+    public OAuthProviderTokenImpl mapRow(ResultSet rs, int rowNum) throws SQLException {
+      OAuthProviderTokenImpl token = new OAuthProviderTokenImpl();
+      token.setValue(rs.getString("token_value"));
+      token.setSecret(rs.getString("token_secret"));
+      token.setConsumerKey(rs.getString("consumer_key"));
+      token.setCallbackUrl(rs.getString("callback_url"));
+      token.setVerifier(rs.getString("verifier"));
+      token.setAccessToken(rs.getBoolean("access_token"));
+      token.setTimestamp(rs.getLong("token_timestamp"));
+      byte[] userAuthentication = rs.getBytes("user_authentication");
+      if (userAuthentication != null) {
+        token.setUserAuthentication((Authentication) SerializationUtils.deserialize(userAuthentication));
+      }
+      return token;
+    }
+  }
+
+  public void setSelectTokenSql(String selectTokenSql) {
+    this.selectTokenSql = selectTokenSql;
+  }
+
+  public void setInsertTokenSql(String insertTokenSql) {
+    this.insertTokenSql = insertTokenSql;
+  }
+
+  public void setUpdateTokenSql(String updateTokenSql) {
+    this.updateTokenSql = updateTokenSql;
+  }
+
+  public void setDeleteTokenSql(String deleteTokenSql) {
+    this.deleteTokenSql = deleteTokenSql;
+  }
+
+  public void setSelectExpiredTokensSql(String selectExpiredTokensSql) {
+    this.selectExpiredTokensSql = selectExpiredTokensSql;
+  }
+
+  public void setDeleteExpiredTokensSql(String deleteExpiredTokensSql) {
+    this.deleteExpiredTokensSql = deleteExpiredTokensSql;
+  }
+
+  public void setDeleteExpiredTokenSql(String deleteExpiredTokenSql) {
+    this.deleteExpiredTokenSql = deleteExpiredTokenSql;
+  }
+}
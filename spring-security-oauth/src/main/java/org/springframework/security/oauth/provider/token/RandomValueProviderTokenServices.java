@@ -63,7 +63,7 @@ public abstract class RandomValueProviderTokenServices implements OAuthProviderT
    * Remove a token from persistence.
    *
    * @param tokenValue The token to remove.
-   * @return The token that was removed.
+   * @return The token that was removed, or null if there was none (e.g. because it was removed concurrently).
    */
   protected abstract OAuthProviderTokenImpl removeToken(String tokenValue);
 
@@ -172,9 +172,11 @@ public abstract class RandomValueProviderTokenServices implements OAuthProviderT
     }
 
     OAuthProviderTokenImpl requestTokenImpl = removeToken(requestToken);
-    if (requestTokenImpl != null) {
-      onTokenRemoved(requestTokenImpl);
+    if (requestTokenImpl == null) {
+      //another request has exchanged it in the meantime.
+      throw new InvalidOAuthTokenException("Invalid token: " + requestToken);
     }
+    onTokenRemoved(requestTokenImpl);
 
     String tokenValue = UUID.randomUUID().toString();
     byte[] secretBytes = new byte[getTokenSecretLengthBytes()];
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TestExpiringCache {
+
+	private ExpiringCache<String, String> cache = new ExpiringCache<String, String>(2);
+
+	@Test
+	public void testGetAndPut() {
+		cache.put("foo", "bar", System.currentTimeMillis() + 60000);
+		assertEquals("bar", cache.get("foo"));
+		assertNull(cache.get("spam"));
+	}
+
+	@Test
+	public void testExpiredEntries() {
+		cache.put("foo", "bar", System.currentTimeMillis() - 1);
+		assertNull(cache.get("foo"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEvictsWhenFull() {
+		long expiry = System.currentTimeMillis() + 60000;
+		cache.put("foo", "bar", expiry);
+		cache.put("spam", "bucket", expiry);
+		cache.put("bar", "foo", expiry);
+		assertEquals(2, cache.size());
+		assertEquals("foo", cache.get("bar"));
+	}
+
+	@Test
+	public void testZeroMaxSize() {
+		cache.setMaxSize(0);
+		cache.put("foo", "bar", System.currentTimeMillis() + 60000);
+		assertNull(cache.get("foo"));
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.common.signature;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.security.oauth.common.OAuthCodec.oauthEncode;
+
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class TestSignatureBaseStringBuilder {
+
+	private SignatureBaseStringBuilder builder = new SignatureBaseStringBuilder("GET", "http://example.com");
+
+	@Test
+	public void testSpecExample() throws Exception {
+		builder.reset("get", "http://photos.example.net/photos");
+		builder.addParameter("size", "original");
+		builder.addParameter("oauth_version", "1.0");
+		builder.addParameter("oauth_token", "nnch734d00sl2jdk");
+		builder.addParameter("file", "vacation.jpg");
+		builder.addParameter("oauth_nonce", "kllo9940pd9333jh");
+		builder.addParameter("oauth_consumer_key", "dpf43f3p2l4k3l03");
+		builder.addParameter("oauth_timestamp", "1191242096");
+		builder.addParameter("oauth_signature_method", "HMAC-SHA1");
+		assertEquals(
+				"GET&http%3A%2F%2Fphotos.example.net%2Fphotos&file%3Dvacation.jpg%26oauth_consumer_key%3Ddpf43f3p2l4k3l03%26oauth_nonce%3Dkllo9940pd9333jh%26oauth_signature_method%3DHMAC-SHA1%26oauth_timestamp%3D1191242096%26oauth_token%3Dnnch734d00sl2jdk%26oauth_version%3D1.0%26size%3Doriginal",
+				builder.build());
+	}
+
+	@Test
+	public void testDuplicatesAndEmptyValues() throws Exception {
+		builder.reset("POST", "http://example.com/");
+		builder.addParameter("b", "2");
+		builder.addParameter("a", null);
+		builder.addParameter("b", "1");
+		builder.addParameter("b", "2");
+		assertEquals("POST&http%3A%2F%2Fexample.com%2F&a%3D%26b%3D1%26b%3D2", builder.build());
+	}
+
+	@Test
+	public void testMatchesCodec() throws Exception {
+		String[][] parameters = new String[][] { { "a b", "c+d" }, { "name", "été €" },
+				{ "emoji", "😀" }, { "broken", "\ud83d" }, { "symbols", "!*'();:@&=+$,/?#[]~%" },
+				{ "a", "A" }, { "A", "a" }, { "a%20b", "" } };
+		// enough parameters to need the merge sort
+		builder.reset("put", "https://example.com:8443/some path/ü");
+		for (int i = 0; i < 40; i++) {
+			String[] parameter = parameters[i % parameters.length];
+			builder.addParameter(parameter[0] + (i % 3), parameter[1] + i);
+		}
+		assertEquals(codecBaseString("PUT", "https://example.com:8443/some path/ü", parameters, 40), builder.build());
+		// and it can be reused
+		builder.reset("get", "http://example.com");
+		for (int i = 0; i < 5; i++) {
+			builder.addParameter(parameters[i][0] + (i % 3), parameters[i][1] + i);
+		}
+		assertEquals(codecBaseString("GET", "http://example.com", parameters, 5), builder.build());
+	}
+
+	@Test
+	public void testUpdateMac() throws Exception {
+		SecretKeySpec key = new SecretKeySpec("secret".getBytes("UTF-8"), HMAC_SHA1SignatureMethod.MAC_NAME);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			text.append("abcé€😀");
+		}
+		Mac mac = Mac.getInstance(HMAC_SHA1SignatureMethod.MAC_NAME);
+		mac.init(key);
+		byte[] expected = mac.doFinal(text.toString().getBytes("UTF-8"));
+		mac.init(key);
+		SignatureBaseStringBuilder.update(mac, text.toString());
+		assertArrayEquals(expected, mac.doFinal());
+	}
+
+	private String codecBaseString(String method, String url, String[][] parameters, int count) {
+		Map<String, SortedSet<String>> sorted = new TreeMap<String, SortedSet<String>>();
+		for (int i = 0; i < count; i++) {
+			String[] parameter = parameters[i % parameters.length];
+			String name = oauthEncode(parameter[0] + (i % 3));
+			if (!sorted.containsKey(name)) {
+				sorted.put(name, new TreeSet<String>());
+			}
+			sorted.get(name).add(oauthEncode(parameter[1] + i));
+		}
+		StringBuilder query = new StringBuilder();
+		for (Map.Entry<String, SortedSet<String>> entry : sorted.entrySet()) {
+			for (String value : entry.getValue()) {
+				if (query.length() > 0) {
+					query.append('&');
+				}
+				query.append(entry.getKey()).append('=').append(value);
+			}
+		}
+		return method + "&" + oauthEncode(url) + "&" + oauthEncode(query.toString());
+	}
+
+}
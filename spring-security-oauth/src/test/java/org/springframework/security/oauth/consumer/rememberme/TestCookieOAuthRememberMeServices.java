@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.consumer.rememberme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth.consumer.OAuthConsumerToken;
+
+public class TestCookieOAuthRememberMeServices {
+
+	private CookieOAuthRememberMeServices services = new CookieOAuthRememberMeServices("secret");
+
+	@After
+	public void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	public void testNoCookie() {
+		assertNull(services.loadRememberedTokens(new MockHttpServletRequest(), new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testRememberTokens() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setContextPath("/app");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), request, response);
+
+		Cookie cookie = response.getCookie(CookieOAuthRememberMeServices.DEFAULT_COOKIE_NAME);
+		assertNotNull(cookie);
+		assertEquals("/app", cookie.getPath());
+		assertFalse(cookie.getValue().contains("request-token-secret"));
+
+		Map<String, OAuthConsumerToken> tokens = services.loadRememberedTokens(requestWith(cookie),
+				new MockHttpServletResponse());
+		assertEquals(2, tokens.size());
+		assertEquals("request-token-secret", tokens.get("request").getSecret());
+		assertTrue(tokens.get("access").isAccessToken());
+	}
+
+	@Test
+	public void testAdditionalParametersRemembered() {
+		Map<String, OAuthConsumerToken> tokens = tokens();
+		tokens.get("access").setAdditionalParameters(Collections.singletonMap("foo", "bar"));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens, new MockHttpServletRequest(), response);
+
+		tokens = services.loadRememberedTokens(requestWith(response.getCookies()[0]), new MockHttpServletResponse());
+		assertEquals("bar", tokens.get("access").getAdditionalParameters().get("foo"));
+		assertNull(tokens.get("request").getAdditionalParameters());
+	}
+
+	@Test
+	public void testCookieOfOtherUser() {
+		SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("marissa", "koala"));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		Cookie cookie = response.getCookies()[0];
+		assertNotNull(services.loadRememberedTokens(requestWith(cookie), new MockHttpServletResponse()));
+
+		SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("paul", "emu"));
+		assertNull(services.loadRememberedTokens(requestWith(cookie), new MockHttpServletResponse()));
+		SecurityContextHolder.clearContext();
+		assertNull(services.loadRememberedTokens(requestWith(cookie), new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testLogoutClearsCookie() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setContextPath("/app");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.logout(request, response, null);
+
+		Cookie cookie = response.getCookie(CookieOAuthRememberMeServices.DEFAULT_COOKIE_NAME);
+		assertEquals(0, cookie.getMaxAge());
+		assertEquals("/app", cookie.getPath());
+	}
+
+	@Test
+	public void testUnchangedTokensNotRewritten() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		MockHttpServletRequest request = requestWith(response.getCookies()[0]);
+
+		response = new MockHttpServletResponse();
+		services.loadRememberedTokens(request, response);
+		services.rememberTokens(tokens(), request, response);
+		assertEquals(0, response.getCookies().length);
+	}
+
+	@Test
+	public void testRemovedTokensClearCookie() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		MockHttpServletRequest request = requestWith(response.getCookies()[0]);
+
+		response = new MockHttpServletResponse();
+		services.loadRememberedTokens(request, response);
+		services.rememberTokens(new HashMap<String, OAuthConsumerToken>(), request, response);
+		assertEquals(0, response.getCookie(CookieOAuthRememberMeServices.DEFAULT_COOKIE_NAME).getMaxAge());
+	}
+
+	@Test
+	public void testTamperedCookie() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		String value = response.getCookies()[0].getValue();
+		char last = value.charAt(value.length() - 2);
+		value = value.substring(0, value.length() - 2) + (last == 'A' ? 'B' : 'A') + value.charAt(value.length() - 1);
+
+		Cookie tampered = new Cookie(CookieOAuthRememberMeServices.DEFAULT_COOKIE_NAME, value);
+		assertNull(services.loadRememberedTokens(requestWith(tampered), new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testCookieFromOtherSecret() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new CookieOAuthRememberMeServices("other").rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		assertNull(services.loadRememberedTokens(requestWith(response.getCookies()[0]), new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testExpiredCookie() {
+		services.setValiditySeconds(-1);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		assertNull(services.loadRememberedTokens(requestWith(response.getCookies()[0]), new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testRequestTokensOnly() {
+		services.setStoreAccessTokens(false);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		services.rememberTokens(tokens(), new MockHttpServletRequest(), response);
+		Map<String, OAuthConsumerToken> tokens = services.loadRememberedTokens(requestWith(response.getCookies()[0]),
+				new MockHttpServletResponse());
+		assertEquals(1, tokens.size());
+		assertTrue(tokens.containsKey("request"));
+	}
+
+	private MockHttpServletRequest requestWith(Cookie cookie) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setCookies(cookie);
+		return request;
+	}
+
+	private Map<String, OAuthConsumerToken> tokens() {
+		Map<String, OAuthConsumerToken> tokens = new HashMap<String, OAuthConsumerToken>();
+		OAuthConsumerToken requestToken = new OAuthConsumerToken();
+		requestToken.setResourceId("request");
+		requestToken.setValue("request-token");
+		requestToken.setSecret("request-token-secret");
+		tokens.put("request", requestToken);
+		OAuthConsumerToken accessToken = new OAuthConsumerToken();
+		accessToken.setResourceId("access");
+		accessToken.setValue("access-token");
+		accessToken.setAccessToken(true);
+		tokens.put("access", accessToken);
+		return tokens;
+	}
+
+}
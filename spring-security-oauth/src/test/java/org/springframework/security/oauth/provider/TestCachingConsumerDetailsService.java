@@ -0,0 +1,52 @@
+package org.springframework.security.oauth.provider;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+public class TestCachingConsumerDetailsService {
+
+	private ConsumerDetailsService delegate = mock(ConsumerDetailsService.class);
+
+	private CachingConsumerDetailsService service = new CachingConsumerDetailsService(delegate);
+
+	@Test
+	public void testConsumerDetailsAreCached() throws Exception {
+		ConsumerDetails details = mock(ConsumerDetails.class);
+		when(delegate.loadConsumerByConsumerKey("key")).thenReturn(details);
+		assertSame(details, service.loadConsumerByConsumerKey("key"));
+		assertSame(details, service.loadConsumerByConsumerKey("key"));
+		verify(delegate, times(1)).loadConsumerByConsumerKey("key");
+	}
+
+	@Test
+	public void testEvict() throws Exception {
+		ConsumerDetails details = mock(ConsumerDetails.class);
+		when(delegate.loadConsumerByConsumerKey("key")).thenReturn(details);
+		service.loadConsumerByConsumerKey("key");
+		service.evict("key");
+		service.loadConsumerByConsumerKey("key");
+		verify(delegate, times(2)).loadConsumerByConsumerKey("key");
+	}
+
+	@Test
+	public void testCacheDisabled() throws Exception {
+		service.setCacheSeconds(0);
+		ConsumerDetails details = mock(ConsumerDetails.class);
+		when(delegate.loadConsumerByConsumerKey("key")).thenReturn(details);
+		service.loadConsumerByConsumerKey("key");
+		service.loadConsumerByConsumerKey("key");
+		verify(delegate, times(2)).loadConsumerByConsumerKey("key");
+	}
+
+	@Test(expected = InvalidOAuthParametersException.class)
+	public void testConsumerNotFound() throws Exception {
+		when(delegate.loadConsumerByConsumerKey("key")).thenThrow(new InvalidOAuthParametersException("Not found"));
+		service.loadConsumerByConsumerKey("key");
+	}
+
+}
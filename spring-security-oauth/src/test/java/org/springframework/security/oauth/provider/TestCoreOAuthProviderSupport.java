@@ -23,6 +23,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -102,4 +106,27 @@ public class TestCoreOAuthProviderSupport {
 				baseString);
 	}
 
+	/**
+	 * tests that a subclass overriding the old extension point still decides the significant parameters.
+	 */
+	@Test
+	public void testGetSignatureBaseStringWithOverriddenSignificantParameters() throws Exception {
+		CoreOAuthProviderSupport support = new CoreOAuthProviderSupport() {
+			@Override
+			@SuppressWarnings("deprecation")
+			protected SortedMap<String, SortedSet<String>> loadSignificantParametersForSignatureBaseString(
+					HttpServletRequest request) {
+				SortedMap<String, SortedSet<String>> parameters = new TreeMap<String, SortedSet<String>>();
+				parameters.put("custom", new TreeSet<String>(Arrays.asList("b", "a")));
+				return parameters;
+			}
+		};
+		support.setBaseUrl("http://photos.example.net");
+		when(request.getMethod()).thenReturn("post");
+		when(request.getRequestURI()).thenReturn("photos");
+
+		assertEquals("POST&http%3A%2F%2Fphotos.example.net%2Fphotos&custom%3Da%26custom%3Db",
+				support.getSignatureBaseString(request));
+	}
+
 }
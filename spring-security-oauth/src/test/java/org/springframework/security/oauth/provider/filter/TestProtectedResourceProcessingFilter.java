@@ -18,6 +18,7 @@ package org.springframework.security.oauth.provider.filter;
 
 import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -69,4 +70,34 @@ public class TestProtectedResourceProcessingFilter {
 		SecurityContextHolder.getContext().setAuthentication(null);
 	}
 
+	/**
+	 * test onValidSignature with the token already loaded to validate the signature
+	 */
+	@Test
+	public void testOnValidSignatureWithLoadedToken() throws Exception {
+		ProtectedResourceProcessingFilter filter = new ProtectedResourceProcessingFilter();
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		FilterChain chain = mock(FilterChain.class);
+		ConsumerCredentials creds = new ConsumerCredentials("key", "sig", "meth", "base", "tok");
+		ConsumerAuthentication authentication = new ConsumerAuthentication(mock(ConsumerDetails.class), creds);
+		authentication.setAuthenticated(true);
+		OAuthAccessProviderToken token = mock(OAuthAccessProviderToken.class);
+		when(token.getValue()).thenReturn("tok");
+		when(token.isAccessToken()).thenReturn(true);
+		authentication.setProviderToken(token);
+		SecurityContextHolder.getContext().setAuthentication(authentication);
+		OAuthProviderTokenServices tokenServices = mock(OAuthProviderTokenServices.class);
+		filter.setTokenServices(tokenServices);
+		Authentication userAuthentication = mock(Authentication.class);
+		when(token.getUserAuthentication()).thenReturn(userAuthentication);
+
+		filter.onValidSignature(request, response, chain);
+
+		verify(tokenServices, never()).getToken("tok");
+		verify(chain).doFilter(request, response);
+		assertSame(userAuthentication, SecurityContextHolder.getContext().getAuthentication());
+		SecurityContextHolder.getContext().setAuthentication(null);
+	}
+
 }
@@ -0,0 +1,148 @@
+package org.springframework.security.oauth.provider.nonce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.oauth.provider.BaseConsumerDetails;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+
+public class TestJdbcNonceServices {
+
+	private long now;
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private JdbcNonceServices nonceServices;
+
+	@Before
+	public void setUp() throws Exception {
+		// creates a HSQL in-memory db populated from default scripts classpath:schema.sql and classpath:data.sql
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		jdbcTemplate = new JdbcTemplate(db);
+		nonceServices = new JdbcNonceServices(db);
+		nonceServices.setValidityWindowSeconds(10);
+		nonceServices.setClockSkewSeconds(5);
+		now = System.currentTimeMillis() / 1000;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void shouldAcceptSameNonceWithDifferentTimestamp() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now + 5, nonce);
+		assertEquals(2, countNonces());
+	}
+
+	@Test(expected = NonceAlreadyUsedException.class)
+	public void shouldRejectAlreadyUsedNonceWithSameTimestamp() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test(expected = NonceAlreadyUsedException.class)
+	public void shouldRejectNonceUsedOnAnotherNode() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		JdbcNonceServices otherNode = new JdbcNonceServices(db);
+		otherNode.setValidityWindowSeconds(10);
+		otherNode.setClockSkewSeconds(5);
+		otherNode.validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test
+	public void shouldAcceptSameNonceFromDifferentConsumers() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("bar"), now, nonce);
+		assertEquals(2, countNonces());
+	}
+
+	@Test(expected = CredentialsExpiredException.class)
+	public void shouldRejectTooOldTimestamp() {
+		nonceServices.validateNonce(consumer("foo"), now - 11, nonce());
+	}
+
+	@Test(expected = BadCredentialsException.class)
+	public void shouldRejectTimestampTooFarInTheFuture() {
+		nonceServices.validateNonce(consumer("foo"), now + 11, nonce());
+	}
+
+	@Test
+	public void shouldTruncateExpiredPartition() {
+		// 10 second window plus 5 seconds of skew either side of now over 4 partitions: 15 second buckets, and the
+		// partition after the latest one in the widened window is purged
+		long expired = (((now + 15) / 15) + 1 - 4) * 15;
+		int partition = (int) ((expired / 15) % 4);
+		jdbcTemplate.update("insert into oauth_nonce_" + partition
+				+ " (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)", "foo", expired, nonce());
+		assertEquals(1, countNonces());
+		nonceServices.validateNonce(consumer("foo"), now, nonce());
+		assertEquals(0, jdbcTemplate.queryForInt("select count(*) from oauth_nonce_" + partition));
+		assertEquals(1, countNonces());
+	}
+
+	@Test
+	public void shouldDeleteExpiredNoncesFromPartitionsSkippedWhileIdle() {
+		nonceServices.purgeExpiredPartition(now);
+		// three 15 second buckets later, the partition of the latest bucket was skipped: it still has a nonce from before
+		// the gap, and one that another node has accepted since
+		long later = now + 45;
+		int partition = (int) (((later + 15) / 15) % 4);
+		jdbcTemplate.update("insert into oauth_nonce_" + partition
+				+ " (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)", "foo", now - 20, nonce());
+		jdbcTemplate.update("insert into oauth_nonce_" + partition
+				+ " (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)", "foo", later - 5, nonce());
+		nonceServices.purgeExpiredPartition(later);
+		assertEquals(1, countNonces());
+		assertEquals(later - 5, jdbcTemplate.queryForLong("select nonce_timestamp from oauth_nonce_" + partition));
+	}
+
+	@Test(expected = NonceAlreadyUsedException.class)
+	public void shouldKeepNoncesForNodeWithLaggingClock() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now - 9, nonce);
+		// a node whose clock is ahead by the skew allowance purges, and the nonce is still live for this node
+		JdbcNonceServices otherNode = new JdbcNonceServices(db);
+		otherNode.setValidityWindowSeconds(10);
+		otherNode.setClockSkewSeconds(5);
+		for (long time = now; time <= now + 5; time++) {
+			otherNode.purgeExpiredPartition(time);
+		}
+		nonceServices.validateNonce(consumer("foo"), now - 9, nonce);
+	}
+
+	private int countNonces() {
+		int count = 0;
+		for (int i = 0; i < 4; i++) {
+			count += jdbcTemplate.queryForInt("select count(*) from oauth_nonce_" + i);
+		}
+		return count;
+	}
+
+	private String nonce() {
+		return UUID.randomUUID().toString();
+	}
+
+	private ConsumerDetails consumer(String name) {
+		BaseConsumerDetails details = new BaseConsumerDetails();
+		details.setConsumerKey(name);
+		return details;
+	}
+}
@@ -0,0 +1,88 @@
+package org.springframework.security.oauth.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+public class TestCachingProviderTokenServices {
+
+	private CountingTokenServices delegate = new CountingTokenServices();
+
+	private CachingProviderTokenServices services = new CachingProviderTokenServices(delegate);
+
+	@Before
+	public void setUp() throws Exception {
+		delegate.afterPropertiesSet();
+	}
+
+	@Test
+	public void testTokenIsCached() throws Exception {
+		OAuthProviderToken token = services.createUnauthorizedRequestToken("consumer", "http://foo.com");
+		assertSame(token, services.getToken(token.getValue()));
+		assertSame(token, services.getToken(token.getValue()));
+		assertEquals(1, delegate.reads);
+	}
+
+	@Test
+	public void testAuthorizedRequestTokenIsEvicted() throws Exception {
+		OAuthProviderToken token = services.createUnauthorizedRequestToken("consumer", "http://foo.com");
+		services.getToken(token.getValue());
+		services.authorizeRequestToken(token.getValue(), "verifier", new UsernamePasswordAuthenticationToken("user",
+				"N/A"));
+		assertEquals("verifier", services.getToken(token.getValue()).getVerifier());
+		OAuthAccessProviderToken accessToken = services.createAccessToken(token.getValue());
+		assertSame(accessToken, services.getToken(accessToken.getValue()));
+		try {
+			services.getToken(token.getValue());
+			fail("Expected InvalidOAuthTokenException");
+		}
+		catch (InvalidOAuthTokenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTokenIsNotCachedBeyondExpiry() throws Exception {
+		delegate.setRequestTokenValiditySeconds(0);
+		OAuthProviderToken token = services.createUnauthorizedRequestToken("consumer", "http://foo.com");
+		Thread.sleep(5);
+		try {
+			services.getToken(token.getValue());
+			fail("Expected ExpiredOAuthTokenException");
+		}
+		catch (ExpiredOAuthTokenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRemovedTokenIsEvicted() throws Exception {
+		OAuthProviderToken token = services.createUnauthorizedRequestToken("consumer", "http://foo.com");
+		services.getToken(token.getValue());
+		delegate.onTokenRemoved(delegate.removeToken(token.getValue()));
+		try {
+			services.getToken(token.getValue());
+			fail("Expected InvalidOAuthTokenException");
+		}
+		catch (InvalidOAuthTokenException e) {
+			// expected
+		}
+	}
+
+	private static class CountingTokenServices extends InMemoryProviderTokenServices {
+
+		private int reads;
+
+		@Override
+		protected OAuthProviderTokenImpl readToken(String token) {
+			reads++;
+			return super.readToken(token);
+		}
+
+	}
+
+}
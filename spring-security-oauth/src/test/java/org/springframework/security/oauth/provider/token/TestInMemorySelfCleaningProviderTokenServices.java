@@ -0,0 +1,96 @@
+package org.springframework.security.oauth.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+public class TestInMemorySelfCleaningProviderTokenServices {
+
+	private InMemorySelfCleaningProviderTokenServices services = new InMemorySelfCleaningProviderTokenServices();
+
+	@Before
+	public void setUp() throws Exception {
+		services.setCleanupIntervalSeconds(0);
+		services.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		services.destroy();
+	}
+
+	@Test
+	public void testRemoveExpiredTokensOnly() throws Exception {
+		OAuthTokenLifecycleListener listener = mock(OAuthTokenLifecycleListener.class);
+		services.register(listener);
+		OAuthProviderTokenImpl expired = token("expired", false, System.currentTimeMillis() - 60 * 60 * 1000L);
+		services.storeToken("expired", expired);
+		services.storeToken("fresh", token("fresh", false, System.currentTimeMillis()));
+		services.storeToken("access", token("access", true, System.currentTimeMillis() - 60 * 60 * 1000L));
+		assertEquals(2, services.getRequestTokenCount());
+		assertEquals(1, services.getAccessTokenCount());
+
+		services.removeExpiredTokens();
+
+		assertNull(services.readToken("expired"));
+		assertNotNull(services.readToken("fresh"));
+		assertNotNull(services.readToken("access"));
+		assertEquals(1, services.getRequestTokenCount());
+		assertEquals(1, services.getAccessTokenCount());
+		assertEquals(1, services.getExpiredTokenCount());
+		verify(listener).tokenExpired(expired);
+	}
+
+	@Test
+	public void testRestoredTokenIsNotRemoved() throws Exception {
+		OAuthProviderTokenImpl token = token("token", false, System.currentTimeMillis() - 60 * 60 * 1000L);
+		services.storeToken("token", token);
+		token.setTimestamp(System.currentTimeMillis());
+		services.storeToken("token", token);
+		assertEquals(1, services.getRequestTokenCount());
+		services.removeExpiredTokens();
+		assertNotNull(services.readToken("token"));
+		assertEquals(0, services.getExpiredTokenCount());
+	}
+
+	@Test
+	public void testRemovedTokenIsNotCounted() throws Exception {
+		services.storeToken("token", token("token", false, System.currentTimeMillis() - 60 * 60 * 1000L));
+		services.removeToken("token");
+		assertEquals(0, services.getRequestTokenCount());
+		services.removeExpiredTokens();
+		assertEquals(0, services.getExpiredTokenCount());
+	}
+
+	@Test
+	public void testMaxTokensMakesRoomByRemovingExpiredTokens() throws Exception {
+		services.setMaxTokens(1);
+		services.storeToken("expired", token("expired", false, System.currentTimeMillis() - 60 * 60 * 1000L));
+		services.storeToken("fresh", token("fresh", false, System.currentTimeMillis()));
+		assertNull(services.readToken("expired"));
+		assertNotNull(services.readToken("fresh"));
+	}
+
+	@Test(expected = AuthenticationServiceException.class)
+	public void testMaxTokensExceeded() throws Exception {
+		services.setMaxTokens(1);
+		services.storeToken("one", token("one", false, System.currentTimeMillis()));
+		services.storeToken("two", token("two", false, System.currentTimeMillis()));
+	}
+
+	private OAuthProviderTokenImpl token(String value, boolean accessToken, long timestamp) {
+		OAuthProviderTokenImpl token = new OAuthProviderTokenImpl();
+		token.setValue(value);
+		token.setAccessToken(accessToken);
+		token.setTimestamp(timestamp);
+		return token;
+	}
+
+}
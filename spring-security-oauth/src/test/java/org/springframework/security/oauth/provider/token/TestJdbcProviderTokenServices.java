@@ -0,0 +1,120 @@
+package org.springframework.security.oauth.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+public class TestJdbcProviderTokenServices {
+
+	private EmbeddedDatabase db;
+
+	private JdbcProviderTokenServices services;
+
+	@Before
+	public void setUp() throws Exception {
+		// creates a HSQL in-memory db populated from default scripts classpath:schema.sql and classpath:data.sql
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		services = new JdbcProviderTokenServices(db);
+		services.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void testTokenLifecycle() throws Exception {
+		OAuthProviderToken requestToken = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		OAuthProviderTokenImpl read = services.readToken(requestToken.getValue());
+		assertEquals("consumer", read.getConsumerKey());
+		assertEquals("http://callback", read.getCallbackUrl());
+		assertEquals(requestToken.getSecret(), read.getSecret());
+		assertFalse(read.isAccessToken());
+		assertNull(read.getUserAuthentication());
+
+		services.authorizeRequestToken(requestToken.getValue(), "verifier", new UsernamePasswordAuthenticationToken(
+				"user", "N/A", AuthorityUtils.createAuthorityList("ROLE_USER")));
+		read = services.readToken(requestToken.getValue());
+		assertEquals("verifier", read.getVerifier());
+		assertEquals("user", read.getUserAuthentication().getName());
+
+		OAuthAccessProviderToken accessToken = services.createAccessToken(requestToken.getValue());
+		assertNull(services.readToken(requestToken.getValue()));
+		read = services.readToken(accessToken.getValue());
+		assertTrue(read.isAccessToken());
+		assertEquals("user", read.getUserAuthentication().getName());
+	}
+
+	@Test(expected = InvalidOAuthTokenException.class)
+	public void testRequestTokenExchangedOnAnotherNode() throws Exception {
+		final OAuthProviderToken requestToken = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		services.authorizeRequestToken(requestToken.getValue(), "verifier", new UsernamePasswordAuthenticationToken(
+				"user", "N/A", AuthorityUtils.createAuthorityList("ROLE_USER")));
+		JdbcProviderTokenServices otherNode = new JdbcProviderTokenServices(db) {
+			private int reads = 0;
+
+			@Override
+			protected OAuthProviderTokenImpl readToken(String token) {
+				OAuthProviderTokenImpl result = super.readToken(token);
+				if (++reads == 2) {
+					// the first node exchanges the token between this node's read and delete
+					services.removeToken(token);
+				}
+				return result;
+			}
+		};
+		otherNode.afterPropertiesSet();
+		otherNode.createAccessToken(requestToken.getValue());
+	}
+
+	@Test
+	public void testPurgeExpiredTokens() throws Exception {
+		services.storeToken("expired", token("expired", false, System.currentTimeMillis() - 60 * 60 * 1000L));
+		services.storeToken("access", token("access", true, System.currentTimeMillis() - 60 * 60 * 1000L));
+		services.storeToken("fresh", token("fresh", false, System.currentTimeMillis()));
+		assertEquals(1, services.purgeExpiredTokens());
+		assertNull(services.readToken("expired"));
+		assertNotNull(services.readToken("access"));
+		assertNotNull(services.readToken("fresh"));
+	}
+
+	@Test
+	public void testPurgeExpiredTokensNotifiesListeners() throws Exception {
+		OAuthTokenLifecycleListener listener = mock(OAuthTokenLifecycleListener.class);
+		services.register(listener);
+		services.storeToken("one", token("one", false, System.currentTimeMillis() - 60 * 60 * 1000L));
+		services.storeToken("two", token("two", true, System.currentTimeMillis() - 13 * 60 * 60 * 1000L));
+		services.storeToken("fresh", token("fresh", false, System.currentTimeMillis()));
+		assertEquals(2, services.purgeExpiredTokens());
+		verify(listener, times(2)).tokenExpired(any(OAuthProviderToken.class));
+		assertNull(services.readToken("one"));
+		assertNull(services.readToken("two"));
+		assertNotNull(services.readToken("fresh"));
+	}
+
+	private OAuthProviderTokenImpl token(String value, boolean accessToken, long timestamp) {
+		OAuthProviderTokenImpl token = new OAuthProviderTokenImpl();
+		token.setValue(value);
+		token.setConsumerKey("consumer");
+		token.setSecret("secret");
+		token.setAccessToken(accessToken);
+		token.setTimestamp(timestamp);
+		return token;
+	}
+
+}
@@ -24,3 +24,44 @@ create table oauth_refresh_token (
 create table oauth_code (
   code VARCHAR(256), authentication LONGVARBINARY
 );
+
+create table oauth_nonce_0 (
+  consumer_key VARCHAR(256) NOT NULL,
+  nonce_timestamp BIGINT NOT NULL,
+  nonce VARCHAR(256) NOT NULL,
+  PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+);
+
+create table oauth_nonce_1 (
+  consumer_key VARCHAR(256) NOT NULL,
+  nonce_timestamp BIGINT NOT NULL,
+  nonce VARCHAR(256) NOT NULL,
+  PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+);
+
+create table oauth_nonce_2 (
+  consumer_key VARCHAR(256) NOT NULL,
+  nonce_timestamp BIGINT NOT NULL,
+  nonce VARCHAR(256) NOT NULL,
+  PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+);
+
+create table oauth_nonce_3 (
+  consumer_key VARCHAR(256) NOT NULL,
+  nonce_timestamp BIGINT NOT NULL,
+  nonce VARCHAR(256) NOT NULL,
+  PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+);
+
+create table oauth_provider_token (
+  token_value VARCHAR(256) PRIMARY KEY,
+  token_secret VARCHAR(256),
+  consumer_key VARCHAR(256),
+  callback_url VARCHAR(256),
+  verifier VARCHAR(256),
+  access_token BOOLEAN,
+  token_timestamp BIGINT,
+  user_authentication LONGVARBINARY
+);
+
+create index oauth_provider_token_expiry on oauth_provider_token (access_token, token_timestamp);
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An {@link OAuth2ClientContextStore} that keeps the values in memory. It is only shared by the users of a single node,
+ * so it is mostly useful for testing, or for an application with a single node that doesn't want sessions.
+ * 
+ */
+public class InMemoryOAuth2ClientContextStore implements OAuth2ClientContextStore {
+
+	private final ConcurrentMap<String, Object> store = new ConcurrentHashMap<String, Object>();
+
+	public Object get(String key) {
+		return store.get(key);
+	}
+
+	public void put(String key, Object value) {
+		store.put(key, value);
+	}
+
+	public Object remove(String key) {
+		return store.remove(key);
+	}
+
+	/**
+	 * Remove all the values.
+	 */
+	public void clear() {
+		store.clear();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.client;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.oauth2.client.token.JdbcClientTokenServices;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * An {@link OAuth2ClientContextStore} that keeps the (serialized) values in the <code>oauth_client_token</code> table
+ * of the {@link JdbcClientTokenServices}, with the key in the <code>authentication_id</code> (and
+ * <code>token_id</code>) column. The keys used by the {@link SharedOAuth2ClientContext} have a prefix, so they don't
+ * clash with the rows of the {@link JdbcClientTokenServices}. Preserved state is removed when the user comes back from
+ * the authorization server, but not if the user never does, so applications with many users should purge old rows
+ * with a key starting with <code>state:</code> from time to time.
+ * </p>
+ * 
+ * <p>
+ * A value is stored by updating the row with its key, or inserting one if there is none. The
+ * <code>authentication_id</code> column should be the primary key (or have a unique index), so that two nodes that
+ * store the first value for a key at the same time don't both insert a row: the insert that loses fails with a
+ * {@link DuplicateKeyException} and the value is updated instead.
+ * </p>
+ * 
+ */
+public class JdbcOAuth2ClientContextStore implements OAuth2ClientContextStore {
+
+	private static final String DEFAULT_SELECT_STATEMENT = "select token from oauth_client_token where authentication_id = ?";
+
+	private static final String DEFAULT_UPDATE_STATEMENT = "update oauth_client_token set token = ? where authentication_id = ?";
+
+	private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_client_token (token_id, token, authentication_id) values (?, ?, ?)";
+
+	private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_client_token where authentication_id = ?";
+
+	private String selectSql = DEFAULT_SELECT_STATEMENT;
+
+	private String updateSql = DEFAULT_UPDATE_STATEMENT;
+
+	private String insertSql = DEFAULT_INSERT_STATEMENT;
+
+	private String deleteSql = DEFAULT_DELETE_STATEMENT;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public JdbcOAuth2ClientContextStore(DataSource dataSource) {
+		Assert.notNull(dataSource, "DataSource required");
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public Object get(String key) {
+		List<Object> values = jdbcTemplate.query(selectSql, new RowMapper<Object>() {
+			public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return SerializationUtils.deserialize(rs.getBytes(1));
+			}
+		}, key);
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	public void put(String key, Object value) {
+		byte[] serialized = SerializationUtils.serialize(value);
+		if (update(key, serialized) > 0) {
+			return;
+		}
+		try {
+			jdbcTemplate.update(insertSql, new Object[] { key, new SqlLobValue(serialized), key }, new int[] {
+					Types.VARCHAR, Types.BLOB, Types.VARCHAR });
+		}
+		catch (DuplicateKeyException e) {
+			// another node inserted the row first
+			update(key, serialized);
+		}
+	}
+
+	private int update(String key, byte[] serialized) {
+		return jdbcTemplate.update(updateSql, new Object[] { new SqlLobValue(serialized), key }, new int[] {
+				Types.BLOB, Types.VARCHAR });
+	}
+
+	/**
+	 * Only the caller whose delete actually removes the row gets the value, so that (for instance) preserved state can
+	 * only be used once.
+	 */
+	public Object remove(String key) {
+		Object value = get(key);
+		if (value == null || jdbcTemplate.update(deleteSql, key) == 0) {
+			return null;
+		}
+		return value;
+	}
+
+	public void setSelectSql(String selectSql) {
+		this.selectSql = selectSql;
+	}
+
+	public void setUpdateSql(String updateSql) {
+		this.updateSql = updateSql;
+	}
+
+	public void setInsertSql(String insertSql) {
+		this.insertSql = insertSql;
+	}
+
+	public void setDeleteSql(String deleteSql) {
+		this.deleteSql = deleteSql;
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.client;
+
+/**
+ * A key-value store for the state of an {@link OAuth2ClientContext} that outlives a single node, so that the nodes of a
+ * client application can share access tokens and preserved state without sharing HTTP sessions.
+ * 
+ * @see SharedOAuth2ClientContext
+ */
+public interface OAuth2ClientContextStore {
+
+	/**
+	 * @param key the key to look up
+	 * @return the value stored with this key (or null if there is none)
+	 */
+	Object get(String key);
+
+	/**
+	 * Store a value, replacing any value already stored with the same key.
+	 * 
+	 * @param key the key
+	 * @param value the value (serializable if the store is shared)
+	 */
+	void put(String key, Object value);
+
+	/**
+	 * Remove a value. If several callers remove the same key at once, only one of them gets the value.
+	 * 
+	 * @param key the key to remove
+	 * @return the value that was stored with this key (or null if there was none)
+	 */
+	Object remove(String key);
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.client;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.client.token.AccessTokenRequest;
+import org.springframework.security.oauth2.client.token.ClientKeyGenerator;
+import org.springframework.security.oauth2.client.token.DefaultClientKeyGenerator;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * An {@link OAuth2ClientContext} that keeps the access tokens and the preserved state in an
+ * {@link OAuth2ClientContextStore} instead of the HTTP session, so that the nodes of a client application can share
+ * them (with a {@link JdbcOAuth2ClientContextStore}) and a user who ends up on another node doesn't have to authorize
+ * the client again. The access token of the current user (from the {@link SecurityContextHolder}) is keyed by the
+ * {@link ClientKeyGenerator}, so a single instance can serve all users, provided the {@link AccessTokenRequest} is a
+ * request-scoped proxy. Users that are not authenticated (except for client-only resources) don't get a token stored,
+ * because they can't be told apart.
+ * </p>
+ * 
+ * <p>
+ * Access tokens read from the store are cached locally for a short time. A token changed on another node is only seen
+ * when the cached one expires, but that is harmless as long as the old token is still valid. Preserved state is never
+ * cached, because the user usually comes back from the authorization server to another node.
+ * </p>
+ * 
+ * <p>
+ * Preserved state is keyed by the current user as well as the <code>state</code> parameter, so it can only be used by
+ * the user who started the authorization. Otherwise an attacker could send a victim to the callback with the
+ * attacker's own authorization code and state, and the victim's context would get the attacker's token (CSRF). For
+ * the same reason no state is preserved for users that are not authenticated, so they can't use the authorization code
+ * flow with this context.
+ * </p>
+ * 
+ */
+public class SharedOAuth2ClientContext implements OAuth2ClientContext {
+
+	private static final String TOKEN_PREFIX = "token:";
+
+	private static final String STATE_PREFIX = "state:";
+
+	private final OAuth2ProtectedResourceDetails resource;
+
+	private final AccessTokenRequest accessTokenRequest;
+
+	private final ExpiringCache<String, OAuth2AccessToken> cache = new ExpiringCache<String, OAuth2AccessToken>(10000);
+
+	private OAuth2ClientContextStore store = new InMemoryOAuth2ClientContextStore();
+
+	private ClientKeyGenerator keyGenerator = new DefaultClientKeyGenerator();
+
+	private int cacheSeconds = 60;
+
+	public SharedOAuth2ClientContext(OAuth2ProtectedResourceDetails resource, AccessTokenRequest accessTokenRequest) {
+		Assert.notNull(resource, "OAuth2ProtectedResourceDetails required");
+		this.resource = resource;
+		this.accessTokenRequest = accessTokenRequest;
+	}
+
+	/**
+	 * The store for the access tokens and the preserved state (default in memory).
+	 * 
+	 * @param store the store to set
+	 */
+	public void setStore(OAuth2ClientContextStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * The key generator for the access token of the current user (default {@link DefaultClientKeyGenerator}).
+	 * 
+	 * @param keyGenerator the key generator to set
+	 */
+	public void setClientKeyGenerator(ClientKeyGenerator keyGenerator) {
+		this.keyGenerator = keyGenerator;
+	}
+
+	/**
+	 * The time for which an access token read from the store is cached locally (default 60).
+	 * 
+	 * @param cacheSeconds the number of seconds to set
+	 */
+	public void setCacheSeconds(int cacheSeconds) {
+		this.cacheSeconds = cacheSeconds;
+	}
+
+	/**
+	 * The maximum number of access tokens to cache locally (default 10000).
+	 * 
+	 * @param maxCacheSize the maximum size to set
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		cache.setMaxSize(maxCacheSize);
+	}
+
+	public OAuth2AccessToken getAccessToken() {
+		String key = getTokenKey();
+		if (key == null) {
+			return null;
+		}
+		OAuth2AccessToken cached = cache.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		OAuth2AccessToken accessToken = (OAuth2AccessToken) store.get(key);
+		if (accessToken != null) {
+			cache(key, accessToken);
+		}
+		else {
+			cache.remove(key);
+		}
+		return accessToken;
+	}
+
+	public void setAccessToken(OAuth2AccessToken accessToken) {
+		if (accessTokenRequest != null) {
+			accessTokenRequest.setExistingToken(accessToken);
+		}
+		String key = getTokenKey();
+		if (key == null) {
+			return;
+		}
+		if (accessToken == null) {
+			cache.remove(key);
+			store.remove(key);
+		}
+		else {
+			store.put(key, accessToken);
+			cache(key, accessToken);
+		}
+	}
+
+	public AccessTokenRequest getAccessTokenRequest() {
+		return accessTokenRequest;
+	}
+
+	public void setPreservedState(String stateKey, Object preservedState) {
+		String key = getStateKey(stateKey);
+		if (key != null) {
+			store.put(key, preservedState);
+		}
+	}
+
+	public Object removePreservedState(String stateKey) {
+		String key = getStateKey(stateKey);
+		return key == null ? null : store.remove(key);
+	}
+
+	private String getTokenKey() {
+		String userKey = getUserKey();
+		return userKey == null ? null : TOKEN_PREFIX + userKey;
+	}
+
+	private String getStateKey(String stateKey) {
+		String userKey = getUserKey();
+		return userKey == null ? null : STATE_PREFIX + userKey + ":" + stateKey;
+	}
+
+	private String getUserKey() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication instanceof AnonymousAuthenticationToken) {
+			authentication = null;
+		}
+		if (authentication == null && !resource.isClientOnly()) {
+			return null;
+		}
+		return keyGenerator.extractKey(resource, authentication);
+	}
+
+	private void cache(String key, OAuth2AccessToken accessToken) {
+		cache.put(key, accessToken, System.currentTimeMillis() + cacheSeconds * 1000L);
+	}
+
+}
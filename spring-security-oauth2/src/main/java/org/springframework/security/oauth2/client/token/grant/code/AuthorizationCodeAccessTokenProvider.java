@@ -139,7 +139,7 @@ public class AuthorizationCodeAccessTokenProvider extends OAuth2AccessTokenSuppo
 					request.setPreservedState(redirectUri);
 				}
 				else {
-					request.setPreservedState(new Object());
+					request.setPreservedState(Boolean.TRUE);
 				}
 			}
 		}
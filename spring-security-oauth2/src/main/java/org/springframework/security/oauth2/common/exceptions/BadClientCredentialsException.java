@@ -22,4 +22,13 @@ public class BadClientCredentialsException extends ClientAuthenticationException
 	public String getOAuth2ErrorCode() {
 		return "invalid_client";
 	}
+
+	/**
+	 * Bad credentials are the fault of the client, and this exception is always created in the same places, so it has no
+	 * stack trace (which would be expensive to fill in when a misconfigured client keeps trying).
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
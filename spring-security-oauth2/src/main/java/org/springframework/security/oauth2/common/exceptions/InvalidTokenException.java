@@ -39,4 +39,13 @@ public class InvalidTokenException extends ClientAuthenticationException {
 	public String getOAuth2ErrorCode() {
 		return "invalid_token";
 	}
+
+	/**
+	 * An invalid token is the fault of the client, so the stack trace is not filled in: it tells nothing about the
+	 * server, and a client sending lots of bad tokens shouldn't make the server pay for lots of them.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
@@ -31,6 +31,7 @@ public class OAuth2Exception extends RuntimeException {
 	public static final String REDIRECT_URI_MISMATCH ="redirect_uri_mismatch";
 	public static final String UNSUPPORTED_RESPONSE_TYPE ="unsupported_response_type";
 	public static final String ACCESS_DENIED = "access_denied";
+	public static final String TEMPORARILY_UNAVAILABLE = "temporarily_unavailable";
 
 	private Map<String, String> additionalInformation = null;
 
@@ -124,6 +125,9 @@ public class OAuth2Exception extends RuntimeException {
 		else if (ACCESS_DENIED.equals(errorCode)) {
 			return new UserDeniedAuthorizationException(errorMessage);
 		}
+		else if (TEMPORARILY_UNAVAILABLE.equals(errorCode)) {
+			return new TemporarilyUnavailableException(errorMessage);
+		}
 		else {
 			return new OAuth2Exception(errorMessage);
 		}
@@ -101,6 +101,9 @@ public class OAuth2ExceptionJackson1Deserializer extends JsonDeserializer<OAuth2
 		else if ("access_denied".equals(errorCode)) {
 			ex = new UserDeniedAuthorizationException(errorMessage);
 		}
+		else if ("temporarily_unavailable".equals(errorCode)) {
+			ex = new TemporarilyUnavailableException(errorMessage);
+		}
 		else if ("insufficient_scope".equals(errorCode)) {
 			ex = new InsufficientScopeException(errorMessage, OAuth2Utils.parseParameterList((String)errorParams.get("scope")));
 		}
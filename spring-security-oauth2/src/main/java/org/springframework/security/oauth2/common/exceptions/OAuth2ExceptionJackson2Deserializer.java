@@ -106,6 +106,9 @@ public class OAuth2ExceptionJackson2Deserializer extends StdDeserializer<OAuth2E
 		else if ("access_denied".equals(errorCode)) {
 			ex = new UserDeniedAuthorizationException(errorMessage);
 		}
+		else if ("temporarily_unavailable".equals(errorCode)) {
+			ex = new TemporarilyUnavailableException(errorMessage);
+		}
 		else {
 			ex = new OAuth2Exception(errorMessage);
 		}
@@ -0,0 +1,27 @@
+package org.springframework.security.oauth2.common.exceptions;
+
+/**
+ * Thrown when the server is too busy to handle a request (e.g. when the limit on concurrent requests for a grant type
+ * has been reached). The client can try again later.
+ */
+@SuppressWarnings("serial")
+public class TemporarilyUnavailableException extends OAuth2Exception {
+
+	public TemporarilyUnavailableException(String msg, Throwable t) {
+		super(msg, t);
+	}
+
+	public TemporarilyUnavailableException(String msg) {
+		super(msg);
+	}
+
+	@Override
+	public int getHttpErrorCode() {
+		return 503;
+	}
+
+	@Override
+	public String getOAuth2ErrorCode() {
+		return TEMPORARILY_UNAVAILABLE;
+	}
+}
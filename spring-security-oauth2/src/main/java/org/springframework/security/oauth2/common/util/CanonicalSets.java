@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Canonicalizes the small, immutable sets (scopes, resource ids, authorities) that are carried by every request and
+ * token. There are usually only a few distinct combinations of these values in a system, so sharing one instance of
+ * each combination saves a lot of memory when many tokens are held in a store or cache.
+ *
+ * <p>
+ * The sets returned are unmodifiable and keep the iteration order of the first collection they were created from (two
+ * collections with the same elements in a different order are canonicalized separately). The number of distinct sets
+ * that are remembered is bounded: when the limit is reached all of them are forgotten and sharing starts again, so a
+ * burst of unusual combinations can't switch sharing off for good. Sets that were handed out stay valid.
+ * </p>
+ *
+ * <p>
+ * Only intern values that have been validated (or registered for a client), not the raw input of a request.
+ * </p>
+ *
+ */
+public abstract class CanonicalSets {
+
+	/**
+	 * The default maximum number of distinct sets that will be shared.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 4096;
+
+	private static final ConcurrentMap<Key, Set<?>> cache = new ConcurrentHashMap<Key, Set<?>>();
+
+	private static final AtomicInteger size = new AtomicInteger();
+
+	private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+	/**
+	 * Get the canonical unmodifiable set with the same elements (in the same order) as the input.
+	 *
+	 * @param values the values to canonicalize (may be null)
+	 * @return a shared unmodifiable set, or null if the input is null
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Set<T> intern(Collection<? extends T> values) {
+		if (values == null) {
+			return null;
+		}
+		if (values.isEmpty()) {
+			return Collections.emptySet();
+		}
+		// the lookup key wraps the input without copying it
+		Set<?> existing = cache.get(new Key(values));
+		if (existing != null) {
+			return (Set<T>) existing;
+		}
+		Set<T> result = Collections.unmodifiableSet(new LinkedHashSet<T>(values));
+		if (maxSize <= 0) {
+			return result;
+		}
+		if (size.get() >= maxSize) {
+			// start again rather than stop sharing
+			clear();
+		}
+		existing = cache.putIfAbsent(new Key(result), result);
+		if (existing != null) {
+			return (Set<T>) existing;
+		}
+		size.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * The maximum number of distinct sets to share (default {@link #DEFAULT_MAX_SIZE}).
+	 *
+	 * @param maxSize the maximum number of sets to share (0 to switch off sharing of new sets)
+	 */
+	public static void setMaxSize(int maxSize) {
+		CanonicalSets.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the number of distinct sets currently shared
+	 */
+	public static int size() {
+		return size.get();
+	}
+
+	/**
+	 * Forget all the shared sets. Sets that have already been handed out are unaffected.
+	 */
+	public static void clear() {
+		cache.clear();
+		size.set(0);
+	}
+
+	/**
+	 * Compares collections element by element in iteration order, so that a lookup doesn't need to copy its input.
+	 */
+	private static final class Key {
+
+		private final Collection<?> values;
+
+		private final int hash;
+
+		private Key(Collection<?> values) {
+			this.values = values;
+			int hash = 1;
+			for (Object value : values) {
+				hash = 31 * hash + (value == null ? 0 : value.hashCode());
+			}
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			if (hash != other.hash || values.size() != other.values.size()) {
+				return false;
+			}
+			Iterator<?> others = other.values.iterator();
+			for (Object value : values) {
+				Object next = others.next();
+				if (value == null ? next != null : !value.equals(next)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
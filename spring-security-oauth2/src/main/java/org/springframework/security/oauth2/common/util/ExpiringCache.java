@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * A bounded, thread-safe cache in which every entry has its own expiry, used by the components that keep the results
+ * of expensive lookups (remote calls, database queries, password checks) in memory for a while.
+ * </p>
+ *
+ * <p>
+ * Expired entries are dropped when they are read. When the cache is full, the expired entries are purged (at most once
+ * a second, so that a cache that stays full isn't scanned on every insert), and if it is still full arbitrary entries
+ * are evicted to make room. So new entries are always cached, and the size never grows (much) beyond the maximum.
+ * </p>
+ *
+ * <p>
+ * The OAuth 1.0 module has the same class (<code>org.springframework.security.oauth.common.ExpiringCache</code>).
+ * Neither module depends on the other and there is no shared core module, so each keeps its own copy: keep them in
+ * step.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ExpiringCache<K, V> {
+
+	private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+
+	private volatile int maxSize;
+
+	private volatile long nextPurge = 0;
+
+	public ExpiringCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The maximum number of entries (0 or less to not cache anything).
+	 *
+	 * @param maxSize the maximum size to set
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the value cached for the key, or null if there is none or it has expired
+	 */
+	public V get(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiry > System.currentTimeMillis()) {
+			return entry.value;
+		}
+		entries.remove(key, entry);
+		return null;
+	}
+
+	/**
+	 * Cache a value until an expiry time. Nothing is cached if the expiry has already passed.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @param expiry the time (in milliseconds since the epoch) when the entry expires (<code>Long.MAX_VALUE</code> for
+	 * never)
+	 */
+	public void put(K key, V value, long expiry) {
+		long now = System.currentTimeMillis();
+		if (expiry <= now || maxSize <= 0) {
+			return;
+		}
+		if (entries.size() >= maxSize) {
+			makeRoom(now);
+		}
+		entries.put(key, new Entry<V>(value, expiry));
+	}
+
+	/**
+	 * @param key the key of the entry to discard
+	 */
+	public void remove(K key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Discard all the entries.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of entries, including the ones that have expired but were not purged yet
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private void makeRoom(long now) {
+		if (now >= nextPurge) {
+			nextPurge = now + 1000;
+			for (Iterator<Entry<V>> iterator = entries.values().iterator(); iterator.hasNext();) {
+				if (iterator.next().expiry <= now) {
+					iterator.remove();
+				}
+			}
+		}
+		for (Iterator<Entry<V>> iterator = entries.values().iterator(); entries.size() >= maxSize
+				&& iterator.hasNext();) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	private static class Entry<V> {
+
+		private final V value;
+
+		private final long expiry;
+
+		public Entry(V value, long expiry) {
+			this.value = value;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
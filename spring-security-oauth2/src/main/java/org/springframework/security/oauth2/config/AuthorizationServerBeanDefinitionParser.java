@@ -33,6 +33,7 @@ import org.springframework.security.oauth2.provider.code.AuthorizationCodeTokenG
 import org.springframework.security.oauth2.provider.code.InMemoryAuthorizationCodeServices;
 import org.springframework.security.oauth2.provider.endpoint.AuthorizationEndpoint;
 import org.springframework.security.oauth2.provider.endpoint.FrameworkEndpointHandlerMapping;
+import org.springframework.security.oauth2.provider.endpoint.AsyncTokenEndpoint;
 import org.springframework.security.oauth2.provider.endpoint.TokenEndpoint;
 import org.springframework.security.oauth2.provider.endpoint.WhitelabelApprovalEndpoint;
 import org.springframework.security.oauth2.provider.implicit.ImplicitTokenGranter;
@@ -70,6 +71,7 @@ public class AuthorizationServerBeanDefinitionParser extends ProviderBeanDefinit
 		
 		String implicitGrantServiceRef = element.getAttribute("implicit-grant-service-ref");
 		String oAuth2RequestValidatorRef = element.getAttribute("request-validator-ref");
+		String tokenEndpointExecutorRef = element.getAttribute("token-endpoint-executor-ref");
 
 		// Create a bean definition speculatively for the auth endpoint
 		BeanDefinitionBuilder authorizationEndpointBean = BeanDefinitionBuilder
@@ -259,11 +261,19 @@ public class AuthorizationServerBeanDefinitionParser extends ProviderBeanDefinit
 		tokenEndpointBean.addPropertyReference("clientDetailsService", clientDetailsRef);
 		tokenEndpointBean.addPropertyReference("tokenGranter", tokenGranterRef);
 		authorizationEndpointBean.addPropertyReference("oAuth2RequestValidator", oAuth2RequestValidatorRef);
-		parserContext.getRegistry()
-				.registerBeanDefinition("oauth2TokenEndpoint", tokenEndpointBean.getBeanDefinition());
 		if (StringUtils.hasText(oAuth2RequestFactoryRef)) {
 			tokenEndpointBean.addPropertyReference("oAuth2RequestFactory", oAuth2RequestFactoryRef);
 		}
+		if (StringUtils.hasText(tokenEndpointExecutorRef)) {
+			// the synchronous endpoint does the work, but it is not registered so it isn't mapped
+			BeanDefinitionBuilder asyncTokenEndpointBean = BeanDefinitionBuilder
+					.rootBeanDefinition(AsyncTokenEndpoint.class);
+			asyncTokenEndpointBean.addConstructorArgValue(tokenEndpointBean.getBeanDefinition());
+			asyncTokenEndpointBean.addPropertyReference("asyncExecutor", tokenEndpointExecutorRef);
+			tokenEndpointBean = asyncTokenEndpointBean;
+		}
+		parserContext.getRegistry()
+				.registerBeanDefinition("oauth2TokenEndpoint", tokenEndpointBean.getBeanDefinition());
 
 		// Register a handler mapping that can detect the auth server endpoints
 		BeanDefinitionBuilder handlerMappingBean = BeanDefinitionBuilder
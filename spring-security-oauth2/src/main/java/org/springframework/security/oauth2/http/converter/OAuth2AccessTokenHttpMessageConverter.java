@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.http.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.io.SerializedString;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A message converter that writes an {@link OAuth2AccessToken} (e.g. the response of the token endpoint) straight to
+ * the response stream, as JSON or as form data, with the same content as the Jackson serializers. The field names are
+ * encoded once, and only the values of the additional information that are not strings, numbers or booleans go
+ * through the (generic) {@link ObjectMapper}. Register it ahead of the Jackson converter, e.g.
+ * </p>
+ * 
+ * <pre>
+ * &lt;mvc:annotation-driven&gt;
+ *   &lt;mvc:message-converters&gt;
+ *     &lt;bean class="org.springframework.security.oauth2.http.converter.OAuth2AccessTokenHttpMessageConverter" /&gt;
+ *   &lt;/mvc:message-converters&gt;
+ * &lt;/mvc:annotation-driven&gt;
+ * </pre>
+ * 
+ * <p>
+ * It doesn't read tokens: clients use the Jackson or {@link FormOAuth2AccessTokenMessageConverter form} converters.
+ * </p>
+ * 
+ */
+public class OAuth2AccessTokenHttpMessageConverter implements HttpMessageConverter<OAuth2AccessToken> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final MediaType JSON = new MediaType("application", "json", UTF8);
+
+	private static final SerializedString ACCESS_TOKEN = new SerializedString(OAuth2AccessToken.ACCESS_TOKEN);
+
+	private static final SerializedString TOKEN_TYPE = new SerializedString(OAuth2AccessToken.TOKEN_TYPE);
+
+	private static final SerializedString REFRESH_TOKEN = new SerializedString(OAuth2AccessToken.REFRESH_TOKEN);
+
+	private static final SerializedString EXPIRES_IN = new SerializedString(OAuth2AccessToken.EXPIRES_IN);
+
+	private static final SerializedString SCOPE = new SerializedString(OAuth2AccessToken.SCOPE);
+
+	private final List<MediaType> supportedMediaTypes = Arrays.asList(JSON, MediaType.APPLICATION_FORM_URLENCODED);
+
+	private final ObjectMapper objectMapper;
+
+	public OAuth2AccessTokenHttpMessageConverter() {
+		this(new ObjectMapper());
+	}
+
+	/**
+	 * @param objectMapper the object mapper for additional information that is not a string, number or boolean (and
+	 * whose factory creates the generators)
+	 */
+	public OAuth2AccessTokenHttpMessageConverter(ObjectMapper objectMapper) {
+		Assert.notNull(objectMapper, "ObjectMapper required");
+		this.objectMapper = objectMapper;
+	}
+
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+		if (!OAuth2AccessToken.class.isAssignableFrom(clazz)) {
+			return false;
+		}
+		if (mediaType == null || MediaType.ALL.equals(mediaType)) {
+			return true;
+		}
+		for (MediaType supportedMediaType : supportedMediaTypes) {
+			if (supportedMediaType.isCompatibleWith(mediaType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public List<MediaType> getSupportedMediaTypes() {
+		return supportedMediaTypes;
+	}
+
+	public OAuth2AccessToken read(Class<? extends OAuth2AccessToken> clazz, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		throw new HttpMessageNotReadableException("Access tokens are only written by this converter");
+	}
+
+	public void write(OAuth2AccessToken accessToken, MediaType contentType, HttpOutputMessage outputMessage)
+			throws IOException, HttpMessageNotWritableException {
+		HttpHeaders headers = outputMessage.getHeaders();
+		if (headers.getContentType() == null) {
+			if (contentType == null || contentType.isWildcardType() || contentType.isWildcardSubtype()) {
+				contentType = JSON;
+			}
+			headers.setContentType(contentType);
+		}
+		contentType = headers.getContentType();
+		if (MediaType.APPLICATION_FORM_URLENCODED.includes(contentType)) {
+			writeForm(accessToken, outputMessage.getBody());
+		}
+		else {
+			writeJson(accessToken, outputMessage.getBody());
+		}
+	}
+
+	private void writeJson(OAuth2AccessToken token, OutputStream body) throws IOException {
+		JsonGenerator jgen = objectMapper.getJsonFactory().createJsonGenerator(body, JsonEncoding.UTF8);
+		// the body belongs to the caller, so closing the generator must only flush it
+		jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		try {
+			jgen.writeStartObject();
+			jgen.writeFieldName(ACCESS_TOKEN);
+			jgen.writeString(token.getValue());
+			jgen.writeFieldName(TOKEN_TYPE);
+			jgen.writeString(token.getTokenType());
+			OAuth2RefreshToken refreshToken = token.getRefreshToken();
+			if (refreshToken != null) {
+				jgen.writeFieldName(REFRESH_TOKEN);
+				jgen.writeString(refreshToken.getValue());
+			}
+			Date expiration = token.getExpiration();
+			if (expiration != null) {
+				jgen.writeFieldName(EXPIRES_IN);
+				jgen.writeNumber((expiration.getTime() - System.currentTimeMillis()) / 1000);
+			}
+			Set<String> scope = token.getScope();
+			if (scope != null && !scope.isEmpty()) {
+				jgen.writeFieldName(SCOPE);
+				jgen.writeString(formatScope(scope));
+			}
+			for (Map.Entry<String, Object> entry : token.getAdditionalInformation().entrySet()) {
+				jgen.writeFieldName(entry.getKey());
+				Object value = entry.getValue();
+				if (value instanceof String) {
+					jgen.writeString((String) value);
+				}
+				else if (value instanceof Integer || value instanceof Long) {
+					jgen.writeNumber(((Number) value).longValue());
+				}
+				else if (value instanceof Boolean) {
+					jgen.writeBoolean((Boolean) value);
+				}
+				else {
+					objectMapper.writeValue(jgen, value);
+				}
+			}
+			jgen.writeEndObject();
+		}
+		finally {
+			jgen.close();
+		}
+	}
+
+	private void writeForm(OAuth2AccessToken token, OutputStream body) throws IOException {
+		StringBuilder form = new StringBuilder(256);
+		appendParameter(form, OAuth2AccessToken.ACCESS_TOKEN, token.getValue());
+		appendParameter(form, OAuth2AccessToken.TOKEN_TYPE, token.getTokenType());
+		OAuth2RefreshToken refreshToken = token.getRefreshToken();
+		if (refreshToken != null) {
+			appendParameter(form, OAuth2AccessToken.REFRESH_TOKEN, refreshToken.getValue());
+		}
+		Date expiration = token.getExpiration();
+		if (expiration != null) {
+			appendParameter(form, OAuth2AccessToken.EXPIRES_IN,
+					String.valueOf((expiration.getTime() - System.currentTimeMillis()) / 1000));
+		}
+		Set<String> scope = token.getScope();
+		if (scope != null && !scope.isEmpty()) {
+			appendParameter(form, OAuth2AccessToken.SCOPE, formatScope(scope));
+		}
+		for (Map.Entry<String, Object> entry : token.getAdditionalInformation().entrySet()) {
+			Object value = entry.getValue();
+			appendParameter(form, entry.getKey(), value == null ? null : String.valueOf(value));
+		}
+		body.write(form.toString().getBytes(UTF8.name()));
+		body.flush();
+	}
+
+	private void appendParameter(StringBuilder form, String name, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (form.length() > 0) {
+			form.append('&');
+		}
+		form.append(URLEncoder.encode(name, UTF8.name())).append('=').append(URLEncoder.encode(value, UTF8.name()));
+	}
+
+	private String formatScope(Set<String> scope) {
+		StringBuilder scopes = new StringBuilder(scope.size() * 16);
+		for (Iterator<String> iterator = scope.iterator(); iterator.hasNext();) {
+			String s = iterator.next();
+			Assert.hasLength(s, "Scopes cannot be null or empty. Got " + scope + "");
+			scopes.append(s);
+			if (iterator.hasNext()) {
+				scopes.append(' ');
+			}
+		}
+		return scopes.toString();
+	}
+
+}
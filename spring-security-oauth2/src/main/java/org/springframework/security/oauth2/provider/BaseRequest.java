@@ -16,6 +16,8 @@
 
 package org.springframework.security.oauth2.provider;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
@@ -144,9 +146,18 @@ abstract class BaseRequest implements Serializable {
 				scope = OAuth2Utils.parseParameterList(value);
 			}
 		}
-		this.scope = Collections
-				.unmodifiableSet(scope == null ? new LinkedHashSet<String>()
-						: new LinkedHashSet<String>(scope));
+		this.scope = scope == null ? Collections.<String> emptySet() : createScope(scope);
+	}
+
+	/**
+	 * Create the unmodifiable scope set of this request. By default it is a private copy, because the scopes may still
+	 * be the raw input of a client. Requests that only carry validated scopes can share canonical sets instead.
+	 * 
+	 * @param scope the scopes (not null)
+	 * @return an unmodifiable set with the same scopes in the same order
+	 */
+	protected Set<String> createScope(Collection<String> scope) {
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(scope));
 	}
 
 	protected void setRequestParameters(Map<String, String> requestParameters) {
@@ -160,4 +171,10 @@ abstract class BaseRequest implements Serializable {
 		this.clientId = clientId;
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		// share the scope set with other requests again (if this kind of request does)
+		this.scope = scope == null ? Collections.<String> emptySet() : createScope(scope);
+	}
+
 }
@@ -17,11 +17,32 @@
 package org.springframework.security.oauth2.provider;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.TemporarilyUnavailableException;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.security.oauth2.provider.token.AbstractTokenGranter;
 
 /**
+ * A {@link TokenGranter} that delegates to a list of other granters. Granters that extend {@link AbstractTokenGranter}
+ * are indexed by their grant type, so a grant only goes to the granters that support its type (and any others in the
+ * list that don't declare a type), in the order that they were provided.
+ * 
+ * <p>
+ * Expensive grant types (e.g. "password", which authenticates the user) can be isolated from the rest with a
+ * {@link #setConcurrencyLimits(Map) limit} on the number of concurrent grants, so that they can't use up all the
+ * request threads. A grant that can't get a permit within the {@link #setMaxWaitMillis(long) maximum wait} is
+ * rejected with a {@link TemporarilyUnavailableException}.
+ * </p>
+ * 
  * @author Dave Syer
  * 
  */
@@ -29,17 +50,126 @@ public class CompositeTokenGranter implements TokenGranter {
 
 	private final List<TokenGranter> tokenGranters;
 
+	private final List<TokenGranter> untypedGranters = new ArrayList<TokenGranter>();
+
+	private final Map<String, List<TokenGranter>> grantersByType = new HashMap<String, List<TokenGranter>>();
+
+	private Map<String, Semaphore> bulkheads = new HashMap<String, Semaphore>();
+
+	private long maxWaitMillis = 0;
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
 	public CompositeTokenGranter(List<TokenGranter> tokenGranters) {
 		this.tokenGranters = new ArrayList<TokenGranter>(tokenGranters);
+		Set<String> grantTypes = new LinkedHashSet<String>();
+		for (TokenGranter granter : this.tokenGranters) {
+			if (granter instanceof AbstractTokenGranter) {
+				grantTypes.add(((AbstractTokenGranter) granter).getGrantType());
+			}
+			else {
+				untypedGranters.add(granter);
+			}
+		}
+		for (String grantType : grantTypes) {
+			List<TokenGranter> granters = new ArrayList<TokenGranter>();
+			for (TokenGranter granter : this.tokenGranters) {
+				if (!(granter instanceof AbstractTokenGranter)
+						|| grantType.equals(((AbstractTokenGranter) granter).getGrantType())) {
+					granters.add(granter);
+				}
+			}
+			grantersByType.put(grantType, granters);
+		}
 	}
-	
+
+	/**
+	 * Metrics for the grants: a timer <code>oauth2.grant.&lt;grant type&gt;</code> for successful grants, and counters
+	 * for failures (<code>oauth2.grant.&lt;grant type&gt;.failure</code>) and unsupported grant types (
+	 * <code>oauth2.grant.unsupported</code>). For grant types with a concurrency limit there is also a timer for the
+	 * time spent waiting for a permit (<code>oauth2.grant.&lt;grant type&gt;.wait</code>) and a counter for rejected
+	 * grants (<code>oauth2.grant.&lt;grant type&gt;.rejected</code>).
+	 * 
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * The maximum number of concurrent grants for each grant type that needs one (grant types that are not in the map
+	 * are not limited).
+	 * 
+	 * @param concurrencyLimits the concurrency limits to set, keyed by grant type
+	 */
+	public void setConcurrencyLimits(Map<String, Integer> concurrencyLimits) {
+		Map<String, Semaphore> bulkheads = new HashMap<String, Semaphore>();
+		for (Map.Entry<String, Integer> entry : concurrencyLimits.entrySet()) {
+			bulkheads.put(entry.getKey(), new Semaphore(entry.getValue(), true));
+		}
+		this.bulkheads = bulkheads;
+	}
+
+	/**
+	 * The maximum time that a grant waits for a permit when its grant type has reached its concurrency limit (default
+	 * 0, meaning that it is rejected straight away).
+	 * 
+	 * @param maxWaitMillis the maximum wait in milliseconds
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
 	public OAuth2AccessToken grant(String grantType, TokenRequest tokenRequest) {
-		for (TokenGranter granter : tokenGranters) {
-			OAuth2AccessToken grant = granter.grant(grantType, tokenRequest);
+		Semaphore bulkhead = grantType == null ? null : bulkheads.get(grantType);
+		if (bulkhead == null) {
+			return doGrant(grantType, tokenRequest);
+		}
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		metrics.recordTime("oauth2.grant." + grantType + ".wait", System.nanoTime() - start);
+		if (!acquired) {
+			metrics.increment("oauth2.grant." + grantType + ".rejected");
+			throw new TemporarilyUnavailableException("Too many concurrent requests for grant type: " + grantType);
+		}
+		try {
+			return doGrant(grantType, tokenRequest);
+		}
+		finally {
+			bulkhead.release();
+		}
+	}
+
+	private OAuth2AccessToken doGrant(String grantType, TokenRequest tokenRequest) {
+		long start = System.nanoTime();
+		List<TokenGranter> granters = grantType == null ? null : grantersByType.get(grantType);
+		if (granters == null) {
+			granters = untypedGranters;
+		}
+		for (TokenGranter granter : granters) {
+			OAuth2AccessToken grant;
+			try {
+				grant = granter.grant(grantType, tokenRequest);
+			}
+			catch (RuntimeException e) {
+				// granters only throw exceptions for the grant types that they support
+				metrics.increment("oauth2.grant." + grantType + ".failure");
+				throw e;
+			}
 			if (grant!=null) {
+				metrics.recordTime("oauth2.grant." + grantType, System.nanoTime() - start);
 				return grant;
 			}
 		}
+		// not per grant type, since the value comes from the client
+		metrics.increment("oauth2.grant.unsupported");
 		return null;
 	}
 
@@ -1,13 +1,16 @@
 package org.springframework.security.oauth2.provider;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.util.CanonicalSets;
 
 /**
  * Represents a stored authorization or token request. Used as part of the OAuth2Authentication object to store a
@@ -23,14 +26,15 @@ public class OAuth2Request extends BaseRequest implements Serializable {
 	private static final long serialVersionUID = 1L;
 
 	/**
-	 * Resolved resource IDs. This set may change during request processing.
+	 * Resolved resource IDs. The set is unmodifiable and shared with other requests that have the same values.
 	 */
-	private Set<String> resourceIds = new HashSet<String>();
+	private Set<String> resourceIds = Collections.emptySet();
 
 	/**
-	 * Resolved granted authorities for this request. May change during request processing.
+	 * Resolved granted authorities for this request. The collection is unmodifiable and shared with other requests
+	 * that have the same values.
 	 */
-	private Collection<? extends GrantedAuthority> authorities = new HashSet<GrantedAuthority>();
+	private Collection<? extends GrantedAuthority> authorities = Collections.emptySet();
 
 	/**
 	 * Whether the request has been approved by the end user (or other process). This will be altered by the User
@@ -47,9 +51,9 @@ public class OAuth2Request extends BaseRequest implements Serializable {
 	
 	/**
 	 * Resolved requested response types initialized (by the OAuth2RequestFactory) with the response types originally
-	 * requested.
+	 * requested. The set is unmodifiable and shared with other requests that have the same values.
 	 */
-	private Set<String> responseTypes = new HashSet<String>();
+	private Set<String> responseTypes = Collections.emptySet();
 
 	/**
 	 * Extension point for custom processing classes which may wish to store additional information about the OAuth2
@@ -63,16 +67,16 @@ public class OAuth2Request extends BaseRequest implements Serializable {
 		setClientId(clientId);
 		setRequestParameters(requestParameters);
 		setScope(scope);
+		// these sets are shared between requests (and tokens) with the same values, so they are unmodifiable
 		if (resourceIds != null) {
-			this.resourceIds = new HashSet<String>(resourceIds);
+			this.resourceIds = CanonicalSets.intern(resourceIds);
 		}
 		if (authorities != null) {
-			this.authorities = new HashSet<GrantedAuthority>(authorities);
+			this.authorities = CanonicalSets.<GrantedAuthority> intern(authorities);
 		}
 		this.approved = approved;
-		this.resourceIds = resourceIds;
 		if (responseTypes != null) {
-			this.responseTypes = new HashSet<String>(responseTypes);
+			this.responseTypes = CanonicalSets.intern(responseTypes);
 		}
 		this.redirectUri = redirectUri;
 		if (extensionProperties != null) {
@@ -127,6 +131,22 @@ public class OAuth2Request extends BaseRequest implements Serializable {
 				redirectUri, responseTypes, extensions);
 	}
 	
+	/**
+	 * The scopes of a stored request have been validated, so the set is shared with other requests with the same
+	 * scopes.
+	 */
+	@Override
+	protected Set<String> createScope(Collection<String> scope) {
+		return CanonicalSets.intern(scope);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		resourceIds = CanonicalSets.intern(resourceIds);
+		authorities = CanonicalSets.<GrantedAuthority> intern(authorities);
+		responseTypes = CanonicalSets.intern(responseTypes);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -131,9 +131,8 @@ public class ApprovalStoreUserApprovalHandler implements UserApprovalHandler, In
 			logger.debug(builder.toString());
 		}
 
-		// Find the stored approvals for that user and client
-		Collection<Approval> userApprovals = approvalStore.getApprovals(userAuthentication.getName(),
-				clientId);
+		// Find the stored approvals for that user and client (only the requested scopes matter)
+		Collection<Approval> userApprovals = getApprovals(userAuthentication.getName(), clientId, requestedScopes);
 
 		// Look at the scopes and see if they have expired
 		Date today = new Date();
@@ -163,6 +162,19 @@ public class ApprovalStoreUserApprovalHandler implements UserApprovalHandler, In
 
 	}
 
+	private Collection<Approval> getApprovals(String userId, String clientId, Collection<String> scopes) {
+		if (approvalStore instanceof ScopedApprovalStore) {
+			return ((ScopedApprovalStore) approvalStore).getApprovals(userId, clientId, scopes);
+		}
+		Collection<Approval> result = new HashSet<Approval>();
+		for (Approval approval : approvalStore.getApprovals(userId, clientId)) {
+			if (scopes.contains(approval.getScope())) {
+				result.add(approval);
+			}
+		}
+		return result;
+	}
+
 	private Date computeExpiry() {
 		Calendar expiresAt = Calendar.getInstance();
 		if (approvalExpiryInMillis == -1) { // use default of 1 month
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.approval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link ApprovalStore} that keeps the approvals of each user for each client in memory for a short time, so that
+ * repeated authorization requests (and the consent page for clients with many scopes) don't go to the underlying
+ * store every time. The cached approvals of a user for a client are discarded when approvals for them are added or
+ * revoked through this store. Changes made on other nodes (or directly in the underlying store) are only seen when the
+ * cached approvals expire, so keep the {@link #setCacheSeconds(int) cache time} short.
+ *
+ */
+public class CachingApprovalStore implements ApprovalStore {
+
+	private final ApprovalStore approvalStore;
+
+	private final ExpiringCache<List<String>, Collection<Approval>> cache = new ExpiringCache<List<String>, Collection<Approval>>(
+			10000);
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	private int cacheSeconds = 30;
+
+	public CachingApprovalStore(ApprovalStore approvalStore) {
+		Assert.notNull(approvalStore, "ApprovalStore required");
+		this.approvalStore = approvalStore;
+	}
+
+	/**
+	 * The time for which the approvals of a user for a client are cached (default 30).
+	 *
+	 * @param cacheSeconds the number of seconds to set
+	 */
+	public void setCacheSeconds(int cacheSeconds) {
+		this.cacheSeconds = cacheSeconds;
+	}
+
+	/**
+	 * The maximum number of users and clients to cache approvals for (default 10000).
+	 *
+	 * @param maxCacheSize the maximum size to set
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		cache.setMaxSize(maxCacheSize);
+	}
+
+	/**
+	 * Metrics for the cache: counters <code>oauth2.approvals.cache.hit</code> and
+	 * <code>oauth2.approvals.cache.miss</code>.
+	 *
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Discard the cached approvals of a user for a client.
+	 *
+	 * @param userId the user id
+	 * @param clientId the client id
+	 */
+	public void evict(String userId, String clientId) {
+		cache.remove(key(userId, clientId));
+	}
+
+	@Override
+	public boolean addApprovals(Collection<Approval> approvals) {
+		try {
+			return approvalStore.addApprovals(approvals);
+		}
+		finally {
+			evict(approvals);
+		}
+	}
+
+	@Override
+	public boolean revokeApprovals(Collection<Approval> approvals) {
+		try {
+			return approvalStore.revokeApprovals(approvals);
+		}
+		finally {
+			evict(approvals);
+		}
+	}
+
+	@Override
+	public Collection<Approval> getApprovals(String userId, String clientId) {
+		List<String> key = key(userId, clientId);
+		Collection<Approval> cached = cache.get(key);
+		if (cached != null) {
+			metrics.increment("oauth2.approvals.cache.hit");
+			return cached;
+		}
+		metrics.increment("oauth2.approvals.cache.miss");
+		Collection<Approval> approvals = Collections.unmodifiableCollection(new ArrayList<Approval>(
+				approvalStore.getApprovals(userId, clientId)));
+		cache.put(key, approvals, System.currentTimeMillis() + cacheSeconds * 1000L);
+		return approvals;
+	}
+
+	private void evict(Collection<Approval> approvals) {
+		for (Approval approval : approvals) {
+			evict(approval.getUserId(), approval.getClientId());
+		}
+	}
+
+	private static List<String> key(String userId, String clientId) {
+		return Arrays.asList(userId, clientId);
+	}
+
+}
@@ -20,8 +20,11 @@ import static org.springframework.security.oauth2.provider.approval.Approval.App
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -30,17 +33,19 @@ import javax.sql.DataSource;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.oauth2.provider.approval.Approval.ApprovalStatus;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 /**
  * @author Dave Syer
  * 
  */
-public class JdbcApprovalStore implements ApprovalStore {
+public class JdbcApprovalStore implements ScopedApprovalStore {
 
 	private final JdbcTemplate jdbcTemplate;
 
@@ -64,6 +69,8 @@ public class JdbcApprovalStore implements ApprovalStore {
 
 	private static final String DEFAULT_GET_APPROVAL_SQL = String.format("select %s from %s " + WHERE_KEY, FIELDS, TABLE_NAME);
 
+	private static final String DEFAULT_GET_APPROVAL_BY_SCOPE_SQL = DEFAULT_GET_APPROVAL_SQL + " and scope in (%s)";
+
 	private static final String DEFAULT_DELETE_APPROVAL_SQL = String.format("delete from %s " + WHERE_KEY_AND_SCOPE,
 			TABLE_NAME);
 
@@ -76,6 +83,10 @@ public class JdbcApprovalStore implements ApprovalStore {
 
 	private  String findApprovalStatement = DEFAULT_GET_APPROVAL_SQL;
 
+	private String findApprovalByScopeStatement = DEFAULT_GET_APPROVAL_BY_SCOPE_SQL;
+
+	private String upsertApprovalStatement;
+
 	private String deleteApprovalStatment = DEFAULT_DELETE_APPROVAL_SQL;
 
 	private String expireApprovalStatement = DEFAULT_EXPIRE_APPROVAL_STATEMENT;
@@ -95,10 +106,36 @@ public class JdbcApprovalStore implements ApprovalStore {
 		this.addApprovalStatement = addApprovalStatement;
 	}
 
+	public void setRefreshApprovalStatement(String refreshApprovalStatement) {
+		this.refreshApprovalStatement = refreshApprovalStatement;
+	}
+
+	/**
+	 * A statement that inserts an approval, or updates it if it already exists, so that all the approvals can be added
+	 * in one batch (e.g. a <code>MERGE</code>, or <code>INSERT ... ON DUPLICATE KEY UPDATE</code> in MySQL). The
+	 * parameters are the same as for the add approval statement: expiresAt, status, lastModifiedAt, userId, clientId
+	 * and scope. If it is not set (the default), approvals are added with a batch of updates, followed by a batch of
+	 * inserts for the approvals that didn't exist. The update counts of the statement are not checked (MySQL reports 0
+	 * for a row that didn't change), so only an exception signals a failure.
+	 * 
+	 * @param upsertApprovalStatement the statement to set
+	 */
+	public void setUpsertApprovalStatement(String upsertApprovalStatement) {
+		this.upsertApprovalStatement = upsertApprovalStatement;
+	}
+
 	public void setFindApprovalStatement(String findApprovalStatement) {
 		this.findApprovalStatement = findApprovalStatement;
 	}
 
+	/**
+	 * @param findApprovalByScopeStatement the statement to find the approvals of a user for a client with some scopes,
+	 * with a <code>%s</code> placeholder for the list of scope parameters
+	 */
+	public void setFindApprovalByScopeStatement(String findApprovalByScopeStatement) {
+		this.findApprovalByScopeStatement = findApprovalByScopeStatement;
+	}
+
 	public void setDeleteApprovalStatment(String deleteApprovalStatment) {
 		this.deleteApprovalStatment = deleteApprovalStatment;
 	}
@@ -110,10 +147,32 @@ public class JdbcApprovalStore implements ApprovalStore {
 	@Override
 	public boolean addApprovals(final Collection<Approval> approvals) {
 		logger.debug(String.format("adding approvals: [%s]", approvals));
+		if (approvals.isEmpty()) {
+			return true;
+		}
+		if (upsertApprovalStatement != null) {
+			jdbcTemplate.batchUpdate(upsertApprovalStatement, new ApprovalBatchSetter(approvals));
+			return true;
+		}
 		boolean success = true;
-		for (Approval approval : approvals) {
-			if (!updateApproval(refreshApprovalStatement, approval)) {
-				if (!updateApproval(addApprovalStatement, approval)) {
+		List<Approval> refreshed = new ArrayList<Approval>(approvals);
+		int[] counts = jdbcTemplate.batchUpdate(refreshApprovalStatement, new ApprovalBatchSetter(refreshed));
+		List<Approval> added = new ArrayList<Approval>();
+		for (int i = 0; i < counts.length; i++) {
+			Approval approval = refreshed.get(i);
+			if (counts[i] == Statement.SUCCESS_NO_INFO) {
+				// the driver can't tell whether the approval existed, so fall back to a single update
+				if (!updateApproval(refreshApprovalStatement, approval)) {
+					added.add(approval);
+				}
+			}
+			else if (counts[i] != 1) {
+				added.add(approval);
+			}
+		}
+		if (!added.isEmpty()) {
+			for (int count : jdbcTemplate.batchUpdate(addApprovalStatement, new ApprovalBatchSetter(added))) {
+				if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
 					success = false;
 				}
 			}
@@ -181,17 +240,29 @@ public class JdbcApprovalStore implements ApprovalStore {
 		return jdbcTemplate.query(findApprovalStatement, rowMapper, userName, clientId);
 	}
 
+	/**
+	 * Find the approvals for some scopes with a single query.
+	 */
+	@Override
+	public List<Approval> getApprovals(String userName, String clientId, Collection<String> scopes) {
+		if (scopes.isEmpty()) {
+			return new ArrayList<Approval>();
+		}
+		String sql = String.format(findApprovalByScopeStatement,
+				StringUtils.collectionToCommaDelimitedString(Collections.nCopies(scopes.size(), "?")));
+		List<Object> args = new ArrayList<Object>();
+		args.add(userName);
+		args.add(clientId);
+		args.addAll(scopes);
+		return jdbcTemplate.query(sql, rowMapper, args.toArray());
+	}
+
 	private boolean updateApproval(final String sql, final Approval approval) {
 		logger.debug(String.format("refreshing approval: [%s]", approval));
 		int refreshed = jdbcTemplate.update(sql, new PreparedStatementSetter() {
 			@Override
 			public void setValues(PreparedStatement ps) throws SQLException {
-				ps.setTimestamp(1, new Timestamp(approval.getExpiresAt().getTime()));
-				ps.setString(2, (approval.getStatus() == null ? APPROVED : approval.getStatus()).toString());
-				ps.setTimestamp(3, new Timestamp(approval.getLastUpdatedAt().getTime()));
-				ps.setString(4, approval.getUserId());
-				ps.setString(5, approval.getClientId());
-				ps.setString(6, approval.getScope());
+				JdbcApprovalStore.setValues(ps, approval);
 			}
 		});
 		if (refreshed != 1) {
@@ -200,6 +271,35 @@ public class JdbcApprovalStore implements ApprovalStore {
 		return true;
 	}
 
+	private static void setValues(PreparedStatement ps, Approval approval) throws SQLException {
+		ps.setTimestamp(1, new Timestamp(approval.getExpiresAt().getTime()));
+		ps.setString(2, (approval.getStatus() == null ? APPROVED : approval.getStatus()).toString());
+		ps.setTimestamp(3, new Timestamp(approval.getLastUpdatedAt().getTime()));
+		ps.setString(4, approval.getUserId());
+		ps.setString(5, approval.getClientId());
+		ps.setString(6, approval.getScope());
+	}
+
+	private static class ApprovalBatchSetter implements BatchPreparedStatementSetter {
+
+		private final List<Approval> approvals;
+
+		public ApprovalBatchSetter(Collection<Approval> approvals) {
+			this.approvals = new ArrayList<Approval>(approvals);
+		}
+
+		@Override
+		public void setValues(PreparedStatement ps, int i) throws SQLException {
+			JdbcApprovalStore.setValues(ps, approvals.get(i));
+		}
+
+		@Override
+		public int getBatchSize() {
+			return approvals.size();
+		}
+
+	}
+
 	private static class AuthorizationRowMapper implements RowMapper<Approval> {
 
 		@Override
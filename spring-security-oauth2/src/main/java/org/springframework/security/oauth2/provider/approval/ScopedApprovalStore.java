@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.approval;
+
+import java.util.Collection;
+
+/**
+ * Optional extension of {@link ApprovalStore} for stores that can look up the approvals for some scopes more cheaply
+ * than all the approvals of a user for a client (e.g. in a single query). The {@link ApprovalStoreUserApprovalHandler}
+ * filters the approvals itself for stores that don't implement it.
+ */
+public interface ScopedApprovalStore extends ApprovalStore {
+
+	/**
+	 * @param userId the user id
+	 * @param clientId the client id
+	 * @param scopes the scopes of interest
+	 * @return the approvals of the user for the client that have one of the scopes provided
+	 */
+	Collection<Approval> getApprovals(String userId, String clientId, Collection<String> scopes);
+
+}
@@ -24,6 +24,8 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.approval.Approval.ApprovalStatus;
 import org.springframework.security.oauth2.provider.token.AuthorizationServerTokenServices;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.RevocationIndex;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 
 /**
@@ -40,6 +42,8 @@ public class TokenApprovalStore implements ApprovalStore {
 
 	private TokenStore store;
 
+	private RevocationIndex revocationIndex;
+
 	/**
 	 * @param store the token store to set
 	 */
@@ -47,6 +51,16 @@ public class TokenApprovalStore implements ApprovalStore {
 		this.store = store;
 	}
 
+	/**
+	 * An index to record the revoked tokens in, when resource servers verify JWT tokens themselves (see
+	 * {@link DefaultTokenServices#setRevocationIndex(RevocationIndex)}, which should get the same index).
+	 * 
+	 * @param revocationIndex the revocation index to set
+	 */
+	public void setRevocationIndex(RevocationIndex revocationIndex) {
+		this.revocationIndex = revocationIndex;
+	}
+
 	/**
 	 * This implementation is a no-op. We assume that the {@link TokenStore} is populated elsewhere, by (for example) a
 	 * token services instance that knows more about granted tokens than we could possibly infer from the approvals.
@@ -73,6 +87,9 @@ public class TokenApprovalStore implements ApprovalStore {
 				if (authentication != null
 						&& approval.getClientId().equals(authentication.getOAuth2Request().getClientId())) {
 					store.removeAccessToken(token);
+					if (revocationIndex != null) {
+						revocationIndex.revoke(token);
+					}
 				}
 			}
 		}
@@ -22,6 +22,8 @@ import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedExc
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.util.Assert;
 
@@ -37,6 +39,8 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 
 	private String resourceId;
 
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
 	public void setResourceId(String resourceId) {
 		this.resourceId = resourceId;
 	}
@@ -48,6 +52,17 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 		this.tokenServices = tokenServices;
 	}
 
+	/**
+	 * Metrics for the authentication of resource requests: a timer <code>oauth2.resource.authenticate</code>, and
+	 * counters for the reasons that tokens are rejected (<code>oauth2.resource.authenticate.invalid</code> and
+	 * <code>oauth2.resource.authenticate.wrong_resource_id</code>).
+	 * 
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
 	public void afterPropertiesSet() {
 		Assert.state(tokenServices != null, "TokenServices are required");
 	}
@@ -66,19 +81,34 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 	 */
 	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
 
-		String token = (String) authentication.getPrincipal();
-		OAuth2Authentication auth = tokenServices.loadAuthentication(token);
-		if (auth == null) {
-			throw new InvalidTokenException("Invalid token: " + token);
-		}
+		long start = System.nanoTime();
+		try {
+			String token = (String) authentication.getPrincipal();
+			OAuth2Authentication auth;
+			try {
+				auth = tokenServices.loadAuthentication(token);
+			}
+			catch (InvalidTokenException e) {
+				metrics.increment("oauth2.resource.authenticate.invalid");
+				throw e;
+			}
+			if (auth == null) {
+				metrics.increment("oauth2.resource.authenticate.invalid");
+				throw new InvalidTokenException("Invalid token: " + token);
+			}
 
-		Collection<String> resourceIds = auth.getOAuth2Request().getResourceIds();
-		if (resourceId != null && resourceIds != null && !resourceIds.isEmpty() && !resourceIds.contains(resourceId)) {
-			throw new OAuth2AccessDeniedException("Invalid token does not contain resource id (" + resourceId + ")");
-		}
+			Collection<String> resourceIds = auth.getOAuth2Request().getResourceIds();
+			if (resourceId != null && resourceIds != null && !resourceIds.isEmpty() && !resourceIds.contains(resourceId)) {
+				metrics.increment("oauth2.resource.authenticate.wrong_resource_id");
+				throw new OAuth2AccessDeniedException("Invalid token does not contain resource id (" + resourceId + ")");
+			}
 
-		auth.setDetails(authentication.getDetails());
-		return auth;
+			auth.setDetails(authentication.getDetails());
+			return auth;
+		}
+		finally {
+			metrics.recordTime("oauth2.resource.authenticate", System.nanoTime() - start);
+		}
 
 	}
 
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.client;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link PasswordEncoder} for client secrets that remembers successful matches for a short time, so that a client
+ * that authenticates many times (e.g. at the token endpoint) only pays the cost of a slow encoder such as BCrypt the
+ * first time. Use it as the password encoder of the authentication provider for the
+ * {@link ClientDetailsUserDetailsService}, wrapping the encoder used to store the secrets, e.g.
+ * </p>
+ *
+ * <pre>
+ * &lt;authentication-provider user-service-ref="clientDetailsUserService"&gt;
+ *   &lt;password-encoder ref="cachingPasswordEncoder" /&gt;
+ * &lt;/authentication-provider&gt;
+ * </pre>
+ *
+ * <p>
+ * Only successful matches are cached, keyed by an HMAC (with a random key held in memory) of the stored and the
+ * presented secret, so the raw secrets are never kept. Because the stored (encoded) secret is part of the key, a cached
+ * match no longer applies once the secret of the client is updated, and a client that is removed can't be loaded to be
+ * authenticated at all.
+ * </p>
+ *
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final PasswordEncoder passwordEncoder;
+
+	private final ExpiringCache<String, Boolean> matches = new ExpiringCache<String, Boolean>(10000);
+
+	private final SecretKeySpec key;
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	private int cacheSeconds = 300;
+
+	public CachingPasswordEncoder(PasswordEncoder passwordEncoder) {
+		Assert.notNull(passwordEncoder, "PasswordEncoder required");
+		this.passwordEncoder = passwordEncoder;
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		this.key = new SecretKeySpec(bytes, ALGORITHM);
+	}
+
+	/**
+	 * The time for which a successful match is remembered (default 300).
+	 *
+	 * @param cacheSeconds the number of seconds to set
+	 */
+	public void setCacheSeconds(int cacheSeconds) {
+		this.cacheSeconds = cacheSeconds;
+	}
+
+	/**
+	 * The maximum number of matches to remember (default 10000). When the cache is full, expired matches are discarded
+	 * (at most once a second), and if it is still full other matches are evicted to make room.
+	 *
+	 * @param maxCacheSize the maximum number of matches to set
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		matches.setMaxSize(maxCacheSize);
+	}
+
+	/**
+	 * Metrics for the cache: counters <code>oauth2.client.secret.cache.hit</code> and
+	 * <code>oauth2.client.secret.cache.miss</code>.
+	 *
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Forget all the cached matches.
+	 */
+	public void clear() {
+		matches.clear();
+	}
+
+	public String encode(CharSequence rawPassword) {
+		return passwordEncoder.encode(rawPassword);
+	}
+
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		if (rawPassword == null || encodedPassword == null) {
+			return passwordEncoder.matches(rawPassword, encodedPassword);
+		}
+		String cacheKey = cacheKey(rawPassword, encodedPassword);
+		if (matches.get(cacheKey) != null) {
+			metrics.increment("oauth2.client.secret.cache.hit");
+			return true;
+		}
+		metrics.increment("oauth2.client.secret.cache.miss");
+		boolean result = passwordEncoder.matches(rawPassword, encodedPassword);
+		if (result) {
+			matches.put(cacheKey, Boolean.TRUE, System.currentTimeMillis() + cacheSeconds * 1000L);
+		}
+		return result;
+	}
+
+	private String cacheKey(CharSequence rawPassword, String encodedPassword) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			byte[] encoded = encodedPassword.getBytes("UTF-8");
+			// prefix the length so that the two values can't run into each other
+			mac.update(ByteBuffer.allocate(4).putInt(encoded.length).array());
+			mac.update(encoded);
+			return new String(Hex.encode(mac.doFinal(rawPassword.toString().getBytes("UTF-8"))));
+		}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 algorithm not available.  Fatal (should be in the JDK).");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+/**
+ * <p>
+ * Asynchronous version of the {@link TokenEndpoint}. Token requests are handled in the same way, but on a thread from
+ * the {@link #setAsyncExecutor(AsyncTaskExecutor) executor} provided, so that the servlet container thread is released
+ * while the grant is processed (e.g. while a password is checked, or tokens are stored). Requires a Servlet 3.0
+ * container, and <code>async-supported</code> on the dispatcher servlet and on every filter in front of it (including
+ * the Spring Security filter chain).
+ * </p>
+ *
+ * <p>
+ * Don't map the Spring Security filter chain to the <code>ASYNC</code> dispatcher type. The client is authenticated
+ * once on the original request, and its security context is handed to the executor thread by this endpoint. Spring
+ * Security 3.1 doesn't know about async dispatches, so it would run the whole chain again when the result is
+ * dispatched, authenticating the client a second time (and doubling the cost of its password encoder).
+ * </p>
+ *
+ * <p>
+ * The token endpoint that does the work must not be registered as a bean in its own right (otherwise both endpoints
+ * would be mapped to <code>/oauth/token</code>), so declare it as an inner bean. The security context of the request
+ * is made available to the token granters on the executor thread. On JDK 21 or later the executor can start a
+ * virtual thread for each request, e.g.
+ * <code>new ConcurrentTaskExecutor(Executors.newVirtualThreadPerTaskExecutor())</code>.
+ * </p>
+ *
+ */
+@FrameworkEndpoint
+@RequestMapping(value = "/oauth/token")
+public class AsyncTokenEndpoint {
+
+	private final TokenEndpoint tokenEndpoint;
+
+	private AsyncTaskExecutor asyncExecutor;
+
+	private Long asyncTimeout;
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	public AsyncTokenEndpoint(TokenEndpoint tokenEndpoint) {
+		Assert.notNull(tokenEndpoint, "TokenEndpoint required");
+		this.tokenEndpoint = tokenEndpoint;
+	}
+
+	/**
+	 * The executor for token requests. If none is provided the default executor of the Spring MVC async support is
+	 * used.
+	 *
+	 * @param asyncExecutor the executor to set
+	 */
+	public void setAsyncExecutor(AsyncTaskExecutor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * The timeout for token requests in milliseconds. If none is provided the default timeout of the Spring MVC async
+	 * support (or the servlet container) applies.
+	 *
+	 * @param asyncTimeout the timeout to set
+	 */
+	public void setAsyncTimeout(Long asyncTimeout) {
+		this.asyncTimeout = asyncTimeout;
+	}
+
+	/**
+	 * Metrics for the asynchronous token endpoint: a timer <code>oauth2.endpoint.token.queue</code> for the time
+	 * between a request arriving and an executor thread picking it up.
+	 *
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	@RequestMapping
+	public WebAsyncTask<ResponseEntity<OAuth2AccessToken>> getAccessToken(final Principal principal,
+			@RequestParam final Map<String, String> parameters) {
+		final SecurityContext context = SecurityContextHolder.getContext();
+		final long submitted = System.nanoTime();
+		Callable<ResponseEntity<OAuth2AccessToken>> callable = new Callable<ResponseEntity<OAuth2AccessToken>>() {
+			public ResponseEntity<OAuth2AccessToken> call() throws Exception {
+				metrics.recordTime("oauth2.endpoint.token.queue", System.nanoTime() - submitted);
+				SecurityContext original = SecurityContextHolder.getContext();
+				SecurityContextHolder.setContext(context);
+				try {
+					return tokenEndpoint.getAccessToken(principal, parameters);
+				}
+				finally {
+					SecurityContextHolder.setContext(original);
+				}
+			}
+		};
+		return new WebAsyncTask<ResponseEntity<OAuth2AccessToken>>(asyncTimeout, asyncExecutor, callable);
+	}
+
+	@ExceptionHandler(ClientRegistrationException.class)
+	public ResponseEntity<OAuth2Exception> handleClientRegistrationException(Exception e) throws Exception {
+		return tokenEndpoint.handleClientRegistrationException(e);
+	}
+
+	@ExceptionHandler(OAuth2Exception.class)
+	public ResponseEntity<OAuth2Exception> handleException(Exception e) throws Exception {
+		return tokenEndpoint.handleException(e);
+	}
+
+}
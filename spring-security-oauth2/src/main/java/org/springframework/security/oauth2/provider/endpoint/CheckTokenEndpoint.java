@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.BatchResourceServerTokenServices;
+import org.springframework.security.oauth2.provider.token.BatchTokenUtils;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * <p>
+ * Endpoint for resource servers (or gateways in front of them) that need to check access tokens issued by the
+ * authorization server. A single token is checked at <code>/oauth/check_token</code>, and the response is its claims
+ * as rendered by the {@link AccessTokenConverter} (e.g. <code>client_id</code>, <code>scope</code>, <code>aud</code>,
+ * <code>exp</code>, <code>user_name</code> and <code>authorities</code>), or an <code>invalid_token</code> error.
+ * </p>
+ *
+ * <p>
+ * Several tokens can be checked in one request at <code>/oauth/check_tokens</code> by repeating the <code>token</code>
+ * parameter, and they are all read with a single call to
+ * {@link BatchResourceServerTokenServices#readAccessTokens(java.util.Collection)} (or two calls per token if the
+ * token services don't support batches). The response maps each valid token value to the same claims as above, and
+ * tokens that are invalid or expired are left out. A single token is read the same way, so that token services that
+ * support batches load the token and its authentication with one lookup.
+ * </p>
+ *
+ * <p>
+ * The endpoint should only be accessible to authenticated clients.
+ * </p>
+ *
+ */
+@FrameworkEndpoint
+public class CheckTokenEndpoint {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final ResourceServerTokenServices resourceServerTokenServices;
+
+	private AccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+
+	private WebResponseExceptionTranslator exceptionTranslator = new DefaultWebResponseExceptionTranslator();
+
+	private int maxTokens = 100;
+
+	public CheckTokenEndpoint(ResourceServerTokenServices resourceServerTokenServices) {
+		Assert.notNull(resourceServerTokenServices, "ResourceServerTokenServices required");
+		this.resourceServerTokenServices = resourceServerTokenServices;
+	}
+
+	/**
+	 * @param accessTokenConverter the converter used to render the claims of each token
+	 */
+	public void setAccessTokenConverter(AccessTokenConverter accessTokenConverter) {
+		this.accessTokenConverter = accessTokenConverter;
+	}
+
+	/**
+	 * @param exceptionTranslator the translator for errors (e.g. too many tokens)
+	 */
+	public void setExceptionTranslator(WebResponseExceptionTranslator exceptionTranslator) {
+		this.exceptionTranslator = exceptionTranslator;
+	}
+
+	/**
+	 * The maximum number of tokens that can be checked in one request (default 100).
+	 *
+	 * @param maxTokens the maximum number of tokens to set
+	 */
+	public void setMaxTokens(int maxTokens) {
+		this.maxTokens = maxTokens;
+	}
+
+	@RequestMapping(value = "/oauth/check_token", method = RequestMethod.POST)
+	@ResponseBody
+	public Map<String, ?> checkToken(@RequestParam("token") String value) {
+
+		Map<OAuth2AccessToken, OAuth2Authentication> tokens = BatchTokenUtils.readAccessTokens(
+				resourceServerTokenServices, Collections.singleton(value));
+		if (tokens.isEmpty()) {
+			throw new InvalidTokenException("Token was not recognised or has expired");
+		}
+
+		Map.Entry<OAuth2AccessToken, OAuth2Authentication> entry = tokens.entrySet().iterator().next();
+		return accessTokenConverter.convertAccessToken(entry.getKey(), entry.getValue());
+
+	}
+
+	@RequestMapping(value = "/oauth/check_tokens", method = RequestMethod.POST)
+	@ResponseBody
+	public Map<String, Map<String, ?>> checkTokens(@RequestParam("token") List<String> values) {
+
+		if (values.size() > maxTokens) {
+			throw new InvalidRequestException("Too many tokens: at most " + maxTokens + " can be checked at once");
+		}
+
+		Map<String, Map<String, ?>> result = new LinkedHashMap<String, Map<String, ?>>();
+		for (Map.Entry<OAuth2AccessToken, OAuth2Authentication> entry : BatchTokenUtils.readAccessTokens(
+				resourceServerTokenServices, values).entrySet()) {
+			OAuth2AccessToken token = entry.getKey();
+			result.put(token.getValue(), accessTokenConverter.convertAccessToken(token, entry.getValue()));
+		}
+		return result;
+
+	}
+
+	@ExceptionHandler(OAuth2Exception.class)
+	public ResponseEntity<OAuth2Exception> handleException(Exception e) throws Exception {
+		logger.info("Handling error: " + e.getClass().getSimpleName() + ", " + e.getMessage());
+		return exceptionTranslator.translate(e);
+	}
+
+}
@@ -73,7 +73,7 @@ public class DefaultRedirectResolver implements RedirectResolver {
 		Set<String> redirectUris = client.getRegisteredRedirectUri();
 
 		if (redirectUris != null && !redirectUris.isEmpty()) {
-			return obtainMatchingRedirect(redirectUris, requestedRedirect);
+			return obtainMatchingRedirect(client, redirectUris, requestedRedirect);
 		}
 		else if (StringUtils.hasText(requestedRedirect)) {
 			return requestedRedirect;
@@ -139,23 +139,40 @@ public class DefaultRedirectResolver implements RedirectResolver {
 	/**
 	 * Attempt to match one of the registered URIs to the that of the requested one.
 	 * 
+	 * @param client the client requesting the redirect
 	 * @param redirectUris the set of the registered URIs to try and find a match. This cannot be null or empty.
 	 * @param requestedRedirect the URI used as part of the request
 	 * @return the matching URI
 	 * @throws RedirectMismatchException if no match was found
 	 */
-	private String obtainMatchingRedirect(Set<String> redirectUris, String requestedRedirect) {
+	private String obtainMatchingRedirect(ClientDetails client, Set<String> redirectUris, String requestedRedirect) {
 		Assert.notEmpty(redirectUris, "Redirect URIs cannot be empty");
 
 		if (redirectUris.size() == 1 && requestedRedirect == null) {
 			return redirectUris.iterator().next();
 		}
-		for (String redirectUri : redirectUris) {
-			if (requestedRedirect != null && redirectMatches(requestedRedirect, redirectUri)) {
-				return requestedRedirect;
-			}
+		if (requestedRedirect != null && matchesAnyRedirect(client, redirectUris, requestedRedirect)) {
+			return requestedRedirect;
 		}
 		throw new RedirectMismatchException("Invalid redirect: " + requestedRedirect
 				+ " does not match one of the registered values: " + redirectUris.toString());
 	}
+
+	/**
+	 * Whether the requested redirect URI matches one of the registered values. This implementation tries each of them
+	 * in turn with {@link #redirectMatches(String, String)}.
+	 * 
+	 * @param client the client requesting the redirect
+	 * @param redirectUris the set of the registered URIs (not empty)
+	 * @param requestedRedirect the URI used as part of the request (not null)
+	 * @return true if one of the registered URIs matches
+	 */
+	protected boolean matchesAnyRedirect(ClientDetails client, Set<String> redirectUris, String requestedRedirect) {
+		for (String redirectUri : redirectUris) {
+			if (redirectMatches(requestedRedirect, redirectUri)) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
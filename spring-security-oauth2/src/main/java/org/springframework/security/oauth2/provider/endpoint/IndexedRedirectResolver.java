@@ -0,0 +1,192 @@
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+/**
+ * A redirect resolver that matches redirect URIs in the same way as {@link DefaultRedirectResolver}, but parses the
+ * registered redirect URIs of each client only once, and indexes them by host so that the time taken to match a
+ * request does not grow with the number of registered values. The index for a client is cached by client id, together
+ * with the set of registered redirect URIs it was built from. While the client details return that same set (e.g. from
+ * an {@link org.springframework.security.oauth2.provider.InMemoryClientDetailsService}) the index is used without
+ * looking at the registered values at all. A different set (e.g. from a client details service that loads the client
+ * for every request) is compared with the indexed values, and the index is rebuilt if they have changed. A set that is
+ * modified in place is not noticed: discard the index with {@link #evict(String)} in that case.
+ *
+ * <p>
+ * Because the matching is done with the index, overriding {@link #redirectMatches(String, String)} or
+ * {@link #hostMatches(String, String)} has no effect in this implementation.
+ * </p>
+ *
+ */
+public class IndexedRedirectResolver extends DefaultRedirectResolver {
+
+	private final ConcurrentMap<String, RedirectIndex> indexes = new ConcurrentHashMap<String, RedirectIndex>();
+
+	private boolean matchSubdomains = true;
+
+	@Override
+	public void setMatchSubdomains(boolean matchSubdomains) {
+		super.setMatchSubdomains(matchSubdomains);
+		this.matchSubdomains = matchSubdomains;
+	}
+
+	/**
+	 * Discard the cached redirect URIs of a client, e.g. when it is removed.
+	 *
+	 * @param clientId the id of the client
+	 */
+	public void evict(String clientId) {
+		indexes.remove(clientId);
+	}
+
+	@Override
+	protected boolean matchesAnyRedirect(ClientDetails client, Set<String> redirectUris, String requestedRedirect) {
+		return getIndex(client.getClientId(), redirectUris).matches(requestedRedirect, matchSubdomains);
+	}
+
+	private RedirectIndex getIndex(String clientId, Set<String> redirectUris) {
+		if (clientId == null) {
+			return new RedirectIndex(redirectUris);
+		}
+		RedirectIndex index = indexes.get(clientId);
+		if (index != null && index.source == redirectUris) {
+			return index;
+		}
+		if (index == null || !index.redirectUris.equals(redirectUris)) {
+			index = new RedirectIndex(redirectUris);
+			indexes.put(clientId, index);
+		}
+		else {
+			index.source = redirectUris;
+		}
+		return index;
+	}
+
+	/**
+	 * The registered redirect URIs of a client, in a trie keyed by the characters of the host name from last to first,
+	 * so that all the registered hosts that the requested host ends with are found in one pass over its name.
+	 */
+	private static class RedirectIndex {
+
+		private final Set<String> redirectUris;
+
+		private final HostNode hosts = new HostNode();
+
+		// the set the index was last checked against, so that the same set is recognized without comparing the values
+		private volatile Set<String> source;
+
+		public RedirectIndex(Set<String> redirectUris) {
+			this.source = redirectUris;
+			this.redirectUris = new HashSet<String>(redirectUris);
+			for (String redirectUri : redirectUris) {
+				try {
+					URL url = new URL(redirectUri);
+					HostNode node = hosts;
+					String host = url.getHost();
+					for (int i = host.length() - 1; i >= 0; i--) {
+						node = node.getOrAddChild(host.charAt(i));
+					}
+					node.add(url.getProtocol(), url.getPath());
+				}
+				catch (MalformedURLException e) {
+					// can only be matched exactly
+				}
+			}
+		}
+
+		public boolean matches(String requestedRedirect, boolean matchSubdomains) {
+			if (redirectUris.contains(requestedRedirect)) {
+				return true;
+			}
+			URL requested;
+			try {
+				requested = new URL(requestedRedirect);
+			}
+			catch (MalformedURLException e) {
+				return false;
+			}
+			String protocol = requested.getProtocol();
+			String host = requested.getHost();
+			String path = requested.getPath();
+			HostNode node = hosts;
+			for (int i = host.length();; i--) {
+				if ((matchSubdomains || i == 0) && node.matches(protocol, path)) {
+					return true;
+				}
+				if (i == 0) {
+					return false;
+				}
+				node = node.getChild(host.charAt(i - 1));
+				if (node == null) {
+					return false;
+				}
+			}
+		}
+
+	}
+
+	private static class HostNode {
+
+		private char[] keys = new char[0];
+
+		private HostNode[] children = new HostNode[0];
+
+		private List<String> protocols;
+
+		private List<String> paths;
+
+		public HostNode getChild(char key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		public HostNode getOrAddChild(char key) {
+			HostNode child = getChild(key);
+			if (child == null) {
+				child = new HostNode();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				keys[keys.length - 1] = key;
+				children = Arrays.copyOf(children, children.length + 1);
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+
+		public void add(String protocol, String path) {
+			if (protocols == null) {
+				protocols = new ArrayList<String>();
+				paths = new ArrayList<String>();
+			}
+			protocols.add(protocol);
+			paths.add(path);
+		}
+
+		public boolean matches(String protocol, String path) {
+			if (protocols == null) {
+				return false;
+			}
+			for (int i = 0; i < protocols.size(); i++) {
+				if (protocols.get(i).equals(protocol) && path.startsWith(paths.get(i))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.oauth2.provider.token.RevocationIndex;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * <p>
+ * Endpoint for resource servers that verify JWT access tokens themselves, to keep up with the tokens revoked on the
+ * authorization server. A request to <code>/oauth/revocations</code> with the <code>epoch</code> and
+ * <code>sequence</code> of the previous response returns the ids (<code>jti</code>) of the tokens revoked since then,
+ * mapped to their expiry in seconds, e.g.
+ * </p>
+ *
+ * <pre>
+ * {"epoch":"...","sequence":42,"revoked":{"8f0c...":1378386000}}
+ * </pre>
+ *
+ * <p>
+ * Without those parameters (or if the {@link RevocationIndex} has changed epoch) all the revoked tokens that have not
+ * expired are returned. See <code>RemoteRevocationIndexPoller</code> for the client side.
+ * </p>
+ *
+ * <p>
+ * The index is held in memory, so each node of a clustered authorization server publishes only its own revocations,
+ * with its own epoch. Resource servers should poll each node at its own address, not through a load balancer.
+ * </p>
+ *
+ * <p>
+ * The endpoint should only be accessible to authenticated clients. It is not registered by the
+ * <code>&lt;authorization-server/&gt;</code> namespace element, so declare it as a bean (with the index of the token
+ * services) and secure <code>/oauth/revocations</code> like the token endpoint.
+ * </p>
+ *
+ */
+@FrameworkEndpoint
+public class RevocationIndexEndpoint {
+
+	private final RevocationIndex revocationIndex;
+
+	public RevocationIndexEndpoint(RevocationIndex revocationIndex) {
+		Assert.notNull(revocationIndex, "RevocationIndex required");
+		this.revocationIndex = revocationIndex;
+	}
+
+	@RequestMapping(value = "/oauth/revocations", method = RequestMethod.GET)
+	@ResponseBody
+	public Map<String, ?> getRevocations(@RequestParam(value = "epoch", required = false) String epoch,
+			@RequestParam(value = "sequence", defaultValue = "0") long sequence) {
+
+		RevocationIndex.Changes changes = revocationIndex.getChanges(epoch, sequence);
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("epoch", changes.getEpoch());
+		result.put("sequence", changes.getSequence());
+		result.put("revoked", changes.getRevoked());
+		return result;
+
+	}
+
+}
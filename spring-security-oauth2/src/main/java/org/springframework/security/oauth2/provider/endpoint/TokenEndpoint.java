@@ -38,6 +38,8 @@ import org.springframework.security.oauth2.provider.DefaultOAuth2RequestValidato
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2RequestValidator;
 import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -65,10 +67,22 @@ import org.springframework.web.bind.annotation.RequestParam;
 public class TokenEndpoint extends AbstractEndpoint {
 
 	private OAuth2RequestValidator oAuth2RequestValidator = new DefaultOAuth2RequestValidator();	
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
 	
 	@RequestMapping
 	public ResponseEntity<OAuth2AccessToken> getAccessToken(Principal principal,
 			@RequestParam Map<String, String> parameters) {
+		long start = System.nanoTime();
+		try {
+			return doGetAccessToken(principal, parameters);
+		}
+		finally {
+			metrics.recordTime("oauth2.endpoint.token", System.nanoTime() - start);
+		}
+	}
+
+	private ResponseEntity<OAuth2AccessToken> doGetAccessToken(Principal principal, Map<String, String> parameters) {
 
 		if (!(principal instanceof Authentication)) {
 			throw new InsufficientAuthenticationException(
@@ -133,12 +147,14 @@ public class TokenEndpoint extends AbstractEndpoint {
 
 	@ExceptionHandler(ClientRegistrationException.class)
 	public ResponseEntity<OAuth2Exception> handleClientRegistrationException(Exception e) throws Exception {
+		metrics.increment("oauth2.endpoint.token.error.invalid_client");
 		logger.info("Handling error: " + e.getClass().getSimpleName() + ", " + e.getMessage());
 		return getExceptionTranslator().translate(new BadClientCredentialsException());
 	}
 
 	@ExceptionHandler(OAuth2Exception.class)
 	public ResponseEntity<OAuth2Exception> handleException(Exception e) throws Exception {
+		metrics.increment("oauth2.endpoint.token.error." + ((OAuth2Exception) e).getOAuth2ErrorCode());
 		logger.info("Handling error: " + e.getClass().getSimpleName() + ", " + e.getMessage());
 		return getExceptionTranslator().translate(e);
 	}
@@ -158,6 +174,16 @@ public class TokenEndpoint extends AbstractEndpoint {
 		return "authorization_code".equals(parameters.get("grant_type")) && parameters.get("code") != null;
 	}
 	
+	/**
+	 * Metrics for the token endpoint: a timer <code>oauth2.endpoint.token</code> and a counter for each error returned
+	 * (<code>oauth2.endpoint.token.error.&lt;error code&gt;</code>).
+	 * 
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
 	public void setoAuth2RequestValidator(OAuth2RequestValidator oAuth2RequestValidator) {
 		this.oAuth2RequestValidator = oAuth2RequestValidator;
 	}
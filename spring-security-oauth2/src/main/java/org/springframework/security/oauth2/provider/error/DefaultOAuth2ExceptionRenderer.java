@@ -12,10 +12,15 @@
  */
 package org.springframework.security.oauth2.provider.error;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -32,6 +37,10 @@ import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
 import org.springframework.security.oauth2.http.converter.jaxb.JaxbOAuth2ExceptionMessageConverter;
 import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.client.RestTemplate;
@@ -43,6 +52,16 @@ import org.springframework.web.context.request.ServletWebRequest;
  * (just like regular Spring MVC endpoints). If the caller sends an appropriate Accept header he should get the right
  * result as long as an appropriate message converter is provided.
  * 
+ * <p>
+ * The converter chosen for each type of body and Accept header is remembered, and so is the rendered body of each
+ * {@link OAuth2Exception} (by converter, media type, error code, description and additional information), so that
+ * the same error sent many times (e.g. to a misconfigured client) is only rendered once. This assumes that the message
+ * converters render an exception from these properties alone. At most {@link #setMaxCacheSize(int) maxCacheSize} of
+ * each are remembered, and others are evicted to make room for new ones. Errors whose description usually contains
+ * the value of a token or authorization code (see {@link #isCacheable(OAuth2Exception)}) are never cached, so those
+ * values are not kept in memory and the cache is not flooded with one-off entries.
+ * </p>
+ * 
  * @author Dave Syer
  * 
  */
@@ -52,8 +71,39 @@ public class DefaultOAuth2ExceptionRenderer implements OAuth2ExceptionRenderer {
 
 	private List<HttpMessageConverter<?>> messageConverters = geDefaultMessageConverters();
 
+	private final ExpiringCache<List<Object>, NegotiatedConverter> negotiatedConverters = new ExpiringCache<List<Object>, NegotiatedConverter>(
+			1000);
+
+	private final ExpiringCache<List<Object>, RenderedBody> renderedBodies = new ExpiringCache<List<Object>, RenderedBody>(
+			1000);
+
 	public void setMessageConverters(List<HttpMessageConverter<?>> messageConverters) {
 		this.messageConverters = messageConverters;
+		negotiatedConverters.clear();
+		renderedBodies.clear();
+	}
+
+	/**
+	 * The maximum number of negotiated converters and of rendered errors to remember (default 1000). Set it to 0 to
+	 * negotiate and render every response from scratch.
+	 * 
+	 * @param maxCacheSize the maximum size to set
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		negotiatedConverters.setMaxSize(maxCacheSize);
+		renderedBodies.setMaxSize(maxCacheSize);
+	}
+
+	/**
+	 * Whether the rendered body of an exception may be cached. By default it is, unless it is an
+	 * {@link InvalidTokenException} or {@link InvalidGrantException}, whose descriptions usually contain the token or
+	 * code that was presented.
+	 * 
+	 * @param exception the exception to render
+	 * @return true if the body can be cached
+	 */
+	protected boolean isCacheable(OAuth2Exception exception) {
+		return !(exception instanceof InvalidTokenException || exception instanceof InvalidGrantException);
 	}
 
 	public void handleHttpEntityResponse(HttpEntity<?> responseEntity, ServletWebRequest webRequest) throws Exception {
@@ -82,29 +132,63 @@ public class DefaultOAuth2ExceptionRenderer implements OAuth2ExceptionRenderer {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private void writeWithMessageConverters(Object returnValue, HttpInputMessage inputMessage,
 			HttpOutputMessage outputMessage) throws IOException, HttpMediaTypeNotAcceptableException {
+		NegotiatedConverter negotiated = negotiate(returnValue.getClass(), inputMessage);
+		HttpMessageConverter messageConverter = negotiated.messageConverter;
+		MediaType acceptedMediaType = negotiated.mediaType;
+		if (returnValue instanceof OAuth2Exception && isCacheable((OAuth2Exception) returnValue)) {
+			OAuth2Exception exception = (OAuth2Exception) returnValue;
+			List<Object> key = Arrays.<Object> asList(messageConverter, acceptedMediaType,
+					exception.getOAuth2ErrorCode(), exception.getMessage(),
+					exception.getAdditionalInformation() == null ? null : new HashMap<String, String>(
+							exception.getAdditionalInformation()));
+			RenderedBody rendered = renderedBodies.get(key);
+			if (rendered == null) {
+				BufferedOutputMessage buffer = new BufferedOutputMessage();
+				messageConverter.write(returnValue, acceptedMediaType, buffer);
+				rendered = new RenderedBody(buffer.headers, buffer.body.toByteArray());
+				renderedBodies.put(key, rendered, Long.MAX_VALUE);
+			}
+			for (Map.Entry<String, List<String>> header : rendered.headers.entrySet()) {
+				outputMessage.getHeaders().put(header.getKey(), new ArrayList<String>(header.getValue()));
+			}
+			outputMessage.getBody().write(rendered.body);
+		}
+		else {
+			messageConverter.write(returnValue, acceptedMediaType, outputMessage);
+		}
+		if (logger.isDebugEnabled()) {
+			MediaType contentType = outputMessage.getHeaders().getContentType();
+			if (contentType == null) {
+				contentType = acceptedMediaType;
+			}
+			logger.debug("Written [" + returnValue + "] as \"" + contentType + "\" using [" + messageConverter + "]");
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private NegotiatedConverter negotiate(Class<?> returnValueType, HttpInputMessage inputMessage)
+			throws HttpMediaTypeNotAcceptableException {
+		List<String> accept = inputMessage.getHeaders().get("Accept");
+		List<Object> key = Arrays.<Object> asList(returnValueType, accept);
+		NegotiatedConverter negotiated = negotiatedConverters.get(key);
+		if (negotiated != null) {
+			return negotiated;
+		}
 		List<MediaType> acceptedMediaTypes = inputMessage.getHeaders().getAccept();
 		if (acceptedMediaTypes.isEmpty()) {
 			acceptedMediaTypes = Collections.singletonList(MediaType.ALL);
 		}
 		MediaType.sortByQualityValue(acceptedMediaTypes);
-		Class<?> returnValueType = returnValue.getClass();
-		List<MediaType> allSupportedMediaTypes = new ArrayList<MediaType>();
 		for (MediaType acceptedMediaType : acceptedMediaTypes) {
 			for (HttpMessageConverter messageConverter : messageConverters) {
 				if (messageConverter.canWrite(returnValueType, acceptedMediaType)) {
-					messageConverter.write(returnValue, acceptedMediaType, outputMessage);
-					if (logger.isDebugEnabled()) {
-						MediaType contentType = outputMessage.getHeaders().getContentType();
-						if (contentType == null) {
-							contentType = acceptedMediaType;
-						}
-						logger.debug("Written [" + returnValue + "] as \"" + contentType + "\" using ["
-								+ messageConverter + "]");
-					}
-					return;
+					negotiated = new NegotiatedConverter(messageConverter, acceptedMediaType);
+					negotiatedConverters.put(key, negotiated, Long.MAX_VALUE);
+					return negotiated;
 				}
 			}
 		}
+		List<MediaType> allSupportedMediaTypes = new ArrayList<MediaType>();
 		for (HttpMessageConverter messageConverter : messageConverters) {
 			allSupportedMediaTypes.addAll(messageConverter.getSupportedMediaTypes());
 		}
@@ -128,4 +212,46 @@ public class DefaultOAuth2ExceptionRenderer implements OAuth2ExceptionRenderer {
 		return new ServletServerHttpResponse(servletResponse);
 	}
 
+	private static class NegotiatedConverter {
+
+		private final HttpMessageConverter<?> messageConverter;
+
+		private final MediaType mediaType;
+
+		public NegotiatedConverter(HttpMessageConverter<?> messageConverter, MediaType mediaType) {
+			this.messageConverter = messageConverter;
+			this.mediaType = mediaType;
+		}
+
+	}
+
+	private static class RenderedBody {
+
+		private final HttpHeaders headers;
+
+		private final byte[] body;
+
+		public RenderedBody(HttpHeaders headers, byte[] body) {
+			this.headers = headers;
+			this.body = body;
+		}
+
+	}
+
+	private static class BufferedOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public OutputStream getBody() throws IOException {
+			return body;
+		}
+
+	}
+
 }
@@ -14,6 +14,9 @@ package org.springframework.security.oauth2.provider.expression;
 
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -28,6 +31,18 @@ import org.springframework.security.oauth2.provider.OAuth2Request;
  */
 public abstract class OAuth2ExpressionUtils {
 
+	/**
+	 * Maximum number of distinct scope regular expressions that are compiled and cached.
+	 */
+	private static final int MAX_PATTERNS = 1024;
+
+	/**
+	 * Maximum number of distinct scopes whose result is remembered for each regular expression.
+	 */
+	private static final int MAX_SCOPES_PER_PATTERN = 256;
+
+	private static final ConcurrentMap<String, ScopePattern> patterns = new ConcurrentHashMap<String, ScopePattern>();
+
 	public static boolean clientHasAnyRole(Authentication authentication, String... roles) {
 		if (authentication instanceof OAuth2Authentication) {
 			OAuth2Request clientAuthentication = ((OAuth2Authentication) authentication).getOAuth2Request();
@@ -95,7 +110,7 @@ public abstract class OAuth2ExpressionUtils {
 			OAuth2Request clientAuthentication = ((OAuth2Authentication) authentication).getOAuth2Request();
 			for (String scope : clientAuthentication.getScope()) {
 				for (String regex : scopesRegex) {
-					if (scope.matches(regex)) {
+					if (getScopePattern(regex).matches(scope)) {
 						return true;
 					}
 				}
@@ -105,4 +120,45 @@ public abstract class OAuth2ExpressionUtils {
 		return false;
 	}
 
+	private static ScopePattern getScopePattern(String regex) {
+		ScopePattern pattern = patterns.get(regex);
+		if (pattern == null) {
+			pattern = new ScopePattern(Pattern.compile(regex));
+			if (patterns.size() < MAX_PATTERNS) {
+				ScopePattern existing = patterns.putIfAbsent(regex, pattern);
+				if (existing != null) {
+					pattern = existing;
+				}
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * A compiled scope regular expression, which remembers its result for the scopes it has seen (there are usually
+	 * only a few of them), so that repeated checks don't have to run the regex again.
+	 */
+	private static class ScopePattern {
+
+		private final Pattern pattern;
+
+		private final ConcurrentMap<String, Boolean> results = new ConcurrentHashMap<String, Boolean>();
+
+		public ScopePattern(Pattern pattern) {
+			this.pattern = pattern;
+		}
+
+		public boolean matches(String scope) {
+			Boolean result = results.get(scope);
+			if (result == null) {
+				result = pattern.matcher(scope).matches();
+				if (results.size() < MAX_SCOPES_PER_PATTERN) {
+					results.put(scope, result);
+				}
+			}
+			return result;
+		}
+
+	}
+
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.BatchTokenStore;
+import org.springframework.security.oauth2.provider.token.BatchTokenUtils;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link TokenStore} that times every operation of another token store, with a timer called
+ * <code>oauth2.tokenstore.&lt;operation&gt;</code> for each method. Reads that find nothing are also counted (as
+ * <code>oauth2.tokenstore.&lt;operation&gt;.miss</code>).
+ */
+public class InstrumentedTokenStore implements BatchTokenStore {
+
+	private static final String PREFIX = "oauth2.tokenstore.";
+
+	private final TokenStore delegate;
+
+	private final MetricsRecorder metrics;
+
+	public InstrumentedTokenStore(TokenStore delegate, MetricsRecorder metrics) {
+		Assert.notNull(delegate, "TokenStore required");
+		Assert.notNull(metrics, "MetricsRecorder required");
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+		long start = System.nanoTime();
+		try {
+			return found("readAuthentication", delegate.readAuthentication(token));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readAuthentication", System.nanoTime() - start);
+		}
+	}
+
+	public OAuth2Authentication readAuthentication(String token) {
+		long start = System.nanoTime();
+		try {
+			return found("readAuthentication", delegate.readAuthentication(token));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readAuthentication", System.nanoTime() - start);
+		}
+	}
+
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		long start = System.nanoTime();
+		try {
+			delegate.storeAccessToken(token, authentication);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "storeAccessToken", System.nanoTime() - start);
+		}
+	}
+
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		long start = System.nanoTime();
+		try {
+			return found("readAccessToken", delegate.readAccessToken(tokenValue));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readAccessToken", System.nanoTime() - start);
+		}
+	}
+
+	public void removeAccessToken(OAuth2AccessToken token) {
+		long start = System.nanoTime();
+		try {
+			delegate.removeAccessToken(token);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "removeAccessToken", System.nanoTime() - start);
+		}
+	}
+
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		long start = System.nanoTime();
+		try {
+			delegate.storeRefreshToken(refreshToken, authentication);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "storeRefreshToken", System.nanoTime() - start);
+		}
+	}
+
+	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+		long start = System.nanoTime();
+		try {
+			return found("readRefreshToken", delegate.readRefreshToken(tokenValue));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readRefreshToken", System.nanoTime() - start);
+		}
+	}
+
+	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+		long start = System.nanoTime();
+		try {
+			return found("readAuthenticationForRefreshToken", delegate.readAuthenticationForRefreshToken(token));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readAuthenticationForRefreshToken", System.nanoTime() - start);
+		}
+	}
+
+	public void removeRefreshToken(OAuth2RefreshToken token) {
+		long start = System.nanoTime();
+		try {
+			delegate.removeRefreshToken(token);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "removeRefreshToken", System.nanoTime() - start);
+		}
+	}
+
+	public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+		long start = System.nanoTime();
+		try {
+			delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "removeAccessTokenUsingRefreshToken", System.nanoTime() - start);
+		}
+	}
+
+	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		long start = System.nanoTime();
+		try {
+			return found("getAccessToken", delegate.getAccessToken(authentication));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "getAccessToken", System.nanoTime() - start);
+		}
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		long start = System.nanoTime();
+		try {
+			return delegate.findTokensByUserName(userName);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "findTokensByUserName", System.nanoTime() - start);
+		}
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		long start = System.nanoTime();
+		try {
+			return delegate.findTokensByClientId(clientId);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "findTokensByClientId", System.nanoTime() - start);
+		}
+	}
+
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokenValues) {
+		long start = System.nanoTime();
+		try {
+			return BatchTokenUtils.readAccessTokens(delegate, tokenValues);
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readAccessTokens", System.nanoTime() - start);
+		}
+	}
+
+	public Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(String tokenValue) {
+		long start = System.nanoTime();
+		try {
+			return found("readAccessTokenAndAuthentication", BatchTokenUtils.readAccessTokenAndAuthentication(delegate,
+					tokenValue));
+		}
+		finally {
+			metrics.recordTime(PREFIX + "readAccessTokenAndAuthentication", System.nanoTime() - start);
+		}
+	}
+
+	private <T> T found(String operation, T result) {
+		if (result == null) {
+			metrics.increment(PREFIX + operation + ".miss");
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.metrics;
+
+/**
+ * Strategy for publishing timings and counts from the token lifecycle (token grants, token services, token stores, JWT
+ * signing and resource server authentication) to a metrics system. Metric names are dot separated and start with
+ * <code>oauth2.</code>. Implementations are called on request threads, so they should be fast and thread safe.
+ * 
+ * @see SimpleMetricsRecorder
+ */
+public interface MetricsRecorder {
+
+	/**
+	 * Record the duration of an operation.
+	 * 
+	 * @param name the name of the timer
+	 * @param durationNanos the duration in nanoseconds
+	 */
+	void recordTime(String name, long durationNanos);
+
+	/**
+	 * Count an event.
+	 * 
+	 * @param name the name of the counter
+	 */
+	void increment(String name);
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2013 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.metrics;
+
+/**
+ * A {@link MetricsRecorder} that discards everything. This is the default for all the instrumented components.
+ */
+public class NoOpMetricsRecorder implements MetricsRecorder {
+
+	public static final MetricsRecorder INSTANCE = new NoOpMetricsRecorder();
+
+	public void recordTime(String name, long durationNanos) {
+	}
+
+	public void increment(String name) {
+	}
+
+}
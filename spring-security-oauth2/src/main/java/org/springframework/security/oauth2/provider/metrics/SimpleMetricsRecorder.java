@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * A {@link MetricsRecorder} that keeps the metrics in memory, with a {@link LatencyHistogram} for each timer and a
+ * simple count for each counter. It has no dependencies, and it is annotated so that it can be exposed over JMX with
+ * a Spring <code>MBeanExporter</code> (e.g. <code>&lt;context:mbean-export/&gt;</code>). Timings are reported in
+ * microseconds.
+ */
+@ManagedResource(description = "OAuth2 token lifecycle metrics")
+public class SimpleMetricsRecorder implements MetricsRecorder {
+
+	private final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+	public void recordTime(String name, long durationNanos) {
+		LatencyHistogram timer = timers.get(name);
+		if (timer == null) {
+			timer = new LatencyHistogram();
+			LatencyHistogram existing = timers.putIfAbsent(name, timer);
+			if (existing != null) {
+				timer = existing;
+			}
+		}
+		timer.record(durationNanos / 1000);
+	}
+
+	public void increment(String name) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counter = new AtomicLong();
+			AtomicLong existing = counters.putIfAbsent(name, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * @param name the name of a timer
+	 * @return the timer (or null if nothing has been recorded with that name)
+	 */
+	public LatencyHistogram getTimer(String name) {
+		return timers.get(name);
+	}
+
+	/**
+	 * @param name the name of a counter
+	 * @return the current count (0 if nothing has been recorded with that name)
+	 */
+	public long getCount(String name) {
+		AtomicLong counter = counters.get(name);
+		return counter == null ? 0 : counter.get();
+	}
+
+	@ManagedAttribute(description = "All the counters")
+	public Map<String, Long> getCounters() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	@ManagedAttribute(description = "A summary of all the timers (in microseconds)")
+	public Map<String, String> getTimers() {
+		Map<String, String> result = new TreeMap<String, String>();
+		for (Map.Entry<String, LatencyHistogram> entry : timers.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toString());
+		}
+		return result;
+	}
+
+	@ManagedOperation(description = "The value of a timer (in microseconds) at a percentile")
+	public long getValueAtPercentile(String name, double percentile) {
+		LatencyHistogram timer = timers.get(name);
+		return timer == null ? 0 : timer.getValueAtPercentile(percentile);
+	}
+
+	@ManagedOperation(description = "Reset all the timers and counters")
+	public void reset() {
+		timers.clear();
+		counters.clear();
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Base class for the token stores that keep tokens in a database, keyed by the MD5 digest of the token value, with the
+ * authentication serialized.
+ *
+ * @see JdbcTokenStore
+ * @see ColumnarJdbcTokenStore
+ */
+public abstract class AbstractJdbcTokenStore implements BatchTokenStore {
+
+	protected final JdbcTemplate jdbcTemplate;
+
+	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+	private int batchSize = 100;
+
+	protected AbstractJdbcTokenStore(DataSource dataSource) {
+		Assert.notNull(dataSource, "DataSource required");
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+		this.authenticationKeyGenerator = authenticationKeyGenerator;
+	}
+
+	/**
+	 * The maximum number of tokens to read in one query in {@link #readAccessTokens(Collection)} (default 100).
+	 *
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	protected String extractAuthenticationKey(OAuth2Authentication authentication) {
+		return authenticationKeyGenerator.extractKey(authentication);
+	}
+
+	protected String extractTokenKey(String value) {
+		if (value == null) {
+			return null;
+		}
+		return String.format("%032x", new BigInteger(1, digest(value)));
+	}
+
+	/**
+	 * Run a query for the rows of some tokens, one {@link #setBatchSize(int) batch} at a time.
+	 *
+	 * @param sql the query, with a <code>%s</code> placeholder for the list of parameters in the <code>IN</code> clause
+	 * @param tokenValues the token values (the query gets their keys)
+	 * @param handler the handler for the rows
+	 */
+	protected void queryInBatches(String sql, Collection<String> tokenValues, RowCallbackHandler handler) {
+		List<String> keys = new ArrayList<String>();
+		for (String tokenValue : new LinkedHashSet<String>(tokenValues)) {
+			keys.add(extractTokenKey(tokenValue));
+		}
+		for (int start = 0; start < keys.size(); start += batchSize) {
+			List<String> batch = keys.subList(start, Math.min(start + batchSize, keys.size()));
+			jdbcTemplate.query(
+					String.format(sql,
+							StringUtils.collectionToCommaDelimitedString(Collections.nCopies(batch.size(), "?"))),
+					handler, batch.toArray());
+		}
+	}
+
+	protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
+		return SerializationUtils.serialize(authentication);
+	}
+
+	protected OAuth2Authentication deserializeAuthentication(byte[] authentication) {
+		return SerializationUtils.deserialize(authentication);
+	}
+
+	/**
+	 * @param value a token value
+	 * @return the MD5 digest of the value (the {@link ShardedTokenStore} hashes the same digest)
+	 */
+	static byte[] digest(String value) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
+		}
+
+		try {
+			return digest.digest(value.getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+}
@@ -83,6 +83,13 @@ public abstract class AbstractTokenGranter implements TokenGranter {
 		}
 	}
 
+	/**
+	 * @return the grant type supported by this granter
+	 */
+	public String getGrantType() {
+		return grantType;
+	}
+
 	protected AuthorizationServerTokenServices getTokenServices() {
 		return tokenServices;
 	}
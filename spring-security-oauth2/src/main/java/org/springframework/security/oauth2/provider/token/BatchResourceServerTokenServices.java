@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Optional extension of {@link ResourceServerTokenServices} for token services that can load several tokens more
+ * cheaply than one at a time. Callers that accept any token services use {@link BatchTokenUtils}, which falls back to
+ * loading the tokens one by one from token services that don't implement it.
+ */
+public interface BatchResourceServerTokenServices extends ResourceServerTokenServices {
+
+	/**
+	 * Load the credentials for several access tokens at once. Tokens that are invalid or expired are left out of the
+	 * result instead of causing an exception.
+	 * 
+	 * @param accessTokens The access token values.
+	 * @return The authentications of the valid access tokens, keyed by token value.
+	 */
+	Map<String, OAuth2Authentication> loadAuthentications(Collection<String> accessTokens);
+
+	/**
+	 * Read several access tokens together with their credentials, so that both can be loaded with one lookup. Tokens
+	 * that are invalid or expired are left out of the result instead of causing an exception.
+	 * 
+	 * @param accessTokens The access token values.
+	 * @return The valid access tokens mapped to their authentications.
+	 */
+	Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> accessTokens);
+
+}
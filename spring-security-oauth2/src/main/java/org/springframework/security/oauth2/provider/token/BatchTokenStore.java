@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Optional extension of {@link TokenStore} for stores that can read tokens more cheaply than one call per token and
+ * authentication (e.g. in a single query). Callers that accept any token store use {@link BatchTokenUtils}, which falls back to
+ * reading the tokens one by one from stores that don't implement it.
+ */
+public interface BatchTokenStore extends TokenStore {
+
+	/**
+	 * Read several access tokens at once, together with their authentications.
+	 * 
+	 * @param tokenValues the token values
+	 * @return the tokens that were found (whether or not they have expired) mapped to their authentications
+	 */
+	Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokenValues);
+
+	/**
+	 * Read an access token together with its authentication, which a store may be able to do more cheaply than
+	 * {@link #readAccessToken(String)} followed by {@link #readAuthentication(OAuth2AccessToken)}.
+	 * 
+	 * @param tokenValue the token value
+	 * @return the token (whether or not it has expired) and its authentication, or null if either was not found
+	 */
+	Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(String tokenValue);
+
+}
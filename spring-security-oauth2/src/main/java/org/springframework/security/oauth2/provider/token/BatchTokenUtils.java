@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Batch operations on any {@link TokenStore} or {@link ResourceServerTokenServices}: they use the batch methods of
+ * a {@link BatchTokenStore} or {@link BatchResourceServerTokenServices}, and fall back to one call per token
+ * otherwise.
+ */
+public abstract class BatchTokenUtils {
+
+	/**
+	 * Read several access tokens with their authentications.
+	 * 
+	 * @param tokenStore the token store
+	 * @param tokenValues the token values
+	 * @return the tokens that were found (whether or not they have expired) mapped to their authentications
+	 * @see BatchTokenStore#readAccessTokens(Collection)
+	 */
+	public static Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(TokenStore tokenStore,
+			Collection<String> tokenValues) {
+		if (tokenStore instanceof BatchTokenStore) {
+			return ((BatchTokenStore) tokenStore).readAccessTokens(tokenValues);
+		}
+		Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		for (String tokenValue : tokenValues) {
+			OAuth2AccessToken token = tokenStore.readAccessToken(tokenValue);
+			if (token != null) {
+				OAuth2Authentication authentication = tokenStore.readAuthentication(token);
+				if (authentication != null) {
+					result.put(token, authentication);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read an access token together with its authentication.
+	 * 
+	 * @param tokenStore the token store
+	 * @param tokenValue the token value
+	 * @return the token (whether or not it has expired) and its authentication, or null if either was not found
+	 * @see BatchTokenStore#readAccessTokenAndAuthentication(String)
+	 */
+	public static Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(
+			TokenStore tokenStore, String tokenValue) {
+		if (tokenStore instanceof BatchTokenStore) {
+			return ((BatchTokenStore) tokenStore).readAccessTokenAndAuthentication(tokenValue);
+		}
+		OAuth2AccessToken token = tokenStore.readAccessToken(tokenValue);
+		if (token == null) {
+			return null;
+		}
+		OAuth2Authentication authentication = tokenStore.readAuthentication(token);
+		if (authentication == null) {
+			return null;
+		}
+		return new AbstractMap.SimpleImmutableEntry<OAuth2AccessToken, OAuth2Authentication>(token, authentication);
+	}
+
+	/**
+	 * Load the authentications of several access tokens, leaving out the ones that are invalid or expired. Only an
+	 * {@link InvalidTokenException} marks a token as invalid; other errors are passed on.
+	 * 
+	 * @param tokenServices the token services
+	 * @param accessTokens the access token values
+	 * @return the authentications of the valid access tokens, keyed by token value
+	 * @see BatchResourceServerTokenServices#loadAuthentications(Collection)
+	 */
+	public static Map<String, OAuth2Authentication> loadAuthentications(ResourceServerTokenServices tokenServices,
+			Collection<String> accessTokens) {
+		if (tokenServices instanceof BatchResourceServerTokenServices) {
+			return ((BatchResourceServerTokenServices) tokenServices).loadAuthentications(accessTokens);
+		}
+		Map<String, OAuth2Authentication> result = new LinkedHashMap<String, OAuth2Authentication>();
+		for (String accessToken : accessTokens) {
+			try {
+				OAuth2Authentication authentication = tokenServices.loadAuthentication(accessToken);
+				if (authentication != null) {
+					result.put(accessToken, authentication);
+				}
+			}
+			catch (InvalidTokenException e) {
+				// invalid tokens are left out
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read several access tokens with their authentications, leaving out the ones that are invalid or expired. Token
+	 * services that don't implement {@link BatchResourceServerTokenServices} are called twice per token (to read it
+	 * and to load its authentication). Only an {@link InvalidTokenException} marks a token as invalid; other errors
+	 * are passed on.
+	 * 
+	 * @param tokenServices the token services
+	 * @param accessTokens the access token values
+	 * @return the valid access tokens mapped to their authentications
+	 * @see BatchResourceServerTokenServices#readAccessTokens(Collection)
+	 */
+	public static Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(
+			ResourceServerTokenServices tokenServices, Collection<String> accessTokens) {
+		if (tokenServices instanceof BatchResourceServerTokenServices) {
+			return ((BatchResourceServerTokenServices) tokenServices).readAccessTokens(accessTokens);
+		}
+		Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		for (String accessToken : accessTokens) {
+			OAuth2AccessToken token = tokenServices.readAccessToken(accessToken);
+			if (token == null || token.isExpired()) {
+				continue;
+			}
+			try {
+				OAuth2Authentication authentication = tokenServices.loadAuthentication(accessToken);
+				if (authentication != null) {
+					result.put(token, authentication);
+				}
+			}
+			catch (InvalidTokenException e) {
+				// invalid tokens are left out
+			}
+		}
+		return result;
+	}
+
+}
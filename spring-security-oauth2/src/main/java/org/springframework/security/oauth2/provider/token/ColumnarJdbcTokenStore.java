@@ -0,0 +1,631 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * <p>
+ * Implementation of token services that stores tokens in a database, with the fields of each token in their own
+ * columns instead of a serialized blob. The expiry, scopes, client id and user name of a token can then be used in SQL,
+ * so that expired tokens can be purged ({@link #removeExpiredTokens()}) and the tokens of a client or a user revoked
+ * ({@link #removeTokensByClientId(String)}, {@link #removeTokensByClientIdAndUserName(String, String)}) without reading
+ * them, and tokens are listed without deserializing anything. Only the authentication is still serialized. The default
+ * statements work with this schema (adjust the column types for your database):
+ * </p>
+ *
+ * <pre>
+ * create table oauth_columnar_access_token (
+ *   token_id VARCHAR(256) PRIMARY KEY,
+ *   token_value VARCHAR(4096),
+ *   token_type VARCHAR(256),
+ *   expiration TIMESTAMP,
+ *   scope VARCHAR(1024),
+ *   additional_information VARCHAR(4096),
+ *   authentication_id VARCHAR(256),
+ *   user_name VARCHAR(256),
+ *   client_id VARCHAR(256),
+ *   refresh_token VARCHAR(256),
+ *   refresh_token_value VARCHAR(4096),
+ *   refresh_token_expiration TIMESTAMP,
+ *   authentication LONGVARBINARY
+ * );
+ * create index oauth_columnar_access_token_authentication_id on oauth_columnar_access_token (authentication_id);
+ * create index oauth_columnar_access_token_client_user on oauth_columnar_access_token (client_id, user_name);
+ * create index oauth_columnar_access_token_user_name on oauth_columnar_access_token (user_name);
+ * create index oauth_columnar_access_token_refresh_token on oauth_columnar_access_token (refresh_token);
+ * create index oauth_columnar_access_token_expiration on oauth_columnar_access_token (expiration);
+ *
+ * create table oauth_columnar_refresh_token (
+ *   token_id VARCHAR(256) PRIMARY KEY,
+ *   token_value VARCHAR(4096),
+ *   expiration TIMESTAMP,
+ *   user_name VARCHAR(256),
+ *   client_id VARCHAR(256),
+ *   authentication LONGVARBINARY
+ * );
+ * create index oauth_columnar_refresh_token_client_user on oauth_columnar_refresh_token (client_id, user_name);
+ * create index oauth_columnar_refresh_token_expiration on oauth_columnar_refresh_token (expiration);
+ * </pre>
+ *
+ * <p>
+ * As in the {@link JdbcTokenStore} the primary keys are MD5 digests of the token values. The additional information
+ * of an access token is stored as JSON, so it is read back with the JSON types (see
+ * {@link #deserializeAdditionalInformation(String)}).
+ * </p>
+ *
+ */
+public class ColumnarJdbcTokenStore extends AbstractJdbcTokenStore {
+
+	private static final Log LOG = LogFactory.getLog(ColumnarJdbcTokenStore.class);
+
+	private static final String ACCESS_TOKEN_FIELDS = "token_value, token_type, expiration, scope, additional_information, refresh_token_value, refresh_token_expiration";
+
+	private static final String DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT = "insert into oauth_columnar_access_token (token_id, token_value, token_type, expiration, scope, additional_information, authentication_id, user_name, client_id, refresh_token, refresh_token_value, refresh_token_expiration, authentication) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String DEFAULT_ACCESS_TOKEN_SELECT_STATEMENT = "select token_id, " + ACCESS_TOKEN_FIELDS
+			+ " from oauth_columnar_access_token where token_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_columnar_access_token where token_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT = "select token_id, "
+			+ ACCESS_TOKEN_FIELDS + ", authentication from oauth_columnar_access_token where token_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT = "select token_id, "
+			+ ACCESS_TOKEN_FIELDS + " from oauth_columnar_access_token where authentication_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT = "select token_id, "
+			+ ACCESS_TOKEN_FIELDS + " from oauth_columnar_access_token where user_name = ?";
+
+	private static final String DEFAULT_ACCESS_TOKENS_FROM_CLIENTID_SELECT_STATEMENT = "select token_id, "
+			+ ACCESS_TOKEN_FIELDS + " from oauth_columnar_access_token where client_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKENS_AND_AUTHENTICATIONS_SELECT_STATEMENT = "select token_id, "
+			+ ACCESS_TOKEN_FIELDS + ", authentication from oauth_columnar_access_token where token_id in (%s)";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_STATEMENT = "delete from oauth_columnar_access_token where token_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_FROM_REFRESH_TOKEN_STATEMENT = "delete from oauth_columnar_access_token where refresh_token = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_EXPIRED_STATEMENT = "delete from oauth_columnar_access_token where expiration < ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_FROM_CLIENTID_STATEMENT = "delete from oauth_columnar_access_token where client_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_FROM_CLIENTID_AND_USERNAME_STATEMENT = "delete from oauth_columnar_access_token where client_id = ? and user_name = ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT = "insert into oauth_columnar_refresh_token (token_id, token_value, expiration, user_name, client_id, authentication) values (?, ?, ?, ?, ?, ?)";
+
+	private static final String DEFAULT_REFRESH_TOKEN_SELECT_STATEMENT = "select token_id, token_value, expiration from oauth_columnar_refresh_token where token_id = ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_columnar_refresh_token where token_id = ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_DELETE_STATEMENT = "delete from oauth_columnar_refresh_token where token_id = ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_DELETE_EXPIRED_STATEMENT = "delete from oauth_columnar_refresh_token where expiration < ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_DELETE_FROM_CLIENTID_STATEMENT = "delete from oauth_columnar_refresh_token where client_id = ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_DELETE_FROM_CLIENTID_AND_USERNAME_STATEMENT = "delete from oauth_columnar_refresh_token where client_id = ? and user_name = ?";
+
+	private String insertAccessTokenSql = DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT;
+
+	private String selectAccessTokenSql = DEFAULT_ACCESS_TOKEN_SELECT_STATEMENT;
+
+	private String selectAccessTokenAuthenticationSql = DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT;
+
+	private String selectAccessTokenAndAuthenticationSql = DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT;
+
+	private String selectAccessTokenFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT;
+
+	private String selectAccessTokensFromUserNameSql = DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT;
+
+	private String selectAccessTokensFromClientIdSql = DEFAULT_ACCESS_TOKENS_FROM_CLIENTID_SELECT_STATEMENT;
+
+	private String selectAccessTokensAndAuthenticationsSql = DEFAULT_ACCESS_TOKENS_AND_AUTHENTICATIONS_SELECT_STATEMENT;
+
+	private String deleteAccessTokenSql = DEFAULT_ACCESS_TOKEN_DELETE_STATEMENT;
+
+	private String deleteAccessTokenFromRefreshTokenSql = DEFAULT_ACCESS_TOKEN_DELETE_FROM_REFRESH_TOKEN_STATEMENT;
+
+	private String deleteExpiredAccessTokensSql = DEFAULT_ACCESS_TOKEN_DELETE_EXPIRED_STATEMENT;
+
+	private String deleteAccessTokensFromClientIdSql = DEFAULT_ACCESS_TOKEN_DELETE_FROM_CLIENTID_STATEMENT;
+
+	private String deleteAccessTokensFromClientIdAndUserNameSql = DEFAULT_ACCESS_TOKEN_DELETE_FROM_CLIENTID_AND_USERNAME_STATEMENT;
+
+	private String insertRefreshTokenSql = DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT;
+
+	private String selectRefreshTokenSql = DEFAULT_REFRESH_TOKEN_SELECT_STATEMENT;
+
+	private String selectRefreshTokenAuthenticationSql = DEFAULT_REFRESH_TOKEN_AUTHENTICATION_SELECT_STATEMENT;
+
+	private String deleteRefreshTokenSql = DEFAULT_REFRESH_TOKEN_DELETE_STATEMENT;
+
+	private String deleteExpiredRefreshTokensSql = DEFAULT_REFRESH_TOKEN_DELETE_EXPIRED_STATEMENT;
+
+	private String deleteRefreshTokensFromClientIdSql = DEFAULT_REFRESH_TOKEN_DELETE_FROM_CLIENTID_STATEMENT;
+
+	private String deleteRefreshTokensFromClientIdAndUserNameSql = DEFAULT_REFRESH_TOKEN_DELETE_FROM_CLIENTID_AND_USERNAME_STATEMENT;
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	public ColumnarJdbcTokenStore(DataSource dataSource) {
+		super(dataSource);
+	}
+
+	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		OAuth2AccessToken accessToken = null;
+
+		String key = extractAuthenticationKey(authentication);
+		try {
+			accessToken = jdbcTemplate.queryForObject(selectAccessTokenFromAuthenticationSql,
+					new AccessTokenRowMapper(), key);
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for authentication " + authentication);
+			}
+		}
+
+		if (accessToken != null
+				&& !key.equals(extractAuthenticationKey(readAuthentication(accessToken.getValue())))) {
+			removeAccessToken(accessToken.getValue());
+			// Keep the store consistent (maybe the same user is represented by this authentication but the details have
+			// changed)
+			storeAccessToken(accessToken, authentication);
+		}
+		return accessToken;
+	}
+
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		OAuth2RefreshToken refreshToken = token.getRefreshToken();
+		String refreshTokenValue = refreshToken == null ? null : refreshToken.getValue();
+		Date refreshTokenExpiration = refreshToken instanceof ExpiringOAuth2RefreshToken ? ((ExpiringOAuth2RefreshToken) refreshToken)
+				.getExpiration() : null;
+
+		jdbcTemplate.update(insertAccessTokenSql,
+				new Object[] { extractTokenKey(token.getValue()), token.getValue(), token.getTokenType(),
+						timestamp(token.getExpiration()), OAuth2Utils.formatParameterList(token.getScope()),
+						serializeAdditionalInformation(token.getAdditionalInformation()),
+						extractAuthenticationKey(authentication),
+						authentication.isClientOnly() ? null : authentication.getName(),
+						authentication.getOAuth2Request().getClientId(), extractTokenKey(refreshTokenValue),
+						refreshTokenValue, timestamp(refreshTokenExpiration),
+						new SqlLobValue(serializeAuthentication(authentication)) }, new int[] { Types.VARCHAR,
+						Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+						Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BLOB });
+	}
+
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		OAuth2AccessToken accessToken = null;
+
+		try {
+			accessToken = jdbcTemplate.queryForObject(selectAccessTokenSql, new AccessTokenRowMapper(),
+					extractTokenKey(tokenValue));
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find access token for token " + tokenValue);
+			}
+		}
+
+		return accessToken;
+	}
+
+	/**
+	 * Read the token and its authentication from the same row with one query.
+	 */
+	public Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(String tokenValue) {
+		Map.Entry<OAuth2AccessToken, OAuth2Authentication> result = null;
+		String key = extractTokenKey(tokenValue);
+
+		try {
+			result = jdbcTemplate.queryForObject(selectAccessTokenAndAuthenticationSql,
+					new RowMapper<Map.Entry<OAuth2AccessToken, OAuth2Authentication>>() {
+						public Map.Entry<OAuth2AccessToken, OAuth2Authentication> mapRow(ResultSet rs, int rowNum)
+								throws SQLException {
+							return new AbstractMap.SimpleImmutableEntry<OAuth2AccessToken, OAuth2Authentication>(
+									mapAccessToken(rs), deserializeAuthentication(rs.getBytes(9)));
+						}
+					}, key);
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find access token for token " + tokenValue);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOG.warn("Failed to deserialize authentication for " + tokenValue, e);
+			jdbcTemplate.update(deleteAccessTokenSql, key);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Read the tokens and their authentications with one query for every {@link #setBatchSize(int) batch size} tokens.
+	 * Tokens with an authentication that cannot be deserialized are removed and left out of the result.
+	 */
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokenValues) {
+		final Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		final List<String> unreadable = new ArrayList<String>();
+		queryInBatches(selectAccessTokensAndAuthenticationsSql, tokenValues, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				try {
+					OAuth2AccessToken token = mapAccessToken(rs);
+					OAuth2Authentication authentication = deserializeAuthentication(rs.getBytes(9));
+					result.put(token, authentication);
+				}
+				catch (IllegalArgumentException e) {
+					String key = rs.getString(1);
+					LOG.warn("Failed to deserialize authentication for " + key, e);
+					unreadable.add(key);
+				}
+			}
+		});
+		// not deleted while the result set of the query is still open
+		for (String key : unreadable) {
+			jdbcTemplate.update(deleteAccessTokenSql, key);
+		}
+		return result;
+	}
+
+	public void removeAccessToken(OAuth2AccessToken token) {
+		removeAccessToken(token.getValue());
+	}
+
+	public void removeAccessToken(String tokenValue) {
+		jdbcTemplate.update(deleteAccessTokenSql, extractTokenKey(tokenValue));
+	}
+
+	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+		return readAuthentication(token.getValue());
+	}
+
+	public OAuth2Authentication readAuthentication(String token) {
+		OAuth2Authentication authentication = null;
+
+		try {
+			authentication = jdbcTemplate.queryForObject(selectAccessTokenAuthenticationSql,
+					new RowMapper<OAuth2Authentication>() {
+						public OAuth2Authentication mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return deserializeAuthentication(rs.getBytes(2));
+						}
+					}, extractTokenKey(token));
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find access token for token " + token);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOG.warn("Failed to deserialize authentication for " + token, e);
+			removeAccessToken(token);
+		}
+
+		return authentication;
+	}
+
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		Date expiration = refreshToken instanceof ExpiringOAuth2RefreshToken ? ((ExpiringOAuth2RefreshToken) refreshToken)
+				.getExpiration() : null;
+		jdbcTemplate.update(insertRefreshTokenSql, new Object[] { extractTokenKey(refreshToken.getValue()),
+				refreshToken.getValue(), timestamp(expiration),
+				authentication.isClientOnly() ? null : authentication.getName(),
+				authentication.getOAuth2Request().getClientId(),
+				new SqlLobValue(serializeAuthentication(authentication)) }, new int[] { Types.VARCHAR, Types.VARCHAR,
+				Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.BLOB });
+	}
+
+	public OAuth2RefreshToken readRefreshToken(String token) {
+		OAuth2RefreshToken refreshToken = null;
+
+		try {
+			refreshToken = jdbcTemplate.queryForObject(selectRefreshTokenSql, new RowMapper<OAuth2RefreshToken>() {
+				public OAuth2RefreshToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+					return createRefreshToken(rs.getString(2), rs.getTimestamp(3));
+				}
+			}, extractTokenKey(token));
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find refresh token for token " + token);
+			}
+		}
+
+		return refreshToken;
+	}
+
+	public void removeRefreshToken(OAuth2RefreshToken token) {
+		removeRefreshToken(token.getValue());
+	}
+
+	public void removeRefreshToken(String token) {
+		jdbcTemplate.update(deleteRefreshTokenSql, extractTokenKey(token));
+	}
+
+	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+		return readAuthenticationForRefreshToken(token.getValue());
+	}
+
+	public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
+		OAuth2Authentication authentication = null;
+
+		try {
+			authentication = jdbcTemplate.queryForObject(selectRefreshTokenAuthenticationSql,
+					new RowMapper<OAuth2Authentication>() {
+						public OAuth2Authentication mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return deserializeAuthentication(rs.getBytes(2));
+						}
+					}, extractTokenKey(value));
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find refresh token for token " + value);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOG.warn("Failed to deserialize authentication for " + value, e);
+			removeRefreshToken(value);
+		}
+
+		return authentication;
+	}
+
+	public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+		removeAccessTokenUsingRefreshToken(refreshToken.getValue());
+	}
+
+	public void removeAccessTokenUsingRefreshToken(String refreshToken) {
+		jdbcTemplate.update(deleteAccessTokenFromRefreshTokenSql, new Object[] { extractTokenKey(refreshToken) },
+				new int[] { Types.VARCHAR });
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		return jdbcTemplate.query(selectAccessTokensFromClientIdSql, new AccessTokenRowMapper(), clientId);
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		return jdbcTemplate.query(selectAccessTokensFromUserNameSql, new AccessTokenRowMapper(), userName);
+	}
+
+	/**
+	 * Remove the access tokens and refresh tokens that have expired (tokens without an expiry are kept).
+	 *
+	 * @return the number of tokens removed
+	 */
+	public int removeExpiredTokens() {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		int count = jdbcTemplate.update(deleteExpiredAccessTokensSql, new Object[] { now },
+				new int[] { Types.TIMESTAMP });
+		count += jdbcTemplate.update(deleteExpiredRefreshTokensSql, new Object[] { now },
+				new int[] { Types.TIMESTAMP });
+		LOG.debug(count + " expired tokens removed");
+		return count;
+	}
+
+	/**
+	 * Remove all the access tokens and refresh tokens of a client, e.g. when it is removed.
+	 *
+	 * @param clientId the client id
+	 * @return the number of tokens removed
+	 */
+	public int removeTokensByClientId(String clientId) {
+		return jdbcTemplate.update(deleteAccessTokensFromClientIdSql, clientId)
+				+ jdbcTemplate.update(deleteRefreshTokensFromClientIdSql, clientId);
+	}
+
+	/**
+	 * Remove all the access tokens and refresh tokens that a user granted to a client, e.g. when the user revokes
+	 * their approval.
+	 *
+	 * @param clientId the client id
+	 * @param userName the user name
+	 * @return the number of tokens removed
+	 */
+	public int removeTokensByClientIdAndUserName(String clientId, String userName) {
+		return jdbcTemplate.update(deleteAccessTokensFromClientIdAndUserNameSql, clientId, userName)
+				+ jdbcTemplate.update(deleteRefreshTokensFromClientIdAndUserNameSql, clientId, userName);
+	}
+
+	private final class AccessTokenRowMapper implements RowMapper<OAuth2AccessToken> {
+		public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return mapAccessToken(rs);
+		}
+	}
+
+	private OAuth2AccessToken mapAccessToken(ResultSet rs) throws SQLException {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(rs.getString(2));
+		token.setTokenType(rs.getString(3));
+		token.setExpiration(rs.getTimestamp(4));
+		token.setScope(OAuth2Utils.parseParameterList(rs.getString(5)));
+		String json = rs.getString(6);
+		if (json != null) {
+			token.setAdditionalInformation(deserializeAdditionalInformation(json));
+		}
+		String refreshTokenValue = rs.getString(7);
+		if (refreshTokenValue != null) {
+			token.setRefreshToken(createRefreshToken(refreshTokenValue, rs.getTimestamp(8)));
+		}
+		return token;
+	}
+
+	private OAuth2RefreshToken createRefreshToken(String value, Date expiration) {
+		if (expiration != null) {
+			return new DefaultExpiringOAuth2RefreshToken(value, new Date(expiration.getTime()));
+		}
+		return new DefaultOAuth2RefreshToken(value);
+	}
+
+	private Timestamp timestamp(Date date) {
+		return date == null ? null : new Timestamp(date.getTime());
+	}
+
+	/**
+	 * Write the additional information of an access token as JSON.
+	 *
+	 * @param additionalInformation the additional information
+	 * @return the JSON (null if there is no additional information)
+	 * @throws IllegalArgumentException if a value can't be written as JSON
+	 */
+	protected String serializeAdditionalInformation(Map<String, Object> additionalInformation) {
+		if (additionalInformation == null || additionalInformation.isEmpty()) {
+			return null;
+		}
+		try {
+			return mapper.writeValueAsString(additionalInformation);
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("Could not serialize additional information: " + additionalInformation,
+					e);
+		}
+	}
+
+	/**
+	 * Read the additional information of an access token from JSON. The values come back as the plain JSON types, not
+	 * the ones that were stored: strings, booleans, numbers (<code>Integer</code>, <code>Long</code> or
+	 * <code>Double</code>), lists and maps, so e.g. a <code>Date</code> is read as a <code>Long</code> and any other
+	 * object as a map of its properties. Override this (and {@link #serializeAdditionalInformation(Map)}) if the
+	 * additional information has to keep its types.
+	 *
+	 * @param json the JSON
+	 * @return the additional information
+	 * @throws DataRetrievalFailureException if the JSON can't be read (the token isn't usable)
+	 */
+	protected Map<String, Object> deserializeAdditionalInformation(String json) {
+		try {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> additionalInformation = mapper.readValue(json, Map.class);
+			return additionalInformation;
+		}
+		catch (Exception e) {
+			throw new DataRetrievalFailureException("Could not decode JSON for additional information: " + json, e);
+		}
+	}
+
+	public void setInsertAccessTokenSql(String insertAccessTokenSql) {
+		this.insertAccessTokenSql = insertAccessTokenSql;
+	}
+
+	public void setSelectAccessTokenSql(String selectAccessTokenSql) {
+		this.selectAccessTokenSql = selectAccessTokenSql;
+	}
+
+	public void setSelectAccessTokenAuthenticationSql(String selectAccessTokenAuthenticationSql) {
+		this.selectAccessTokenAuthenticationSql = selectAccessTokenAuthenticationSql;
+	}
+
+	public void setSelectAccessTokenAndAuthenticationSql(String selectAccessTokenAndAuthenticationSql) {
+		this.selectAccessTokenAndAuthenticationSql = selectAccessTokenAndAuthenticationSql;
+	}
+
+	public void setSelectAccessTokenFromAuthenticationSql(String selectAccessTokenFromAuthenticationSql) {
+		this.selectAccessTokenFromAuthenticationSql = selectAccessTokenFromAuthenticationSql;
+	}
+
+	public void setSelectAccessTokensFromUserNameSql(String selectAccessTokensFromUserNameSql) {
+		this.selectAccessTokensFromUserNameSql = selectAccessTokensFromUserNameSql;
+	}
+
+	public void setSelectAccessTokensFromClientIdSql(String selectAccessTokensFromClientIdSql) {
+		this.selectAccessTokensFromClientIdSql = selectAccessTokensFromClientIdSql;
+	}
+
+	/**
+	 * The query used by {@link #readAccessTokens(Collection)}, with a <code>%s</code> placeholder for the list of
+	 * parameters in the <code>IN</code> clause.
+	 *
+	 * @param selectAccessTokensAndAuthenticationsSql the query to set
+	 */
+	public void setSelectAccessTokensAndAuthenticationsSql(String selectAccessTokensAndAuthenticationsSql) {
+		this.selectAccessTokensAndAuthenticationsSql = selectAccessTokensAndAuthenticationsSql;
+	}
+
+	public void setDeleteAccessTokenSql(String deleteAccessTokenSql) {
+		this.deleteAccessTokenSql = deleteAccessTokenSql;
+	}
+
+	public void setDeleteAccessTokenFromRefreshTokenSql(String deleteAccessTokenFromRefreshTokenSql) {
+		this.deleteAccessTokenFromRefreshTokenSql = deleteAccessTokenFromRefreshTokenSql;
+	}
+
+	public void setDeleteExpiredAccessTokensSql(String deleteExpiredAccessTokensSql) {
+		this.deleteExpiredAccessTokensSql = deleteExpiredAccessTokensSql;
+	}
+
+	public void setDeleteAccessTokensFromClientIdSql(String deleteAccessTokensFromClientIdSql) {
+		this.deleteAccessTokensFromClientIdSql = deleteAccessTokensFromClientIdSql;
+	}
+
+	public void setDeleteAccessTokensFromClientIdAndUserNameSql(String deleteAccessTokensFromClientIdAndUserNameSql) {
+		this.deleteAccessTokensFromClientIdAndUserNameSql = deleteAccessTokensFromClientIdAndUserNameSql;
+	}
+
+	public void setInsertRefreshTokenSql(String insertRefreshTokenSql) {
+		this.insertRefreshTokenSql = insertRefreshTokenSql;
+	}
+
+	public void setSelectRefreshTokenSql(String selectRefreshTokenSql) {
+		this.selectRefreshTokenSql = selectRefreshTokenSql;
+	}
+
+	public void setSelectRefreshTokenAuthenticationSql(String selectRefreshTokenAuthenticationSql) {
+		this.selectRefreshTokenAuthenticationSql = selectRefreshTokenAuthenticationSql;
+	}
+
+	public void setDeleteRefreshTokenSql(String deleteRefreshTokenSql) {
+		this.deleteRefreshTokenSql = deleteRefreshTokenSql;
+	}
+
+	public void setDeleteExpiredRefreshTokensSql(String deleteExpiredRefreshTokensSql) {
+		this.deleteExpiredRefreshTokensSql = deleteExpiredRefreshTokensSql;
+	}
+
+	public void setDeleteRefreshTokensFromClientIdSql(String deleteRefreshTokensFromClientIdSql) {
+		this.deleteRefreshTokensFromClientIdSql = deleteRefreshTokensFromClientIdSql;
+	}
+
+	public void setDeleteRefreshTokensFromClientIdAndUserNameSql(String deleteRefreshTokensFromClientIdAndUserNameSql) {
+		this.deleteRefreshTokensFromClientIdAndUserNameSql = deleteRefreshTokensFromClientIdAndUserNameSql;
+	}
+
+}
@@ -13,17 +13,15 @@
 package org.springframework.security.oauth2.provider.token;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.CanonicalSets;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 
@@ -81,7 +79,7 @@ public class DefaultAccessTokenConverter implements AccessTokenConverter {
 		info.remove(CLIENT_ID);
 		info.remove(SCOPE);
 		if (map.containsKey(EXP)) {
-			token.setExpiration(new Date((Integer) map.get(EXP) * 1000L));
+			token.setExpiration(new Date(((Number) map.get(EXP)).longValue() * 1000L));
 		}
 		if (map.containsKey(JTI)) {
 			info.put(JTI, map.get(JTI));
@@ -89,7 +87,7 @@ public class DefaultAccessTokenConverter implements AccessTokenConverter {
 		@SuppressWarnings("unchecked")
 		Collection<String> scope = (Collection<String>) map.get(SCOPE);
 		if (scope != null) {
-			token.setScope(new HashSet<String>(scope));
+			token.setScope(CanonicalSets.intern(scope));
 		}
 		token.setAdditionalInformation(info);
 		return token;
@@ -98,14 +96,12 @@ public class DefaultAccessTokenConverter implements AccessTokenConverter {
 	public OAuth2Authentication extractAuthentication(Map<String, ?> map) {
 		Map<String, String> parameters = new HashMap<String, String>();
 		@SuppressWarnings("unchecked")
-		Set<String> scope = new LinkedHashSet<String>(map.containsKey(SCOPE) ? (Collection<String>) map.get(SCOPE)
-				: Collections.<String>emptySet());
+		Set<String> scope = CanonicalSets.intern((Collection<String>) map.get(SCOPE));
 		Authentication user = userTokenConverter.extractAuthentication(map);
 		String clientId = (String) map.get(CLIENT_ID);
 		parameters.put(CLIENT_ID, clientId);
 		@SuppressWarnings("unchecked")
-		Set<String> resourceIds = new LinkedHashSet<String>(map.containsKey(AUD) ? (Collection<String>) map.get(AUD)
-				: Collections.<String>emptySet());
+		Set<String> resourceIds = CanonicalSets.intern((Collection<String>) map.get(AUD));
 		OAuth2Request request = new OAuth2Request(parameters, clientId, null, true, scope, resourceIds, null, null,
 				null);
 		return new OAuth2Authentication(request, user);
@@ -15,10 +15,20 @@ package org.springframework.security.oauth2.provider.token;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
@@ -28,11 +38,15 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.TemporarilyUnavailableException;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.metrics.InstrumentedTokenStore;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
 import org.springframework.util.Assert;
 
 /**
@@ -47,8 +61,8 @@ import org.springframework.util.Assert;
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class DefaultTokenServices implements AuthorizationServerTokenServices, ResourceServerTokenServices,
-		ConsumerTokenServices, InitializingBean {
+public class DefaultTokenServices implements AuthorizationServerTokenServices, BatchResourceServerTokenServices,
+		ConsumerTokenServices, InitializingBean, DisposableBean {
 
 	private int refreshTokenValiditySeconds = 60 * 60 * 24 * 30; // default 30 days.
 
@@ -64,6 +78,18 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 
 	private TokenEnhancer accessTokenEnhancer;
 
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	private RevocationIndex revocationIndex;
+
+	private int refreshTokenGraceSeconds = 0;
+
+	private final ConcurrentMap<String, Rotation> rotations = new ConcurrentHashMap<String, Rotation>();
+
+	private ScheduledExecutorService cleanupExecutor;
+
+	private boolean ownCleanupExecutor;
+
 	/**
 	 * Initialize these token services. If no random generator is set, one will be created.
 	 */
@@ -71,7 +97,23 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		Assert.notNull(tokenStore, "tokenStore must be set");
 	}
 
+	public void destroy() throws Exception {
+		if (ownCleanupExecutor) {
+			cleanupExecutor.shutdown();
+		}
+	}
+
 	public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
+		long start = System.nanoTime();
+		try {
+			return doCreateAccessToken(authentication);
+		}
+		finally {
+			metrics.recordTime("oauth2.tokens.create", System.nanoTime() - start);
+		}
+	}
+
+	private OAuth2AccessToken doCreateAccessToken(OAuth2Authentication authentication) {
 
 		OAuth2AccessToken existingAccessToken = tokenStore.getAccessToken(authentication);
 		OAuth2RefreshToken refreshToken = null;
@@ -83,9 +125,10 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 					// be sure...
 					tokenStore.removeRefreshToken(refreshToken);
 				}
-				tokenStore.removeAccessToken(existingAccessToken);
+				removeAccessToken(existingAccessToken);
 			}
 			else {
+				metrics.increment("oauth2.tokens.create.existing");
 				return existingAccessToken;
 			}
 		}
@@ -115,32 +158,63 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 
 	public OAuth2AccessToken refreshAccessToken(String refreshTokenValue, TokenRequest tokenRequest)
 			throws AuthenticationException {
+		long start = System.nanoTime();
+		try {
+			return doRefreshAccessToken(refreshTokenValue, tokenRequest);
+		}
+		finally {
+			metrics.recordTime("oauth2.tokens.refresh", System.nanoTime() - start);
+		}
+	}
+
+	private OAuth2AccessToken doRefreshAccessToken(String refreshTokenValue, TokenRequest tokenRequest) {
 
 		if (!supportRefreshToken) {
 			throw new InvalidGrantException("Invalid refresh token: " + refreshTokenValue);
 		}
 
+		boolean rotating = !reuseRefreshToken && refreshTokenGraceSeconds > 0;
+		if (rotating) {
+			Rotation rotation = rotations.get(refreshTokenValue);
+			if (rotation != null) {
+				return rotation.getAccessToken(refreshTokenValue, tokenRequest.getClientId());
+			}
+		}
+
 		OAuth2RefreshToken refreshToken = tokenStore.readRefreshToken(refreshTokenValue);
 		if (refreshToken == null) {
+			metrics.increment("oauth2.tokens.refresh.invalid");
 			throw new InvalidGrantException("Invalid refresh token: " + refreshTokenValue);
 		}
 
 		OAuth2Authentication authentication = tokenStore.readAuthenticationForRefreshToken(refreshToken);
 		String clientId = authentication.getOAuth2Request().getClientId();
 		if (clientId == null || !clientId.equals(tokenRequest.getClientId())) {
+			metrics.increment("oauth2.tokens.refresh.wrong_client");
 			throw new InvalidGrantException("Wrong client for this refresh token: " + refreshTokenValue);
 		}
 
-		// clear out any access tokens already associated with the refresh token.
-		tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+		if (!rotating) {
+			// clear out any access tokens already associated with the refresh token.
+			removeAccessTokenUsingRefreshToken(refreshToken, authentication);
+		}
 
 		if (isExpired(refreshToken)) {
+			metrics.increment("oauth2.tokens.refresh.expired");
+			if (rotating) {
+				removeAccessTokenUsingRefreshToken(refreshToken, authentication);
+			}
 			tokenStore.removeRefreshToken(refreshToken);
 			throw new InvalidTokenException("Invalid refresh token (expired): " + refreshToken);
 		}
 
+		OAuth2Authentication storedAuthentication = authentication;
 		authentication = createRefreshedAuthentication(authentication, tokenRequest.getScope());
 
+		if (rotating) {
+			return rotateRefreshToken(refreshToken, storedAuthentication, authentication);
+		}
+
 		if (!reuseRefreshToken) {
 			tokenStore.removeRefreshToken(refreshToken);
 			refreshToken = createRefreshToken(authentication);
@@ -154,6 +228,63 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		return accessToken;
 	}
 
+	/**
+	 * Replace the refresh token with a new one, unless another request has already done so (in which case the tokens
+	 * that it issued are returned). The superseded tokens are removed from the store before the new ones are returned,
+	 * so the old refresh token can't be used on another node, and if that fails the client can try again.
+	 */
+	private OAuth2AccessToken rotateRefreshToken(OAuth2RefreshToken refreshToken,
+			OAuth2Authentication storedAuthentication, OAuth2Authentication authentication) {
+
+		String clientId = authentication.getOAuth2Request().getClientId();
+		final String refreshTokenValue = refreshToken.getValue();
+		final Rotation rotation = new Rotation(clientId, System.currentTimeMillis() + refreshTokenGraceSeconds
+				* 1000L);
+		Rotation existing = rotations.putIfAbsent(refreshTokenValue, rotation);
+		if (existing != null) {
+			return existing.getAccessToken(refreshTokenValue, clientId);
+		}
+
+		OAuth2AccessToken accessToken;
+		try {
+			// the old access token has to go before the new one is stored (they may share an authentication key)
+			removeAccessTokenUsingRefreshToken(refreshToken, storedAuthentication);
+			OAuth2RefreshToken newRefreshToken = createRefreshToken(authentication);
+			accessToken = createAccessToken(authentication, newRefreshToken);
+			tokenStore.storeAccessToken(accessToken, authentication);
+			if (newRefreshToken != null) {
+				tokenStore.storeRefreshToken(newRefreshToken, authentication);
+			}
+			tokenStore.removeRefreshToken(refreshToken);
+		}
+		catch (RuntimeException e) {
+			// let the client try again
+			rotations.remove(refreshTokenValue, rotation);
+			rotation.fail(e);
+			throw e;
+		}
+		rotation.complete(accessToken);
+
+		getCleanupExecutor().schedule(new Runnable() {
+			public void run() {
+				rotations.remove(refreshTokenValue, rotation);
+			}
+		}, refreshTokenGraceSeconds, TimeUnit.SECONDS);
+
+		return accessToken;
+
+	}
+
+	private synchronized ScheduledExecutorService getCleanupExecutor() {
+		if (cleanupExecutor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("token-cleanup-");
+			threadFactory.setDaemon(true);
+			cleanupExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+			ownCleanupExecutor = true;
+		}
+		return cleanupExecutor;
+	}
+
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		return tokenStore.getAccessToken(authentication);
 	}
@@ -196,19 +327,67 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	}
 
 	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
-		OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
-		if (accessToken == null) {
-			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+		long start = System.nanoTime();
+		try {
+			Map.Entry<OAuth2AccessToken, OAuth2Authentication> stored = BatchTokenUtils
+					.readAccessTokenAndAuthentication(tokenStore, accessTokenValue);
+			if (stored == null) {
+				metrics.increment("oauth2.tokens.load.invalid");
+				throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+			}
+			OAuth2AccessToken accessToken = stored.getKey();
+			if (accessToken.isExpired()) {
+				metrics.increment("oauth2.tokens.load.expired");
+				removeAccessToken(accessToken);
+				throw new InvalidTokenException("Access token expired: " + accessTokenValue);
+			}
+
+			return stored.getValue();
 		}
-		else if (accessToken.isExpired()) {
-			tokenStore.removeAccessToken(accessToken);
-			throw new InvalidTokenException("Access token expired: " + accessTokenValue);
+		finally {
+			metrics.recordTime("oauth2.tokens.load", System.nanoTime() - start);
 		}
+	}
 
-		OAuth2Authentication result = tokenStore.readAuthentication(accessToken);
+	/**
+	 * Load several authentications with a single call to the token store (if it is a {@link BatchTokenStore}, and one
+	 * call per token otherwise). Expired tokens are removed from the store and left out of the result.
+	 */
+	public Map<String, OAuth2Authentication> loadAuthentications(Collection<String> accessTokenValues) {
+		Map<String, OAuth2Authentication> result = new LinkedHashMap<String, OAuth2Authentication>();
+		for (Map.Entry<OAuth2AccessToken, OAuth2Authentication> entry : readAccessTokens(accessTokenValues).entrySet()) {
+			result.put(entry.getKey().getValue(), entry.getValue());
+		}
 		return result;
 	}
 
+	/**
+	 * Read several tokens with their authentications in a single call to the token store (if it is a
+	 * {@link BatchTokenStore}, and one call per token otherwise). Expired tokens are removed from the store and left
+	 * out of the result.
+	 */
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> accessTokenValues) {
+		long start = System.nanoTime();
+		try {
+			Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+			for (Map.Entry<OAuth2AccessToken, OAuth2Authentication> entry : BatchTokenUtils.readAccessTokens(
+					tokenStore, accessTokenValues).entrySet()) {
+				OAuth2AccessToken accessToken = entry.getKey();
+				if (accessToken.isExpired()) {
+					metrics.increment("oauth2.tokens.load.expired");
+					removeAccessToken(accessToken);
+				}
+				else {
+					result.put(accessToken, entry.getValue());
+				}
+			}
+			return result;
+		}
+		finally {
+			metrics.recordTime("oauth2.tokens.loadBatch", System.nanoTime() - start);
+		}
+	}
+
 	public String getClientId(String tokenValue) {
 		OAuth2Authentication authentication = tokenStore.readAuthentication(tokenValue);
 		if (authentication == null) {
@@ -237,10 +416,37 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		if (accessToken.getRefreshToken() != null) {
 			tokenStore.removeRefreshToken(accessToken.getRefreshToken());
 		}
-		tokenStore.removeAccessToken(accessToken);
+		removeAccessToken(accessToken);
 		return true;
 	}
 
+	/**
+	 * Remove an access token from the store, and add it to the revocation index (if there is one).
+	 */
+	private void removeAccessToken(OAuth2AccessToken accessToken) {
+		tokenStore.removeAccessToken(accessToken);
+		if (revocationIndex != null) {
+			revocationIndex.revoke(accessToken);
+		}
+	}
+
+	/**
+	 * Remove the access token issued with a refresh token from the store, and add it to the revocation index (if there
+	 * is one). The token store can't return the tokens it removes, so the access token is looked up by the
+	 * authentication of the refresh token first (an access token issued with a narrower scope is not found that way).
+	 */
+	private void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken,
+			OAuth2Authentication authentication) {
+		if (revocationIndex != null) {
+			OAuth2AccessToken accessToken = tokenStore.getAccessToken(authentication);
+			if (accessToken != null && accessToken.getRefreshToken() != null
+					&& refreshToken.getValue().equals(accessToken.getRefreshToken().getValue())) {
+				revocationIndex.revoke(accessToken);
+			}
+		}
+		tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+	}
+
 	private ExpiringOAuth2RefreshToken createRefreshToken(OAuth2Authentication authentication) {
 		if (!isSupportRefreshToken(authentication.getOAuth2Request())) {
 			return null;
@@ -356,6 +562,60 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		this.reuseRefreshToken = reuseRefreshToken;
 	}
 
+	/**
+	 * The time (in seconds) for which a refresh token that has been replaced can still be used, returning the tokens
+	 * that were issued when it was replaced (default 0). Only used if refresh tokens are not
+	 * {@link #setReuseRefreshToken(boolean) reused}. With a grace period, concurrent refresh requests with the same
+	 * refresh token (e.g. retries from a mobile client) all get the same new tokens instead of an error, only one of
+	 * them writes to the token store, and the superseded tokens are removed from the store straight away. A request
+	 * that is still waiting for the new tokens at the end of the grace period gets a
+	 * <code>temporarily_unavailable</code> error. The requests are coordinated in memory, so in a cluster they have to
+	 * reach the same node.
+	 * 
+	 * @param refreshTokenGraceSeconds the grace period for replaced refresh tokens in seconds
+	 */
+	public void setRefreshTokenGraceSeconds(int refreshTokenGraceSeconds) {
+		this.refreshTokenGraceSeconds = refreshTokenGraceSeconds;
+	}
+
+	/**
+	 * The executor used to forget replaced refresh tokens at the end of their
+	 * {@link #setRefreshTokenGraceSeconds(int) grace period} (by default a single daemon thread).
+	 * 
+	 * @param cleanupExecutor the executor to set
+	 */
+	public synchronized void setCleanupExecutor(ScheduledExecutorService cleanupExecutor) {
+		if (ownCleanupExecutor) {
+			this.cleanupExecutor.shutdown();
+		}
+		this.cleanupExecutor = cleanupExecutor;
+		this.ownCleanupExecutor = false;
+	}
+
+	/**
+	 * Metrics for the token services: timers <code>oauth2.tokens.create</code>, <code>oauth2.tokens.refresh</code> and
+	 * <code>oauth2.tokens.load</code>, and counters for the reasons that tokens are rejected (e.g.
+	 * <code>oauth2.tokens.load.expired</code>). Wrap the {@link #setTokenStore(TokenStore) token store} in an
+	 * {@link InstrumentedTokenStore} to time the store as well.
+	 * 
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * An index to record the ids (<code>jti</code>) of revoked tokens in, when the token values are JWTs (see
+	 * {@link JwtTokenEnhancer}) that resource servers verify themselves. Every access token removed from the store is
+	 * recorded (revoked, expired, or superseded when its refresh token is used). The index can be published to the
+	 * resource servers with the <code>RevocationIndexEndpoint</code>.
+	 * 
+	 * @param revocationIndex the revocation index to set
+	 */
+	public void setRevocationIndex(RevocationIndex revocationIndex) {
+		this.revocationIndex = revocationIndex;
+	}
+
 	/**
 	 * The persistence strategy for token storage.
 	 * 
@@ -375,4 +635,64 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		this.clientDetailsService = clientDetailsService;
 	}
 
+	/**
+	 * A refresh token that has been replaced, and the tokens that replaced it.
+	 */
+	private class Rotation {
+
+		private final String clientId;
+
+		private final long expiry;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private volatile OAuth2AccessToken accessToken;
+
+		private volatile RuntimeException error;
+
+		public Rotation(String clientId, long expiry) {
+			this.clientId = clientId;
+			this.expiry = expiry;
+		}
+
+		public void complete(OAuth2AccessToken accessToken) {
+			this.accessToken = accessToken;
+			done.countDown();
+		}
+
+		public void fail(RuntimeException error) {
+			this.error = error;
+			done.countDown();
+		}
+
+		public OAuth2AccessToken getAccessToken(String refreshTokenValue, String requestingClientId) {
+			if (System.currentTimeMillis() >= expiry) {
+				metrics.increment("oauth2.tokens.refresh.invalid");
+				throw new InvalidGrantException("Invalid refresh token: " + refreshTokenValue);
+			}
+			if (clientId == null || !clientId.equals(requestingClientId)) {
+				metrics.increment("oauth2.tokens.refresh.wrong_client");
+				throw new InvalidGrantException("Wrong client for this refresh token: " + refreshTokenValue);
+			}
+			try {
+				// after the grace period the refresh token would be rejected anyway
+				if (!done.await(expiry - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+					metrics.increment("oauth2.tokens.refresh.timeout");
+					throw new TemporarilyUnavailableException("Refresh token is still being replaced: "
+							+ refreshTokenValue);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for refresh token to be replaced", e);
+			}
+			if (error != null) {
+				throw error;
+			}
+			metrics.increment("oauth2.tokens.refresh.grace");
+			return accessToken;
+		}
+
+	}
+
 }
@@ -1,9 +1,12 @@
 package org.springframework.security.oauth2.provider.token;
 
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
@@ -22,7 +25,7 @@ import org.springframework.util.Assert;
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class InMemoryTokenStore implements TokenStore {
+public class InMemoryTokenStore implements BatchTokenStore {
 
 	private static final int DEFAULT_FLUSH_INTERVAL = 1000;
 
@@ -183,6 +186,32 @@ public class InMemoryTokenStore implements TokenStore {
 		return this.accessTokenStore.get(tokenValue);
 	}
 
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokenValues) {
+		Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		for (String tokenValue : tokenValues) {
+			OAuth2AccessToken token = this.accessTokenStore.get(tokenValue);
+			if (token != null) {
+				OAuth2Authentication authentication = this.authenticationStore.get(tokenValue);
+				if (authentication != null) {
+					result.put(token, authentication);
+				}
+			}
+		}
+		return result;
+	}
+
+	public Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(String tokenValue) {
+		OAuth2AccessToken token = this.accessTokenStore.get(tokenValue);
+		if (token == null) {
+			return null;
+		}
+		OAuth2Authentication authentication = this.authenticationStore.get(tokenValue);
+		if (authentication == null) {
+			return null;
+		}
+		return new AbstractMap.SimpleImmutableEntry<OAuth2AccessToken, OAuth2Authentication>(token, authentication);
+	}
+
 	public void removeAccessToken(String tokenValue) {
 		OAuth2AccessToken removed = this.accessTokenStore.remove(tokenValue);
 		String refresh = this.accessTokenToRefreshTokenStore.remove(tokenValue);
@@ -1,29 +1,27 @@
 package org.springframework.security.oauth2.provider.token;
 
-import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
-import org.springframework.util.Assert;
 
 /**
  * Implementation of token services that stores tokens in a database.
@@ -32,7 +30,7 @@ import org.springframework.util.Assert;
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class JdbcTokenStore implements TokenStore {
+public class JdbcTokenStore extends AbstractJdbcTokenStore {
 
 	private static final Log LOG = LogFactory.getLog(JdbcTokenStore.class);
 
@@ -42,12 +40,16 @@ public class JdbcTokenStore implements TokenStore {
 
 	private static final String DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_access_token where token_id = ?";
 
+	private static final String DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where token_id = ?";
+
 	private static final String DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token from oauth_access_token where authentication_id = ?";
 
 	private static final String DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT = "select token_id, token from oauth_access_token where user_name = ?";
 
 	private static final String DEFAULT_ACCESS_TOKENS_FROM_CLIENTID_SELECT_STATEMENT = "select token_id, token from oauth_access_token where client_id = ?";
 
+	private static final String DEFAULT_ACCESS_TOKENS_AND_AUTHENTICATIONS_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where token_id in (%s)";
+
 	private static final String DEFAULT_ACCESS_TOKEN_DELETE_STATEMENT = "delete from oauth_access_token where token_id = ?";
 
 	private static final String DEFAULT_ACCESS_TOKEN_DELETE_FROM_REFRESH_TOKEN_STATEMENT = "delete from oauth_access_token where refresh_token = ?";
@@ -66,12 +68,16 @@ public class JdbcTokenStore implements TokenStore {
 
 	private String selectAccessTokenAuthenticationSql = DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT;
 
+	private String selectAccessTokenAndAuthenticationSql = DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT;
+
 	private String selectAccessTokenFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT;
 
 	private String selectAccessTokensFromUserNameSql = DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT;
 
 	private String selectAccessTokensFromClientIdSql = DEFAULT_ACCESS_TOKENS_FROM_CLIENTID_SELECT_STATEMENT;
 
+	private String selectAccessTokensAndAuthenticationsSql = DEFAULT_ACCESS_TOKENS_AND_AUTHENTICATIONS_SELECT_STATEMENT;
+
 	private String deleteAccessTokenSql = DEFAULT_ACCESS_TOKEN_DELETE_STATEMENT;
 
 	private String insertRefreshTokenSql = DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT;
@@ -84,23 +90,14 @@ public class JdbcTokenStore implements TokenStore {
 
 	private String deleteAccessTokenFromRefreshTokenSql = DEFAULT_ACCESS_TOKEN_DELETE_FROM_REFRESH_TOKEN_STATEMENT;
 
-	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
-
-	private final JdbcTemplate jdbcTemplate;
-
 	public JdbcTokenStore(DataSource dataSource) {
-		Assert.notNull(dataSource, "DataSource required");
-		this.jdbcTemplate = new JdbcTemplate(dataSource);
-	}
-
-	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
-		this.authenticationKeyGenerator = authenticationKeyGenerator;
+		super(dataSource);
 	}
 
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		OAuth2AccessToken accessToken = null;
 
-		String key = authenticationKeyGenerator.extractKey(authentication);
+		String key = extractAuthenticationKey(authentication);
 		try {
 			accessToken = jdbcTemplate.queryForObject(selectAccessTokenFromAuthenticationSql,
 					new RowMapper<OAuth2AccessToken>() {
@@ -119,7 +116,7 @@ public class JdbcTokenStore implements TokenStore {
 		}
 
 		if (accessToken != null
-				&& !key.equals(authenticationKeyGenerator.extractKey(readAuthentication(accessToken.getValue())))) {
+				&& !key.equals(extractAuthenticationKey(readAuthentication(accessToken.getValue())))) {
 			removeAccessToken(accessToken.getValue());
 			// Keep the store consistent (maybe the same user is represented by this authentication but the details have
 			// changed)
@@ -135,7 +132,7 @@ public class JdbcTokenStore implements TokenStore {
 		}
 
 		jdbcTemplate.update(insertAccessTokenSql, new Object[] { extractTokenKey(token.getValue()),
-				new SqlLobValue(serializeAccessToken(token)), authenticationKeyGenerator.extractKey(authentication),
+				new SqlLobValue(serializeAccessToken(token)), extractAuthenticationKey(authentication),
 				authentication.isClientOnly() ? null : authentication.getName(),
 				authentication.getOAuth2Request().getClientId(),
 				new SqlLobValue(serializeAuthentication(authentication)), extractTokenKey(refreshToken) }, new int[] {
@@ -165,6 +162,64 @@ public class JdbcTokenStore implements TokenStore {
 		return accessToken;
 	}
 
+	/**
+	 * Read the token and its authentication from the same row with one query.
+	 */
+	public Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(String tokenValue) {
+		Map.Entry<OAuth2AccessToken, OAuth2Authentication> result = null;
+		String key = extractTokenKey(tokenValue);
+
+		try {
+			result = jdbcTemplate.queryForObject(selectAccessTokenAndAuthenticationSql,
+					new RowMapper<Map.Entry<OAuth2AccessToken, OAuth2Authentication>>() {
+						public Map.Entry<OAuth2AccessToken, OAuth2Authentication> mapRow(ResultSet rs, int rowNum)
+								throws SQLException {
+							return new AbstractMap.SimpleImmutableEntry<OAuth2AccessToken, OAuth2Authentication>(
+									deserializeAccessToken(rs.getBytes(2)), deserializeAuthentication(rs.getBytes(3)));
+						}
+					}, key);
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find access token for token " + tokenValue);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOG.warn("Failed to deserialize access token for " + tokenValue, e);
+			jdbcTemplate.update(deleteAccessTokenSql, key);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Read the tokens and their authentications with one query for every {@link #setBatchSize(int) batch size} tokens.
+	 * Tokens that cannot be deserialized are removed and left out of the result.
+	 */
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokenValues) {
+		final Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		final List<String> unreadable = new ArrayList<String>();
+		queryInBatches(selectAccessTokensAndAuthenticationsSql, tokenValues, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				try {
+					OAuth2AccessToken token = deserializeAccessToken(rs.getBytes(2));
+					OAuth2Authentication authentication = deserializeAuthentication(rs.getBytes(3));
+					result.put(token, authentication);
+				}
+				catch (IllegalArgumentException e) {
+					String key = rs.getString(1);
+					LOG.warn("Failed to deserialize access token for " + key, e);
+					unreadable.add(key);
+				}
+			}
+		});
+		// not deleted while the result set of the query is still open
+		for (String key : unreadable) {
+			jdbcTemplate.update(deleteAccessTokenSql, key);
+		}
+		return result;
+	}
+
 	public void removeAccessToken(OAuth2AccessToken token) {
 		removeAccessToken(token.getValue());
 	}
@@ -278,16 +333,17 @@ public class JdbcTokenStore implements TokenStore {
 
 	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
 		List<OAuth2AccessToken> accessTokens = new ArrayList<OAuth2AccessToken>();
+		SafeAccessTokenRowMapper rowMapper = new SafeAccessTokenRowMapper();
 
 		try {
-			accessTokens = jdbcTemplate.query(selectAccessTokensFromClientIdSql, new SafeAccessTokenRowMapper(),
-					clientId);
+			accessTokens = jdbcTemplate.query(selectAccessTokensFromClientIdSql, rowMapper, clientId);
 		}
 		catch (EmptyResultDataAccessException e) {
 			if (LOG.isInfoEnabled()) {
 				LOG.info("Failed to find access token for clientId " + clientId);
 			}
 		}
+		rowMapper.removeUnreadable();
 		accessTokens = removeNulls(accessTokens);
 
 		return accessTokens;
@@ -295,16 +351,17 @@ public class JdbcTokenStore implements TokenStore {
 
 	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
 		List<OAuth2AccessToken> accessTokens = new ArrayList<OAuth2AccessToken>();
+		SafeAccessTokenRowMapper rowMapper = new SafeAccessTokenRowMapper();
 
 		try {
-			accessTokens = jdbcTemplate.query(selectAccessTokensFromUserNameSql, new SafeAccessTokenRowMapper(),
-					userName);
+			accessTokens = jdbcTemplate.query(selectAccessTokensFromUserNameSql, rowMapper, userName);
 		}
 		catch (EmptyResultDataAccessException e) {
 			if (LOG.isInfoEnabled()) {
 				LOG.info("Failed to find access token for userName " + userName);
 			}
 		}
+		rowMapper.removeUnreadable();
 		accessTokens = removeNulls(accessTokens);
 
 		return accessTokens;
@@ -320,38 +377,30 @@ public class JdbcTokenStore implements TokenStore {
 		return tokens;
 	}
 
-	protected String extractTokenKey(String value) {
-		if (value == null) {
-			return null;
-		}
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("MD5");
-		}
-		catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
-		}
+	private final class SafeAccessTokenRowMapper implements RowMapper<OAuth2AccessToken> {
 
-		try {
-			byte[] bytes = digest.digest(value.getBytes("UTF-8"));
-			return String.format("%032x", new BigInteger(1, bytes));
-		}
-		catch (UnsupportedEncodingException e) {
-			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
-		}
-	}
+		private final List<String> unreadable = new ArrayList<String>();
 
-	private final class SafeAccessTokenRowMapper implements RowMapper<OAuth2AccessToken> {
 		public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
 			try {
 				return deserializeAccessToken(rs.getBytes(2));
 			}
 			catch (IllegalArgumentException e) {
-				String token = rs.getString(1);
-				jdbcTemplate.update(deleteAccessTokenSql, token);
+				unreadable.add(rs.getString(1));
 				return null;
 			}
 		}
+
+		/**
+		 * Remove the tokens that could not be deserialized, once the query is over (not while its result set is still
+		 * open).
+		 */
+		public void removeUnreadable() {
+			for (String token : unreadable) {
+				jdbcTemplate.update(deleteAccessTokenSql, token);
+			}
+		}
+
 	}
 
 	protected byte[] serializeAccessToken(OAuth2AccessToken token) {
@@ -362,10 +411,6 @@ public class JdbcTokenStore implements TokenStore {
 		return SerializationUtils.serialize(token);
 	}
 
-	protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
-		return SerializationUtils.serialize(authentication);
-	}
-
 	protected OAuth2AccessToken deserializeAccessToken(byte[] token) {
 		return SerializationUtils.deserialize(token);
 	}
@@ -374,10 +419,6 @@ public class JdbcTokenStore implements TokenStore {
 		return SerializationUtils.deserialize(token);
 	}
 
-	protected OAuth2Authentication deserializeAuthentication(byte[] authentication) {
-		return SerializationUtils.deserialize(authentication);
-	}
-
 	public void setInsertAccessTokenSql(String insertAccessTokenSql) {
 		this.insertAccessTokenSql = insertAccessTokenSql;
 	}
@@ -386,6 +427,26 @@ public class JdbcTokenStore implements TokenStore {
 		this.selectAccessTokenSql = selectAccessTokenSql;
 	}
 
+	/**
+	 * The query used by {@link #readAccessTokenAndAuthentication(String)}, which must select the token and the
+	 * authentication (in the second and third columns) from the same row.
+	 * 
+	 * @param selectAccessTokenAndAuthenticationSql the query to set
+	 */
+	public void setSelectAccessTokenAndAuthenticationSql(String selectAccessTokenAndAuthenticationSql) {
+		this.selectAccessTokenAndAuthenticationSql = selectAccessTokenAndAuthenticationSql;
+	}
+
+	/**
+	 * The query used by {@link #readAccessTokens(Collection)}, with a <code>%s</code> placeholder for the list of
+	 * parameters in the <code>IN</code> clause.
+	 * 
+	 * @param selectAccessTokensAndAuthenticationsSql the query to set
+	 */
+	public void setSelectAccessTokensAndAuthenticationsSql(String selectAccessTokensAndAuthenticationsSql) {
+		this.selectAccessTokensAndAuthenticationsSql = selectAccessTokensAndAuthenticationsSql;
+	}
+
 	public void setDeleteAccessTokenSql(String deleteAccessTokenSql) {
 		this.deleteAccessTokenSql = deleteAccessTokenSql;
 	}
@@ -33,6 +33,8 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
 import org.springframework.util.Assert;
 
 /**
@@ -62,6 +64,18 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 
 	private SignatureVerifier verifier;
 
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	/**
+	 * Metrics for signing and verifying tokens: timers <code>oauth2.jwt.sign</code> and <code>oauth2.jwt.verify</code>,
+	 * and a counter <code>oauth2.jwt.verify.invalid</code> for tokens that fail verification.
+	 * 
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
 	/**
 	 * Get the verification key for the token signatures.
 	 * 
@@ -143,12 +157,25 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 		catch (Exception e) {
 			throw new IllegalStateException("Cannot convert access token to JSON", e);
 		}
+		long start = System.nanoTime();
 		String token = JwtHelper.encode(content, signer).getEncoded();
+		metrics.recordTime("oauth2.jwt.sign", System.nanoTime() - start);
 		return token;
 	}
 
 	protected Map<String, Object> decode(String token) {
-		Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+		long start = System.nanoTime();
+		Jwt jwt;
+		try {
+			jwt = JwtHelper.decodeAndVerify(token, verifier);
+		}
+		catch (RuntimeException e) {
+			metrics.increment("oauth2.jwt.verify.invalid");
+			throw new InvalidTokenException("Cannot verify access token", e);
+		}
+		finally {
+			metrics.recordTime("oauth2.jwt.verify", System.nanoTime() - start);
+		}
 		String content = jwt.getClaims();
 		try {
 			@SuppressWarnings("unchecked")
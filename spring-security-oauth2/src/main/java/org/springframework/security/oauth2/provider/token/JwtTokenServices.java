@@ -13,6 +13,7 @@
 
 package org.springframework.security.oauth2.provider.token;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -41,7 +42,7 @@ import org.springframework.security.oauth2.provider.TokenRequest;
  * @author Dave Syer
  * 
  */
-public class JwtTokenServices implements AuthorizationServerTokenServices, ResourceServerTokenServices,
+public class JwtTokenServices implements AuthorizationServerTokenServices, BatchResourceServerTokenServices,
 		InitializingBean {
 
 	/**
@@ -67,6 +68,8 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
+	private RevocationIndex revocationIndex;
+
 	/**
 	 * Whether to support the refresh token.
 	 * 
@@ -133,6 +136,16 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 		this.authenticationKeyGenerator = authenticationKeyGenerator;
 	}
 
+	/**
+	 * An index of revoked token ids (<code>jti</code>) to check tokens against after verifying them, e.g. kept up to
+	 * date with the authorization server by a {@link RemoteRevocationIndexPoller}.
+	 * 
+	 * @param revocationIndex the revocation index to set
+	 */
+	public void setRevocationIndex(RevocationIndex revocationIndex) {
+		this.revocationIndex = revocationIndex;
+	}
+
 	/**
 	 * The key used for verifying signatures produced by this class. This is not used but is returned from the endpoint
 	 * to allow resource servers to obtain the key.
@@ -161,6 +174,36 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 		return tokenConverter.extractAuthentication(decode(token));
 	}
 
+	public Map<String, OAuth2Authentication> loadAuthentications(Collection<String> tokens) {
+		Map<String, OAuth2Authentication> result = new LinkedHashMap<String, OAuth2Authentication>();
+		for (String token : tokens) {
+			try {
+				result.put(token, loadAuthentication(token));
+			}
+			catch (InvalidTokenException e) {
+				// invalid tokens are left out
+			}
+		}
+		return result;
+	}
+
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokens) {
+		Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		for (String token : tokens) {
+			try {
+				Map<String, Object> map = decode(token);
+				OAuth2AccessToken accessToken = tokenConverter.extractAccessToken(token, map);
+				if (!accessToken.isExpired()) {
+					result.put(accessToken, tokenConverter.extractAuthentication(map));
+				}
+			}
+			catch (InvalidTokenException e) {
+				// invalid tokens are left out
+			}
+		}
+		return result;
+	}
+
 	public OAuth2AccessToken readAccessToken(String token) {
 		return tokenConverter.extractAccessToken(token, decode(token));
 	}
@@ -294,7 +337,12 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 	}
 
 	private Map<String, Object> decode(String token) {
-		return jwtTokenEnhancer.decode(token);
+		Map<String, Object> map = jwtTokenEnhancer.decode(token);
+		if (revocationIndex != null && map.containsKey(TOKEN_ID)
+				&& revocationIndex.isRevoked(String.valueOf(map.get(TOKEN_ID)))) {
+			throw new InvalidTokenException("Token was revoked");
+		}
+		return map;
 	}
 
 	/**
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * {@link ResourceServerTokenServices} that remember for a short time which tokens the underlying token services
+ * rejected (with an {@link InvalidTokenException}), so that a client or scanner that keeps sending the same unknown,
+ * revoked or forged token is turned away without going to the token store (or verifying a signature) every time.
+ * Valid tokens are not cached. Only a digest of each token is kept, so long garbage tokens don't take up memory.
+ * </p>
+ * 
+ * <p>
+ * A token that is rejected because it is not in the token store <em>yet</em> (e.g. a replica that lags behind) is
+ * rejected until the {@link #setNegativeCacheSeconds(int) negative cache time} is over, so keep it short.
+ * </p>
+ * 
+ */
+public class NegativeCachingResourceServerTokenServices implements BatchResourceServerTokenServices {
+
+	private final ResourceServerTokenServices tokenServices;
+
+	private final ExpiringCache<String, Boolean> invalidTokens = new ExpiringCache<String, Boolean>(10000);
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	private int negativeCacheSeconds = 30;
+
+	public NegativeCachingResourceServerTokenServices(ResourceServerTokenServices tokenServices) {
+		Assert.notNull(tokenServices, "ResourceServerTokenServices required");
+		this.tokenServices = tokenServices;
+	}
+
+	/**
+	 * The time for which a rejected token is remembered (default 30).
+	 * 
+	 * @param negativeCacheSeconds the number of seconds to set
+	 */
+	public void setNegativeCacheSeconds(int negativeCacheSeconds) {
+		this.negativeCacheSeconds = negativeCacheSeconds;
+	}
+
+	/**
+	 * The maximum number of rejected tokens to remember (default 10000). When it is reached, expired entries are
+	 * discarded (at most once a second), and if there are none other entries are evicted to make room.
+	 * 
+	 * @param maxCacheSize the maximum size to set
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		invalidTokens.setMaxSize(maxCacheSize);
+	}
+
+	/**
+	 * Metrics for the cache: counters <code>oauth2.tokens.invalid.cache.hit</code> (tokens rejected from the cache) and
+	 * <code>oauth2.tokens.invalid.cache.stored</code> (rejected tokens remembered).
+	 * 
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Forget that a token was rejected.
+	 * 
+	 * @param accessToken the token value
+	 */
+	public void evict(String accessToken) {
+		invalidTokens.remove(digest(accessToken));
+	}
+
+	/**
+	 * Forget all the rejected tokens.
+	 */
+	public void clear() {
+		invalidTokens.clear();
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+		String key = digest(accessToken);
+		if (isRejected(key)) {
+			throw new InvalidTokenException("Invalid access token: " + accessToken);
+		}
+		try {
+			return tokenServices.loadAuthentication(accessToken);
+		}
+		catch (InvalidTokenException e) {
+			reject(key);
+			throw e;
+		}
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		if (isRejected(digest(accessToken))) {
+			return null;
+		}
+		return tokenServices.readAccessToken(accessToken);
+	}
+
+	/**
+	 * Only the tokens that are not known to be invalid are passed on to the underlying token services, and the ones
+	 * that they leave out of the result are remembered as invalid.
+	 */
+	public Map<String, OAuth2Authentication> loadAuthentications(Collection<String> accessTokens) {
+		List<String> unknown = new ArrayList<String>(accessTokens.size());
+		for (String accessToken : accessTokens) {
+			if (!isRejected(digest(accessToken))) {
+				unknown.add(accessToken);
+			}
+		}
+		Map<String, OAuth2Authentication> result = BatchTokenUtils.loadAuthentications(tokenServices, unknown);
+		for (String accessToken : unknown) {
+			if (!result.containsKey(accessToken)) {
+				reject(digest(accessToken));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Like {@link #loadAuthentications(Collection)}, only the tokens that are not known to be invalid are passed on.
+	 */
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> accessTokens) {
+		List<String> unknown = new ArrayList<String>(accessTokens.size());
+		for (String accessToken : accessTokens) {
+			if (!isRejected(digest(accessToken))) {
+				unknown.add(accessToken);
+			}
+		}
+		Map<OAuth2AccessToken, OAuth2Authentication> result = BatchTokenUtils.readAccessTokens(tokenServices, unknown);
+		Set<String> found = new HashSet<String>();
+		for (OAuth2AccessToken token : result.keySet()) {
+			found.add(token.getValue());
+		}
+		for (String accessToken : unknown) {
+			if (!found.contains(accessToken)) {
+				reject(digest(accessToken));
+			}
+		}
+		return result;
+	}
+
+	private boolean isRejected(String key) {
+		if (invalidTokens.get(key) == null) {
+			return false;
+		}
+		metrics.increment("oauth2.tokens.invalid.cache.hit");
+		return true;
+	}
+
+	private void reject(String key) {
+		if (negativeCacheSeconds <= 0) {
+			return;
+		}
+		invalidTokens.put(key, Boolean.TRUE, System.currentTimeMillis() + negativeCacheSeconds * 1000L);
+		metrics.increment("oauth2.tokens.invalid.cache.stored");
+	}
+
+	private String digest(String accessToken) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 algorithm not available.  Fatal (should be in the JDK).");
+		}
+		try {
+			return new String(Hex.encode(digest.digest(accessToken.getBytes("UTF-8"))));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+}
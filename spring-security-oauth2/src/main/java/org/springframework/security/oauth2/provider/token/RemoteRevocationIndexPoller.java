@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * <p>
+ * Keeps a {@link RevocationIndex} on a resource server up to date with the tokens revoked on the authorization server,
+ * by polling its revocation endpoint (see <code>RevocationIndexEndpoint</code>). Each poll only fetches the
+ * revocations since the previous one, so it is cheap enough to run every few seconds, e.g. with
+ * <code>&lt;task:scheduled ref="poller" method="poll" fixed-delay="5000"/&gt;</code>. Use the same index in the
+ * {@link JwtTokenServices} that verify the tokens.
+ * </p>
+ *
+ * <p>
+ * A revoked token is accepted until the next poll, so the polling interval is the window in which revocations are not
+ * yet enforced. If a poll fails the index is left as it is and the next poll catches up.
+ * </p>
+ *
+ * <p>
+ * If the authorization server is clustered, every node has its own index (see {@link RevocationIndex}), so use one
+ * poller for each node, with the address of the node and not of the load balancer, all sharing the same index.
+ * </p>
+ *
+ */
+public class RemoteRevocationIndexPoller {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final RevocationIndex revocationIndex;
+
+	private RestOperations restTemplate = new RestTemplate();
+
+	private String revocationsEndpointUrl;
+
+	private String clientId;
+
+	private String clientSecret;
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	private String epoch;
+
+	private long sequence = 0;
+
+	public RemoteRevocationIndexPoller(RevocationIndex revocationIndex) {
+		Assert.notNull(revocationIndex, "RevocationIndex required");
+		this.revocationIndex = revocationIndex;
+	}
+
+	/**
+	 * @param revocationsEndpointUrl the url of the revocation endpoint of the authorization server
+	 */
+	public void setRevocationsEndpointUrl(String revocationsEndpointUrl) {
+		this.revocationsEndpointUrl = revocationsEndpointUrl;
+	}
+
+	/**
+	 * @param clientId the client id used to authenticate with the revocation endpoint
+	 */
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+
+	/**
+	 * @param clientSecret the client secret used to authenticate with the revocation endpoint
+	 */
+	public void setClientSecret(String clientSecret) {
+		this.clientSecret = clientSecret;
+	}
+
+	/**
+	 * @param restTemplate the rest operations used to call the revocation endpoint
+	 */
+	public void setRestTemplate(RestOperations restTemplate) {
+		this.restTemplate = restTemplate;
+	}
+
+	/**
+	 * Metrics for the poller: timer <code>oauth2.revocations.poll</code> and counter
+	 * <code>oauth2.revocations.poll.error</code>.
+	 *
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Fetch the revocations since the last poll and add them to the index.
+	 *
+	 * @return true if the poll succeeded
+	 */
+	public synchronized boolean poll() {
+
+		Assert.state(revocationsEndpointUrl != null, "Revocations endpoint url required");
+		HttpHeaders headers = new HttpHeaders();
+		if (clientId != null) {
+			headers.set("Authorization", getAuthorizationHeader(clientId, clientSecret));
+		}
+
+		Map<String, Object> map;
+		long start = System.nanoTime();
+		try {
+			map = getForMap(revocationsEndpointUrl, headers);
+		}
+		catch (RuntimeException e) {
+			metrics.increment("oauth2.revocations.poll.error");
+			logger.warn("Cannot poll revocations: " + e.getMessage());
+			return false;
+		}
+		finally {
+			metrics.recordTime("oauth2.revocations.poll", System.nanoTime() - start);
+		}
+
+		if (map == null || !(map.get("sequence") instanceof Number) || !(map.get("revoked") instanceof Map)) {
+			metrics.increment("oauth2.revocations.poll.error");
+			logger.warn("Unexpected response from revocations endpoint: " + map);
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		Map<String, Object> revoked = (Map<String, Object>) map.get("revoked");
+		for (Map.Entry<String, Object> entry : revoked.entrySet()) {
+			long expiry = ((Number) entry.getValue()).longValue();
+			revocationIndex.revoke(entry.getKey(), expiry == Long.MAX_VALUE ? null : new Date(expiry * 1000L));
+		}
+
+		epoch = (String) map.get("epoch");
+		sequence = ((Number) map.get("sequence")).longValue();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Received " + revoked.size() + " revoked tokens up to " + epoch + ":" + sequence);
+		}
+		return true;
+
+	}
+
+	private String getAuthorizationHeader(String clientId, String clientSecret) {
+		String creds = String.format("%s:%s", clientId, clientSecret);
+		try {
+			return "Basic " + new String(Base64.encode(creds.getBytes("UTF-8")));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not convert String");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> getForMap(String path, HttpHeaders headers) {
+		String query = path.contains("?") ? "&" : "?";
+		return restTemplate.exchange(path + query + "epoch={epoch}&sequence={sequence}", HttpMethod.GET,
+				new HttpEntity<Void>(headers), Map.class, epoch == null ? "" : epoch, sequence).getBody();
+	}
+
+}
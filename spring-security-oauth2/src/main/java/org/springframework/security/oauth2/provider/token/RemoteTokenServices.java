@@ -0,0 +1,534 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.metrics.MetricsRecorder;
+import org.springframework.security.oauth2.provider.metrics.NoOpMetricsRecorder;
+import org.springframework.util.Assert;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * <p>
+ * Resource server token services that check access tokens with a remote authorization server, by posting them to its
+ * check token endpoint (see <code>CheckTokenEndpoint</code>). Useful for resource servers that share neither a
+ * {@link TokenStore} nor the JWT keys with the authorization server.
+ * </p>
+ *
+ * <p>
+ * The results are cached locally, so most requests are authenticated without a remote call: valid tokens are cached
+ * until they expire or for at most {@link #setMaxCacheSeconds(int) maxCacheSeconds} (to notice revoked tokens), and
+ * invalid tokens (and valid ones without an expiry) for {@link #setNegativeCacheSeconds(int) negativeCacheSeconds}.
+ * Concurrent requests with the same token that is not yet in the cache wait for a single remote call, but no longer
+ * than the {@link #setConnectTimeout(int) connect} and {@link #setReadTimeout(int) read} timeouts together. Every caller gets its own copy of a cached
+ * authentication, so that it can set the details of the request on it.
+ * </p>
+ *
+ * <p>
+ * If the {@link #setCheckTokensEndpointUrl(String) check tokens endpoint} is set, {@link #loadAuthentications(Collection)}
+ * checks all the tokens that are not cached in one remote call (per {@link #setBatchSize(int) batchSize} tokens).
+ * Otherwise each token is checked on its own.
+ * </p>
+ *
+ * <p>
+ * The remote calls are made with a {@link RestTemplate}, which by default reuses HTTP connections with the keep-alive
+ * support of the JDK and gives up after the connect and read timeouts. A {@link RestOperations} with a pooling request factory can be injected instead, in which case
+ * its error handler must not throw an exception for 400 and 401 responses (they carry the OAuth2 error, e.g.
+ * <code>invalid_token</code>).
+ * </p>
+ *
+ */
+public class RemoteTokenServices implements BatchResourceServerTokenServices {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final ExpiringCache<String, CheckResult> cache = new ExpiringCache<String, CheckResult>(10000);
+
+	private final ConcurrentMap<String, FutureTask<CheckResult>> pending = new ConcurrentHashMap<String, FutureTask<CheckResult>>();
+
+	private RestOperations restTemplate;
+
+	private String checkTokenEndpointUrl;
+
+	private String checkTokensEndpointUrl;
+
+	private String clientId;
+
+	private String clientSecret;
+
+	private AccessTokenConverter tokenConverter = new DefaultAccessTokenConverter();
+
+	private MetricsRecorder metrics = NoOpMetricsRecorder.INSTANCE;
+
+	private int maxCacheSeconds = 300;
+
+	private int batchSize = 100;
+
+	private int negativeCacheSeconds = 30;
+
+	private int connectTimeout = 2000;
+
+	private int readTimeout = 5000;
+
+	private SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+
+	public RemoteTokenServices() {
+		requestFactory.setConnectTimeout(connectTimeout);
+		requestFactory.setReadTimeout(readTimeout);
+		RestTemplate restTemplate = new RestTemplate(requestFactory);
+		restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+			// Pass errors through in response entity for status code analysis
+			@Override
+			public void handleError(ClientHttpResponse response) throws IOException {
+				if (response.getStatusCode() != HttpStatus.BAD_REQUEST
+						&& response.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+					super.handleError(response);
+				}
+			}
+		});
+		this.restTemplate = restTemplate;
+	}
+
+	/**
+	 * @param checkTokenEndpointUrl the url of the check token endpoint of the authorization server
+	 */
+	public void setCheckTokenEndpointUrl(String checkTokenEndpointUrl) {
+		this.checkTokenEndpointUrl = checkTokenEndpointUrl;
+	}
+
+	/**
+	 * @param checkTokensEndpointUrl the url of the endpoint of the authorization server that checks several tokens at
+	 * once (<code>/oauth/check_tokens</code>), or null to check them one by one
+	 */
+	public void setCheckTokensEndpointUrl(String checkTokensEndpointUrl) {
+		this.checkTokensEndpointUrl = checkTokensEndpointUrl;
+	}
+
+	/**
+	 * The maximum number of tokens to send to the check tokens endpoint in one call (default 100, the default maximum
+	 * of the endpoint).
+	 *
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param clientId the client id used to authenticate with the check token endpoint
+	 */
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+
+	/**
+	 * @param clientSecret the client secret used to authenticate with the check token endpoint
+	 */
+	public void setClientSecret(String clientSecret) {
+		this.clientSecret = clientSecret;
+	}
+
+	/**
+	 * @param restTemplate the rest operations used to call the check token endpoint
+	 */
+	public void setRestTemplate(RestOperations restTemplate) {
+		this.restTemplate = restTemplate;
+		this.requestFactory = null;
+	}
+
+	/**
+	 * The timeout in milliseconds for connecting to the authorization server (default 2000). It is set on the default
+	 * rest template (an injected one should have its own timeouts), and also limits how long concurrent requests with
+	 * the same token wait for the remote call.
+	 *
+	 * @param connectTimeout the connect timeout in milliseconds
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		Assert.isTrue(connectTimeout > 0, "Connect timeout must be positive");
+		this.connectTimeout = connectTimeout;
+		if (requestFactory != null) {
+			requestFactory.setConnectTimeout(connectTimeout);
+		}
+	}
+
+	/**
+	 * The timeout in milliseconds for reading the response of the authorization server (default 5000). It is set on
+	 * the default rest template (an injected one should have its own timeouts), and also limits how long concurrent
+	 * requests with the same token wait for the remote call.
+	 *
+	 * @param readTimeout the read timeout in milliseconds
+	 */
+	public void setReadTimeout(int readTimeout) {
+		Assert.isTrue(readTimeout > 0, "Read timeout must be positive");
+		this.readTimeout = readTimeout;
+		if (requestFactory != null) {
+			requestFactory.setReadTimeout(readTimeout);
+		}
+	}
+
+	/**
+	 * @param tokenConverter the converter for the claims returned by the check token endpoint
+	 */
+	public void setAccessTokenConverter(AccessTokenConverter tokenConverter) {
+		this.tokenConverter = tokenConverter;
+	}
+
+	/**
+	 * @param metrics the metrics recorder to set
+	 */
+	public void setMetricsRecorder(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * The maximum time to cache a valid token (default 300). A token is cached until it expires if that is sooner, so
+	 * this mainly limits how long a revoked token is still accepted. A token without an expiry is only cached for the
+	 * {@link #setNegativeCacheSeconds(int) negative cache time} (if that is shorter). 0 means that valid tokens are not
+	 * cached.
+	 *
+	 * @param maxCacheSeconds the maximum time to cache a valid token in seconds
+	 */
+	public void setMaxCacheSeconds(int maxCacheSeconds) {
+		Assert.isTrue(maxCacheSeconds >= 0, "Max cache seconds must not be negative");
+		this.maxCacheSeconds = maxCacheSeconds;
+	}
+
+	/**
+	 * The time to cache a token that the authorization server reported as invalid (default 30 seconds).
+	 *
+	 * @param negativeCacheSeconds the time to cache an invalid token in seconds (0 to not cache them)
+	 */
+	public void setNegativeCacheSeconds(int negativeCacheSeconds) {
+		this.negativeCacheSeconds = negativeCacheSeconds;
+	}
+
+	/**
+	 * The maximum number of tokens to cache (default 10000). When the cache is full, expired entries are discarded
+	 * (at most once a second), and if it is still full other entries are evicted to make room.
+	 *
+	 * @param maxCacheSize the maximum number of tokens to cache
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		cache.setMaxSize(maxCacheSize);
+	}
+
+	/**
+	 * Discard the cached result for a token, e.g. when it is known to have been revoked.
+	 *
+	 * @param accessToken the token value
+	 */
+	public void evict(String accessToken) {
+		cache.remove(accessToken);
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+		OAuth2Authentication authentication = check(accessToken).getAuthentication();
+		if (authentication == null) {
+			throw new InvalidTokenException("Invalid access token: " + accessToken);
+		}
+		return authentication;
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		return check(accessToken).token;
+	}
+
+	public Map<String, OAuth2Authentication> loadAuthentications(Collection<String> accessTokens) {
+		Map<String, OAuth2Authentication> authentications = new LinkedHashMap<String, OAuth2Authentication>();
+		for (Map.Entry<String, CheckResult> entry : check(accessTokens).entrySet()) {
+			OAuth2Authentication authentication = entry.getValue().getAuthentication();
+			if (authentication != null) {
+				authentications.put(entry.getKey(), authentication);
+			}
+		}
+		return authentications;
+	}
+
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> accessTokens) {
+		Map<OAuth2AccessToken, OAuth2Authentication> tokens = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		for (CheckResult result : check(accessTokens).values()) {
+			OAuth2Authentication authentication = result.getAuthentication();
+			if (authentication != null) {
+				tokens.put(result.token, authentication);
+			}
+		}
+		return tokens;
+	}
+
+	private Map<String, CheckResult> check(Collection<String> accessTokens) {
+		Map<String, CheckResult> results = new LinkedHashMap<String, CheckResult>();
+		List<String> uncached = new ArrayList<String>();
+		for (String accessToken : accessTokens) {
+			CheckResult result = cache.get(accessToken);
+			if (result != null) {
+				metrics.increment("oauth2.remote.cache.hit");
+				results.put(accessToken, result);
+			}
+			else if (!results.containsKey(accessToken)) {
+				// remember that it is pending, so it is only checked once
+				results.put(accessToken, null);
+				uncached.add(accessToken);
+			}
+		}
+		if (checkTokensEndpointUrl == null || uncached.size() == 1) {
+			for (String accessToken : uncached) {
+				results.put(accessToken, check(accessToken));
+			}
+		}
+		else {
+			for (int i = 0; i < uncached.size(); i += batchSize) {
+				results.putAll(fetch(uncached.subList(i, Math.min(i + batchSize, uncached.size()))));
+			}
+		}
+		return results;
+	}
+
+	private CheckResult check(final String accessToken) {
+
+		CheckResult result = cache.get(accessToken);
+		if (result != null) {
+			metrics.increment("oauth2.remote.cache.hit");
+			return result;
+		}
+
+		FutureTask<CheckResult> task = new FutureTask<CheckResult>(new Callable<CheckResult>() {
+			public CheckResult call() throws Exception {
+				return fetch(accessToken);
+			}
+		});
+		FutureTask<CheckResult> existing = pending.putIfAbsent(accessToken, task);
+		if (existing == null) {
+			try {
+				task.run();
+			}
+			finally {
+				pending.remove(accessToken, task);
+			}
+		}
+		else {
+			metrics.increment("oauth2.remote.coalesced");
+			task = existing;
+		}
+
+		try {
+			return task.get(connectTimeout + readTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while checking token", e);
+		}
+		catch (TimeoutException e) {
+			throw new IllegalStateException("Timed out waiting for the token to be checked", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Cannot check token", cause);
+		}
+
+	}
+
+	private CheckResult fetch(String accessToken) {
+
+		MultiValueMap<String, String> formData = new LinkedMultiValueMap<String, String>();
+		formData.add("token", accessToken);
+		HttpHeaders headers = new HttpHeaders();
+		if (clientId != null) {
+			headers.set("Authorization", getAuthorizationHeader(clientId, clientSecret));
+		}
+
+		Map<String, Object> map;
+		long start = System.nanoTime();
+		try {
+			map = postForMap(checkTokenEndpointUrl, formData, headers);
+		}
+		finally {
+			metrics.recordTime("oauth2.remote.check", System.nanoTime() - start);
+		}
+
+		if (map == null) {
+			throw new IllegalStateException("No response from check token endpoint");
+		}
+
+		long now = System.currentTimeMillis();
+		CheckResult result;
+		if (map.containsKey(OAuth2Exception.ERROR)) {
+			Object error = map.get(OAuth2Exception.ERROR);
+			if (!OAuth2Exception.INVALID_TOKEN.equals(error)) {
+				// not a problem with the token, so don't cache it
+				throw OAuth2Exception.create(String.valueOf(error), (String) map.get(OAuth2Exception.DESCRIPTION));
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Check token endpoint returned error: " + map.get(OAuth2Exception.DESCRIPTION));
+			}
+			result = invalid(now);
+		}
+		else {
+			result = valid(accessToken, map, now);
+		}
+
+		cache.put(accessToken, result, result.expiry);
+		return result;
+
+	}
+
+	private Map<String, CheckResult> fetch(List<String> accessTokens) {
+
+		MultiValueMap<String, String> formData = new LinkedMultiValueMap<String, String>();
+		for (String accessToken : accessTokens) {
+			formData.add("token", accessToken);
+		}
+		HttpHeaders headers = new HttpHeaders();
+		if (clientId != null) {
+			headers.set("Authorization", getAuthorizationHeader(clientId, clientSecret));
+		}
+
+		Map<String, Object> map;
+		long start = System.nanoTime();
+		try {
+			map = postForMap(checkTokensEndpointUrl, formData, headers);
+		}
+		finally {
+			metrics.recordTime("oauth2.remote.check.batch", System.nanoTime() - start);
+		}
+
+		if (map == null) {
+			throw new IllegalStateException("No response from check tokens endpoint");
+		}
+		if (map.get(OAuth2Exception.ERROR) instanceof String) {
+			throw OAuth2Exception.create((String) map.get(OAuth2Exception.ERROR),
+					(String) map.get(OAuth2Exception.DESCRIPTION));
+		}
+
+		long now = System.currentTimeMillis();
+		Map<String, CheckResult> results = new LinkedHashMap<String, CheckResult>();
+		for (String accessToken : accessTokens) {
+			Object claims = map.get(accessToken);
+			CheckResult result;
+			if (claims instanceof Map) {
+				@SuppressWarnings("unchecked")
+				Map<String, ?> tokenClaims = (Map<String, ?>) claims;
+				result = valid(accessToken, tokenClaims, now);
+			}
+			else {
+				// invalid and expired tokens are left out of the response
+				result = invalid(now);
+			}
+			cache.put(accessToken, result, result.expiry);
+			results.put(accessToken, result);
+		}
+		return results;
+
+	}
+
+	private CheckResult valid(String accessToken, Map<String, ?> claims, long now) {
+		OAuth2AccessToken token = tokenConverter.extractAccessToken(accessToken, claims);
+		long expiry = now + maxCacheSeconds * 1000L;
+		if (token.getExpiration() != null) {
+			expiry = Math.min(expiry, token.getExpiration().getTime());
+		}
+		else {
+			// without an expiry a revoked token could be accepted for the whole max cache time
+			expiry = Math.min(expiry, now + negativeCacheSeconds * 1000L);
+		}
+		return new CheckResult(token, tokenConverter.extractAuthentication(claims), expiry);
+	}
+
+	private CheckResult invalid(long now) {
+		metrics.increment("oauth2.remote.invalid");
+		return new CheckResult(null, null, now + negativeCacheSeconds * 1000L);
+	}
+
+	private String getAuthorizationHeader(String clientId, String clientSecret) {
+		String creds = String.format("%s:%s", clientId, clientSecret);
+		try {
+			return "Basic " + new String(Base64.encode(creds.getBytes("UTF-8")));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not convert String");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> postForMap(String path, MultiValueMap<String, String> formData, HttpHeaders headers) {
+		Assert.state(path != null, "Check token endpoint url required");
+		return restTemplate.exchange(path, HttpMethod.POST,
+				new HttpEntity<MultiValueMap<String, String>>(formData, headers), Map.class).getBody();
+	}
+
+	private static class CheckResult {
+
+		private final OAuth2AccessToken token;
+
+		private final OAuth2Authentication authentication;
+
+		private final long expiry;
+
+		public CheckResult(OAuth2AccessToken token, OAuth2Authentication authentication, long expiry) {
+			this.token = token;
+			this.authentication = authentication;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * @return a copy of the authentication (or null if the token is invalid), so that callers can't change the
+		 * cached one (e.g. by setting its details)
+		 */
+		public OAuth2Authentication getAuthentication() {
+			if (authentication == null) {
+				return null;
+			}
+			return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+		}
+
+	}
+
+}
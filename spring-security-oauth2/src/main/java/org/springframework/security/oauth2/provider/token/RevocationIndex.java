@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ * <p>
+ * An in-memory set of the ids (<code>jti</code>) of revoked JWT access tokens, so that resource servers can verify
+ * tokens locally and still reject the ones that were revoked before they expire. Each id is only held until the
+ * expiry of its token (after that the token is rejected anyway), so the index stays as small as the number of tokens
+ * revoked within one access token validity period.
+ * </p>
+ *
+ * <p>
+ * On the authorization server the index is fed by the {@link DefaultTokenServices} (whenever they remove an access
+ * token from the store, e.g. in {@link DefaultTokenServices#revokeToken(String)} or when a refresh token is used) and
+ * the <code>TokenApprovalStore</code> (when approvals are revoked), and published by the
+ * <code>RevocationIndexEndpoint</code>. Every revocation gets a sequence number, so that resource servers (see
+ * {@link RemoteRevocationIndexPoller}) only fetch the ones they have not seen yet. The sequence numbers are only
+ * meaningful within one {@link #getEpoch() epoch}, which changes when the index is created (e.g. the authorization
+ * server restarts), and a client with a different epoch gets the whole index again.
+ * </p>
+ *
+ * <p>
+ * The index is only held in memory, so each node of a clustered authorization server has its own, with the tokens
+ * revoked on that node and its own epoch. Resource servers should then poll every node directly (one
+ * {@link RemoteRevocationIndexPoller} per node, all feeding the same index) rather than through a load balancer. Behind
+ * a load balancer each poll can reach a different node, so it fetches that node's whole index, and the tokens revoked
+ * on the other nodes are only seen when a later poll happens to reach them.
+ * </p>
+ *
+ */
+public class RevocationIndex {
+
+	private final String epoch = UUID.randomUUID().toString();
+
+	private final ConcurrentMap<String, Revocation> revoked = new ConcurrentHashMap<String, Revocation>();
+
+	private final NavigableMap<Long, String> changes = new TreeMap<Long, String>();
+
+	private long sequence = 0;
+
+	private long lastPurge = 0;
+
+	/**
+	 * @return the id of this index, which qualifies its sequence numbers
+	 */
+	public String getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return the sequence number of the latest revocation
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the number of revoked tokens held in the index
+	 */
+	public int size() {
+		return revoked.size();
+	}
+
+	/**
+	 * Record a revoked token. Tokens that have already expired are ignored.
+	 *
+	 * @param tokenId the token id (<code>jti</code>)
+	 * @param expiration the expiry of the token (null if it never expires)
+	 */
+	public synchronized void revoke(String tokenId, Date expiration) {
+		long now = System.currentTimeMillis();
+		long expiry = expiration == null ? Long.MAX_VALUE : expiration.getTime();
+		if (tokenId == null || expiry <= now) {
+			return;
+		}
+		Revocation existing = revoked.get(tokenId);
+		if (existing != null) {
+			if (existing.expiry == expiry) {
+				return;
+			}
+			// the token is published once, with its latest expiry
+			changes.remove(existing.sequence);
+		}
+		purgeExpired(now);
+		revoked.put(tokenId, new Revocation(expiry, ++sequence));
+		changes.put(sequence, tokenId);
+	}
+
+	/**
+	 * Record a revoked access token, if it has an id (the <code>jti</code> added by the {@link JwtTokenEnhancer}).
+	 * Tokens without an id or that have already expired are ignored.
+	 *
+	 * @param accessToken the access token
+	 */
+	public void revoke(OAuth2AccessToken accessToken) {
+		Object tokenId = accessToken.getAdditionalInformation().get(JwtTokenEnhancer.TOKEN_ID);
+		if (tokenId != null) {
+			revoke(tokenId.toString(), accessToken.getExpiration());
+		}
+	}
+
+	/**
+	 * Check a token id. This is cheap and doesn't lock, so it can be called for every request.
+	 *
+	 * @param tokenId the token id (<code>jti</code>)
+	 * @return true if the token was revoked and has not expired yet
+	 */
+	public boolean isRevoked(String tokenId) {
+		Revocation revocation = revoked.get(tokenId);
+		return revocation != null && revocation.expiry > System.currentTimeMillis();
+	}
+
+	/**
+	 * The tokens revoked after a sequence number, or all of them if the sequence number does not belong to this index.
+	 *
+	 * @param epoch the epoch of the sequence number (may be null)
+	 * @param since the last sequence number seen by the caller
+	 * @return the current sequence number and the ids of the tokens revoked after it, mapped to their expiry in
+	 * seconds
+	 */
+	public synchronized Changes getChanges(String epoch, long since) {
+		purgeExpired(System.currentTimeMillis());
+		if (!this.epoch.equals(epoch) || since > sequence) {
+			since = 0;
+		}
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (String tokenId : changes.tailMap(since, false).values()) {
+			Revocation revocation = revoked.get(tokenId);
+			if (revocation != null) {
+				long expiry = revocation.expiry;
+				result.put(tokenId, expiry == Long.MAX_VALUE ? Long.MAX_VALUE : expiry / 1000);
+			}
+		}
+		return new Changes(this.epoch, sequence, result);
+	}
+
+	/**
+	 * Remove the tokens that have expired. This also happens (at most once a second) when tokens are revoked or
+	 * changes are requested.
+	 */
+	public synchronized void purgeExpired() {
+		lastPurge = System.currentTimeMillis();
+		for (Iterator<String> iterator = changes.values().iterator(); iterator.hasNext();) {
+			String tokenId = iterator.next();
+			Revocation revocation = revoked.get(tokenId);
+			if (revocation == null || revocation.expiry <= lastPurge) {
+				revoked.remove(tokenId);
+				iterator.remove();
+			}
+		}
+	}
+
+	private void purgeExpired(long now) {
+		if (now - lastPurge >= 1000) {
+			purgeExpired();
+		}
+	}
+
+	/**
+	 * Forget all the revoked tokens.
+	 */
+	public synchronized void clear() {
+		revoked.clear();
+		changes.clear();
+	}
+
+	private static class Revocation {
+
+		private final long expiry;
+
+		private final long sequence;
+
+		public Revocation(long expiry, long sequence) {
+			this.expiry = expiry;
+			this.sequence = sequence;
+		}
+
+	}
+
+	/**
+	 * A batch of revocations, as published to resource servers.
+	 */
+	public static class Changes {
+
+		private final String epoch;
+
+		private final long sequence;
+
+		private final Map<String, Long> revoked;
+
+		public Changes(String epoch, long sequence, Map<String, Long> revoked) {
+			this.epoch = epoch;
+			this.sequence = sequence;
+			this.revoked = Collections.unmodifiableMap(revoked);
+		}
+
+		public String getEpoch() {
+			return epoch;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return the ids of the revoked tokens mapped to their expiry (seconds since the epoch)
+		 */
+		public Map<String, Long> getRevoked() {
+			return revoked;
+		}
+
+	}
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link TokenStore} that partitions the tokens across several other token stores (e.g. a {@link JdbcTokenStore} for
+ * each of several databases), so that reads and writes can be scaled horizontally. Each access token and each refresh
+ * token is stored in one of the shards, chosen by a consistent hash of the MD5 digest of its value (as used for the
+ * primary key by the {@link JdbcTokenStore}), so all the operations on a single token go to one shard.
+ * </p>
+ *
+ * <p>
+ * Lookups that can't be routed by token value ({@link #getAccessToken(OAuth2Authentication)},
+ * {@link #findTokensByUserName(String)}, {@link #findTokensByClientId(String)} and
+ * {@link #removeAccessTokenUsingRefreshToken(OAuth2RefreshToken)}) are sent to all the shards in parallel, and the
+ * results are combined. The calling thread queries the first shard itself, and the other shards are queried by the
+ * {@link #setExecutor(ExecutorService) executor}, so every concurrent lookup needs <code>N-1</code> of its threads.
+ * </p>
+ *
+ * <p>
+ * The shards are identified by their position in the list, so the order must not change. Because the hash is
+ * consistent, appending a new shard only moves about <code>1/N</code> of the tokens, but tokens that move can no
+ * longer be found (their clients have to get a new one).
+ * </p>
+ *
+ */
+public class ShardedTokenStore implements BatchTokenStore, DisposableBean {
+
+	private static final int VIRTUAL_NODES = 128;
+
+	private final List<TokenStore> shards;
+
+	private final long[] ring;
+
+	private final int[] owners;
+
+	private ExecutorService executor;
+
+	private boolean ownExecutor;
+
+	public ShardedTokenStore(List<? extends TokenStore> shards) {
+		Assert.notEmpty(shards, "At least one shard is required");
+		this.shards = new ArrayList<TokenStore>(shards);
+		int size = this.shards.size();
+		long[] points = new long[size * VIRTUAL_NODES];
+		for (int i = 0; i < size; i++) {
+			for (int v = 0; v < VIRTUAL_NODES; v++) {
+				points[i * VIRTUAL_NODES + v] = (hash("shard-" + i + "-" + v) & ~0xffffL) | i;
+			}
+		}
+		// the shard is carried in the low bits of each point, so that the ring can be sorted as one array
+		Arrays.sort(points);
+		this.ring = new long[points.length];
+		this.owners = new int[points.length];
+		for (int i = 0; i < points.length; i++) {
+			ring[i] = points[i];
+			owners[i] = (int) (points[i] & 0xffffL);
+		}
+		// grows with the number of concurrent lookups, instead of queueing them behind each other
+		this.executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("token-store-shard-"));
+		this.ownExecutor = true;
+	}
+
+	/**
+	 * The executor used to query the shards in parallel (by default a cached thread pool, which keeps as many threads
+	 * as the peak number of concurrent lookups needs). A bounded executor should allow for <code>N-1</code> threads per
+	 * concurrent lookup, otherwise lookups wait for each other.
+	 *
+	 * @param executor the executor to set
+	 */
+	public void setExecutor(ExecutorService executor) {
+		if (ownExecutor) {
+			this.executor.shutdown();
+		}
+		this.executor = executor;
+		this.ownExecutor = false;
+	}
+
+	public void destroy() throws Exception {
+		if (ownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @param tokenValue a token value
+	 * @return the index of the shard that stores the token
+	 */
+	public int getShardIndex(String tokenValue) {
+		long hash = hash(tokenValue);
+		int index = Arrays.binarySearch(ring, hash);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return owners[index == ring.length ? 0 : index];
+	}
+
+	private TokenStore shard(String tokenValue) {
+		return shards.get(getShardIndex(tokenValue));
+	}
+
+	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+		return shard(token.getValue()).readAuthentication(token);
+	}
+
+	public OAuth2Authentication readAuthentication(String token) {
+		return shard(token).readAuthentication(token);
+	}
+
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		shard(token.getValue()).storeAccessToken(token, authentication);
+	}
+
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		return shard(tokenValue).readAccessToken(tokenValue);
+	}
+
+	public Map.Entry<OAuth2AccessToken, OAuth2Authentication> readAccessTokenAndAuthentication(String tokenValue) {
+		return BatchTokenUtils.readAccessTokenAndAuthentication(shard(tokenValue), tokenValue);
+	}
+
+	/**
+	 * Read the tokens from each shard with a single call to that shard, querying the shards in parallel.
+	 */
+	public Map<OAuth2AccessToken, OAuth2Authentication> readAccessTokens(Collection<String> tokenValues) {
+		final List<List<String>> batches = new ArrayList<List<String>>();
+		for (int i = 0; i < shards.size(); i++) {
+			batches.add(new ArrayList<String>());
+		}
+		for (String tokenValue : tokenValues) {
+			batches.get(getShardIndex(tokenValue)).add(tokenValue);
+		}
+		Map<OAuth2AccessToken, OAuth2Authentication> result = new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+		for (Map<OAuth2AccessToken, OAuth2Authentication> tokens : scatter(new ShardCallback<Map<OAuth2AccessToken, OAuth2Authentication>>() {
+			public Map<OAuth2AccessToken, OAuth2Authentication> doInShard(int index, TokenStore shard) {
+				List<String> batch = batches.get(index);
+				if (batch.isEmpty()) {
+					return new LinkedHashMap<OAuth2AccessToken, OAuth2Authentication>();
+				}
+				return BatchTokenUtils.readAccessTokens(shard, batch);
+			}
+		})) {
+			result.putAll(tokens);
+		}
+		return result;
+	}
+
+	public void removeAccessToken(OAuth2AccessToken token) {
+		shard(token.getValue()).removeAccessToken(token);
+	}
+
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		shard(refreshToken.getValue()).storeRefreshToken(refreshToken, authentication);
+	}
+
+	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+		return shard(tokenValue).readRefreshToken(tokenValue);
+	}
+
+	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+		return shard(token.getValue()).readAuthenticationForRefreshToken(token);
+	}
+
+	public void removeRefreshToken(OAuth2RefreshToken token) {
+		shard(token.getValue()).removeRefreshToken(token);
+	}
+
+	/**
+	 * Remove the access tokens from all the shards, because an access token is stored in its own shard, not in the
+	 * shard of its refresh token.
+	 */
+	public void removeAccessTokenUsingRefreshToken(final OAuth2RefreshToken refreshToken) {
+		scatter(new ShardCallback<Void>() {
+			public Void doInShard(int index, TokenStore shard) {
+				shard.removeAccessTokenUsingRefreshToken(refreshToken);
+				return null;
+			}
+		});
+	}
+
+	public OAuth2AccessToken getAccessToken(final OAuth2Authentication authentication) {
+		for (OAuth2AccessToken token : scatter(new ShardCallback<OAuth2AccessToken>() {
+			public OAuth2AccessToken doInShard(int index, TokenStore shard) {
+				return shard.getAccessToken(authentication);
+			}
+		})) {
+			if (token != null) {
+				return token;
+			}
+		}
+		return null;
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByUserName(final String userName) {
+		return combine(scatter(new ShardCallback<Collection<OAuth2AccessToken>>() {
+			public Collection<OAuth2AccessToken> doInShard(int index, TokenStore shard) {
+				return shard.findTokensByUserName(userName);
+			}
+		}));
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByClientId(final String clientId) {
+		return combine(scatter(new ShardCallback<Collection<OAuth2AccessToken>>() {
+			public Collection<OAuth2AccessToken> doInShard(int index, TokenStore shard) {
+				return shard.findTokensByClientId(clientId);
+			}
+		}));
+	}
+
+	private Collection<OAuth2AccessToken> combine(List<Collection<OAuth2AccessToken>> results) {
+		List<OAuth2AccessToken> tokens = new ArrayList<OAuth2AccessToken>();
+		for (Collection<OAuth2AccessToken> result : results) {
+			tokens.addAll(result);
+		}
+		return tokens;
+	}
+
+	private <T> List<T> scatter(final ShardCallback<T> callback) {
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (int i = 1; i < shards.size(); i++) {
+			final int index = i;
+			futures.add(executor.submit(new Callable<T>() {
+				public T call() throws Exception {
+					return callback.doInShard(index, shards.get(index));
+				}
+			}));
+		}
+		List<T> results = new ArrayList<T>();
+		try {
+			results.add(callback.doInShard(0, shards.get(0)));
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for token store shards", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Token store shard failed", cause);
+		}
+		finally {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	private static long hash(String value) {
+		byte[] bytes = AbstractJdbcTokenStore.digest(value);
+		long hash = 0;
+		for (int i = 0; i < 8; i++) {
+			hash = (hash << 8) | (bytes[i] & 0xff);
+		}
+		return hash;
+	}
+
+	private interface ShardCallback<T> {
+		T doInShard(int index, TokenStore shard);
+	}
+
+}
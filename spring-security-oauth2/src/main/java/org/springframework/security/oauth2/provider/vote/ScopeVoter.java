@@ -138,9 +138,10 @@ public class ScopeVoter implements AccessDecisionVoter<Object> {
 			if (this.supports(attribute)) {
 				result = ACCESS_DENIED;
 
+				String value = attribute.getAttribute();
 				Set<String> scopes = clientAuthentication.getScope();
 				for (String scope : scopes) {
-					if (attribute.getAttribute().toUpperCase().equals((scopePrefix + scope).toUpperCase())) {
+					if (matches(value, scope)) {
 						return ACCESS_GRANTED;
 					}
 				}
@@ -156,4 +157,15 @@ public class ScopeVoter implements AccessDecisionVoter<Object> {
 		return result;
 	}
 
+	/**
+	 * Case insensitive comparison of the attribute with the scope prefix followed by the scope, without building the
+	 * prefixed scope.
+	 */
+	private boolean matches(String attribute, String scope) {
+		int prefixLength = scopePrefix.length();
+		return attribute.length() == prefixLength + scope.length()
+				&& attribute.regionMatches(true, 0, scopePrefix, 0, prefixLength)
+				&& attribute.regionMatches(true, prefixLength, scope, 0, scope.length());
+	}
+
 }
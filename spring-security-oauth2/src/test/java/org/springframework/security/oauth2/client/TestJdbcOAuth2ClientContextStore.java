@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+
+public class TestJdbcOAuth2ClientContextStore {
+
+	private JdbcOAuth2ClientContextStore store;
+
+	private EmbeddedDatabase db;
+
+	@Before
+	public void setUp() throws Exception {
+		// creates a HSQL in-memory db populated from default scripts classpath:schema.sql and classpath:data.sql
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		store = new JdbcOAuth2ClientContextStore(db);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void testPutAndGet() {
+		store.put("token:foo", new DefaultOAuth2AccessToken("FOO"));
+		assertEquals(new DefaultOAuth2AccessToken("FOO"), store.get("token:foo"));
+		assertNull(store.get("token:bar"));
+	}
+
+	@Test
+	public void testPutReplaces() {
+		store.put("token:foo", new DefaultOAuth2AccessToken("FOO"));
+		store.put("token:foo", new DefaultOAuth2AccessToken("BAR"));
+		assertEquals(new DefaultOAuth2AccessToken("BAR"), store.get("token:foo"));
+	}
+
+	@Test
+	public void testPutKeepsOneRow() {
+		store.put("token:foo", new DefaultOAuth2AccessToken("FOO"));
+		store.put("token:foo", new DefaultOAuth2AccessToken("BAR"));
+		assertEquals(1, new JdbcTemplate(db).queryForInt(
+				"select count(*) from oauth_client_token where authentication_id = ?", "token:foo"));
+	}
+
+	@Test
+	public void testRemoveOnlyOnce() {
+		store.put("state:foo", "http://anywhere");
+		assertEquals("http://anywhere", store.remove("state:foo"));
+		assertNull(store.remove("state:foo"));
+		assertNull(store.get("state:foo"));
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
+import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeResourceDetails;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+public class TestSharedOAuth2ClientContext {
+
+	private InMemoryOAuth2ClientContextStore store = new InMemoryOAuth2ClientContextStore();
+
+	private AuthorizationCodeResourceDetails resource = new AuthorizationCodeResourceDetails();
+
+	private SharedOAuth2ClientContext context;
+
+	@Before
+	public void init() {
+		resource.setClientId("client");
+		context = createContext();
+		login("marissa");
+	}
+
+	@After
+	public void close() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	public void testTokenSharedBetweenNodes() {
+		OAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("FOO");
+		context.setAccessToken(accessToken);
+		assertSame(accessToken, context.getAccessTokenRequest().getExistingToken());
+		assertEquals(accessToken, createContext().getAccessToken());
+	}
+
+	@Test
+	public void testTokenPerUser() {
+		context.setAccessToken(new DefaultOAuth2AccessToken("FOO"));
+		login("dave");
+		assertNull(context.getAccessToken());
+	}
+
+	@Test
+	public void testTokenCachedLocally() {
+		OAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("FOO");
+		context.setAccessToken(accessToken);
+		store.clear();
+		assertSame(accessToken, context.getAccessToken());
+	}
+
+	@Test
+	public void testTokenNotCached() {
+		context.setCacheSeconds(0);
+		context.setAccessToken(new DefaultOAuth2AccessToken("FOO"));
+		store.clear();
+		assertNull(context.getAccessToken());
+	}
+
+	@Test
+	public void testRemoveToken() {
+		context.setAccessToken(new DefaultOAuth2AccessToken("FOO"));
+		context.setAccessToken(null);
+		assertNull(context.getAccessToken());
+		assertNull(createContext().getAccessToken());
+	}
+
+	@Test
+	public void testNoTokenForAnonymousUser() {
+		SecurityContextHolder.getContext().setAuthentication(
+				new AnonymousAuthenticationToken("key", "anonymous", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+		context.setAccessToken(new DefaultOAuth2AccessToken("FOO"));
+		assertNull(context.getAccessToken());
+	}
+
+	@Test
+	public void testTokenForClientOnlyResource() {
+		SecurityContextHolder.clearContext();
+		ClientCredentialsResourceDetails clientOnly = new ClientCredentialsResourceDetails();
+		clientOnly.setClientId("client");
+		SharedOAuth2ClientContext context = new SharedOAuth2ClientContext(clientOnly, null);
+		context.setStore(store);
+		OAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("FOO");
+		context.setAccessToken(accessToken);
+		SharedOAuth2ClientContext other = new SharedOAuth2ClientContext(clientOnly, null);
+		other.setStore(store);
+		assertEquals(accessToken, other.getAccessToken());
+	}
+
+	@Test
+	public void testPreservedStateSharedBetweenNodes() {
+		context.setPreservedState("state", "http://anywhere");
+		assertEquals("http://anywhere", createContext().removePreservedState("state"));
+		assertNull(context.removePreservedState("state"));
+	}
+
+	@Test
+	public void testPreservedStatePerUser() {
+		context.setPreservedState("state", "http://anywhere");
+		login("dave");
+		assertNull(createContext().removePreservedState("state"));
+		login("marissa");
+		assertEquals("http://anywhere", createContext().removePreservedState("state"));
+	}
+
+	@Test
+	public void testNoPreservedStateForAnonymousUser() {
+		SecurityContextHolder.getContext().setAuthentication(
+				new AnonymousAuthenticationToken("key", "anonymous", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+		context.setPreservedState("state", "http://anywhere");
+		assertNull(context.removePreservedState("state"));
+	}
+
+	private SharedOAuth2ClientContext createContext() {
+		SharedOAuth2ClientContext context = new SharedOAuth2ClientContext(resource, new DefaultAccessTokenRequest());
+		context.setStore(store);
+		return context;
+	}
+
+	private void login(String username) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(username, "N/A", AuthorityUtils.createAuthorityList("ROLE_USER")));
+	}
+
+}
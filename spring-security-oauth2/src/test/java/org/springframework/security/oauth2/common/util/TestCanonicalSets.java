@@ -0,0 +1,79 @@
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestCanonicalSets {
+
+	@After
+	public void reset() {
+		CanonicalSets.setMaxSize(CanonicalSets.DEFAULT_MAX_SIZE);
+	}
+
+	@Test
+	public void testEqualCollectionsShareOneSet() {
+		Set<String> first = CanonicalSets.intern(Arrays.asList("read", "write"));
+		Set<String> second = CanonicalSets.intern(new LinkedHashSet<String>(Arrays.asList("read", "write")));
+		assertSame(first, second);
+		assertSame(first, CanonicalSets.intern(first));
+		assertEquals("[read, write]", first.toString());
+	}
+
+	@Test
+	public void testOrderIsPreserved() {
+		Set<String> first = CanonicalSets.intern(Arrays.asList("read", "write"));
+		Set<String> second = CanonicalSets.intern(Arrays.asList("write", "read"));
+		assertEquals(first, second);
+		assertNotSame(first, second);
+		assertEquals("[write, read]", second.toString());
+	}
+
+	@Test
+	public void testDuplicatesAreRemoved() {
+		assertSame(CanonicalSets.intern(Arrays.asList("read")), CanonicalSets.intern(Arrays.asList("read", "read")));
+	}
+
+	@Test
+	public void testNullAndEmpty() {
+		assertNull(CanonicalSets.intern(null));
+		assertTrue(CanonicalSets.intern(Collections.<String> emptyList()).isEmpty());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiable() {
+		CanonicalSets.intern(Arrays.asList("read")).add("write");
+	}
+
+	@Test
+	public void testNotSharedWhenFull() {
+		CanonicalSets.setMaxSize(0);
+		Set<String> first = CanonicalSets.intern(Arrays.asList("foo", "bar", "spam"));
+		Set<String> second = CanonicalSets.intern(Arrays.asList("foo", "bar", "spam"));
+		assertEquals(first, second);
+		assertNotSame(first, second);
+	}
+
+	@Test
+	public void testStartsAgainWhenFull() {
+		CanonicalSets.clear();
+		CanonicalSets.setMaxSize(2);
+		CanonicalSets.intern(Arrays.asList("foo"));
+		CanonicalSets.intern(Arrays.asList("bar"));
+		assertEquals(2, CanonicalSets.size());
+		Set<String> first = CanonicalSets.intern(Arrays.asList("spam"));
+		assertEquals(1, CanonicalSets.size());
+		assertSame(first, CanonicalSets.intern(Arrays.asList("spam")));
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.security.oauth2.provider.endpoint.AsyncTokenEndpoint;
+import org.springframework.security.oauth2.provider.endpoint.TokenEndpoint;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TestAuthorizationServerAsyncParser {
+
+	private static String RESOURCE_NAME = "authorization-server-async.xml";
+
+	private ConfigurableApplicationContext context = new GenericXmlApplicationContext(getClass(), RESOURCE_NAME);
+
+	@After
+	public void close() {
+		context.close();
+	}
+
+	@Test
+	public void testAsyncTokenEndpointRegistered() {
+		Object endpoint = context.getBean("oauth2TokenEndpoint");
+		assertTrue("Wrong endpoint: " + endpoint, endpoint instanceof AsyncTokenEndpoint);
+		assertSame(context.getBean("executor"), ReflectionTestUtils.getField(endpoint, "asyncExecutor"));
+		// the synchronous endpoint is only an inner bean, so that /oauth/token is mapped once
+		assertEquals(0, context.getBeanNamesForType(TokenEndpoint.class).length);
+	}
+
+}
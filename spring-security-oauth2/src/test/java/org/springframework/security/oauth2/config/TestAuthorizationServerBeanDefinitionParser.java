@@ -59,6 +59,7 @@ public class TestAuthorizationServerBeanDefinitionParser {
 	@Test
 	public void testDefaults() {
 		assertTrue(context.containsBeanDefinition("oauth2AuthorizationEndpoint"));
+		assertTrue(context.containsBeanDefinition("oauth2TokenEndpoint"));
 	}
 
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.http.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+public class TestOAuth2AccessTokenHttpMessageConverter {
+
+	private OAuth2AccessTokenHttpMessageConverter converter = new OAuth2AccessTokenHttpMessageConverter();
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	private DefaultOAuth2AccessToken accessToken;
+
+	@Before
+	public void init() {
+		accessToken = new DefaultOAuth2AccessToken("FOO");
+		accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("BAR"));
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + 3600500));
+		accessToken.setScope(new LinkedHashSet<String>(Arrays.asList("read", "write")));
+		Map<String, Object> additionalInformation = new LinkedHashMap<String, Object>();
+		additionalInformation.put("user", "marissa");
+		additionalInformation.put("count", 3);
+		additionalInformation.put("admin", false);
+		additionalInformation.put("roles", Arrays.asList("USER", "ADMIN"));
+		additionalInformation.put("profile", Collections.singletonMap("name", "Marissa"));
+		accessToken.setAdditionalInformation(additionalInformation);
+	}
+
+	@Test
+	public void testSupports() {
+		assertTrue(converter.canWrite(DefaultOAuth2AccessToken.class, MediaType.APPLICATION_JSON));
+		assertTrue(converter.canWrite(OAuth2AccessToken.class, MediaType.APPLICATION_FORM_URLENCODED));
+		assertFalse(converter.canWrite(OAuth2AccessToken.class, MediaType.APPLICATION_XML));
+		assertFalse(converter.canRead(OAuth2AccessToken.class, MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	public void testWriteJsonSameAsSerializer() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		converter.write(accessToken, MediaType.APPLICATION_JSON, new ServletServerHttpResponse(response));
+		Map<?, ?> expected = mapper.readValue(mapper.writeValueAsString(accessToken), Map.class);
+		Map<?, ?> actual = mapper.readValue(response.getContentAsString(), Map.class);
+		// expires_in is computed when each of them is written, so it may be a second apart
+		assertExpiresIn(((Number) actual.remove("expires_in")).longValue());
+		assertExpiresIn(((Number) expected.remove("expires_in")).longValue());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testWriteJsonLeavesBodyOpen() throws Exception {
+		final HttpHeaders headers = new HttpHeaders();
+		final AtomicBoolean closed = new AtomicBoolean();
+		final ByteArrayOutputStream body = new ByteArrayOutputStream() {
+			@Override
+			public void close() throws IOException {
+				closed.set(true);
+			}
+		};
+		converter.write(new DefaultOAuth2AccessToken("FOO"), MediaType.APPLICATION_JSON, new HttpOutputMessage() {
+			public HttpHeaders getHeaders() {
+				return headers;
+			}
+
+			public OutputStream getBody() throws IOException {
+				return body;
+			}
+		});
+		assertEquals("{\"access_token\":\"FOO\",\"token_type\":\"bearer\"}", body.toString("UTF-8"));
+		assertFalse(closed.get());
+	}
+
+	@Test
+	public void testWriteMinimalJson() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		converter.write(new DefaultOAuth2AccessToken("FOO"), null, new ServletServerHttpResponse(response));
+		assertEquals("{\"access_token\":\"FOO\",\"token_type\":\"bearer\"}", response.getContentAsString());
+	}
+
+	@Test
+	public void testWriteForm() throws Exception {
+		accessToken.setAdditionalInformation(Collections.<String, Object> singletonMap("user", "marissa & co"));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		converter.write(accessToken, MediaType.APPLICATION_FORM_URLENCODED, new ServletServerHttpResponse(response));
+		String form = response.getContentAsString();
+		Matcher matcher = Pattern.compile("&expires_in=(\\d+)").matcher(form);
+		assertTrue(matcher.find());
+		assertExpiresIn(Long.parseLong(matcher.group(1)));
+		assertEquals("access_token=FOO&token_type=bearer&refresh_token=BAR&scope=read+write&user=marissa+%26+co",
+				matcher.replaceFirst(""));
+		assertEquals(MediaType.APPLICATION_FORM_URLENCODED_VALUE, response.getContentType());
+	}
+
+	@Test
+	public void testWriteFormWithoutTokenType() throws Exception {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setTokenType(null);
+		token.setAdditionalInformation(Collections.<String, Object> singletonMap("user", null));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		converter.write(token, MediaType.APPLICATION_FORM_URLENCODED, new ServletServerHttpResponse(response));
+		assertEquals("access_token=FOO", response.getContentAsString());
+	}
+
+	private void assertExpiresIn(long expiresIn) {
+		// the token expires in an hour, less the time the test has taken so far
+		assertTrue("Wrong expires_in: " + expiresIn, expiresIn > 3500 && expiresIn <= 3600);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.springframework.security.oauth2.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.TemporarilyUnavailableException;
+import org.springframework.security.oauth2.provider.metrics.SimpleMetricsRecorder;
+import org.springframework.security.oauth2.provider.token.AbstractTokenGranter;
+
+public class TestCompositeTokenGranter {
+
+	private TokenRequest tokenRequest = new TokenRequest(Collections.<String, String> emptyMap(), "foo", null, null);
+
+	private OAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+
+	@Test
+	public void testGrantTypeIndex() {
+		AbstractTokenGranter password = granter("password");
+		AbstractTokenGranter clientCredentials = granter("client_credentials");
+		when(clientCredentials.grant("client_credentials", tokenRequest)).thenReturn(token);
+		CompositeTokenGranter granter = new CompositeTokenGranter(Arrays.<TokenGranter> asList(password,
+				clientCredentials));
+		assertEquals(token, granter.grant("client_credentials", tokenRequest));
+		verify(password, never()).grant(anyString(), any(TokenRequest.class));
+	}
+
+	@Test
+	public void testUntypedGranter() {
+		AbstractTokenGranter password = granter("password");
+		TokenGranter custom = mock(TokenGranter.class);
+		when(custom.grant("custom", tokenRequest)).thenReturn(token);
+		CompositeTokenGranter granter = new CompositeTokenGranter(Arrays.<TokenGranter> asList(password, custom));
+		assertEquals(token, granter.grant("custom", tokenRequest));
+		assertNull(granter.grant("password", tokenRequest));
+		verify(custom).grant("password", tokenRequest);
+		verify(password, never()).grant("custom", tokenRequest);
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		AbstractTokenGranter password = granter("password");
+		when(password.grant("password", tokenRequest)).thenAnswer(new Answer<OAuth2AccessToken>() {
+			public OAuth2AccessToken answer(InvocationOnMock invocation) throws Throwable {
+				started.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				return token;
+			}
+		});
+		AbstractTokenGranter clientCredentials = granter("client_credentials");
+		when(clientCredentials.grant("client_credentials", tokenRequest)).thenReturn(token);
+		final CompositeTokenGranter granter = new CompositeTokenGranter(Arrays.<TokenGranter> asList(password,
+				clientCredentials));
+		granter.setConcurrencyLimits(Collections.singletonMap("password", 1));
+		SimpleMetricsRecorder metrics = new SimpleMetricsRecorder();
+		granter.setMetricsRecorder(metrics);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<OAuth2AccessToken> first = executor.submit(new Callable<OAuth2AccessToken>() {
+				public OAuth2AccessToken call() throws Exception {
+					return granter.grant("password", tokenRequest);
+				}
+			});
+			started.await(5, TimeUnit.SECONDS);
+			try {
+				granter.grant("password", tokenRequest);
+				fail("Expected TemporarilyUnavailableException");
+			}
+			catch (TemporarilyUnavailableException e) {
+				assertEquals(503, e.getHttpErrorCode());
+			}
+			// other grant types are not affected
+			assertEquals(token, granter.grant("client_credentials", tokenRequest));
+			release.countDown();
+			assertEquals(token, first.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(1, metrics.getCount("oauth2.grant.password.rejected"));
+		assertEquals(token, granter.grant("password", tokenRequest));
+	}
+
+	private AbstractTokenGranter granter(String grantType) {
+		AbstractTokenGranter granter = mock(AbstractTokenGranter.class);
+		when(granter.getGrantType()).thenReturn(grantType);
+		return granter;
+	}
+
+}
@@ -1,6 +1,8 @@
 package org.springframework.security.oauth2.provider;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -64,4 +66,29 @@ public class TestOAuth2Authentication {
 		assertEquals(holder, other);
 	}
 
+	@Test
+	public void testSerializationSharesScopes() {
+		OAuth2Request request = new AuthorizationRequest("client", Arrays.asList("read")).createOAuth2Request();
+		OAuth2Request other = (OAuth2Request) SerializationUtils.deserialize(SerializationUtils.serialize(request));
+		assertSame(request.getScope(), other.getScope());
+	}
+
+	@Test
+	public void testNullScopeIsEmpty() {
+		assertTrue(new OAuth2Request(null, "client", null, true, null, null, null, null, null).getScope().isEmpty());
+		assertTrue(new TokenRequest(Collections.<String, String> emptyMap(), "client", null, "password").getScope()
+				.isEmpty());
+		AuthorizationRequest request = new AuthorizationRequest("client", Arrays.asList("read"));
+		request.setScope(null);
+		assertTrue(request.getScope().isEmpty());
+	}
+
+	@Test
+	public void testUnvalidatedScopesAreNotShared() {
+		AuthorizationRequest request = new AuthorizationRequest("client", Arrays.asList("read"));
+		AuthorizationRequest other = new AuthorizationRequest("client", Arrays.asList("read"));
+		assertNotSame(request.getScope(), other.getScope());
+		assertSame(request.createOAuth2Request().getScope(), other.createOAuth2Request().getScope());
+	}
+
 }
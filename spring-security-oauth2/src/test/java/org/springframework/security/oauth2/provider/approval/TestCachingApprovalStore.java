@@ -0,0 +1,51 @@
+package org.springframework.security.oauth2.provider.approval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.approval.Approval.ApprovalStatus;
+
+public class TestCachingApprovalStore extends AbstractTestApprovalStore {
+
+	private InMemoryApprovalStore delegate = new InMemoryApprovalStore();
+
+	private CachingApprovalStore store = new CachingApprovalStore(delegate);
+
+	@Override
+	protected ApprovalStore getApprovalStore() {
+		return store;
+	}
+
+	@Test
+	public void testApprovalsAreCached() {
+		assertTrue(store.addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "read", 1000,
+				ApprovalStatus.APPROVED))));
+		assertEquals(1, store.getApprovals("user", "client").size());
+		delegate.addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "write", 1000,
+				ApprovalStatus.APPROVED)));
+		assertEquals(1, store.getApprovals("user", "client").size());
+		store.evict("user", "client");
+		assertEquals(2, store.getApprovals("user", "client").size());
+	}
+
+	@Test
+	public void testAddEvictsCachedApprovals() {
+		assertEquals(0, store.getApprovals("user", "client").size());
+		assertTrue(store.addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "read", 1000,
+				ApprovalStatus.APPROVED))));
+		assertEquals(1, store.getApprovals("user", "client").size());
+	}
+
+	@Test
+	public void testCacheDisabled() {
+		store.setCacheSeconds(0);
+		assertEquals(0, store.getApprovals("user", "client").size());
+		delegate.addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "read", 1000,
+				ApprovalStatus.APPROVED)));
+		assertEquals(1, store.getApprovals("user", "client").size());
+	}
+
+}
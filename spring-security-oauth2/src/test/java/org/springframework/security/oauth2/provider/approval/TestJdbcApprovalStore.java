@@ -20,7 +20,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Test;
@@ -51,6 +53,41 @@ public class TestJdbcApprovalStore extends AbstractTestApprovalStore {
 		return store;
 	}
 
+	@Test
+	public void testUpdateStatus() {
+		assertTrue(store.addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "read", 1000,
+				ApprovalStatus.APPROVED), new Approval("user", "client", "write", 1000, ApprovalStatus.APPROVED))));
+		assertTrue(store.addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "write", 1000,
+				ApprovalStatus.DENIED), new Approval("user", "client", "trust", 1000, ApprovalStatus.APPROVED))));
+		assertEquals(3, store.getApprovals("user", "client").size());
+		List<Approval> approvals = store.getApprovals("user", "client", Arrays.asList("write"));
+		assertEquals(1, approvals.size());
+		assertEquals(ApprovalStatus.DENIED, approvals.get(0).getStatus());
+	}
+
+	@Test
+	public void testGetApprovalsByScope() {
+		assertTrue(addApprovals(Arrays.<Approval> asList(new Approval("user", "client", "read", 1000,
+				ApprovalStatus.APPROVED), new Approval("user", "client", "write", 1000, ApprovalStatus.DENIED))));
+		Collection<Approval> approvals = store.getApprovals("user", "client", Arrays.asList("read", "trust"));
+		assertEquals(1, approvals.size());
+		assertEquals("read", approvals.iterator().next().getScope());
+		assertEquals(0, store.getApprovals("user", "client", Arrays.<String> asList()).size());
+	}
+
+	@Test
+	public void testUpsertStatement() {
+		store.setUpsertApprovalStatement("merge into oauth_approvals using (values(cast(? as timestamp), cast(? as varchar(10)), cast(? as timestamp), "
+				+ "cast(? as varchar(256)), cast(? as varchar(256)), cast(? as varchar(256)))) "
+				+ "as vals(expiresAt,status,lastModifiedAt,userId,clientId,scope) "
+				+ "on oauth_approvals.userId=vals.userId and oauth_approvals.clientId=vals.clientId and oauth_approvals.scope=vals.scope "
+				+ "when matched then update set oauth_approvals.expiresAt=vals.expiresAt, oauth_approvals.status=vals.status, "
+				+ "oauth_approvals.lastModifiedAt=vals.lastModifiedAt "
+				+ "when not matched then insert (expiresAt,status,lastModifiedAt,userId,clientId,scope) "
+				+ "values (vals.expiresAt,vals.status,vals.lastModifiedAt,vals.userId,vals.clientId,vals.scope)");
+		testUpdateStatus();
+	}
+
 	@Test
 	public void testRevokeByExpiry() {
 		store.setHandleRevocationsAsExpiry(true);
@@ -16,13 +16,18 @@
 
 package org.springframework.security.oauth2.provider.approval;
 
+import static org.junit.Assert.assertTrue;
+
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import org.junit.Test;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
@@ -30,7 +35,10 @@ import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.approval.Approval.ApprovalStatus;
 import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.JwtTokenEnhancer;
+import org.springframework.security.oauth2.provider.token.RevocationIndex;
 
 /**
  * @author Dave Syer
@@ -86,4 +94,21 @@ public class TestTokenApprovalStore extends AbstractTestApprovalStore {
 	protected int getExpectedNumberOfApprovalsAfterRevoke() {
 		return 0;
 	}
+
+	@Test
+	public void testRevokedTokensAreAddedToRevocationIndex() {
+		RevocationIndex revocationIndex = new RevocationIndex();
+		store.setRevocationIndex(revocationIndex);
+		Approval approval = new Approval("user", "client", "read", new Date(System.currentTimeMillis() + 60000),
+				ApprovalStatus.APPROVED);
+		addApprovals(Collections.singleton(approval));
+		DefaultOAuth2AccessToken token = (DefaultOAuth2AccessToken) tokenStore.findTokensByUserName("user").iterator()
+				.next();
+		token.setExpiration(new Date(System.currentTimeMillis() + 60000));
+		token.setAdditionalInformation(Collections.<String, Object> singletonMap(JwtTokenEnhancer.TOKEN_ID, "FOO"));
+		assertTrue(getApprovalStore().revokeApprovals(Collections.singleton(approval)));
+		assertTrue(tokenStore.findTokensByUserName("user").isEmpty());
+		assertTrue(revocationIndex.isRevoked("FOO"));
+	}
+
 }
@@ -0,0 +1,92 @@
+package org.springframework.security.oauth2.provider.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+public class TestCachingPasswordEncoder {
+
+	private CountingPasswordEncoder delegate = new CountingPasswordEncoder();
+
+	private CachingPasswordEncoder encoder = new CachingPasswordEncoder(delegate);
+
+	@Test
+	public void testMatchIsCached() {
+		String encoded = encoder.encode("secret");
+		assertTrue(encoder.matches("secret", encoded));
+		assertTrue(encoder.matches("secret", encoded));
+		assertEquals(1, delegate.count);
+	}
+
+	@Test
+	public void testMismatchIsNotCached() {
+		String encoded = encoder.encode("secret");
+		assertFalse(encoder.matches("wrong", encoded));
+		assertFalse(encoder.matches("wrong", encoded));
+		assertEquals(2, delegate.count);
+	}
+
+	@Test
+	public void testUpdatedSecret() {
+		String encoded = encoder.encode("secret");
+		assertTrue(encoder.matches("secret", encoded));
+		String updated = encoder.encode("other");
+		assertFalse(encoder.matches("secret", updated));
+		assertTrue(encoder.matches("other", updated));
+		assertEquals(3, delegate.count);
+	}
+
+	@Test
+	public void testClear() {
+		String encoded = encoder.encode("secret");
+		assertTrue(encoder.matches("secret", encoded));
+		encoder.clear();
+		assertTrue(encoder.matches("secret", encoded));
+		assertEquals(2, delegate.count);
+	}
+
+	@Test
+	public void testCacheDisabled() {
+		encoder.setCacheSeconds(0);
+		String encoded = encoder.encode("secret");
+		assertTrue(encoder.matches("secret", encoded));
+		assertTrue(encoder.matches("secret", encoded));
+		assertEquals(2, delegate.count);
+	}
+
+	@Test
+	public void testMaxCacheSize() {
+		encoder.setMaxCacheSize(1);
+		String first = encoder.encode("first");
+		String second = encoder.encode("second");
+		assertTrue(encoder.matches("first", first));
+		assertTrue(encoder.matches("second", second));
+		assertTrue(encoder.matches("second", second));
+		assertEquals(2, delegate.count);
+		// the first match was evicted to make room for the second
+		assertTrue(encoder.matches("first", first));
+		assertEquals(3, delegate.count);
+	}
+
+	private static class CountingPasswordEncoder implements PasswordEncoder {
+
+		private PasswordEncoder delegate = new BCryptPasswordEncoder(4);
+
+		private int count;
+
+		public String encode(CharSequence rawPassword) {
+			return delegate.encode(rawPassword);
+		}
+
+		public boolean matches(CharSequence rawPassword, String encodedPassword) {
+			count++;
+			return delegate.matches(rawPassword, encodedPassword);
+		}
+
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.springframework.security.oauth2.provider.code;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.RedirectMismatchException;
+import org.springframework.security.oauth2.provider.BaseClientDetails;
+import org.springframework.security.oauth2.provider.endpoint.IndexedRedirectResolver;
+
+public class TestIndexedRedirectResolver {
+
+	private IndexedRedirectResolver resolver = new IndexedRedirectResolver();
+
+	private BaseClientDetails client = new BaseClientDetails("foo", null, null, "authorization_code", null);
+
+	{
+		client.setRegisteredRedirectUri(new HashSet<String>(Arrays.asList("http://anywhere.com/callback",
+				"https://secure.example.com", "http://example.com/app/", "myapp:/callback")));
+	}
+
+	@Test
+	public void testRedirectMatchesPathPrefix() throws Exception {
+		String requestedRedirect = "http://anywhere.com/callback/more";
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+		requestedRedirect = "http://example.com/app/foo";
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+	}
+
+	@Test
+	public void testRedirectMatchesSubdomain() throws Exception {
+		String requestedRedirect = "https://www.secure.example.com/foo";
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+		requestedRedirect = "http://www.example.com/app/foo";
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+	}
+
+	@Test
+	public void testRedirectMatchesExactValue() throws Exception {
+		assertEquals("myapp:/callback", resolver.resolveRedirect("myapp:/callback", client));
+	}
+
+	@Test(expected = RedirectMismatchException.class)
+	public void testRedirectWithWrongPath() throws Exception {
+		resolver.resolveRedirect("http://anywhere.com/other", client);
+	}
+
+	@Test(expected = RedirectMismatchException.class)
+	public void testRedirectWithWrongProtocol() throws Exception {
+		resolver.resolveRedirect("http://secure.example.com/foo", client);
+	}
+
+	@Test(expected = RedirectMismatchException.class)
+	public void testRedirectSubdomainNotMatched() throws Exception {
+		resolver.setMatchSubdomains(false);
+		resolver.resolveRedirect("https://www.secure.example.com/foo", client);
+	}
+
+	@Test(expected = RedirectMismatchException.class)
+	public void testRegisteredRedirectChanged() throws Exception {
+		String requestedRedirect = "http://anywhere.com/callback";
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+		client.setRegisteredRedirectUri(Collections.singleton("http://nowhere.com"));
+		resolver.resolveRedirect(requestedRedirect, client);
+	}
+
+	@Test
+	public void testRegisteredRedirectChangedInPlace() throws Exception {
+		String requestedRedirect = "http://nowhere.com";
+		try {
+			resolver.resolveRedirect(requestedRedirect, client);
+			fail("Expected RedirectMismatchException");
+		}
+		catch (RedirectMismatchException e) {
+			// expected
+		}
+		// the same set is not compared again, so the index has to be evicted
+		client.getRegisteredRedirectUri().add(requestedRedirect);
+		resolver.evict("foo");
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+	}
+
+	@Test
+	public void testEqualRegisteredRedirectFromReloadedClient() throws Exception {
+		String requestedRedirect = "http://anywhere.com/callback";
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, client));
+		BaseClientDetails reloaded = new BaseClientDetails(client);
+		assertEquals(requestedRedirect, resolver.resolveRedirect(requestedRedirect, reloaded));
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.springframework.security.oauth2.provider.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+public class TestAsyncTokenEndpoint {
+
+	private TokenEndpoint tokenEndpoint = mock(TokenEndpoint.class);
+
+	private AsyncTokenEndpoint endpoint = new AsyncTokenEndpoint(tokenEndpoint);
+
+	private Principal principal = new UsernamePasswordAuthenticationToken("client", null,
+			AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"));
+
+	private Map<String, String> parameters = Collections.singletonMap("grant_type", "client_credentials");
+
+	@After
+	public void close() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	public void testGetAccessToken() throws Exception {
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+		endpoint.setAsyncExecutor(executor);
+		endpoint.setAsyncTimeout(1000L);
+		SecurityContextHolder.getContext().setAuthentication((Authentication) principal);
+		final ResponseEntity<OAuth2AccessToken> response = new ResponseEntity<OAuth2AccessToken>(HttpStatus.OK);
+		when(tokenEndpoint.getAccessToken(principal, parameters)).thenAnswer(
+				new Answer<ResponseEntity<OAuth2AccessToken>>() {
+					public ResponseEntity<OAuth2AccessToken> answer(InvocationOnMock invocation) throws Throwable {
+						// the security context is available to the granters
+						assertSame(principal, SecurityContextHolder.getContext().getAuthentication());
+						return response;
+					}
+				});
+		WebAsyncTask<ResponseEntity<OAuth2AccessToken>> task = endpoint.getAccessToken(principal, parameters);
+		assertSame(executor, task.getExecutor());
+		assertEquals(1000L, task.getTimeout().longValue());
+		SecurityContextHolder.clearContext();
+		assertSame(response, task.getCallable().call());
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+
+	@Test
+	public void testHandleException() throws Exception {
+		OAuth2Exception error = new InvalidGrantException("Bad");
+		ResponseEntity<OAuth2Exception> response = new ResponseEntity<OAuth2Exception>(error, HttpStatus.BAD_REQUEST);
+		when(tokenEndpoint.handleException(error)).thenReturn(response);
+		assertSame(response, endpoint.handleException(error));
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.springframework.security.oauth2.provider.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.security.oauth2.provider.token.BatchResourceServerTokenServices;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+
+public class TestCheckTokenEndpoint {
+
+	private BatchResourceServerTokenServices tokenServices = mock(BatchResourceServerTokenServices.class);
+
+	private CheckTokenEndpoint endpoint = new CheckTokenEndpoint(tokenServices);
+
+	@Test
+	public void testCheckTokens() {
+		List<String> values = Arrays.asList("FOO", "BAR");
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 60000));
+		token.setScope(Collections.singleton("read"));
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"client", null, true, Collections.singleton("read"), Collections.singleton("sparklr"), null, null,
+				null), null);
+		when(tokenServices.readAccessTokens(values)).thenReturn(
+				Collections.<OAuth2AccessToken, OAuth2Authentication> singletonMap(token, authentication));
+		Map<String, Map<String, ?>> result = endpoint.checkTokens(values);
+		assertEquals(1, result.size());
+		Map<String, ?> claims = result.get("FOO");
+		assertEquals("client", claims.get("client_id"));
+		assertTrue(((Collection<?>) claims.get("scope")).contains("read"));
+		assertTrue(((Collection<?>) claims.get("aud")).contains("sparklr"));
+		assertEquals(token.getExpiration().getTime() / 1000, claims.get("exp"));
+	}
+
+	@Test
+	public void testCheckTokensWithoutBatchSupport() {
+		ResourceServerTokenServices services = mock(ResourceServerTokenServices.class);
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"client", null, true, Collections.singleton("read"), null, null, null, null), null);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 60000));
+		when(services.readAccessToken("FOO")).thenReturn(token);
+		when(services.readAccessToken("BAR")).thenReturn(new DefaultOAuth2AccessToken("BAR"));
+		when(services.loadAuthentication("FOO")).thenReturn(authentication);
+		when(services.loadAuthentication("BAR")).thenThrow(new InvalidTokenException("Invalid token"));
+		Map<String, Map<String, ?>> result = new CheckTokenEndpoint(services).checkTokens(Arrays.asList("FOO", "BAR"));
+		assertEquals(1, result.size());
+		assertEquals("client", result.get("FOO").get("client_id"));
+		assertEquals(token.getExpiration().getTime() / 1000, result.get("FOO").get("exp"));
+	}
+
+	@Test
+	public void testCheckToken() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 60000));
+		token.setScope(Collections.singleton("read"));
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"client", null, true, Collections.singleton("read"), null, null, null, null), null);
+		when(tokenServices.readAccessTokens(Collections.singleton("FOO"))).thenReturn(
+				Collections.<OAuth2AccessToken, OAuth2Authentication> singletonMap(token, authentication));
+		Map<String, ?> claims = endpoint.checkToken("FOO");
+		assertEquals("client", claims.get("client_id"));
+		assertEquals(token.getExpiration().getTime() / 1000, claims.get("exp"));
+		verify(tokenServices, never()).readAccessToken("FOO");
+		verify(tokenServices, never()).loadAuthentication("FOO");
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testCheckExpiredToken() {
+		ResourceServerTokenServices services = mock(ResourceServerTokenServices.class);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() - 60000));
+		when(services.readAccessToken("FOO")).thenReturn(token);
+		new CheckTokenEndpoint(services).checkToken("FOO");
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testCheckUnknownToken() {
+		when(tokenServices.readAccessTokens(Collections.singleton("FOO"))).thenReturn(
+				Collections.<OAuth2AccessToken, OAuth2Authentication> emptyMap());
+		endpoint.checkToken("FOO");
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void testTooManyTokens() {
+		endpoint.setMaxTokens(1);
+		endpoint.checkTokens(Arrays.asList("FOO", "BAR"));
+	}
+
+	@Test
+	public void testHandleException() throws Exception {
+		assertEquals(HttpStatus.BAD_REQUEST,
+				endpoint.handleException(new InvalidRequestException("Bad")).getStatusCode());
+	}
+
+}
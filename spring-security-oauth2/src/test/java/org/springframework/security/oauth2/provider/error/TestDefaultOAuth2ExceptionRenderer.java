@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.error;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.common.exceptions.BadClientCredentialsException;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.http.converter.jaxb.JaxbOAuth2ExceptionMessageConverter;
+import org.springframework.web.context.request.ServletWebRequest;
+
+public class TestDefaultOAuth2ExceptionRenderer {
+
+	private DefaultOAuth2ExceptionRenderer renderer = new DefaultOAuth2ExceptionRenderer();
+
+	private int count = 0;
+
+	@Before
+	public void init() {
+		HttpMessageConverter<?> json = new MappingJacksonHttpMessageConverter() {
+			@Override
+			protected void writeInternal(Object object, HttpOutputMessage outputMessage) throws IOException,
+					HttpMessageNotWritableException {
+				count++;
+				super.writeInternal(object, outputMessage);
+			}
+		};
+		renderer.setMessageConverters(Arrays.<HttpMessageConverter<?>> asList(json,
+				new JaxbOAuth2ExceptionMessageConverter()));
+	}
+
+	@Test
+	public void testRepeatedErrorRenderedOnce() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			MockHttpServletResponse response = render(new BadClientCredentialsException(), "application/json");
+			assertEquals(401, response.getStatus());
+			assertEquals("{\"error\":\"invalid_client\",\"error_description\":\"Bad client credentials\"}",
+					response.getContentAsString());
+			assertEquals("application/json", response.getContentType());
+		}
+		assertEquals(1, count);
+	}
+
+	@Test
+	public void testDifferentErrorsRenderedSeparately() throws Exception {
+		assertEquals("{\"error\":\"invalid_token\",\"error_description\":\"foo\"}",
+				render(new InvalidTokenException("foo"), "application/json").getContentAsString());
+		assertEquals("{\"error\":\"invalid_token\",\"error_description\":\"bar\"}",
+				render(new InvalidTokenException("bar"), "application/json").getContentAsString());
+		OAuth2Exception exception = new InvalidTokenException("bar");
+		exception.addAdditionalInformation("foo", "spam");
+		assertEquals("{\"error\":\"invalid_token\",\"error_description\":\"bar\",\"foo\":\"spam\"}",
+				render(exception, "application/json").getContentAsString());
+		assertEquals(3, count);
+	}
+
+	@Test
+	public void testNegotiatedPerAcceptHeader() throws Exception {
+		assertEquals("<oauth><error_description>Bad client credentials</error_description><error>invalid_client</error></oauth>",
+				render(new BadClientCredentialsException(), "application/xml").getContentAsString());
+		assertEquals("{\"error\":\"invalid_client\",\"error_description\":\"Bad client credentials\"}",
+				render(new BadClientCredentialsException(), "application/json").getContentAsString());
+	}
+
+	@Test
+	public void testNoCache() throws Exception {
+		renderer.setMaxCacheSize(0);
+		render(new BadClientCredentialsException(), "application/json");
+		render(new BadClientCredentialsException(), "application/json");
+		assertEquals(2, count);
+	}
+
+	@Test
+	public void testInvalidTokenNotCached() throws Exception {
+		render(new InvalidTokenException("Invalid access token: FOO"), "application/json");
+		render(new InvalidTokenException("Invalid access token: FOO"), "application/json");
+		render(new InvalidGrantException("Invalid authorization code: BAR"), "application/json");
+		render(new InvalidGrantException("Invalid authorization code: BAR"), "application/json");
+		assertEquals(4, count);
+	}
+
+	@Test
+	public void testEvictsWhenFull() throws Exception {
+		renderer.setMaxCacheSize(1);
+		render(new BadClientCredentialsException(), "application/json");
+		render(new InvalidScopeException("Invalid scope: foo"), "application/json");
+		render(new InvalidScopeException("Invalid scope: foo"), "application/json");
+		assertEquals(2, count);
+	}
+
+	@Test
+	public void testStacklessExceptions() {
+		assertEquals(0, new BadClientCredentialsException().getStackTrace().length);
+		assertEquals(0, new InvalidTokenException("foo").getStackTrace().length);
+	}
+
+	private MockHttpServletResponse render(OAuth2Exception exception, String accept) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Accept", accept);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		renderer.handleHttpEntityResponse(
+				new ResponseEntity<OAuth2Exception>(exception, new HttpHeaders(), HttpStatus.valueOf(exception
+						.getHttpErrorCode())), new ServletWebRequest(request, response));
+		return response;
+	}
+
+}
@@ -141,4 +141,17 @@ public class TestOAuth2SecurityExpressionMethods {
 				.isUser());
 	}
 
+	@Test
+	public void testScopesRegex() throws Exception {
+		OAuth2Request clientAuthentication = RequestTokenFactory.createOAuth2Request(null, "foo", null, false,
+				Collections.singleton("ns_admin:read"), null, null, null, null);
+
+		Authentication userAuthentication = null;
+		OAuth2Authentication oAuth2Authentication = new OAuth2Authentication(clientAuthentication, userAuthentication);
+		OAuth2SecurityExpressionMethods root = new OAuth2SecurityExpressionMethods(oAuth2Authentication, false);
+		assertTrue(root.hasScopeMatching(".*_admin:read"));
+		assertTrue(root.hasScopeMatching(".*_admin:read"));
+		assertFalse(root.hasAnyScopeMatching(".*_admin:write", "admin:read"));
+	}
+
 }
@@ -0,0 +1,61 @@
+package org.springframework.security.oauth2.provider.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	private LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+		assertEquals(0, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		for (int i = 0; i < 8; i++) {
+			histogram.record(i);
+		}
+		assertEquals(8, histogram.getCount());
+		assertEquals(3, histogram.getValueAtPercentile(50));
+		assertEquals(7, histogram.getValueAtPercentile(100));
+		assertEquals(7, histogram.getMax());
+	}
+
+	@Test
+	public void testPercentilesWithinPrecision() {
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500, histogram.getMean(), 0.1);
+		long p50 = histogram.getValueAtPercentile(50);
+		assertTrue("Wrong p50: " + p50, p50 >= 500000 && p50 <= 500000 * 1.125);
+		long p99 = histogram.getValueAtPercentile(99);
+		assertTrue("Wrong p99: " + p99, p99 >= 990000 && p99 <= 1000000);
+		assertEquals(1000000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testBucketBounds() {
+		for (long value : new long[] { 8, 9, 15, 16, 17, 1023, 1024, Long.MAX_VALUE }) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(value <= LatencyHistogram.upperBoundOf(index));
+			assertTrue(index == 0 || value > LatencyHistogram.upperBoundOf(index - 1));
+		}
+	}
+
+	@Test
+	public void testReset() {
+		histogram.record(100);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+
+}
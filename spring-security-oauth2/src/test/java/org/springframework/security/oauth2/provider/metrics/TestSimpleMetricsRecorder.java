@@ -0,0 +1,89 @@
+package org.springframework.security.oauth2.provider.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.AnnotationJmxAttributeSource;
+import org.springframework.jmx.export.assembler.MetadataMBeanInfoAssembler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+
+public class TestSimpleMetricsRecorder {
+
+	private SimpleMetricsRecorder metrics = new SimpleMetricsRecorder();
+
+	@Test
+	public void testTimersAndCounters() {
+		metrics.recordTime("foo", 2000000);
+		metrics.recordTime("foo", 4000000);
+		metrics.increment("bar");
+		metrics.increment("bar");
+		assertEquals(2, metrics.getTimer("foo").getCount());
+		assertEquals(4000, metrics.getTimer("foo").getMax());
+		assertEquals(2, metrics.getCount("bar"));
+		assertEquals(0, metrics.getCount("spam"));
+		assertEquals(Long.valueOf(2), metrics.getCounters().get("bar"));
+		metrics.reset();
+		assertNull(metrics.getTimer("foo"));
+	}
+
+	@Test
+	public void testTokenServices() throws Exception {
+		DefaultTokenServices services = new DefaultTokenServices();
+		services.setTokenStore(new InstrumentedTokenStore(new InMemoryTokenStore(), metrics));
+		services.setMetricsRecorder(metrics);
+		services.afterPropertiesSet();
+		OAuth2AccessToken token = services.createAccessToken(new OAuth2Authentication(RequestTokenFactory
+				.createOAuth2Request(null, "id", null, false, Collections.singleton("read"), null, null, null, null),
+				new UsernamePasswordAuthenticationToken("foo", "bar")));
+		services.loadAuthentication(token.getValue());
+		try {
+			services.loadAuthentication("FOO");
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+		}
+		assertEquals(1, metrics.getTimer("oauth2.tokens.create").getCount());
+		assertEquals(2, metrics.getTimer("oauth2.tokens.load").getCount());
+		assertEquals(1, metrics.getCount("oauth2.tokens.load.invalid"));
+		assertEquals(1, metrics.getTimer("oauth2.tokenstore.storeAccessToken").getCount());
+		assertEquals(1, metrics.getCount("oauth2.tokenstore.getAccessToken.miss"));
+		assertEquals(1, metrics.getCount("oauth2.tokenstore.readAccessTokenAndAuthentication.miss"));
+	}
+
+	@Test
+	public void testJmxExport() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("test:type=OAuth2Metrics");
+		MBeanExporter exporter = new MBeanExporter();
+		exporter.setAssembler(new MetadataMBeanInfoAssembler(new AnnotationJmxAttributeSource()));
+		exporter.setServer(server);
+		exporter.setBeans(Collections.<String, Object> singletonMap(name.toString(), metrics));
+		exporter.afterPropertiesSet();
+		try {
+			metrics.increment("foo");
+			@SuppressWarnings("unchecked")
+			Map<String, Long> counters = (Map<String, Long>) server.getAttribute(name, "Counters");
+			assertEquals(Long.valueOf(1), counters.get("foo"));
+		}
+		finally {
+			exporter.destroy();
+		}
+	}
+
+}
@@ -1,15 +1,31 @@
 package org.springframework.security.oauth2.provider.token;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
@@ -18,6 +34,7 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.common.exceptions.TemporarilyUnavailableException;
 import org.springframework.security.oauth2.provider.BaseClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
@@ -71,6 +88,171 @@ public abstract class AbstractTestDefaultTokenServices {
 		assertEquals(0, tokenStore.findTokensByClientId(authentication.getOAuth2Request().getClientId()).size());
 	}
 
+	@Test
+	public void testRevokedTokenIsAddedToRevocationIndex() throws Exception {
+		JwtTokenEnhancer enhancer = new JwtTokenEnhancer();
+		enhancer.setSigningKey("FOO");
+		enhancer.afterPropertiesSet();
+		RevocationIndex revocationIndex = new RevocationIndex();
+		getTokenServices().setTokenEnhancer(enhancer);
+		getTokenServices().setRevocationIndex(revocationIndex);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String tokenId = (String) accessToken.getAdditionalInformation().get(JwtTokenEnhancer.TOKEN_ID);
+		assertFalse(revocationIndex.isRevoked(tokenId));
+		assertTrue(getTokenServices().revokeToken(accessToken.getValue()));
+		assertTrue(revocationIndex.isRevoked(tokenId));
+	}
+
+	@Test
+	public void testAccessTokenReplacedByRefreshIsAddedToRevocationIndex() throws Exception {
+		JwtTokenEnhancer enhancer = new JwtTokenEnhancer();
+		enhancer.setSigningKey("FOO");
+		enhancer.afterPropertiesSet();
+		RevocationIndex revocationIndex = new RevocationIndex();
+		getTokenServices().setTokenEnhancer(enhancer);
+		getTokenServices().setRevocationIndex(revocationIndex);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String tokenId = (String) accessToken.getAdditionalInformation().get(JwtTokenEnhancer.TOKEN_ID);
+		getTokenServices().refreshAccessToken(accessToken.getRefreshToken().getValue(),
+				new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null));
+		assertNull(tokenStore.readAccessToken(accessToken.getValue()));
+		assertTrue(revocationIndex.isRevoked(tokenId));
+	}
+
+	@Test
+	public void testAccessTokenReplacedByRotationIsAddedToRevocationIndex() throws Exception {
+		JwtTokenEnhancer enhancer = new JwtTokenEnhancer();
+		enhancer.setSigningKey("FOO");
+		enhancer.afterPropertiesSet();
+		RevocationIndex revocationIndex = new RevocationIndex();
+		getTokenServices().setTokenEnhancer(enhancer);
+		getTokenServices().setRevocationIndex(revocationIndex);
+		getTokenServices().setReuseRefreshToken(false);
+		getTokenServices().setRefreshTokenGraceSeconds(30);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String tokenId = (String) accessToken.getAdditionalInformation().get(JwtTokenEnhancer.TOKEN_ID);
+		getTokenServices().refreshAccessToken(accessToken.getRefreshToken().getValue(),
+				new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null));
+		assertTrue(revocationIndex.isRevoked(tokenId));
+		getTokenServices().destroy();
+	}
+
+	@Test
+	public void testRefreshTokenRotationWithGracePeriod() throws Exception {
+		getTokenServices().setReuseRefreshToken(false);
+		getTokenServices().setRefreshTokenGraceSeconds(30);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String refreshTokenValue = accessToken.getRefreshToken().getValue();
+		TokenRequest tokenRequest = new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null);
+		OAuth2AccessToken refreshed = getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+		assertFalse(refreshTokenValue.equals(refreshed.getRefreshToken().getValue()));
+		// a retry with the old refresh token gets the same new tokens
+		assertEquals(refreshed, getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest));
+		assertNotNull(tokenStore.readRefreshToken(refreshed.getRefreshToken().getValue()));
+		// the superseded tokens are already gone
+		assertNull(tokenStore.readRefreshToken(refreshTokenValue));
+		assertNull(tokenStore.readAccessToken(accessToken.getValue()));
+		assertNotNull(tokenStore.readAccessToken(refreshed.getValue()));
+		getTokenServices().destroy();
+	}
+
+	@Test
+	public void testRefreshTokenRotationCanBeRetriedAfterFailedRemoval() throws Exception {
+		TokenStore failing = spy(tokenStore);
+		doThrow(new IllegalStateException("Down")).doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				invocation.callRealMethod();
+				return null;
+			}
+		}).when(failing).removeRefreshToken(any(OAuth2RefreshToken.class));
+		getTokenServices().setTokenStore(failing);
+		getTokenServices().setReuseRefreshToken(false);
+		getTokenServices().setRefreshTokenGraceSeconds(30);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String refreshTokenValue = accessToken.getRefreshToken().getValue();
+		TokenRequest tokenRequest = new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null);
+		try {
+			getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			// the old refresh token is still there
+			assertNotNull(tokenStore.readRefreshToken(refreshTokenValue));
+		}
+		OAuth2AccessToken refreshed = getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+		assertNull(tokenStore.readRefreshToken(refreshTokenValue));
+		assertNotNull(tokenStore.readAccessToken(refreshed.getValue()));
+		getTokenServices().destroy();
+	}
+
+	@Test
+	public void testRefreshTokenRotationWaitsNoLongerThanGracePeriod() throws Exception {
+		TokenStore slow = spy(tokenStore);
+		getTokenServices().setTokenStore(slow);
+		getTokenServices().setReuseRefreshToken(false);
+		getTokenServices().setRefreshTokenGraceSeconds(1);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		final String refreshTokenValue = accessToken.getRefreshToken().getValue();
+		final TokenRequest tokenRequest = new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null,
+				null);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				started.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				invocation.callRealMethod();
+				return null;
+			}
+		}).when(slow).storeAccessToken(any(OAuth2AccessToken.class), any(OAuth2Authentication.class));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<OAuth2AccessToken> first = executor.submit(new Callable<OAuth2AccessToken>() {
+				public OAuth2AccessToken call() throws Exception {
+					return getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+				}
+			});
+			started.await(5, TimeUnit.SECONDS);
+			try {
+				getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+				fail("Expected TemporarilyUnavailableException");
+			}
+			catch (TemporarilyUnavailableException e) {
+				// the rotation is still stuck in the token store
+			}
+			release.countDown();
+			assertNotNull(first.get());
+		}
+		finally {
+			executor.shutdown();
+			getTokenServices().destroy();
+		}
+	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void testRefreshTokenRotationWithGracePeriodWrongClient() throws Exception {
+		getTokenServices().setReuseRefreshToken(false);
+		getTokenServices().setRefreshTokenGraceSeconds(30);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String refreshTokenValue = accessToken.getRefreshToken().getValue();
+		getTokenServices().refreshAccessToken(refreshTokenValue,
+				new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null));
+		getTokenServices().refreshAccessToken(refreshTokenValue,
+				new TokenRequest(Collections.singletonMap("client_id", "wrong"), "wrong", null, null));
+	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void testRefreshTokenRotationAfterGracePeriod() throws Exception {
+		getTokenServices().setReuseRefreshToken(false);
+		getTokenServices().setRefreshTokenGraceSeconds(1);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		String refreshTokenValue = accessToken.getRefreshToken().getValue();
+		TokenRequest tokenRequest = new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null);
+		getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+		Thread.sleep(1100);
+		getTokenServices().refreshAccessToken(refreshTokenValue, tokenRequest);
+	}
+
 	@Test
 	public void testRefreshedTokenIsEnhanced() throws Exception {
 		getTokenServices().setTokenEnhancer(new TokenEnhancer() {
@@ -205,6 +387,32 @@ public abstract class AbstractTestDefaultTokenServices {
 		assertEquals(1, getRefreshTokenCount());
 	}
 
+	@Test
+	public void testLoadAuthentications() throws Exception {
+		OAuth2Authentication authentication = createAuthentication();
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(authentication);
+		DefaultOAuth2AccessToken expired = new DefaultOAuth2AccessToken("expired");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		tokenStore.storeAccessToken(expired, authentication);
+		Map<String, OAuth2Authentication> result = getTokenServices().loadAuthentications(
+				Arrays.asList(accessToken.getValue(), "expired", "FOO"));
+		assertEquals(1, result.size());
+		assertEquals(authentication, result.get(accessToken.getValue()));
+		assertNull(tokenStore.readAccessToken("expired"));
+	}
+
+	@Test
+	public void testReadAccessTokens() throws Exception {
+		OAuth2Authentication authentication = createAuthentication();
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(authentication);
+		Map<OAuth2AccessToken, OAuth2Authentication> result = getTokenServices().readAccessTokens(
+				Arrays.asList(accessToken.getValue(), "FOO"));
+		assertEquals(1, result.size());
+		OAuth2AccessToken stored = result.keySet().iterator().next();
+		assertEquals(accessToken.getValue(), stored.getValue());
+		assertEquals(accessToken.getExpiration(), stored.getExpiration());
+		assertEquals(authentication, result.get(stored));
+	}
 
 	private OAuth2Authentication createAuthentication() {
 		return new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, "id", null, false, Collections.singleton("read"), null, null, null, null), new TestAuthentication("test2", false));
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+public class TestBatchTokenUtils {
+
+	private TokenStore tokenStore = mock(TokenStore.class);
+
+	private ResourceServerTokenServices tokenServices = mock(ResourceServerTokenServices.class);
+
+	private OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(
+			null, "client", null, true, null, null, null, null, null), null);
+
+	@Test
+	public void testReadAccessTokensWithoutBatchSupport() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(tokenStore.readAccessToken("FOO")).thenReturn(token);
+		when(tokenStore.readAuthentication(token)).thenReturn(authentication);
+		Map<OAuth2AccessToken, OAuth2Authentication> result = BatchTokenUtils.readAccessTokens(tokenStore,
+				Arrays.asList("FOO", "BAR"));
+		assertEquals(1, result.size());
+		assertSame(authentication, result.get(token));
+	}
+
+	@Test
+	public void testReadAccessTokenAndAuthenticationWithoutBatchSupport() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(tokenStore.readAccessToken("FOO")).thenReturn(token);
+		when(tokenStore.readAuthentication(token)).thenReturn(authentication);
+		Map.Entry<OAuth2AccessToken, OAuth2Authentication> stored = BatchTokenUtils.readAccessTokenAndAuthentication(
+				tokenStore, "FOO");
+		assertSame(token, stored.getKey());
+		assertSame(authentication, stored.getValue());
+		assertNull(BatchTokenUtils.readAccessTokenAndAuthentication(tokenStore, "BAR"));
+	}
+
+	@Test
+	public void testLoadAuthenticationsWithoutBatchSupport() {
+		when(tokenServices.loadAuthentication("FOO")).thenReturn(authentication);
+		when(tokenServices.loadAuthentication("BAR")).thenThrow(new InvalidTokenException("Invalid token"));
+		Map<String, OAuth2Authentication> result = BatchTokenUtils.loadAuthentications(tokenServices,
+				Arrays.asList("FOO", "BAR"));
+		assertEquals(1, result.size());
+		assertSame(authentication, result.get("FOO"));
+	}
+
+	@Test
+	public void testReadValidAccessTokensFromTokenServices() {
+		DefaultOAuth2AccessToken expired = new DefaultOAuth2AccessToken("BAR");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(tokenServices.readAccessToken("FOO")).thenReturn(token);
+		when(tokenServices.readAccessToken("BAR")).thenReturn(expired);
+		when(tokenServices.loadAuthentication("FOO")).thenReturn(authentication);
+		Map<OAuth2AccessToken, OAuth2Authentication> result = BatchTokenUtils.readAccessTokens(tokenServices,
+				Arrays.asList("FOO", "BAR", "SPAM"));
+		assertEquals(1, result.size());
+		assertSame(authentication, result.get(token));
+		verify(tokenServices, never()).loadAuthentication("BAR");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testLoadAuthenticationsPassesOnOtherErrors() {
+		when(tokenServices.loadAuthentication("FOO")).thenThrow(new IllegalStateException("Down"));
+		BatchTokenUtils.loadAuthentications(tokenServices, Arrays.asList("FOO"));
+	}
+
+}
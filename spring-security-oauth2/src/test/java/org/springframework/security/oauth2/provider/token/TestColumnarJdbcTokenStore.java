@@ -0,0 +1,134 @@
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+public class TestColumnarJdbcTokenStore extends TestTokenStoreBase {
+
+	private ColumnarJdbcTokenStore tokenStore;
+
+	private EmbeddedDatabase db;
+
+	@Override
+	public ColumnarJdbcTokenStore getTokenStore() {
+		return tokenStore;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		tokenStore = new ColumnarJdbcTokenStore(db);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void testTokenFields() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken");
+		Date expiration = new Date(System.currentTimeMillis() + 100000);
+		token.setExpiration(expiration);
+		token.setScope(OAuth2Utils.parseParameterList("read write"));
+		token.setAdditionalInformation(Collections.<String, Object> singletonMap("foo", "bar"));
+		token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken("refreshToken", expiration));
+		tokenStore.storeAccessToken(token, authentication("client", "user"));
+
+		OAuth2AccessToken result = tokenStore.readAccessToken("testToken");
+		assertEquals(expiration.getTime(), result.getExpiration().getTime());
+		assertEquals(token.getScope(), result.getScope());
+		assertEquals(token.getTokenType(), result.getTokenType());
+		assertEquals("bar", result.getAdditionalInformation().get("foo"));
+		assertEquals(expiration.getTime(),
+				((DefaultExpiringOAuth2RefreshToken) result.getRefreshToken()).getExpiration().getTime());
+	}
+
+	@Test
+	public void testAdditionalInformationIsReadAsJson() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken");
+		token.setAdditionalInformation(Collections.<String, Object> singletonMap("issued", new Date(1376000000000L)));
+		tokenStore.storeAccessToken(token, authentication("client", "user"));
+		assertEquals(1376000000000L, tokenStore.readAccessToken("testToken").getAdditionalInformation().get("issued"));
+	}
+
+	@Test(expected = DataRetrievalFailureException.class)
+	public void testUnreadableAdditionalInformation() {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), authentication("client", "user"));
+		new JdbcTemplate(db).update("update oauth_columnar_access_token set additional_information = ?", "{oops");
+		tokenStore.readAccessToken("testToken");
+	}
+
+	@Test
+	public void testUnreadableAuthenticationIsRemovedAfterBatchRead() {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("one"), authentication("client", "user"));
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("two"), authentication("client", "other"));
+		new JdbcTemplate(db).update("update oauth_columnar_access_token set authentication = ? where token_value = ?",
+				new byte[] { 1, 2, 3 }, "one");
+		Map<OAuth2AccessToken, OAuth2Authentication> tokens = tokenStore.readAccessTokens(Arrays.asList("one", "two"));
+		assertEquals(1, tokens.size());
+		assertEquals("two", tokens.keySet().iterator().next().getValue());
+		assertNull(tokenStore.readAccessToken("one"));
+	}
+
+	@Test
+	public void testRemoveExpiredTokens() {
+		DefaultOAuth2AccessToken expired = new DefaultOAuth2AccessToken("expired");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		tokenStore.storeAccessToken(expired, authentication("client", "user"));
+		tokenStore.storeRefreshToken(new DefaultExpiringOAuth2RefreshToken("expiredRefresh", new Date(
+				System.currentTimeMillis() - 1000)), authentication("client", "user"));
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("valid"), authentication("client", "other"));
+		assertEquals(2, tokenStore.removeExpiredTokens());
+		assertNull(tokenStore.readAccessToken("expired"));
+		assertNull(tokenStore.readRefreshToken("expiredRefresh"));
+		assertNotNull(tokenStore.readAccessToken("valid"));
+	}
+
+	@Test
+	public void testRemoveTokensByClientId() {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("one"), authentication("client", "user"));
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("two"), authentication("other", "user"));
+		assertEquals(1, tokenStore.removeTokensByClientId("client"));
+		assertNull(tokenStore.readAccessToken("one"));
+		assertNotNull(tokenStore.readAccessToken("two"));
+	}
+
+	@Test
+	public void testRemoveTokensByClientIdAndUserName() {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("one"), authentication("client", "user"));
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("two"), authentication("client", "other"));
+		tokenStore.storeRefreshToken(new DefaultExpiringOAuth2RefreshToken("refresh", new Date(
+				System.currentTimeMillis() + 100000)), authentication("client", "user"));
+		assertEquals(2, tokenStore.removeTokensByClientIdAndUserName("client", "user"));
+		assertNull(tokenStore.readAccessToken("one"));
+		assertNull(tokenStore.readRefreshToken("refresh"));
+		assertEquals(1, tokenStore.findTokensByUserName("other").size());
+	}
+
+	private OAuth2Authentication authentication(String clientId, String userName) {
+		return new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, clientId, null, true, null, null,
+				null, null, null), new TestAuthentication(userName, true));
+	}
+
+}
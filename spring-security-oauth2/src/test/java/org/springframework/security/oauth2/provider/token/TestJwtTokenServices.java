@@ -16,6 +16,7 @@ package org.springframework.security.oauth2.provider.token;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -33,6 +34,7 @@ import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.provider.BaseClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetails;
@@ -68,6 +70,23 @@ public class TestJwtTokenServices {
 		assertEquals(token, accessToken.getValue());
 	}
 
+	@Test
+	public void testRevokedTokenIsRejected() throws Exception {
+		RevocationIndex revocationIndex = new RevocationIndex();
+		services.setRevocationIndex(revocationIndex);
+		String token = JwtHelper.encode("{\"client_id\":\"client\",\"jti\":\"BAR\"}", new MacSigner("FOO"))
+				.getEncoded();
+		assertEquals("client", services.loadAuthentication(token).getOAuth2Request().getClientId());
+		revocationIndex.revoke("BAR", new Date(System.currentTimeMillis() + 100000));
+		try {
+			services.loadAuthentication(token);
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testLoadAuthentication() throws Exception {
 		String token = JwtHelper.encode("{\"client_id\":\"client\"}", new MacSigner("FOO")).getEncoded();
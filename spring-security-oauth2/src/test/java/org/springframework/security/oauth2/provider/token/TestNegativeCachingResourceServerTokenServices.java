@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestNegativeCachingResourceServerTokenServices {
+
+	private BatchResourceServerTokenServices delegate = mock(BatchResourceServerTokenServices.class);
+
+	private NegativeCachingResourceServerTokenServices services = new NegativeCachingResourceServerTokenServices(
+			delegate);
+
+	@Test
+	public void testInvalidTokenRemembered() {
+		when(delegate.loadAuthentication("FOO")).thenThrow(new InvalidTokenException("Invalid access token: FOO"));
+		for (int i = 0; i < 3; i++) {
+			try {
+				services.loadAuthentication("FOO");
+				fail("Expected InvalidTokenException");
+			}
+			catch (InvalidTokenException e) {
+				// expected
+			}
+		}
+		assertNull(services.readAccessToken("FOO"));
+		verify(delegate).loadAuthentication("FOO");
+		verifyNoMoreInteractions(delegate);
+	}
+
+	@Test
+	public void testValidTokenNotCached() {
+		OAuth2Authentication authentication = mock(OAuth2Authentication.class);
+		when(delegate.loadAuthentication("FOO")).thenReturn(authentication);
+		assertSame(authentication, services.loadAuthentication("FOO"));
+		assertSame(authentication, services.loadAuthentication("FOO"));
+		verify(delegate, times(2)).loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testOtherErrorsNotCached() {
+		when(delegate.loadAuthentication("FOO")).thenThrow(new IllegalStateException("Store down"));
+		for (int i = 0; i < 2; i++) {
+			try {
+				services.loadAuthentication("FOO");
+				fail("Expected IllegalStateException");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+		}
+		verify(delegate, times(2)).loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testEvict() {
+		when(delegate.loadAuthentication("FOO")).thenThrow(new InvalidTokenException("Invalid access token: FOO"));
+		try {
+			services.loadAuthentication("FOO");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+		services.evict("FOO");
+		try {
+			services.loadAuthentication("FOO");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+		verify(delegate, times(2)).loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testLoadAuthenticationsSkipsInvalidTokens() {
+		OAuth2Authentication authentication = mock(OAuth2Authentication.class);
+		List<String> tokens = Arrays.asList("FOO", "BAR");
+		when(delegate.loadAuthentications(tokens)).thenReturn(Collections.singletonMap("FOO", authentication));
+		when(delegate.loadAuthentications(Arrays.asList("FOO"))).thenReturn(
+				Collections.singletonMap("FOO", authentication));
+		assertEquals(1, services.loadAuthentications(tokens).size());
+		assertEquals(1, services.loadAuthentications(tokens).size());
+		verify(delegate).loadAuthentications(Arrays.asList("FOO"));
+		try {
+			services.loadAuthentication("BAR");
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNoCache() {
+		services.setNegativeCacheSeconds(0);
+		when(delegate.loadAuthentication("FOO")).thenThrow(new InvalidTokenException("Invalid access token: FOO"));
+		for (int i = 0; i < 2; i++) {
+			try {
+				services.loadAuthentication("FOO");
+			}
+			catch (InvalidTokenException e) {
+				// expected
+			}
+		}
+		verify(delegate, times(2)).loadAuthentication("FOO");
+	}
+
+}
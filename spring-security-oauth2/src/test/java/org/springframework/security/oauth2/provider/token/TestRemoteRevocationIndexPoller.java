@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.provider.endpoint.RevocationIndexEndpoint;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestOperations;
+
+public class TestRemoteRevocationIndexPoller {
+
+	private RevocationIndex serverIndex = new RevocationIndex();
+
+	private RevocationIndexEndpoint endpoint = new RevocationIndexEndpoint(serverIndex);
+
+	private RevocationIndex index = new RevocationIndex();
+
+	private RemoteRevocationIndexPoller poller = new RemoteRevocationIndexPoller(index);
+
+	private RestOperations restTemplate = mock(RestOperations.class);
+
+	private int received = 0;
+
+	@Before
+	public void init() {
+		poller.setRestTemplate(restTemplate);
+		poller.setRevocationsEndpointUrl("http://example.com/oauth/revocations");
+		poller.setClientId("resource");
+		poller.setClientSecret("secret");
+	}
+
+	@Test
+	public void testPollAddsRevocations() throws Exception {
+		respondFromEndpoint();
+		serverIndex.revoke("FOO", new Date(System.currentTimeMillis() + 100000));
+		assertTrue(poller.poll());
+		assertTrue(index.isRevoked("FOO"));
+		serverIndex.revoke("BAR", null);
+		assertTrue(poller.poll());
+		assertTrue(index.isRevoked("BAR"));
+		// the second poll only fetched the new revocation
+		assertEquals(1, received);
+	}
+
+	@Test
+	public void testPollFailureKeepsIndex() throws Exception {
+		respondFromEndpoint();
+		serverIndex.revoke("FOO", new Date(System.currentTimeMillis() + 100000));
+		assertTrue(poller.poll());
+		when(
+				restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class),
+						any(), any())).thenThrow(new ResourceAccessException("Connection refused"));
+		assertFalse(poller.poll());
+		assertTrue(index.isRevoked("FOO"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void respondFromEndpoint() {
+		when(
+				restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class),
+						any(), any())).thenAnswer(new Answer<ResponseEntity<Map>>() {
+			public ResponseEntity<Map> answer(InvocationOnMock invocation) throws Throwable {
+				Object[] args = invocation.getArguments();
+				String epoch = (String) args[4];
+				long sequence = (Long) args[5];
+				Map<String, ?> body = endpoint.getRevocations(epoch, sequence);
+				received = ((Map) body.get("revoked")).size();
+				return new ResponseEntity<Map>(body, HttpStatus.OK);
+			}
+		});
+	}
+
+}
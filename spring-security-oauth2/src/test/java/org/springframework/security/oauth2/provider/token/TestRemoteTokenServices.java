@@ -0,0 +1,279 @@
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.web.client.RestOperations;
+
+public class TestRemoteTokenServices {
+
+	private RemoteTokenServices services = new RemoteTokenServices();
+
+	private RestOperations restTemplate = mock(RestOperations.class);
+
+	@Before
+	public void init() {
+		services.setRestTemplate(restTemplate);
+		services.setCheckTokenEndpointUrl("http://example.com/oauth/check_token");
+		services.setClientId("resource");
+		services.setClientSecret("secret");
+	}
+
+	@Test
+	public void testValidTokenIsCached() throws Exception {
+		respond(claims(System.currentTimeMillis() / 1000 + 60));
+		OAuth2Authentication authentication = services.loadAuthentication("FOO");
+		assertEquals("client", authentication.getOAuth2Request().getClientId());
+		assertTrue(authentication.getOAuth2Request().getScope().contains("read"));
+		assertEquals("client", services.loadAuthentication("FOO").getOAuth2Request().getClientId());
+		assertEquals(Collections.singleton("read"), services.readAccessToken("FOO").getScope());
+		verifyCalls(1);
+	}
+
+	@Test
+	public void testCachedAuthenticationIsCopied() throws Exception {
+		respond(claims(System.currentTimeMillis() / 1000 + 60));
+		OAuth2Authentication first = services.loadAuthentication("FOO");
+		first.setDetails("details");
+		OAuth2Authentication second = services.loadAuthentication("FOO");
+		assertNotSame(first, second);
+		assertNull(second.getDetails());
+		verifyCalls(1);
+	}
+
+	@Test
+	public void testTokenWithoutExpiryIsNotCachedWithZeroMaxCacheSeconds() throws Exception {
+		services.setMaxCacheSeconds(0);
+		Map<String, Object> claims = claims(0);
+		claims.remove("exp");
+		respond(claims);
+		services.loadAuthentication("FOO");
+		services.loadAuthentication("FOO");
+		verifyCalls(2);
+	}
+
+	@Test
+	public void testTokenWithoutExpiryIsOnlyCachedForNegativeCacheSeconds() throws Exception {
+		services.setNegativeCacheSeconds(0);
+		Map<String, Object> claims = claims(0);
+		claims.remove("exp");
+		respond(claims);
+		services.loadAuthentication("FOO");
+		services.loadAuthentication("FOO");
+		verifyCalls(2);
+	}
+
+	@Test
+	public void testLoadAuthenticationsInOneCall() throws Exception {
+		services.setCheckTokensEndpointUrl("http://example.com/oauth/check_tokens");
+		respond(Collections.singletonMap("FOO", claims(System.currentTimeMillis() / 1000 + 60)));
+		Map<String, OAuth2Authentication> result = services.loadAuthentications(Arrays.asList("FOO", "BAR", "FOO"));
+		assertEquals(Collections.singleton("FOO"), result.keySet());
+		// both the valid and the invalid token are cached now
+		assertEquals(1, services.loadAuthentications(Arrays.asList("FOO", "BAR")).size());
+		verify(restTemplate, times(1)).exchange(eq("http://example.com/oauth/check_tokens"), eq(HttpMethod.POST),
+				any(HttpEntity.class), eq(Map.class));
+		verifyCalls(0);
+	}
+
+	@Test
+	public void testReadAccessTokensInOneCall() throws Exception {
+		services.setCheckTokensEndpointUrl("http://example.com/oauth/check_tokens");
+		long exp = System.currentTimeMillis() / 1000 + 60;
+		respond(Collections.singletonMap("FOO", claims(exp)));
+		Map<OAuth2AccessToken, OAuth2Authentication> result = services.readAccessTokens(Arrays.asList("FOO", "BAR"));
+		assertEquals(1, result.size());
+		OAuth2AccessToken token = result.keySet().iterator().next();
+		assertEquals("FOO", token.getValue());
+		assertEquals(exp * 1000, token.getExpiration().getTime());
+		assertEquals("client", result.get(token).getOAuth2Request().getClientId());
+	}
+
+	@Test
+	public void testLoadAuthenticationsInBatches() throws Exception {
+		services.setCheckTokensEndpointUrl("http://example.com/oauth/check_tokens");
+		services.setBatchSize(2);
+		respond(Collections.<String, Object> emptyMap());
+		assertTrue(services.loadAuthentications(Arrays.asList("FOO", "BAR", "SPAM")).isEmpty());
+		verify(restTemplate, times(2)).exchange(eq("http://example.com/oauth/check_tokens"), eq(HttpMethod.POST),
+				any(HttpEntity.class), eq(Map.class));
+	}
+
+	@Test
+	public void testExpiredTokenIsNotCached() throws Exception {
+		respond(claims(System.currentTimeMillis() / 1000 - 60));
+		services.loadAuthentication("FOO");
+		services.loadAuthentication("FOO");
+		verifyCalls(2);
+	}
+
+	@Test
+	public void testEvict() throws Exception {
+		respond(claims(System.currentTimeMillis() / 1000 + 60));
+		services.loadAuthentication("FOO");
+		services.loadAuthentication("FOO");
+		verifyCalls(1);
+		services.evict("FOO");
+		services.loadAuthentication("FOO");
+		verifyCalls(2);
+	}
+
+	@Test
+	public void testInvalidTokenIsCached() throws Exception {
+		respond(Collections.singletonMap(OAuth2Exception.ERROR, OAuth2Exception.INVALID_TOKEN));
+		try {
+			services.loadAuthentication("FOO");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+		assertNull(services.readAccessToken("FOO"));
+		assertTrue(services.loadAuthentications(Arrays.asList("FOO")).isEmpty());
+		verifyCalls(1);
+	}
+
+	@Test
+	public void testInvalidTokenIsNotCached() throws Exception {
+		services.setNegativeCacheSeconds(0);
+		respond(Collections.singletonMap(OAuth2Exception.ERROR, OAuth2Exception.INVALID_TOKEN));
+		assertNull(services.readAccessToken("FOO"));
+		assertNull(services.readAccessToken("FOO"));
+		verifyCalls(2);
+	}
+
+	@Test
+	public void testOtherErrorIsNotCached() throws Exception {
+		respond(Collections.singletonMap(OAuth2Exception.ERROR, OAuth2Exception.INVALID_CLIENT));
+		for (int i = 0; i < 2; i++) {
+			try {
+				services.loadAuthentication("FOO");
+			}
+			catch (OAuth2Exception e) {
+				assertEquals(OAuth2Exception.INVALID_CLIENT, e.getOAuth2ErrorCode());
+			}
+		}
+		verifyCalls(2);
+	}
+
+	@Test
+	public void testConcurrentRequestsAreCoalesced() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(restTemplate.exchange(any(String.class), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+				.thenAnswer(new Answer<ResponseEntity<Map>>() {
+					public ResponseEntity<Map> answer(InvocationOnMock invocation) throws Throwable {
+						started.countDown();
+						release.await(5, TimeUnit.SECONDS);
+						return new ResponseEntity<Map>(claims(System.currentTimeMillis() / 1000 + 60), HttpStatus.OK);
+					}
+				});
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<OAuth2Authentication> first = executor.submit(new LoadTask());
+			started.await(5, TimeUnit.SECONDS);
+			Future<OAuth2Authentication> second = executor.submit(new LoadTask());
+			// give the second request time to join the first one
+			Thread.sleep(100);
+			release.countDown();
+			assertEquals("client", first.get().getOAuth2Request().getClientId());
+			assertEquals("client", second.get().getOAuth2Request().getClientId());
+		}
+		finally {
+			executor.shutdown();
+		}
+		verifyCalls(1);
+	}
+
+	@Test
+	public void testConcurrentRequestGivesUpAfterTimeout() throws Exception {
+		services.setConnectTimeout(50);
+		services.setReadTimeout(50);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(restTemplate.exchange(any(String.class), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+				.thenAnswer(new Answer<ResponseEntity<Map>>() {
+					public ResponseEntity<Map> answer(InvocationOnMock invocation) throws Throwable {
+						started.countDown();
+						release.await(5, TimeUnit.SECONDS);
+						return new ResponseEntity<Map>(claims(System.currentTimeMillis() / 1000 + 60), HttpStatus.OK);
+					}
+				});
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			Future<OAuth2Authentication> first = executor.submit(new LoadTask());
+			started.await(5, TimeUnit.SECONDS);
+			try {
+				services.loadAuthentication("FOO");
+				fail("Expected IllegalStateException");
+			}
+			catch (IllegalStateException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			release.countDown();
+			assertEquals("client", first.get().getOAuth2Request().getClientId());
+		}
+		finally {
+			executor.shutdown();
+		}
+		verifyCalls(1);
+	}
+
+	private class LoadTask implements java.util.concurrent.Callable<OAuth2Authentication> {
+		public OAuth2Authentication call() throws Exception {
+			return services.loadAuthentication("FOO");
+		}
+	}
+
+	private Map<String, Object> claims(long exp) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("client_id", "client");
+		map.put("scope", Arrays.asList("read"));
+		map.put("exp", (int) exp);
+		return map;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void respond(Map<String, ?> body) {
+		when(restTemplate.exchange(any(String.class), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+				.thenReturn(new ResponseEntity<Map>(body, HttpStatus.OK));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void verifyCalls(int count) {
+		verify(restTemplate, times(count)).exchange(eq("http://example.com/oauth/check_token"), eq(HttpMethod.POST),
+				any(HttpEntity.class), eq(Map.class));
+	}
+
+}
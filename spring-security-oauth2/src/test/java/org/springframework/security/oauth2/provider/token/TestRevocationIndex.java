@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class TestRevocationIndex {
+
+	private RevocationIndex index = new RevocationIndex();
+
+	@Test
+	public void testRevoke() throws Exception {
+		index.revoke("FOO", new Date(System.currentTimeMillis() + 100000));
+		assertTrue(index.isRevoked("FOO"));
+		assertFalse(index.isRevoked("BAR"));
+	}
+
+	@Test
+	public void testRevokeNonExpiringToken() throws Exception {
+		index.revoke("FOO", null);
+		assertTrue(index.isRevoked("FOO"));
+		assertEquals(Long.MAX_VALUE, index.getChanges(null, 0).getRevoked().get("FOO").longValue());
+	}
+
+	@Test
+	public void testExpiredTokenIsIgnored() throws Exception {
+		index.revoke("FOO", new Date(System.currentTimeMillis() - 1000));
+		assertFalse(index.isRevoked("FOO"));
+		assertEquals(0, index.getSequence());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testExpiredTokensArePurged() throws Exception {
+		index.revoke("FOO", new Date(System.currentTimeMillis() + 100));
+		index.revoke("BAR", new Date(System.currentTimeMillis() + 100000));
+		Thread.sleep(200);
+		assertFalse(index.isRevoked("FOO"));
+		index.purgeExpired();
+		assertEquals(1, index.size());
+		assertEquals("[BAR]", index.getChanges(null, 0).getRevoked().keySet().toString());
+		assertEquals(2, index.getSequence());
+	}
+
+	@Test
+	public void testChangesSinceSequence() throws Exception {
+		long expiry = System.currentTimeMillis() + 100000;
+		index.revoke("FOO", new Date(expiry));
+		RevocationIndex.Changes changes = index.getChanges(null, 0);
+		assertEquals(index.getEpoch(), changes.getEpoch());
+		assertEquals(1, changes.getSequence());
+		assertEquals(expiry / 1000, changes.getRevoked().get("FOO").longValue());
+		index.revoke("BAR", new Date(expiry));
+		changes = index.getChanges(changes.getEpoch(), changes.getSequence());
+		assertEquals(2, changes.getSequence());
+		assertEquals("[BAR]", changes.getRevoked().keySet().toString());
+		assertEquals(0, index.getChanges(changes.getEpoch(), changes.getSequence()).getRevoked().size());
+	}
+
+	@Test
+	public void testRevokeTwice() throws Exception {
+		Date expiration = new Date(System.currentTimeMillis() + 100000);
+		index.revoke("FOO", expiration);
+		index.revoke("FOO", expiration);
+		assertEquals(1, index.getSequence());
+	}
+
+	@Test
+	public void testRevokeAgainWithOtherExpiry() throws Exception {
+		long expiry = System.currentTimeMillis() + 100000;
+		index.revoke("FOO", new Date(expiry));
+		index.revoke("BAR", new Date(expiry));
+		index.revoke("FOO", new Date(expiry + 100000));
+		assertEquals(3, index.getSequence());
+		// the earlier change is replaced, so the token is only published once
+		RevocationIndex.Changes changes = index.getChanges(index.getEpoch(), 0);
+		assertEquals("[BAR, FOO]", changes.getRevoked().keySet().toString());
+		assertEquals((expiry + 100000) / 1000, changes.getRevoked().get("FOO").longValue());
+		assertEquals("[FOO]", index.getChanges(index.getEpoch(), 2).getRevoked().keySet().toString());
+		assertEquals(0, index.getChanges(index.getEpoch(), 3).getRevoked().size());
+	}
+
+	@Test
+	public void testAllChangesForOtherEpoch() throws Exception {
+		index.revoke("FOO", new Date(System.currentTimeMillis() + 100000));
+		index.revoke("BAR", new Date(System.currentTimeMillis() + 100000));
+		assertEquals(2, index.getChanges("other", 2).getRevoked().size());
+		assertEquals(2, index.getChanges(index.getEpoch(), 3).getRevoked().size());
+	}
+
+}
@@ -0,0 +1,148 @@
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+public class TestShardedTokenStore extends TestTokenStoreBase {
+
+	private ShardedTokenStore tokenStore;
+
+	private List<JdbcTokenStore> shards = new ArrayList<JdbcTokenStore>();
+
+	private List<EmbeddedDatabase> dbs = new ArrayList<EmbeddedDatabase>();
+
+	@Override
+	public ShardedTokenStore getTokenStore() {
+		return tokenStore;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			EmbeddedDatabase db = new EmbeddedDatabaseBuilder().setName("shard" + i).addDefaultScripts().build();
+			dbs.add(db);
+			shards.add(new JdbcTokenStore(db));
+		}
+		tokenStore = new ShardedTokenStore(shards);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		tokenStore.destroy();
+		for (EmbeddedDatabase db : dbs) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void testTokensAreSpreadAcrossShards() {
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+		for (int i = 0; i < 30; i++) {
+			getTokenStore().storeAccessToken(new DefaultOAuth2AccessToken("token" + i), authentication);
+		}
+		for (JdbcTokenStore shard : shards) {
+			assertTrue(shard.findTokensByClientId("id").size() > 0);
+		}
+		assertEquals(30, getTokenStore().findTokensByClientId("id").size());
+		String value = "token0";
+		assertEquals(value, shards.get(tokenStore.getShardIndex(value)).readAccessToken(value).getValue());
+	}
+
+	@Test
+	public void testConcurrentLookupsDoNotWaitForEachOther() throws Exception {
+		// every shard of both lookups has to be queried at the same time to get past the barrier
+		final CyclicBarrier barrier = new CyclicBarrier(4);
+		TokenStore shard = new InMemoryTokenStore() {
+			@Override
+			public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+				try {
+					barrier.await(5, TimeUnit.SECONDS);
+				}
+				catch (Exception e) {
+					throw new IllegalStateException("Lookups were not concurrent", e);
+				}
+				return super.findTokensByClientId(clientId);
+			}
+		};
+		final ShardedTokenStore store = new ShardedTokenStore(Arrays.asList(shard, shard));
+		ExecutorService lookups = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Collection<OAuth2AccessToken>>> results = new ArrayList<Future<Collection<OAuth2AccessToken>>>();
+			for (int i = 0; i < 2; i++) {
+				results.add(lookups.submit(new Callable<Collection<OAuth2AccessToken>>() {
+					public Collection<OAuth2AccessToken> call() throws Exception {
+						return store.findTokensByClientId("id");
+					}
+				}));
+			}
+			for (Future<Collection<OAuth2AccessToken>> result : results) {
+				assertTrue(result.get().isEmpty());
+			}
+		}
+		finally {
+			lookups.shutdown();
+			store.destroy();
+		}
+	}
+
+	@Test
+	public void testRemoveAccessTokenUsingRefreshToken() {
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("testToken");
+		DefaultOAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken("refreshToken");
+		accessToken.setRefreshToken(refreshToken);
+		getTokenStore().storeAccessToken(accessToken, authentication);
+		getTokenStore().storeRefreshToken(refreshToken, authentication);
+		getTokenStore().removeAccessTokenUsingRefreshToken(refreshToken);
+		assertNull(getTokenStore().readAccessToken("testToken"));
+	}
+
+	@Test
+	public void testAddingShardMovesFewTokens() throws Exception {
+		ShardedTokenStore larger = new ShardedTokenStore(Arrays.asList(new InMemoryTokenStore(),
+				new InMemoryTokenStore(), new InMemoryTokenStore(), new InMemoryTokenStore()));
+		try {
+			int moved = 0;
+			for (int i = 0; i < 1000; i++) {
+				if (larger.getShardIndex("token" + i) != tokenStore.getShardIndex("token" + i)) {
+					moved++;
+				}
+			}
+			// about a quarter of the tokens move to the new shard, and none between the old ones
+			assertTrue("Too many tokens moved: " + moved, moved < 400);
+			for (int i = 0; i < 1000; i++) {
+				int index = larger.getShardIndex("token" + i);
+				assertTrue(index == 3 || index == tokenStore.getShardIndex("token" + i));
+			}
+		}
+		finally {
+			larger.destroy();
+		}
+	}
+
+}
@@ -17,8 +17,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 import org.junit.Test;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
@@ -37,7 +39,7 @@ import org.springframework.security.oauth2.provider.OAuth2Request;
  */
 public abstract class TestTokenStoreBase {
 
-	public abstract TokenStore getTokenStore();
+	public abstract BatchTokenStore getTokenStore();
 
 	@Test
 	public void testReadingAuthenticationForTokenThatDoesNotExist() {
@@ -102,6 +104,31 @@ public abstract class TestTokenStoreBase {
 		assertEquals(1, actualOAuth2AccessTokens.size());
 	}
 
+	@Test
+	public void testReadAccessTokens() {
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, "id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+		getTokenStore().storeAccessToken(new DefaultOAuth2AccessToken("testToken"), expectedAuthentication);
+		getTokenStore().storeAccessToken(new DefaultOAuth2AccessToken("otherToken"), expectedAuthentication);
+
+		Map<OAuth2AccessToken, OAuth2Authentication> tokens = getTokenStore().readAccessTokens(
+				Arrays.asList("testToken", "tokenThatDoesNotExist", "otherToken"));
+		assertEquals(2, tokens.size());
+		assertEquals(expectedAuthentication, tokens.get(new DefaultOAuth2AccessToken("testToken")));
+		assertEquals(expectedAuthentication, tokens.get(new DefaultOAuth2AccessToken("otherToken")));
+	}
+
+	@Test
+	public void testReadAccessTokenAndAuthentication() {
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, "id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+		OAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+		getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+
+		Map.Entry<OAuth2AccessToken, OAuth2Authentication> stored = getTokenStore().readAccessTokenAndAuthentication("testToken");
+		assertEquals(expectedOAuth2AccessToken, stored.getKey());
+		assertEquals(expectedAuthentication, stored.getValue());
+		assertNull(getTokenStore().readAccessTokenAndAuthentication("tokenThatDoesNotExist"));
+	}
+
 	@Test
 	public void testReadingAccessTokenForTokenThatDoesNotExist() {
 		assertNull(getTokenStore().readAccessToken("tokenThatDoesNotExist"));
@@ -105,4 +105,17 @@ public class TestScopeVoter {
 				voter.vote(oAuth2Authentication, null,
 						Collections.<ConfigAttribute> singleton(new SecurityConfig("SCOPE_WRITE"))));
 	}
+
+	@Test
+	public void testAccessDeniedIfScopeIsOnlyAPrefixOfAttribute() throws Exception {
+		OAuth2Request clientAuthentication = RequestTokenFactory.createOAuth2Request(null, "foo", null, false, Collections.singleton("read"), null, null, null, null);
+		Authentication userAuthentication = null;
+		OAuth2Authentication oAuth2Authentication = new OAuth2Authentication(clientAuthentication, userAuthentication);
+		voter.setThrowException(false);
+		assertEquals(
+				AccessDecisionVoter.ACCESS_DENIED,
+				voter.vote(oAuth2Authentication, null,
+						Collections.<ConfigAttribute> singleton(new SecurityConfig("SCOPE_READ_WRITE"))));
+	}
+
 }
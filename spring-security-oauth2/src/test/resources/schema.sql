@@ -16,7 +16,7 @@ create table oauth_client_details (
 create table oauth_client_token (
   token_id VARCHAR(256),
   token LONGVARBINARY,
-  authentication_id VARCHAR(256),
+  authentication_id VARCHAR(256) PRIMARY KEY,
   user_name VARCHAR(256),
   client_id VARCHAR(256)
 );
@@ -37,6 +37,38 @@ create table oauth_refresh_token (
   authentication LONGVARBINARY
 );
 
+create table oauth_columnar_access_token (
+  token_id VARCHAR(256) PRIMARY KEY,
+  token_value VARCHAR(4096),
+  token_type VARCHAR(256),
+  expiration TIMESTAMP,
+  scope VARCHAR(1024),
+  additional_information VARCHAR(4096),
+  authentication_id VARCHAR(256),
+  user_name VARCHAR(256),
+  client_id VARCHAR(256),
+  refresh_token VARCHAR(256),
+  refresh_token_value VARCHAR(4096),
+  refresh_token_expiration TIMESTAMP,
+  authentication LONGVARBINARY
+);
+create index oauth_columnar_access_token_authentication_id on oauth_columnar_access_token (authentication_id);
+create index oauth_columnar_access_token_client_user on oauth_columnar_access_token (client_id, user_name);
+create index oauth_columnar_access_token_user_name on oauth_columnar_access_token (user_name);
+create index oauth_columnar_access_token_refresh_token on oauth_columnar_access_token (refresh_token);
+create index oauth_columnar_access_token_expiration on oauth_columnar_access_token (expiration);
+
+create table oauth_columnar_refresh_token (
+  token_id VARCHAR(256) PRIMARY KEY,
+  token_value VARCHAR(4096),
+  expiration TIMESTAMP,
+  user_name VARCHAR(256),
+  client_id VARCHAR(256),
+  authentication LONGVARBINARY
+);
+create index oauth_columnar_refresh_token_client_user on oauth_columnar_refresh_token (client_id, user_name);
+create index oauth_columnar_refresh_token_expiration on oauth_columnar_refresh_token (expiration);
+
 create table oauth_code (
   code VARCHAR(256), authentication LONGVARBINARY
 );